@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.flume.Event;
+import org.apache.flume.FlumeException;
+import org.apache.flume.event.EventBuilder;
+
+/**
+ * Packs several events (rows) into a single one, so they take a single slot in the channel.
+ *
+ * Body of an envelope is the sequence of its rows, each of them is written as number of headers,
+ * headers (key and value), length of the body and body. Envelopes are marked with
+ * {@link #ROWS_COUNT_HEADER} header and contain the headers which have the same value in all their rows,
+ * so channel selectors can use them.
+ */
+public class EventEnvelope {
+	
+	public static final String ROWS_COUNT_HEADER = "envelopeRowsCount";
+	
+	/**
+	 * @see #pack(List, int, int, Collection)
+	 */
+	public static List<Event> pack(List<Event> events, int maxRows, int maxBytes){
+		return pack(events, maxRows, maxBytes, Collections.<String>emptySet());
+	}
+	
+	/**
+	 * Consecutive events are packed till an envelope contains maxRows rows, adding
+	 * next one would exceed maxBytes or next one has a different value for any of the group headers.
+	 * Envelopes with only one row are not created, the event is kept.
+	 *
+	 * @return list of envelopes and not packed events
+	 */
+	public static List<Event> pack(List<Event> events, int maxRows, int maxBytes, Collection<String> groupHeaders){
+		List<Event> envelopes = new ArrayList<Event>(events.size() / Math.max(maxRows, 1) + 1);
+		
+		ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+		ByteArrayOutputStream row = new ByteArrayOutputStream();
+		DataOutputStream rowOut = new DataOutputStream(row);
+		
+		Event first = null;
+		Map<String, String> commonHeaders = null;
+		int rows = 0;
+		
+		try {
+			for (Event event : events) {
+				row.reset();
+				writeRow(rowOut, event);
+				
+				if(rows > 0 && (rows >= maxRows || envelope.size() + row.size() > maxBytes 
+								|| !sameGroup(first, event, groupHeaders))){
+					envelopes.add(build(first, commonHeaders, envelope, rows));
+					
+					envelope.reset();
+					rows = 0;
+				}
+				
+				if(rows == 0){
+					first = event;
+					commonHeaders = new HashMap<String, String>(event.getHeaders());
+				}else{
+					retainCommonHeaders(commonHeaders, event.getHeaders());
+				}
+				
+				row.writeTo(envelope);
+				rows++;
+			}
+		} catch (IOException e) {
+			//Not thrown by in-memory streams
+			throw new FlumeException(e);
+		}
+		
+		if(rows > 0)
+			envelopes.add(build(first, commonHeaders, envelope, rows));
+		
+		return envelopes;
+	}
+	
+	private static boolean sameGroup(Event first, Event event, Collection<String> groupHeaders) {
+		for (String header : groupHeaders) {
+			String value = first.getHeaders().get(header);
+			
+			if(value == null ? event.getHeaders().get(header) != null : !value.equals(event.getHeaders().get(header)))
+				return false;
+		}
+		
+		return true;
+	}
+	
+	private static void retainCommonHeaders(Map<String, String> commonHeaders, Map<String, String> headers) {
+		Iterator<Entry<String, String>> it = commonHeaders.entrySet().iterator();
+		while(it.hasNext()){
+			Entry<String, String> header = it.next();
+			
+			if(!header.getValue().equals(headers.get(header.getKey())))
+				it.remove();
+		}
+	}
+	
+	private static void writeRow(DataOutputStream out, Event event) throws IOException {
+		Map<String, String> headers = event.getHeaders();
+		
+		out.writeInt(headers.size());
+		for (Entry<String, String> header : headers.entrySet()) {
+			out.writeUTF(header.getKey());
+			out.writeUTF(header.getValue());
+		}
+		
+		byte[] body = event.getBody();
+		out.writeInt(body.length);
+		out.write(body);
+	}
+	
+	private static Event build(Event first, Map<String, String> commonHeaders, ByteArrayOutputStream envelope, int rows) {
+		if(rows == 1)
+			return first;
+		
+		commonHeaders.put(ROWS_COUNT_HEADER, Integer.toString(rows));
+		
+		return EventBuilder.withBody(envelope.toByteArray(), commonHeaders);
+	}
+	
+	public static boolean isEnvelope(Event event){
+		return event.getHeaders().containsKey(ROWS_COUNT_HEADER);
+	}
+	
+	/**
+	 * @return rows of the envelope, or the event if it is not an envelope
+	 * @throws FlumeException if the envelope is malformed
+	 */
+	public static List<Event> unpack(Event event){
+		if(!isEnvelope(event))
+			return Collections.singletonList(event);
+		
+		try {
+			int rowsCount = Integer.parseInt(event.getHeaders().get(ROWS_COUNT_HEADER));
+			
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(event.getBody()));
+			
+			List<Event> rows = new ArrayList<Event>(rowsCount);
+			for (int i = 0; i < rowsCount; i++) {
+				int headersCount = in.readInt();
+				Map<String, String> headers = new HashMap<String, String>(headersCount * 2);
+				for (int j = 0; j < headersCount; j++)
+					headers.put(in.readUTF(), in.readUTF());
+				
+				int bodyLength = in.readInt();
+				if(bodyLength > in.available())
+					throw new FlumeException("Envelope is shorter than the length of row " + i);
+				
+				byte[] body = new byte[bodyLength];
+				in.readFully(body);
+				
+				rows.add(EventBuilder.withBody(body, headers));
+			}
+			
+			if(in.available() > 0)
+				throw new FlumeException("Envelope contains more data than " + rowsCount + " rows");
+			
+			return rows;
+		} catch (IOException | IllegalArgumentException | NegativeArraySizeException e) {
+			throw new FlumeException("Malformed envelope event", e);
+		}
+	}
+
+}
@@ -13,22 +13,43 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.flume.Event;
-
+import com.google.common.base.Charsets;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import ch.cern.db.utils.CBORCodec;
 import ch.cern.db.utils.JSONUtils;
 
-public class JSONEvent implements Event{
+/**
+ * Event which body is a JSON object.
+ * 
+ * Body is serialized (UTF-8) only once, till the object is modified. A body which is set
+ * is only parsed when the object is required.
+ * 
+ * Body can be encoded as CBOR instead of JSON text, then {@link #CONTENT_TYPE_HEADER} header
+ * is set to {@link #CBOR_CONTENT_TYPE} so the body can be decoded after going through a channel.
+ */
+public class JSONEvent implements StructuredEvent{
+	
+	public static final String CONTENT_TYPE_HEADER = "contentType";
+	public static final String CBOR_CONTENT_TYPE = "application/cbor";
 	
 	private Map<String, String> headers;
+	
+	private boolean cborEncoded;
+	
+	/** Null if body has been set and not parsed yet */
 	private JsonObject json;
 	
+	/** Serialized json, null if it has been modified since */
+	private byte[] body;
+	
 	public JSONEvent() {
 		headers = new HashMap<String, String>();
 		json = new JsonObject();
+		body = null;
+		cborEncoded = false;
 	}
 
 	@Override
@@ -39,9 +60,36 @@ public class JSONEvent implements Event{
 	@Override
 	public void setHeaders(Map<String, String> headers) {
 		this.headers = headers;
+		
+		if(cborEncoded)
+			headers.put(CONTENT_TYPE_HEADER, CBOR_CONTENT_TYPE);
+	}
+	
+	/**
+	 * @param cborEncoded true if body is encoded as CBOR, false if as JSON text
+	 */
+	public void setCBOREncoded(boolean cborEncoded) {
+		if(this.cborEncoded == cborEncoded)
+			return;
+		
+		getJsonBody();
+		body = null;
+		
+		this.cborEncoded = cborEncoded;
+		
+		if(cborEncoded)
+			headers.put(CONTENT_TYPE_HEADER, CBOR_CONTENT_TYPE);
+		else
+			headers.remove(CONTENT_TYPE_HEADER);
+	}
+	
+	public boolean isCBOREncoded() {
+		return cborEncoded;
 	}
 	
 	public void addProperty(String name, Object value){
+		JsonObject json = getJsonObject();
+		
 		if(value instanceof Date){
 			json.addProperty(name, JSONUtils.to((Date) value));
 		}else if(value instanceof Number){
@@ -57,23 +105,52 @@ public class JSONEvent implements Event{
 		}
 	}
 	
+	/**
+	 * @return JSON object of the body, it can be modified so the serialized body is discarded
+	 */
 	public JsonObject getJsonObject(){
+		JsonObject json = getJsonBody();
+		
+		body = null;
+		
+		return json;
+	}
+	
+	@Override
+	public JsonObject getJsonBody() {
+		if(json == null){
+			if(cborEncoded)
+				json = CBORCodec.decode(body).getAsJsonObject();
+			else
+				json = new JsonParser().parse(new String(body, Charsets.UTF_8)).getAsJsonObject();
+		}
+		
 		return json;
 	}
 
 	@Override
 	public byte[] getBody() {
-		return json.toString().getBytes();
+		if(body == null)
+			body = cborEncoded ? CBORCodec.encode(json) : json.toString().getBytes(Charsets.UTF_8);
+		
+		return body;
 	}
 
+	/**
+	 * Body is decoded as CBOR if {@link #CONTENT_TYPE_HEADER} header is {@link #CBOR_CONTENT_TYPE},
+	 * so headers must be set before.
+	 */
 	@Override
 	public void setBody(byte[] body) {
-		json = new JsonParser().parse(new String(body)).getAsJsonObject();
+		this.body = body;
+		this.json = null;
+		this.cborEncoded = CBOR_CONTENT_TYPE.equals(headers.get(CONTENT_TYPE_HEADER));
 	}
 
 	@Override
 	public String toString() {
-		return "JSONEvent [headers=" + headers + ", body=" + json + "]";
+		return "JSONEvent [headers=" + headers + ", body=" + (json != null ? json : 
+				cborEncoded ? body.length + " bytes of " + CBOR_CONTENT_TYPE : new String(body, Charsets.UTF_8)) + "]";
 	}
 	
 }
@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume;
+
+import org.apache.flume.Event;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Event which body is a JSON object, it is given without parsing the body when the
+ * object is already available.
+ * 
+ * Events which went through a channel that serializes them (e.g. file channel) are
+ * not structured events anymore, so their body has to be parsed.
+ */
+public interface StructuredEvent extends Event {
+
+	/**
+	 * @return body as JSON object, it must not be modified
+	 */
+	public JsonObject getJsonBody();
+
+}
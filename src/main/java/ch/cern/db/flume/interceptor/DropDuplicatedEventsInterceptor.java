@@ -10,8 +10,6 @@
 package ch.cern.db.flume.interceptor;
 
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -30,7 +28,7 @@ import ch.cern.db.utils.SizeLimitedHashSet;
  * transaction to channel fails or agent is restarted.
  */
 @Deprecated
-public class DropDuplicatedEventsInterceptor implements Interceptor {
+public class DropDuplicatedEventsInterceptor extends EventStageInterceptor {
 
 	private static final Logger LOG = LoggerFactory.getLogger(DropDuplicatedEventsInterceptor.class);
 	
@@ -84,19 +82,6 @@ public class DropDuplicatedEventsInterceptor implements Interceptor {
 			return 0;
 	}
 
-	@Override
-	public List<Event> intercept(List<Event> events) {
-		LinkedList<Event> intercepted_events = new LinkedList<Event>();
-		
-		for (Event event : events) {
-			Event intercepted_event = intercept(event);
-			if(intercepted_event != null)
-				intercepted_events.add(event);
-		}
-		
-		return intercepted_events;
-	}
-
 	@Override
 	public void close() {
 		last_hashes.clear();
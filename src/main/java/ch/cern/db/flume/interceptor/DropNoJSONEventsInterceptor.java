@@ -9,14 +9,11 @@
 
 package ch.cern.db.flume.interceptor;
 
-import java.util.LinkedList;
-import java.util.List;
-
 import org.apache.flume.Context;
 import org.apache.flume.Event;
 import org.apache.flume.interceptor.Interceptor;
 
-import ch.cern.db.flume.JSONEvent;
+import ch.cern.db.utils.JSONUtils;
 
 /**
  * 
@@ -24,7 +21,7 @@ import ch.cern.db.flume.JSONEvent;
  * @author daniellanzagarcia
  *
  */
-public class DropNoJSONEventsInterceptor implements Interceptor {
+public class DropNoJSONEventsInterceptor extends EventStageInterceptor {
 
 	private DropNoJSONEventsInterceptor(){
 	}
@@ -35,26 +32,12 @@ public class DropNoJSONEventsInterceptor implements Interceptor {
 
 	@Override
 	public Event intercept(Event event) {
-		if(event instanceof JSONEvent)
+		if(JSONUtils.isJSON(event))
 			return event;
 		else
 			return null;
 	}
 
-	@Override
-	public List<Event> intercept(List<Event> events) {
-		LinkedList<Event> intercepted = new LinkedList<Event>();
-		
-		for (Event event : events) {
-			Event intercepted_event = intercept(event);
-			
-			if(intercepted_event != null)
-				intercepted.add(event);
-		}
-		
-		return intercepted;
-	}
-
 	@Override
 	public void close() {
 	}
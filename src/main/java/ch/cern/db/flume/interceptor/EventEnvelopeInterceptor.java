@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.db.flume.interceptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.conf.ConfigurationException;
+import org.apache.flume.interceptor.Interceptor;
+
+import ch.cern.db.flume.EventEnvelope;
+
+/**
+ * Packs the events (rows) of a batch into envelope events, so they take less slots in the channel.
+ *
+ * It must be the last interceptor of the source, so previous interceptors process rows. Envelopes
+ * contain the headers which are the same in all their rows, rows with different values for 
+ * any of groupHeaders are not packed together, so selectors can route envelopes by them.
+ *
+ * Sinks must unpack envelopes, see {@link EventEnvelope}.
+ */
+public class EventEnvelopeInterceptor implements Interceptor {
+	
+	public static final int MAX_ROWS_DEFAULT = 100;
+	public static final String MAX_ROWS_PARAM = "maxRows";
+	
+	public static final int MAX_BYTES_DEFAULT = 1024 * 1024;
+	public static final String MAX_BYTES_PARAM = "maxBytes";
+	
+	public static final String GROUP_HEADERS_PARAM = "groupHeaders";
+	
+	private final int maxRows;
+	
+	private final int maxBytes;
+	
+	private final List<String> groupHeaders;
+	
+	private EventEnvelopeInterceptor(int maxRows, int maxBytes, List<String> groupHeaders){
+		this.maxRows = maxRows;
+		this.maxBytes = maxBytes;
+		this.groupHeaders = groupHeaders;
+	}
+	
+	@Override
+	public void initialize() {
+	}
+	
+	@Override
+	public Event intercept(Event event) {
+		return event;
+	}
+	
+	@Override
+	public List<Event> intercept(List<Event> events) {
+		return EventEnvelope.pack(events, maxRows, maxBytes, groupHeaders);
+	}
+	
+	@Override
+	public void close() {
+	}
+	
+	/**
+	 * Builder which builds new instance of this class
+	 */
+	public static class Builder implements Interceptor.Builder {
+		
+		private int maxRows;
+		
+		private int maxBytes;
+		
+		private List<String> groupHeaders;
+		
+		@Override
+		public void configure(Context context) {
+			maxRows = context.getInteger(MAX_ROWS_PARAM, MAX_ROWS_DEFAULT);
+			if(maxRows < 1)
+				throw new ConfigurationException(MAX_ROWS_PARAM + " must be greater than 0");
+			
+			maxBytes = context.getInteger(MAX_BYTES_PARAM, MAX_BYTES_DEFAULT);
+			
+			String groupHeadersValue = context.getString(GROUP_HEADERS_PARAM);
+			if(groupHeadersValue == null || groupHeadersValue.trim().isEmpty())
+				groupHeaders = Collections.emptyList();
+			else
+				groupHeaders = Arrays.asList(groupHeadersValue.trim().split("\\s+"));
+		}
+		
+		@Override
+		public Interceptor build() {
+			return new EventEnvelopeInterceptor(maxRows, maxBytes, groupHeaders);
+		}
+	
+	}
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.db.flume.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+
+/**
+ * Interceptor which processes events one by one, so it can be used as a stage of {@link FusedInterceptor}.
+ *
+ * {@link #intercept(Event)} returns the event, a replacement or null if it is dropped. Batches are
+ * processed in a single pass into a list sized once.
+ */
+public abstract class EventStageInterceptor implements Interceptor {
+	
+	@Override
+	public List<Event> intercept(List<Event> events) {
+		List<Event> intercepted = new ArrayList<Event>(events.size());
+		
+		for (Event event : events) {
+			Event intercepted_event = intercept(event);
+			
+			if(intercepted_event != null)
+				intercepted.add(intercepted_event);
+		}
+		
+		return intercepted;
+	}
+
+}
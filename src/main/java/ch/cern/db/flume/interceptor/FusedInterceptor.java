@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.db.flume.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.flume.Context;
+import org.apache.flume.CounterGroup;
+import org.apache.flume.Event;
+import org.apache.flume.FlumeException;
+import org.apache.flume.conf.ConfigurationException;
+import org.apache.flume.interceptor.Interceptor;
+import org.apache.flume.interceptor.InterceptorBuilderFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Runs an ordered list of interceptors (stages) event by event, so a batch is processed in a single pass
+ * instead of once per interceptor. Once an event is dropped by a stage, next stages do not process it.
+ *
+ * Stages are configured as interceptors, e.g.:
+ * stages = json csv
+ * stages.json.type = ch.cern.db.flume.interceptor.DropNoJSONEventsInterceptor$Builder
+ * stages.csv.type = ch.cern.db.flume.interceptor.JSONEventToCSVInterceptor$Builder
+ *
+ * Events processed, dropped and time spent (nanoseconds) are counted per stage.
+ */
+public class FusedInterceptor implements Interceptor {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(FusedInterceptor.class);
+	
+	public static final String STAGES_PARAM = "stages";
+	
+	private final String[] names;
+	
+	private final Interceptor[] stages;
+	
+	/** Metrics of a call are added once it finishes, so calls can run in parallel */
+	private final CounterGroup counters;
+	
+	private FusedInterceptor(String[] names, Interceptor[] stages){
+		this.names = names;
+		this.stages = stages;
+		
+		counters = new CounterGroup();
+		counters.setName(getClass().getSimpleName());
+	}
+	
+	@Override
+	public void initialize() {
+		for (Interceptor stage : stages)
+			stage.initialize();
+	}
+	
+	@Override
+	public Event intercept(Event event) {
+		StageMetrics metrics = new StageMetrics(stages.length);
+		
+		event = process(event, metrics);
+		
+		updateCounters(metrics);
+		
+		return event;
+	}
+	
+	@Override
+	public List<Event> intercept(List<Event> events) {
+		StageMetrics metrics = new StageMetrics(stages.length);
+		
+		List<Event> intercepted = new ArrayList<Event>(events.size());
+		
+		for (Event event : events) {
+			event = process(event, metrics);
+			
+			if(event != null)
+				intercepted.add(event);
+		}
+		
+		updateCounters(metrics);
+		
+		return intercepted;
+	}
+	
+	private Event process(Event event, StageMetrics metrics) {
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < stages.length && event != null; i++) {
+			event = stages[i].intercept(event);
+			
+			long end = System.nanoTime();
+			metrics.time[i] += end - start;
+			start = end;
+			
+			metrics.processed[i]++;
+			if(event == null)
+				metrics.dropped[i]++;
+		}
+		
+		return event;
+	}
+	
+	private void updateCounters(StageMetrics metrics) {
+		for (int i = 0; i < stages.length; i++) {
+			counters.addAndGet(names[i] + ".events.processed", metrics.processed[i]);
+			counters.addAndGet(names[i] + ".events.dropped", metrics.dropped[i]);
+			counters.addAndGet(names[i] + ".time.nanos", metrics.time[i]);
+		}
+	}
+	
+	@VisibleForTesting
+	CounterGroup getCounters() {
+		return counters;
+	}
+	
+	@Override
+	public void close() {
+		for (Interceptor stage : stages)
+			stage.close();
+		
+		LOG.info("Interceptor closed. Metrics: {}", counters);
+	}
+	
+	/**
+	 * Metrics of the stages during a call
+	 */
+	private static class StageMetrics {
+		
+		private final long[] processed;
+		private final long[] dropped;
+		private final long[] time;
+		
+		public StageMetrics(int stages) {
+			processed = new long[stages];
+			dropped = new long[stages];
+			time = new long[stages];
+		}
+	
+	}
+	
+	/**
+	 * Builder which builds new instance of this class
+	 */
+	public static class Builder implements Interceptor.Builder {
+		
+		private String[] names;
+		
+		private Interceptor.Builder[] builders;
+		
+		@Override
+		public void configure(Context context) {
+			String stagesValue = context.getString(STAGES_PARAM);
+			if(stagesValue == null || stagesValue.trim().isEmpty())
+				throw new ConfigurationException("Stages must be configured with " + STAGES_PARAM);
+			
+			names = stagesValue.trim().split("\\s+");
+			builders = new Interceptor.Builder[names.length];
+			
+			for (int i = 0; i < names.length; i++) {
+				Context stageContext = new Context(context.getSubProperties(STAGES_PARAM + "." + names[i] + "."));
+				
+				String type = stageContext.getString("type");
+				if(type == null)
+					throw new ConfigurationException("Type of stage " + names[i] + " must be configured with "
+								+ STAGES_PARAM + "." + names[i] + ".type");
+				
+				try {
+					builders[i] = InterceptorBuilderFactory.newInstance(type);
+				} catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+					throw new FlumeException("Interceptor for stage " + names[i] + " could not be created", e);
+				}
+				
+				builders[i].configure(stageContext);
+			}
+		}
+		
+		@Override
+		public Interceptor build() {
+			Interceptor[] stages = new Interceptor[builders.length];
+			for (int i = 0; i < builders.length; i++)
+				stages[i] = builders[i].build();
+			
+			return new FusedInterceptor(names, stages);
+		}
+	
+	}
+
+}
@@ -9,9 +9,8 @@
 
 package ch.cern.db.flume.interceptor;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map.Entry;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -19,19 +18,37 @@ import org.apache.flume.event.EventBuilder;
 import org.apache.flume.interceptor.Interceptor;
 
 import ch.cern.db.flume.JSONEvent;
+import ch.cern.db.utils.CSVEncoder;
+import ch.cern.db.utils.JSONUtils;
 
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 
 /**
+ * Converts JSON events into CSV lines (RFC 4180, UTF-8).
  * 
+ * Values are written in the order of the configured columns (comma separated list),
+ * or in the order of the properties of each event if columns are not configured.
+ * 
+ * Bodies of other events are parsed if they look like a JSON object, otherwise events are not modified.
  * 
  * @author daniellanzagarcia
  *
  */
-public class JSONEventToCSVInterceptor implements Interceptor {
+public class JSONEventToCSVInterceptor extends EventStageInterceptor {
 
-	private JSONEventToCSVInterceptor(){
+	public static final String COLUMNS_PARAM = "columns";
+	
+	/** Encoders reuse their buffer, so each thread (e.g. of a parallel source) gets its own */
+	private final ThreadLocal<CSVEncoder> encoder;
+	
+	private JSONEventToCSVInterceptor(final String[] columns){
+		encoder = new ThreadLocal<CSVEncoder>(){
+			@Override
+			protected CSVEncoder initialValue() {
+				return new CSVEncoder(columns);
+			}
+		};
 	}
 	
 	@Override
@@ -40,34 +57,41 @@ public class JSONEventToCSVInterceptor implements Interceptor {
 
 	@Override
 	public Event intercept(Event event) {
-		if(!(event instanceof JSONEvent))
+		JsonObject json = getJSONBody(event);
+		if(json == null)
 			return event;
 		
-		StringBuilder csv = new StringBuilder();
+		byte[] csv = encoder.get().encode(json);
 		
-		JsonObject json = ((JSONEvent) event).getJsonObject();
-		boolean first = true;
-		for (Entry<String, JsonElement> property : json.entrySet()) {
-			if(first)
-				first = false;
-			else
-				csv.append(",");
-			
-			csv.append(property.getValue());
+		Map<String, String> headers = event.getHeaders();
+		if(headers.containsKey(JSONEvent.CONTENT_TYPE_HEADER)){
+			headers = new HashMap<String, String>(headers);
+			headers.remove(JSONEvent.CONTENT_TYPE_HEADER);
 		}
 		
-		return EventBuilder.withBody(csv.toString().getBytes(), event.getHeaders());
+		return EventBuilder.withBody(csv, headers);
 	}
-
-	@Override
-	public List<Event> intercept(List<Event> events) {
-		LinkedList<Event> intercepted = new LinkedList<Event>();
+	
+	/**
+	 * @return body as JSON object, null if event is not JSON and body is not a JSON object
+	 */
+	private JsonObject getJSONBody(Event event) {
+		if(JSONUtils.isJSON(event))
+			return JSONUtils.getBody(event);
 		
-		for (Event event : events) {
-			intercepted.add(intercept(event));
-		}
+		byte[] body = event.getBody();
 		
-		return intercepted;
+		int start = 0;
+		while(start < body.length && Character.isWhitespace(body[start]))
+			start++;
+		if(start == body.length || body[start] != '{')
+			return null;
+		
+		try{
+			return JSONUtils.getBody(event);
+		}catch(JsonParseException | IllegalStateException e){
+			return null;
+		}
 	}
 
 	@Override
@@ -79,13 +103,16 @@ public class JSONEventToCSVInterceptor implements Interceptor {
 	 */
 	public static class Builder implements Interceptor.Builder {
 
+		private String[] columns;
+		
 		@Override
 		public void configure(Context context) {
+			columns = CSVEncoder.parseColumns(context.getString(COLUMNS_PARAM));
 		}
 
 		@Override
 		public Interceptor build() {
-			return new JSONEventToCSVInterceptor();
+			return new JSONEventToCSVInterceptor(columns);
 		}
 
 	}
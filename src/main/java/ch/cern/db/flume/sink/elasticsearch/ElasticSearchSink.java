@@ -36,6 +36,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 
+import ch.cern.db.flume.EventEnvelope;
 import ch.cern.db.flume.sink.elasticsearch.client.ElasticSearchClient;
 import ch.cern.db.flume.sink.elasticsearch.client.ElasticSearchClientFactory;
 
@@ -160,14 +161,20 @@ public class ElasticSearchSink extends AbstractSink implements Configurable {
     try {
       txn.begin();
       int count;
+      int rows = 0;
       for (count = 0; count < batchSize; ++count) {
         Event event = channel.take();
 
         if (event == null) {
           break;
         }
-        String realIndexType = BucketPath.escapeString(indexType, event.getHeaders());
-        client.addEvent(event, indexNameBuilder, realIndexType, ttlMs);
+
+        // Each row of an envelope becomes a bulk item
+        for (Event row : EventEnvelope.unpack(event)) {
+          String realIndexType = BucketPath.escapeString(indexType, row.getHeaders());
+          client.addEvent(row, indexNameBuilder, realIndexType, ttlMs);
+          rows++;
+        }
       }
 
       if (count <= 0) {
@@ -182,11 +189,11 @@ public class ElasticSearchSink extends AbstractSink implements Configurable {
           sinkCounter.incrementBatchCompleteCount();
         }
 
-        sinkCounter.addToEventDrainAttemptCount(count);
+        sinkCounter.addToEventDrainAttemptCount(rows);
         client.execute();
       }
       txn.commit();
-      sinkCounter.addToEventDrainSuccessCount(count);
+      sinkCounter.addToEventDrainSuccessCount(rows);
       counterGroup.incrementAndGet("transaction.success");
     } catch (Throwable ex) {
       try {
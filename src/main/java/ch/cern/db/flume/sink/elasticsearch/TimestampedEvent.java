@@ -19,6 +19,11 @@
 package ch.cern.db.flume.sink.elasticsearch;
 
 import com.google.common.collect.Maps;
+import com.google.gson.JsonObject;
+
+import ch.cern.db.flume.StructuredEvent;
+import ch.cern.db.utils.JSONUtils;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.flume.Event;
 import org.apache.flume.event.SimpleEvent;
@@ -33,13 +38,21 @@ import java.util.Map;
  * <li>The "@timestamp" header of the base event, if present</li>
  * <li>The current time in millis, otherwise</li>
  * </ol>
+ * The body is read from the base event only when asked for, and its JSON body
+ * is given if it is a {@link StructuredEvent}, so serializers which use the JSON
+ * body do not serialize it nor parse it again.
  */
-final class TimestampedEvent extends SimpleEvent {
+final class TimestampedEvent extends SimpleEvent implements StructuredEvent {
 
   private final long timestamp;
 
+  private final Event base;
+
+  /** Null till it is read from the base event or set */
+  private byte[] body;
+
   TimestampedEvent(Event base) {
-    setBody(base.getBody());
+    this.base = base;
     Map<String, String> headers = Maps.newHashMap(base.getHeaders());
     String timestampString = headers.get("timestamp");
     if (StringUtils.isBlank(timestampString)) {
@@ -57,4 +70,22 @@ final class TimestampedEvent extends SimpleEvent {
   long getTimestamp() {
     return timestamp;
   }
+
+  @Override
+  public byte[] getBody() {
+    if (body == null) {
+      body = base.getBody();
+    }
+    return body;
+  }
+
+  @Override
+  public void setBody(byte[] body) {
+    this.body = body;
+  }
+
+  @Override
+  public JsonObject getJsonBody() {
+    return JSONUtils.getBody(base);
+  }
 }
@@ -21,11 +21,12 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 
+import ch.cern.db.flume.JSONEvent;
 import ch.cern.db.flume.sink.elasticsearch.ContentBuilderUtil;
 import ch.cern.db.flume.sink.elasticsearch.ElasticSearchEventSerializer;
+import ch.cern.db.utils.JSONUtils;
 
 public class JSONtoElasticSearchEventSerializer implements ElasticSearchEventSerializer {
 
@@ -51,14 +52,16 @@ public class JSONtoElasticSearchEventSerializer implements ElasticSearchEventSer
 		Map<String, String> headers = event.getHeaders();
 		
 		for (String key : headers.keySet()) {
+			//Body encoding is not indexed
+			if(key.equals(JSONEvent.CONTENT_TYPE_HEADER))
+				continue;
+			
 			ContentBuilderUtil.appendField(builder, key, headers.get(key).getBytes(charset));
 		}
 	}
 	
 	private void appendBody(XContentBuilder builder, Event event) throws IOException {
-		JsonParser parser = new JsonParser();
-		
-		JsonObject json = parser.parse(new String(event.getBody())).getAsJsonObject();
+		JsonObject json = JSONUtils.getBody(event);
 		
 		for (Entry<String, JsonElement> property : json.entrySet()) {
 		
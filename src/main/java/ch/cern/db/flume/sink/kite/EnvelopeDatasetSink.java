@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.sink.kite;
+
+import static org.apache.flume.sink.kite.DatasetSinkConstants.CONFIG_FLUSHABLE_COMMIT_ON_BATCH;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.CONFIG_KITE_BATCH_SIZE;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.CONFIG_KITE_DATASET_NAME;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.CONFIG_KITE_DATASET_NAMESPACE;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.CONFIG_KITE_DATASET_URI;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.CONFIG_KITE_REPO_URI;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.CONFIG_KITE_ROLL_INTERVAL;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.CONFIG_SYNCABLE_SYNC_ON_BATCH;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.DEFAULT_BATCH_SIZE;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.DEFAULT_FLUSHABLE_COMMIT_ON_BATCH;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.DEFAULT_ROLL_INTERVAL;
+import static org.apache.flume.sink.kite.DatasetSinkConstants.DEFAULT_SYNCABLE_SYNC_ON_BATCH;
+
+import java.util.List;
+
+import org.apache.avro.generic.GenericRecord;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.EventDeliveryException;
+import org.apache.flume.Transaction;
+import org.apache.flume.conf.Configurable;
+import org.apache.flume.instrumentation.SinkCounter;
+import org.apache.flume.sink.AbstractSink;
+import org.apache.flume.sink.kite.NonRecoverableEventException;
+import org.kitesdk.data.DatasetWriter;
+import org.kitesdk.data.Datasets;
+import org.kitesdk.data.Flushable;
+import org.kitesdk.data.Syncable;
+import org.kitesdk.data.URIBuilder;
+import org.kitesdk.data.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import ch.cern.db.flume.EventEnvelope;
+import ch.cern.db.flume.sink.kite.parser.JSONtoAvroParser;
+
+/**
+ * Sink which writes events into a Kite dataset, a record per row of envelope events and
+ * a record per any other event, parsed by {@link JSONtoAvroParser}.
+ *
+ * Rows of an envelope are written by the writer of the sink, in the transaction the envelope was taken in.
+ * Dataset, batch size, roll interval and commit on batch are configured as for Kite DatasetSink.
+ * Events which can not be parsed make the batch fail, so they are retried.
+ *
+ * Like DatasetSink, the transaction is committed after every batch only if the writer can be flushed,
+ * otherwise (e.g. Parquet) it is kept open till the writer is rolled, so a file is written per roll interval.
+ *
+ * type = ch.cern.db.flume.sink.kite.EnvelopeDatasetSink
+ * kite.dataset.uri = dataset:hdfs:/path/to/dataset
+ *
+ * @see EventEnvelope
+ */
+public class EnvelopeDatasetSink extends AbstractSink implements Configurable {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(EnvelopeDatasetSink.class);
+	
+	private Context context;
+	
+	private String datasetURI;
+	
+	private long batchSize;
+	private long rollIntervalMillis;
+	private boolean commitOnBatch;
+	private boolean syncOnBatch;
+	
+	private SinkCounter sinkCounter;
+	
+	private View<GenericRecord> dataset;
+	private JSONtoAvroParser parser;
+	
+	private DatasetWriter<GenericRecord> writer;
+	private long lastRolledTime;
+	/** A batch written by current writer has been committed */
+	private boolean committedBatch;
+	
+	private Transaction transaction;
+	/** Events taken in current transaction */
+	private long transactionEvents;
+	
+	@Override
+	public void configure(Context context) {
+		this.context = context;
+		
+		datasetURI = context.getString(CONFIG_KITE_DATASET_URI);
+		if(datasetURI == null){
+			String repositoryURI = context.getString(CONFIG_KITE_REPO_URI);
+			Preconditions.checkArgument(repositoryURI != null, "Dataset of the sink must be configured with "
+					+ CONFIG_KITE_DATASET_URI + " or " + CONFIG_KITE_REPO_URI);
+			
+			datasetURI = new URIBuilder(repositoryURI,
+					context.getString(CONFIG_KITE_DATASET_NAMESPACE, URIBuilder.NAMESPACE_DEFAULT),
+					context.getString(CONFIG_KITE_DATASET_NAME)).build().toString();
+		}
+		
+		batchSize = context.getLong(CONFIG_KITE_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+		rollIntervalMillis = context.getInteger(CONFIG_KITE_ROLL_INTERVAL, DEFAULT_ROLL_INTERVAL) * 1000L;
+		commitOnBatch = context.getBoolean(CONFIG_FLUSHABLE_COMMIT_ON_BATCH, DEFAULT_FLUSHABLE_COMMIT_ON_BATCH);
+		syncOnBatch = context.getBoolean(CONFIG_SYNCABLE_SYNC_ON_BATCH, DEFAULT_SYNCABLE_SYNC_ON_BATCH);
+		
+		if(sinkCounter == null)
+			sinkCounter = new SinkCounter(getName());
+	}
+	
+	@Override
+	public synchronized void start() {
+		dataset = Datasets.load(datasetURI, GenericRecord.class);
+		parser = (JSONtoAvroParser) new JSONtoAvroParser.Builder()
+							.build(dataset.getDataset().getDescriptor().getSchema(), context);
+		
+		sinkCounter.start();
+		super.start();
+		
+		LOG.info("Started sink " + getName() + " writing into " + datasetURI);
+	}
+	
+	@Override
+	public Status process() throws EventDeliveryException {
+		try{
+			if(writer != null && System.currentTimeMillis() - lastRolledTime >= rollIntervalMillis){
+				closeWriter();
+				commitTransaction();
+			}
+			
+			if(writer == null)
+				createWriter();
+			
+			if(transaction == null){
+				transaction = getChannel().getTransaction();
+				transaction.begin();
+			}
+			
+			long processedEvents = 0;
+			for(; processedEvents < batchSize; processedEvents++){
+				Event event = getChannel().take();
+				if(event == null)
+					break;
+				
+				write(event);
+			}
+			transactionEvents += processedEvents;
+			
+			sinkCounter.addToEventDrainAttemptCount(processedEvents);
+			if(processedEvents == 0)
+				sinkCounter.incrementBatchEmptyCount();
+			else if(processedEvents < batchSize)
+				sinkCounter.incrementBatchUnderflowCount();
+			else
+				sinkCounter.incrementBatchCompleteCount();
+			
+			if(commitOnBatch && writer instanceof Flushable){
+				if(syncOnBatch && writer instanceof Syncable)
+					((Syncable) writer).sync();
+				else
+					((Flushable) writer).flush();
+				
+				commitTransaction();
+				committedBatch = true;
+			}
+			
+			return processedEvents == 0 ? Status.BACKOFF : Status.READY;
+		}catch(Throwable e){
+			rollbackTransaction();
+			
+			// Records of committed batches are kept, otherwise the file is discarded
+			if(committedBatch){
+				try{
+					closeWriter();
+				}catch(RuntimeException closeException){
+					LOG.warn("Writer of " + datasetURI + " could not be closed", closeException);
+				}
+			}
+			writer = null;
+			
+			Throwables.propagateIfInstanceOf(e, Error.class);
+			Throwables.propagateIfInstanceOf(e, EventDeliveryException.class);
+			throw new EventDeliveryException(e);
+		}
+	}
+	
+	private void write(Event event) throws EventDeliveryException {
+		List<GenericRecord> records;
+		try{
+			records = parser.parseAll(event);
+		}catch(NonRecoverableEventException e){
+			throw new EventDeliveryException("Event could not be parsed", e);
+		}
+		
+		for(GenericRecord record : records)
+			writer.write(record);
+	}
+	
+	private void createWriter() {
+		writer = dataset.newWriter();
+		lastRolledTime = System.currentTimeMillis();
+		committedBatch = false;
+		
+		sinkCounter.incrementConnectionCreatedCount();
+	}
+	
+	private void closeWriter() {
+		if(writer == null)
+			return;
+		
+		try{
+			writer.close();
+			
+			sinkCounter.incrementConnectionClosedCount();
+		}finally{
+			writer = null;
+		}
+	}
+	
+	private void commitTransaction() {
+		if(transaction == null)
+			return;
+		
+		try{
+			transaction.commit();
+			
+			sinkCounter.addToEventDrainSuccessCount(transactionEvents);
+		}finally{
+			transaction.close();
+			transaction = null;
+			transactionEvents = 0;
+		}
+	}
+	
+	private void rollbackTransaction() {
+		if(transaction == null)
+			return;
+		
+		try{
+			transaction.rollback();
+		}catch(RuntimeException e){
+			LOG.error("Transaction could not be rolled back", e);
+		}finally{
+			transaction.close();
+			transaction = null;
+			transactionEvents = 0;
+		}
+	}
+	
+	@Override
+	public synchronized void stop() {
+		try{
+			closeWriter();
+			commitTransaction();
+		}catch(RuntimeException e){
+			LOG.error("Writer of " + datasetURI + " could not be closed, events are rolled back", e);
+			
+			rollbackTransaction();
+		}
+		
+		sinkCounter.stop();
+		super.stop();
+		
+		LOG.info("Stopped sink " + getName());
+	}
+
+}
@@ -8,6 +8,9 @@
  */
 package ch.cern.db.flume.sink.kite.parser;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.generic.GenericRecord;
@@ -15,13 +18,17 @@ import org.apache.avro.generic.GenericRecordBuilder;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
 import org.apache.flume.EventDeliveryException;
+import org.apache.flume.FlumeException;
 import org.apache.flume.sink.kite.NonRecoverableEventException;
 import org.apache.flume.sink.kite.parser.EntityParser;
 import org.apache.hadoop.conf.Configuration;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+
+import ch.cern.db.flume.EventEnvelope;
+import ch.cern.db.flume.sink.kite.EnvelopeDatasetSink;
+import ch.cern.db.utils.JSONUtils;
 
 /**
  * An {@link EntityParser} that parses Avro serialized bytes from an event.
@@ -74,7 +81,17 @@ public class JSONtoAvroParser implements EntityParser<GenericRecord> {
 	public GenericRecord parse(Event event, GenericRecord reuse)
 			throws EventDeliveryException, NonRecoverableEventException {
 		
-		JsonObject parser = new JsonParser().parse(new String(event.getBody())).getAsJsonObject();
+		if(EventEnvelope.isEnvelope(event)){
+			List<GenericRecord> records = parseAll(event);
+			
+			if(records.size() != 1)
+				throw new NonRecoverableEventException("Envelope event contains " + records.size() 
+						+ " rows, only one record can be parsed, use EnvelopeDatasetSink to write them");
+			
+			return records.get(0);
+		}
+		
+		JsonObject parser = JSONUtils.getBody(event);
 		
 		GenericRecordBuilder recordBuilder = new GenericRecordBuilder(datasetSchema);
 		for (Field field:datasetSchema.getFields()) {
@@ -92,6 +109,29 @@ public class JSONtoAvroParser implements EntityParser<GenericRecord> {
 		return recordBuilder.build();
 	}
 	
+	/**
+	 * Parse one entity per row if the event is an envelope, otherwise a single one.
+	 * 
+	 * @see EventEnvelope
+	 * @see EnvelopeDatasetSink
+	 */
+	public List<GenericRecord> parseAll(Event event) 
+			throws EventDeliveryException, NonRecoverableEventException {
+		
+		List<Event> rows;
+		try{
+			rows = EventEnvelope.unpack(event);
+		}catch(FlumeException e){
+			throw new NonRecoverableEventException(e.getMessage(), e);
+		}
+		
+		List<GenericRecord> records = new ArrayList<GenericRecord>(rows.size());
+		for (Event row : rows)
+			records.add(parse(row, null));
+		
+		return records;
+	}
+	
 	private Object getElementAsType(Schema schema, JsonElement element) {
 		if(element == null || element.isJsonNull())
 			return null;
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.sink.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.serialization.EventSerializer;
+
+import ch.cern.db.flume.interceptor.JSONEventToCSVInterceptor;
+import ch.cern.db.utils.CSVEncoder;
+
+/**
+ * Writes bodies of events (CSV lines produced by {@link JSONEventToCSVInterceptor}) one per line,
+ * starting every file with a header row with the names of the configured columns.
+ *
+ * Columns are configured with "columns" as in the interceptor, if they are not configured
+ * header row is not written.
+ */
+public class CSVEventSerializer implements EventSerializer {
+	
+	public static final String COLUMNS_PARAM = "columns";
+	
+	private static final byte EOL = '\n';
+	
+	private final OutputStream out;
+	
+	private final byte[] header;
+	
+	private CSVEventSerializer(OutputStream out, String[] columns) {
+		this.out = out;
+		this.header = new CSVEncoder(columns).encodeHeader();
+	}
+	
+	@Override
+	public void afterCreate() throws IOException {
+		if(header != null){
+			out.write(header);
+			out.write(EOL);
+		}
+	}
+	
+	@Override
+	public void afterReopen() throws IOException {
+		//Header was written when file was created
+	}
+	
+	@Override
+	public void write(Event event) throws IOException {
+		out.write(event.getBody());
+		out.write(EOL);
+	}
+	
+	@Override
+	public void flush() throws IOException {
+	}
+	
+	@Override
+	public void beforeClose() throws IOException {
+	}
+	
+	@Override
+	public boolean supportsReopen() {
+		return true;
+	}
+	
+	public static class Builder implements EventSerializer.Builder {
+		
+		@Override
+		public EventSerializer build(Context context, OutputStream out) {
+			return new CSVEventSerializer(out, CSVEncoder.parseColumns(context.getString(COLUMNS_PARAM)));
+		}
+	
+	}
+
+}
@@ -211,20 +211,31 @@ public class DropDuplicatedEventsProcessor implements Configurable{
 		return new BigInteger(1, messageDigest.digest(input.getBytes()));
 	}
 
+	/**
+	 * Duplicated events are removed from the list, not dropped events are kept in place.
+	 * 
+	 * @return same list
+	 */
 	public List<Event> process(List<Event> events) {
-		LinkedList<Event> intercepted_events = new LinkedList<Event>();
-
-		for (Event event : events) {
-			Event intercepted_event = process(event);
-			if(intercepted_event != null)
-				intercepted_events.add(event);
+		ListIterator<Event> read = events.listIterator();
+		ListIterator<Event> write = events.listIterator();
+
+		while (read.hasNext()) {
+			Event intercepted_event = process(read.next());
+			if(intercepted_event != null){
+				write.next();
+				write.set(intercepted_event);
+			}
 		}
 
-		int eventsDropped = events.size() - intercepted_events.size();
-		if(eventsDropped > 0)
+		int eventsDropped = events.size() - write.nextIndex();
+		if(eventsDropped > 0){
+			events.subList(write.nextIndex(), events.size()).clear();
+
 			LOG.debug("Number of events dropped: " + eventsDropped);
+		}
 
-		return intercepted_events;
+		return events;
 	}
 
 	public void close() {
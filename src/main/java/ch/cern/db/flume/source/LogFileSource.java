@@ -8,6 +8,9 @@
  */
 package ch.cern.db.flume.source;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.flume.Context;
@@ -16,7 +19,6 @@ import org.apache.flume.EventDeliveryException;
 import org.apache.flume.FlumeException;
 import org.apache.flume.PollableSource;
 import org.apache.flume.conf.Configurable;
-import org.apache.flume.instrumentation.SourceCounter;
 import org.apache.flume.source.AbstractSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.annotations.VisibleForTesting;
 
 import ch.cern.db.flume.source.reader.ReliableLogFileEventReader;
+import ch.cern.db.flume.source.reader.ReliableMultiLogFileEventReader;
 
 public class LogFileSource extends AbstractSource implements Configurable, PollableSource {
 
@@ -36,17 +39,31 @@ public class LogFileSource extends AbstractSource implements Configurable, Polla
 	public static final long MINIMUM_BATCH_TIME_DEFAULT = 10000;
 	public static final String MINIMUM_BATCH_TIME_PARAM = "batch.minimumTime";
 	private long minimum_batch_time = MINIMUM_BATCH_TIME_DEFAULT;
+	
+	public static final boolean WATCH_DEFAULT = false;
+	public static final String WATCH_PARAM = "watch";
+	
+	public static final long WATCH_COALESCING_DELAY_DEFAULT = 100;
+	public static final String WATCH_COALESCING_DELAY_PARAM = "watch.coalescingDelay";
+	
+	public static final long WATCH_SAFETY_POLL_TIME_DEFAULT = 60000;
+	public static final String WATCH_SAFETY_POLL_TIME_PARAM = "watch.safetyPollTime";
+	
+	/**
+	 * If not null, next batch starts when log files change instead of after minimum batch time
+	 */
+	private LogFileWatcher watcher;
 
-	private ReliableLogFileEventReader reader;
+	private ReliableMultiLogFileEventReader reader;
 
 	private DropDuplicatedEventsProcessor duplicatedEventsProccesor;
 	
-	private SourceCounter sourceCounter;
+	private LogFileSourceCounter sourceCounter;
 	
 	public LogFileSource() {
 		super();
 		
-		reader = new ReliableLogFileEventReader();
+		reader = new ReliableMultiLogFileEventReader();
 	}
 	
 	@Override
@@ -68,6 +85,8 @@ public class LogFileSource extends AbstractSource implements Configurable, Polla
 		
 		reader.configure(context);
 		
+		configureWatcher(context);
+		
 		if(context.getBoolean(DropDuplicatedEventsProcessor.PARAM, true)){
 			if(duplicatedEventsProccesor == null){
 				duplicatedEventsProccesor = new DropDuplicatedEventsProcessor();
@@ -81,11 +100,44 @@ public class LogFileSource extends AbstractSource implements Configurable, Polla
 		}
 		
 		if (sourceCounter == null) {
-			sourceCounter = new SourceCounter(getName());
+			sourceCounter = new LogFileSourceCounter(getName());
 			sourceCounter.start();
 		}
 	}
 	
+	private void configureWatcher(Context context) {
+		closeWatcher();
+		
+		if(!context.getBoolean(WATCH_PARAM, WATCH_DEFAULT))
+			return;
+		
+		File logFile = new File(context.getString(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM)).getAbsoluteFile();
+		
+		List<String> globs = new LinkedList<String>();
+		globs.add(logFile.getName());
+		String rotatedFilesGlob = context.getString(ReliableLogFileEventReader.ROTATED_FILES_GLOB_PARAM);
+		if(rotatedFilesGlob != null)
+			globs.add(rotatedFilesGlob);
+		
+		try {
+			watcher = new LogFileWatcher(logFile.getParentFile(), globs, 
+					context.getLong(WATCH_COALESCING_DELAY_PARAM, WATCH_COALESCING_DELAY_DEFAULT), 
+					context.getLong(WATCH_SAFETY_POLL_TIME_PARAM, WATCH_SAFETY_POLL_TIME_DEFAULT));
+		} catch (IOException e) {
+			LOG.warn("Changes in log files cannot be watched, batches will start every " + minimum_batch_time + " ms", e);
+		}
+	}
+	
+	private void closeWatcher() {
+		if(watcher != null){
+			try {
+				watcher.close();
+			} catch (IOException e) {}
+			
+			watcher = null;
+		}
+	}
+	
 	@Override
 	public Status process() throws EventDeliveryException {
 		Status status = null;
@@ -113,7 +165,18 @@ public class LogFileSource extends AbstractSource implements Configurable, Polla
 			sourceCounter.addToEventAcceptedCount(events.size());
 			sourceCounter.incrementAppendBatchAcceptedCount();
 			
+			sourceCounter.setRotationsCount(reader.getRotationsCount());
+			sourceCounter.setDrainedBytesCount(reader.getDrainedBytesCount());
+			
 			status = Status.READY;
+			
+			if(watcher != null){
+				//Batch was not full, wait for more lines
+				if(events.size() < batch_size)
+					waitForChanges();
+				
+				return status;
+			}
 		}catch(Throwable e){
 			LOG.error(e.getMessage(), e);
 			
@@ -133,6 +196,23 @@ public class LogFileSource extends AbstractSource implements Configurable, Polla
 		return status;
 	}
 
+	/**
+	 * Waits for changes in log files, but not longer than till an event waiting 
+	 * for more lines has to be produced (flush timeout)
+	 */
+	private void waitForChanges() {
+		long timeout = reader.getPendingEventFlushTime() - System.currentTimeMillis();
+		if(timeout <= 0)
+			return;
+		
+		try {
+			if(!watcher.await(timeout))
+				LOG.debug("No changes in log files, starting batch after safety poll time or flush timeout");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
 	private void sleep(long batchStartTime) {
 		long elapsedTime = System.currentTimeMillis() - batchStartTime;
 		
@@ -147,6 +227,8 @@ public class LogFileSource extends AbstractSource implements Configurable, Polla
 	public synchronized void stop() {
 		reader.close();
 		
+		closeWatcher();
+		
 		if(duplicatedEventsProccesor != null)
 			duplicatedEventsProccesor.close();
 		
@@ -166,7 +248,7 @@ public class LogFileSource extends AbstractSource implements Configurable, Polla
 	}
 
 	@VisibleForTesting
-	public SourceCounter getCounters(){
+	public LogFileSourceCounter getCounters(){
 		return sourceCounter;
 	}
 }
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source;
+
+import org.apache.flume.instrumentation.SourceCounter;
+
+/**
+ * Source counters plus counters specific to log files
+ */
+public class LogFileSourceCounter extends SourceCounter implements LogFileSourceCounterMBean {
+	
+	private static final String COUNTER_ROTATIONS = "source.logfile.rotations";
+	private static final String COUNTER_DRAINED_BYTES = "source.logfile.drainedBytes";
+	
+	private static final String[] ATTRIBUTES = {COUNTER_ROTATIONS, COUNTER_DRAINED_BYTES};
+	
+	public LogFileSourceCounter(String name) {
+		super(name, ATTRIBUTES);
+	}
+	
+	public void setRotationsCount(long value) {
+		set(COUNTER_ROTATIONS, value);
+	}
+	
+	@Override
+	public long getRotationsCount() {
+		return get(COUNTER_ROTATIONS);
+	}
+	
+	public void setDrainedBytesCount(long value) {
+		set(COUNTER_DRAINED_BYTES, value);
+	}
+	
+	@Override
+	public long getDrainedBytesCount() {
+		return get(COUNTER_DRAINED_BYTES);
+	}
+
+}
@@ -0,0 +1,19 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source;
+
+import org.apache.flume.instrumentation.SourceCounterMBean;
+
+public interface LogFileSourceCounterMBean extends SourceCounterMBean {
+	
+	long getRotationsCount();
+	
+	long getDrainedBytesCount();
+
+}
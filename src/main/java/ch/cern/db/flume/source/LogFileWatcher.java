@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Waits till files of a directory which match any of the given globs are created or modified.
+ */
+public class LogFileWatcher implements Closeable {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(LogFileWatcher.class);
+	
+	private WatchService watchService;
+	
+	private List<PathMatcher> matchers = new LinkedList<PathMatcher>();
+	
+	private long coalescingDelay;
+	
+	private long safetyPollTime;
+	
+	/**
+	 * @param directory directory to watch
+	 * @param globs globs for file names in the directory
+	 * @param coalescingDelay milliseconds to wait after a change for further changes
+	 * @param safetyPollTime maximum milliseconds to wait for a change
+	 */
+	public LogFileWatcher(File directory, List<String> globs, long coalescingDelay, long safetyPollTime) throws IOException {
+		this.coalescingDelay = coalescingDelay;
+		this.safetyPollTime = safetyPollTime;
+		
+		for (String glob : globs)
+			matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+		
+		watchService = directory.toPath().getFileSystem().newWatchService();
+		directory.toPath().register(watchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+		
+		LOG.info("Watching changes of " + globs + " in " + directory);
+	}
+	
+	/**
+	 * Blocks till a watched file changes or the safety poll time is over.
+	 * After a change, it waits the coalescing delay so changes happening close in time wake up only once.
+	 *
+	 * @return true if a watched file changed, false if safety poll time is over
+	 */
+	public boolean await() throws InterruptedException {
+		return await(safetyPollTime);
+	}
+	
+	/**
+	 * Same as {@link #await()} but waiting at most timeout milliseconds if it is shorter than safety poll time
+	 *
+	 * @return true if a watched file changed, false if the time is over
+	 */
+	public boolean await(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + Math.min(timeout, safetyPollTime);
+		
+		boolean changed = false;
+		while(!changed){
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				return false;
+			
+			WatchKey key = watchService.poll(remaining, TimeUnit.MILLISECONDS);
+			if(key == null)
+				return false;
+			
+			changed = processEvents(key);
+		}
+		
+		if(coalescingDelay > 0)
+			Thread.sleep(coalescingDelay);
+		
+		//Discard changes which happened during coalescing delay
+		WatchKey key;
+		while((key = watchService.poll()) != null)
+			processEvents(key);
+		
+		return true;
+	}
+	
+	private boolean processEvents(WatchKey key) {
+		boolean changed = false;
+		
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+				changed = true;
+				
+				continue;
+			}
+			
+			Path name = (Path) event.context();
+			for (PathMatcher matcher : matchers)
+				if(matcher.matches(name))
+					changed = true;
+		}
+		
+		key.reset();
+		
+		return changed;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+}
@@ -50,6 +50,7 @@ import static org.apache.flume.source.SpoolDirectorySourceConfigurationConstants
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.Executors;
@@ -62,7 +63,6 @@ import org.apache.flume.Event;
 import org.apache.flume.EventDrivenSource;
 import org.apache.flume.FlumeException;
 import org.apache.flume.conf.Configurable;
-import org.apache.flume.instrumentation.SourceCounter;
 import org.apache.flume.serialization.DecodeErrorPolicy;
 import org.apache.flume.serialization.LineDeserializer;
 import org.apache.flume.source.AbstractSource;
@@ -74,7 +74,12 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 
+import ch.cern.db.flume.source.reader.CompletedFilesSweeper;
+import ch.cern.db.flume.source.reader.PositionStore;
 import ch.cern.db.flume.source.reader.ReliableSpoolingFileEventReader;
+import ch.cern.db.flume.source.reader.SpoolDirectoryCandidates;
+import ch.cern.db.flume.source.reader.inuse.FileInUseDetectorFactory;
+import ch.cern.db.flume.source.reader.inuse.LsofFileInUseDetector;
 
 public class SpoolDirectorySource extends AbstractSource implements Configurable, EventDrivenSource {
 
@@ -83,6 +88,29 @@ public class SpoolDirectorySource extends AbstractSource implements Configurable
 	// Delay used when polling for new files
 	private static final int POLL_DELAY_MS = 500;
 
+	public static final String IN_USE_DETECTOR = "inUseDetector";
+
+	/** Number of files consumed at the same time, events are ordered only within a file */
+	public static final String PARALLELISM = "parallelism";
+	public static final int DEFAULT_PARALLELISM = 1;
+
+	/** Consume files in subdirectories, include and exclude patterns match paths relative to spooling directory */
+	public static final String RECURSIVE = "recursive";
+	public static final boolean DEFAULT_RECURSIVE = false;
+	public static final String INCLUDE_PAT = "includePattern";
+	public static final String DEFAULT_INCLUDE_PAT = ".*";
+	public static final String EXCLUDE_PAT = "excludePattern";
+	public static final String DEFAULT_EXCLUDE_PAT = "^$";
+
+	/** With delete policy DELAY, completed files are deleted (or archived) after this retention (ms) */
+	public static final String COMPLETED_RETENTION = "completedRetention";
+	public static final long DEFAULT_COMPLETED_RETENTION = CompletedFilesSweeper.RETENTION_DEFAULT;
+	public static final String COMPLETED_ARCHIVE_DIR = "completedArchiveDir";
+	public static final String COMPLETED_SWEEP_INTERVAL = "completedSweepInterval";
+	public static final long DEFAULT_COMPLETED_SWEEP_INTERVAL = 60000;
+	public static final String COMPLETED_SWEEP_BATCH_SIZE = "completedSweepBatchSize";
+	public static final int DEFAULT_COMPLETED_SWEEP_BATCH_SIZE = CompletedFilesSweeper.BATCH_SIZE_DEFAULT;
+
 	/* Config options */
 	private String completedSuffix;
 	private String spoolDirectory;
@@ -98,13 +126,24 @@ public class SpoolDirectorySource extends AbstractSource implements Configurable
 	private String deletePolicy;
 	private String inputCharset;
 	private DecodeErrorPolicy decodeErrorPolicy;
+	private String fileInUseDetectorType;
+	private Context fileInUseDetectorContext;
+	private int parallelism;
+	private boolean recursive;
+	private String includePattern;
+	private String excludePattern;
+	private long completedRetention;
+	private String completedArchiveDir;
+	private long completedSweepInterval;
+	private int completedSweepBatchSize;
 	private volatile boolean hasFatalError = false;
 
-	private SourceCounter sourceCounter;
-	ReliableSpoolingFileEventReader reader;
+	private SpoolDirectorySourceCounter sourceCounter;
+	List<ReliableSpoolingFileEventReader> readers;
+	private SpoolDirectoryCandidates candidates;
 	private ScheduledExecutorService executor;
 	private boolean backoff = true;
-	private boolean hitChannelException = false;
+	private volatile boolean hitChannelException = false;
 	private int maxBackoff;
 	private ConsumeOrder consumeOrder;
 
@@ -112,28 +151,92 @@ public class SpoolDirectorySource extends AbstractSource implements Configurable
 	public synchronized void start() {
 		logger.info("SpoolDirectorySource source starting with directory: {}", spoolDirectory);
 
-		executor = Executors.newSingleThreadScheduledExecutor();
-
 		File directory = new File(spoolDirectory);
+		File trackerDirectory = getTrackerDirectory(directory);
+		CompletedFilesSweeper sweeper = null;
+		if (deletePolicy.equalsIgnoreCase("DELAY")) {
+			sweeper = createCompletedFilesSweeper(directory, trackerDirectory);
+		}
+
+		executor = Executors.newScheduledThreadPool(sweeper == null ? parallelism : parallelism + 1);
+
+		// Each reader consumes one file at a time, taken from the same candidates,
+		// so the directory is tracked and files in use are checked once for all of them.
+		// Positions of all are kept in the same store.
+		candidates = new SpoolDirectoryCandidates.Builder()
+				.spoolDirectory(directory)
+				.completedSuffix(completedSuffix).ignorePattern(ignorePattern)
+				.recursive(recursive).includePattern(includePattern).excludePattern(excludePattern)
+				.consumeOrder(consumeOrder)
+				.fileInUseDetector(FileInUseDetectorFactory.getInstance(fileInUseDetectorType, fileInUseDetectorContext))
+				.build();
+		readers = new ArrayList<ReliableSpoolingFileEventReader>(parallelism);
 		try {
-			reader = new ReliableSpoolingFileEventReader.Builder().spoolDirectory(directory)
-					.completedSuffix(completedSuffix).ignorePattern(ignorePattern).trackerDirPath(trackerDirPath)
-					.annotateFileName(fileHeader).fileNameHeader(fileHeaderKey).annotateBaseName(basenameHeader)
-					.baseNameHeader(basenameHeaderKey).deserializerType(deserializerType)
-					.deserializerContext(deserializerContext).deletePolicy(deletePolicy).inputCharset(inputCharset)
-					.decodeErrorPolicy(decodeErrorPolicy).consumeOrder(consumeOrder).build();
+			PositionStore positionStore = new PositionStore(trackerDirectory);
+
+			for (int i = 0; i < parallelism; i++) {
+				readers.add(new ReliableSpoolingFileEventReader.Builder()
+						.spoolDirectory(directory)
+						.completedSuffix(completedSuffix).trackerDirPath(trackerDirPath)
+						.annotateFileName(fileHeader).fileNameHeader(fileHeaderKey).annotateBaseName(basenameHeader)
+						.baseNameHeader(basenameHeaderKey).deserializerType(deserializerType)
+						.deserializerContext(deserializerContext).deletePolicy(deletePolicy).inputCharset(inputCharset)
+						.decodeErrorPolicy(decodeErrorPolicy)
+						.candidates(candidates).completedFilesSweeper(sweeper).positionStore(positionStore)
+						.build());
+			}
 		} catch (IOException ioe) {
 			throw new FlumeException("Error instantiating spooling event parser", ioe);
 		}
 
-		Runnable runner = new SpoolDirectoryRunnable(reader, sourceCounter);
-		executor.scheduleWithFixedDelay(runner, 0, POLL_DELAY_MS, TimeUnit.MILLISECONDS);
+		for (ReliableSpoolingFileEventReader reader : readers) {
+			Runnable runner = new SpoolDirectoryRunnable(reader, sourceCounter);
+			executor.scheduleWithFixedDelay(runner, 0, POLL_DELAY_MS, TimeUnit.MILLISECONDS);
+		}
+		if (sweeper != null) {
+			executor.scheduleWithFixedDelay(sweeper, completedSweepInterval, completedSweepInterval, TimeUnit.MILLISECONDS);
+		}
 
 		super.start();
 		logger.debug("SpoolDirectorySource source started");
 		sourceCounter.start();
 	}
 
+	/**
+	 * @return tracker directory, relative paths are relative to spooling directory
+	 */
+	private File getTrackerDirectory(File directory) {
+		File trackerDirectory = new File(trackerDirPath);
+		if (!trackerDirectory.isAbsolute()) {
+			trackerDirectory = new File(directory, trackerDirPath);
+		}
+		if (!trackerDirectory.exists() && !trackerDirectory.mkdir()) {
+			throw new FlumeException("Unable to mkdir nonexistent meta directory " + trackerDirectory);
+		}
+
+		return trackerDirectory;
+	}
+
+	private CompletedFilesSweeper createCompletedFilesSweeper(File directory, File trackerDirectory) {
+		File archiveDirectory = null;
+		if (completedArchiveDir != null) {
+			archiveDirectory = new File(completedArchiveDir);
+			if (!archiveDirectory.isDirectory()) {
+				throw new FlumeException("Archive directory does not exist: " + archiveDirectory);
+			}
+		}
+
+		CompletedFilesSweeper sweeper = new CompletedFilesSweeper(trackerDirectory, completedRetention,
+				archiveDirectory, completedSweepBatchSize);
+		try {
+			sweeper.load(directory, completedSuffix, recursive);
+		} catch (IOException e) {
+			throw new FlumeException("Error loading index of completed files", e);
+		}
+
+		return sweeper;
+	}
+
 	@Override
 	public synchronized void stop() {
 		executor.shutdown();
@@ -144,6 +247,15 @@ public class SpoolDirectorySource extends AbstractSource implements Configurable
 		}
 		executor.shutdownNow();
 
+		for (ReliableSpoolingFileEventReader reader : readers) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				logger.warn("Could not close reader", e);
+			}
+		}
+		candidates.close();
+
 		super.stop();
 		sourceCounter.stop();
 		logger.info("SpoolDir source {} stopped. Metrics: {}", getName(), sourceCounter);
@@ -171,6 +283,9 @@ public class SpoolDirectorySource extends AbstractSource implements Configurable
 				context.getString(DECODE_ERROR_POLICY, DEFAULT_DECODE_ERROR_POLICY).toUpperCase(Locale.ENGLISH));
 
 		ignorePattern = context.getString(IGNORE_PAT, DEFAULT_IGNORE_PAT);
+		recursive = context.getBoolean(RECURSIVE, DEFAULT_RECURSIVE);
+		includePattern = context.getString(INCLUDE_PAT, DEFAULT_INCLUDE_PAT);
+		excludePattern = context.getString(EXCLUDE_PAT, DEFAULT_EXCLUDE_PAT);
 		trackerDirPath = context.getString(TRACKER_DIR, DEFAULT_TRACKER_DIR);
 
 		deserializerType = context.getString(DESERIALIZER, DEFAULT_DESERIALIZER);
@@ -188,9 +303,24 @@ public class SpoolDirectorySource extends AbstractSource implements Configurable
 			deserializerContext.put(LineDeserializer.MAXLINE_KEY, bufferMaxLineLength.toString());
 		}
 
+		fileInUseDetectorType = context.getString(IN_USE_DETECTOR, FileInUseDetectorFactory.TYPE_DEFAULT);
+		fileInUseDetectorContext = new Context(context.getSubProperties(IN_USE_DETECTOR + "."));
+		// files of subdirectories need to be checked too
+		fileInUseDetectorContext.put(LsofFileInUseDetector.RECURSIVE_PARAM, Boolean.toString(recursive));
+		// fail at configuration time if type is not valid
+		FileInUseDetectorFactory.getInstance(fileInUseDetectorType, fileInUseDetectorContext);
+
+		parallelism = context.getInteger(PARALLELISM, DEFAULT_PARALLELISM);
+		Preconditions.checkState(parallelism > 0, "Parallelism must be greater than 0");
+
+		completedRetention = context.getLong(COMPLETED_RETENTION, DEFAULT_COMPLETED_RETENTION);
+		completedArchiveDir = context.getString(COMPLETED_ARCHIVE_DIR);
+		completedSweepInterval = context.getLong(COMPLETED_SWEEP_INTERVAL, DEFAULT_COMPLETED_SWEEP_INTERVAL);
+		completedSweepBatchSize = context.getInteger(COMPLETED_SWEEP_BATCH_SIZE, DEFAULT_COMPLETED_SWEEP_BATCH_SIZE);
+
 		maxBackoff = context.getInteger(MAX_BACKOFF, DEFAULT_MAX_BACKOFF);
 		if (sourceCounter == null) {
-			sourceCounter = new SourceCounter(getName());
+			sourceCounter = new SpoolDirectorySourceCounter(getName());
 		}
 	}
 
@@ -217,15 +347,15 @@ public class SpoolDirectorySource extends AbstractSource implements Configurable
 	}
 
 	@VisibleForTesting
-	protected SourceCounter getSourceCounter() {
+	protected SpoolDirectorySourceCounter getSourceCounter() {
 		return sourceCounter;
 	}
 
 	private class SpoolDirectoryRunnable implements Runnable {
 		private ReliableSpoolingFileEventReader reader;
-		private SourceCounter sourceCounter;
+		private SpoolDirectorySourceCounter sourceCounter;
 
-		public SpoolDirectoryRunnable(ReliableSpoolingFileEventReader reader, SourceCounter sourceCounter) {
+		public SpoolDirectoryRunnable(ReliableSpoolingFileEventReader reader, SpoolDirectorySourceCounter sourceCounter) {
 			this.reader = reader;
 			this.sourceCounter = sourceCounter;
 		}
@@ -236,6 +366,7 @@ public class SpoolDirectorySource extends AbstractSource implements Configurable
 			try {
 				while (!Thread.interrupted()) {
 					List<Event> events = reader.readEvents(batchSize);
+					updateInUseCounters();
 					if (events.isEmpty()) {
 						break;
 					}
@@ -268,5 +399,13 @@ public class SpoolDirectorySource extends AbstractSource implements Configurable
 				Throwables.propagate(t);
 			}
 		}
+
+		/**
+		 * Candidates are shared by all readers, so counters take their totals
+		 */
+		private void updateInUseCounters() {
+			sourceCounter.setInUseCheckTime(candidates.getInUseCheckTime());
+			sourceCounter.setInUseChecksCount(candidates.getInUseChecksCount());
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source;
+
+import org.apache.flume.instrumentation.SourceCounter;
+
+/**
+ * Source counters plus counters specific to spooling directories
+ */
+public class SpoolDirectorySourceCounter extends SourceCounter implements SpoolDirectorySourceCounterMBean {
+	
+	private static final String COUNTER_IN_USE_CHECK_TIME = "source.spooldir.inUseCheckTime";
+	private static final String COUNTER_IN_USE_CHECKS = "source.spooldir.inUseChecks";
+	
+	private static final String[] ATTRIBUTES = {COUNTER_IN_USE_CHECK_TIME, COUNTER_IN_USE_CHECKS};
+	
+	public SpoolDirectorySourceCounter(String name) {
+		super(name, ATTRIBUTES);
+	}
+	
+	/**
+	 * @param time milliseconds spent checking if files are in use
+	 */
+	public void setInUseCheckTime(long time) {
+		set(COUNTER_IN_USE_CHECK_TIME, time);
+	}
+	
+	@Override
+	public long getInUseCheckTime() {
+		return get(COUNTER_IN_USE_CHECK_TIME);
+	}
+	
+	public void setInUseChecksCount(long count) {
+		set(COUNTER_IN_USE_CHECKS, count);
+	}
+	
+	@Override
+	public long getInUseChecksCount() {
+		return get(COUNTER_IN_USE_CHECKS);
+	}
+
+}
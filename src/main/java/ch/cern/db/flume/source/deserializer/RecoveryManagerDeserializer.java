@@ -9,7 +9,11 @@
 package ch.cern.db.flume.source.deserializer;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Date;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.UUID;
 
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -18,17 +22,24 @@ import org.apache.flume.annotations.InterfaceStability;
 import org.apache.flume.serialization.EventDeserializer;
 import org.apache.flume.serialization.ResettableInputStream;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
 import ch.cern.db.flume.JSONEvent;
+import ch.cern.db.flume.source.reader.ReliableSpoolingFileEventReader;
 import ch.cern.db.utils.JSONUtils;
 import ch.cern.db.utils.Pair;
 
 /**
  * A deserializer that parses text lines from a file.
+ * 
+ * By default a file becomes one event. With eventPerReport, an event is generated for every
+ * Recovery Manager report as soon as it is parsed, and a summary event at the end of the file.
+ * All of them contain the same backupRunId, derived from the path of the file (if given by the reader),
+ * the start timestamp and the entity of the backup.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
@@ -36,17 +47,40 @@ public class RecoveryManagerDeserializer implements EventDeserializer {
 
 	private final ResettableInputStream in;
 	private final int maxLineLength;
+	private final Charset inputCharset;
 	private volatile boolean isOpen;
 
 	public static final String OUT_CHARSET_KEY = "outputCharset";
 	public static final String CHARSET_DFLT = "UTF-8";
+	
+	/** Must be the same as the input charset of the source */
+	public static final String IN_CHARSET_KEY = "inputCharset";
 
 	public static final String MAXLINE_KEY = "maxLineLength";
 	public static final int MAXLINE_DFLT = 2048;
 	
+	public static final String EVENT_PER_REPORT_KEY = "eventPerReport";
+	public static final boolean EVENT_PER_REPORT_DFLT = false;
+	private final boolean eventPerReport;
+	
+	/** Path of the file, empty if not given by the reader */
+	private final String filePath;
+	
+	// State of the file when an event is generated per report, rebuilt if null
+	private RecoveryManagerLogFile rmanLog = null;
+	private ResettableLineReader reader;
+	private String backupRunId;
+	private int reportsCount;
+	private JsonObject lastReport;
+	private boolean finished;
+	private boolean summaryGenerated;
+	
 	RecoveryManagerDeserializer(Context context, ResettableInputStream in) {
 		this.in = in;
 		this.maxLineLength = context.getInteger(MAXLINE_KEY, MAXLINE_DFLT);
+		this.inputCharset = Charset.forName(context.getString(IN_CHARSET_KEY, CHARSET_DFLT));
+		this.eventPerReport = context.getBoolean(EVENT_PER_REPORT_KEY, EVENT_PER_REPORT_DFLT);
+		this.filePath = context.getString(ReliableSpoolingFileEventReader.DESERIALIZER_FILE_PATH_KEY, "");
 		this.isOpen = true;
 	}
 
@@ -60,15 +94,32 @@ public class RecoveryManagerDeserializer implements EventDeserializer {
 	public Event readEvent() throws IOException {
 		ensureOpen();
 		
+		if(eventPerReport)
+			return readReportOrSummaryEvent();
+		
 		in.mark();
 		if(in.read() == -1)
 			return null;
 		in.reset();
 		
-		RecoveryManagerLogFile rman_log = new RecoveryManagerLogFile(in, maxLineLength);
+		RecoveryManagerLogFile rman_log = new RecoveryManagerLogFile(in, inputCharset, maxLineLength);
 		
 		JSONEvent event = new JSONEvent();
 
+		addBackupProperties(event, rman_log);
+		
+		List<RecoveryManagerReport> recoveryManagerReports = rman_log.getRecoveryManagerReports();
+		JsonArray recoveryManagerReportsJson = recoveryManagerReportsToJSON(recoveryManagerReports);
+		event.addProperty("recoveryManagerReports", recoveryManagerReportsJson);
+		
+		int recoveryManagerReportsSize = recoveryManagerReportsJson.size();
+		addFinalStatus(event, recoveryManagerReportsSize > 0 ? 
+				(JsonObject) recoveryManagerReportsJson.get(recoveryManagerReportsSize - 1) : null);
+		
+		return event;
+	}
+	
+	private void addBackupProperties(JSONEvent event, RecoveryManagerLogFile rman_log) {
 		event.addProperty("startTimestamp", rman_log.getStartTimestamp());
 		event.addProperty("backupType", rman_log.getBackupType());
 		event.addProperty("destination", rman_log.getBackupDestination());
@@ -78,8 +129,7 @@ public class RecoveryManagerDeserializer implements EventDeserializer {
 		for (Pair<String, String> property : rman_log.getProperties())
 			event.addProperty(property.getFirst(), property.getSecond());
 		
-		String v_params = rman_log.getVParams();
-		event.addProperty("v_params", v_params != null ? new JsonParser().parse(v_params).getAsJsonObject() : null);
+		event.addProperty("v_params", rman_log.getVParams());
 		
 		JsonArray mountPointNASRegexResult = rman_log.getMountPointNASRegexResult();
 		event.addProperty("mountPointNASRegexResult", mountPointNASRegexResult);
@@ -89,46 +139,186 @@ public class RecoveryManagerDeserializer implements EventDeserializer {
 		
 		JsonArray valuesOfFilesystems = rman_log.getValuesOfFilesystems();
 		event.addProperty("valuesOfFilesystems", valuesOfFilesystems);
+	}
 		
-		List<RecoveryManagerReport> recoveryManagerReports = rman_log.getRecoveryManagerReports();
-		JsonArray recoveryManagerReportsJson = recoveryManagerReportsToJSON(recoveryManagerReports);
-		event.addProperty("recoveryManagerReports", recoveryManagerReportsJson);
-		
-		int recoveryManagerReportsSize = recoveryManagerReportsJson.size();
-		if(recoveryManagerReportsSize > 0){
-			JsonObject lastReport = (JsonObject) recoveryManagerReportsJson.get(recoveryManagerReportsSize - 1);
-			
+	private void addFinalStatus(JSONEvent event, JsonObject lastReport) {
+		if(lastReport != null){
 			event.addProperty("finishTime", lastReport.get("finishTime"));
 			event.addProperty("finalStatus", lastReport.get("status"));
 		}else{
 			event.addProperty("finishTime", null);
 			event.addProperty("finalStatus", null);
 		}
-
-		return event;
 	}
-
-	private JsonArray recoveryManagerReportsToJSON(List<RecoveryManagerReport> recoveryManagerReports) {
-		JsonArray array = new JsonArray();
+	
+	/**
+	 * Events of reports are generated as soon as they are parsed, the summary of the backup
+	 * when the end of the file is reached.
+	 * 
+	 * Stream is left just after the last line which has been used, so after a reset, events are 
+	 * generated again from the mark. Since the summary and the backup run id depend on all previous lines,
+	 * the state is rebuilt reading from the beginning of the file till the current position.
+	 */
+	private Event readReportOrSummaryEvent() throws IOException {
+		if(rmanLog == null && !startReportsParsing())
+			return null;
 		
-		for (RecoveryManagerReport recoveryManagerReport : recoveryManagerReports) {
-			JsonObject element = new JsonObject();
+		while(true){
+			RecoveryManagerReport report = rmanLog.pollRecoveryManagerReport();
+			if(report != null){
+				reader.sync();
+				
+				return reportEvent(report);
+			}
 			
-			element.addProperty("startingTime", JSONUtils.to(recoveryManagerReport.getStartingTime()));
+			if(finished){
+				if(summaryGenerated)
+					return null;
+				
+				summaryGenerated = true;
+				reader.sync();
+				
+				return summaryEvent();
+			}
 			
-			List<Pair<Integer, String>> rmans = recoveryManagerReport.getRMANs();
-			element.add("RMAN-", toJSON(rmans));
-			element.add("ORA-", toJSON(recoveryManagerReport.getORAs())); 
+			String line = reader.readLine();
+			if(line != null){
+				processLine(line);
+			}else{
+				rmanLog.finish();
+				finished = true;
+			}
+		}
+	}
+	
+	/**
+	 * @return false if there is nothing else to read
+	 */
+	private boolean startReportsParsing() throws IOException {
+		if(atEndOfStream())
+			return false;
+		
+		long position = in.tell();
+		in.seek(0);
+		
+		rmanLog = new RecoveryManagerLogFile();
+		reader = new ResettableLineReader(in, inputCharset, maxLineLength);
+		backupRunId = null;
+		reportsCount = 0;
+		lastReport = null;
+		finished = false;
+		summaryGenerated = false;
+		
+		// Lines which were already used, no event is generated
+		while(reader.getPosition() < position){
+			String line = reader.readLine();
+			if(line == null)
+				break;
 			
-			element.addProperty("finishTime", JSONUtils.to(recoveryManagerReport.getFinishTime()));
-			element.addProperty("returnCode", recoveryManagerReport.getReturnCode());
-			element.addProperty("status", rmans.size() == 0 ? "Successful" : "Failed");
+			processLine(line);
 			
-			array.add(element);
+			RecoveryManagerReport report;
+			while((report = rmanLog.pollRecoveryManagerReport()) != null)
+				countReport(recoveryManagerReportToJSON(report));
 		}
+		reader.sync();
+		
+		return true;
+	}
+	
+	private void processLine(String line) {
+		rmanLog.process(line);
+	}
+	
+	/**
+	 * Generated with the first report or the summary, so it is the same for all events of the file,
+	 * also when generated again after a restart
+	 */
+	private void ensureBackupRunId() {
+		if(backupRunId != null)
+			return;
+		
+		Object startTimestamp = rmanLog.getStartTimestamp();
+		if(startTimestamp instanceof Date)
+			startTimestamp = ((Date) startTimestamp).getTime();
+		
+		String identity = filePath + "\n" + startTimestamp + "\n" + rmanLog.getEntityName();
+		
+		backupRunId = UUID.nameUUIDFromBytes(identity.getBytes(Charsets.UTF_8)).toString();
+	}
+	
+	private void countReport(JsonObject report) {
+		ensureBackupRunId();
+		
+		reportsCount++;
+		lastReport = report;
+	}
+	
+	private Event reportEvent(RecoveryManagerReport report) {
+		JsonObject reportJson = recoveryManagerReportToJSON(report);
+		countReport(reportJson);
+		
+		JSONEvent event = new JSONEvent();
+		
+		event.addProperty("backupRunId", backupRunId);
+		event.addProperty("reportNumber", reportsCount);
+		event.addProperty("backupType", rmanLog.getBackupType());
+		event.addProperty("entityName", rmanLog.getEntityName());
+		
+		for (Entry<String, JsonElement> property : reportJson.entrySet())
+			event.addProperty(property.getKey(), property.getValue());
+
+		return event;
+	}
+	
+	private Event summaryEvent() {
+		ensureBackupRunId();
+		
+		JSONEvent event = new JSONEvent();
+		
+		event.addProperty("backupRunId", backupRunId);
+		
+		addBackupProperties(event, rmanLog);
+		
+		event.addProperty("recoveryManagerReportsCount", reportsCount);
+		addFinalStatus(event, lastReport);
+		
+		return event;
+	}
+	
+	private boolean atEndOfStream() throws IOException {
+		long position = in.tell();
+		
+		boolean end = in.read() == -1;
+		in.seek(position);
+		
+		return end;
+	}
+
+	private JsonArray recoveryManagerReportsToJSON(List<RecoveryManagerReport> recoveryManagerReports) {
+		JsonArray array = new JsonArray();
+		
+		for (RecoveryManagerReport recoveryManagerReport : recoveryManagerReports)
+			array.add(recoveryManagerReportToJSON(recoveryManagerReport));
 		
 		return array;
 	}
+	
+	private JsonObject recoveryManagerReportToJSON(RecoveryManagerReport recoveryManagerReport) {
+		JsonObject element = new JsonObject();
+		
+		element.addProperty("startingTime", JSONUtils.to(recoveryManagerReport.getStartingTime()));
+		
+		List<Pair<Integer, String>> rmans = recoveryManagerReport.getRMANs();
+		element.add("RMAN-", toJSON(rmans));
+		element.add("ORA-", toJSON(recoveryManagerReport.getORAs())); 
+		
+		element.addProperty("finishTime", JSONUtils.to(recoveryManagerReport.getFinishTime()));
+		element.addProperty("returnCode", recoveryManagerReport.getReturnCode());
+		element.addProperty("status", rmans.size() == 0 ? "Successful" : "Failed");
+		
+		return element;
+	}
 
 	private JsonArray toJSON(List<Pair<Integer, String>> list) {
 		JsonArray array = new JsonArray();
@@ -148,8 +338,9 @@ public class RecoveryManagerDeserializer implements EventDeserializer {
 	/**
 	 * Batch line read
 	 * 
-	 * @param numEvents Ignored 
-	 * @return List of one event
+	 * @param numEvents Ignored unless an event is generated per report. A report which ends the file
+	 * is given with the summary, so both take a place even if there is only one (at least one report is given)
+	 * @return List of one event, or of events of reports (and summary)
 	 * @throws IOException
 	 */
 	@Override
@@ -158,6 +349,22 @@ public class RecoveryManagerDeserializer implements EventDeserializer {
 		
 		List<Event> events = Lists.newLinkedList();
 		
+		if(eventPerReport){
+			// A place is kept for the summary
+			int maxEvents = rmanLog != null && summaryGenerated ? numEvents : Math.max(1, numEvents - 1);
+			
+			Event event;
+			while(events.size() < maxEvents && (event = readEvent()) != null)
+				events.add(event);
+			
+			// A report which ends the file is given with the summary, so that a position
+			// at the end of the file always means that the summary was committed
+			if(!events.isEmpty() && !summaryGenerated && atEndOfStream())
+				events.add(readEvent());
+			
+			return events;
+		}
+		
 		Event event = readEvent();
 		if (event != null)
 			events.add(event);
@@ -174,7 +381,13 @@ public class RecoveryManagerDeserializer implements EventDeserializer {
 	@Override
 	public void reset() throws IOException {
 		ensureOpen();
+		
+		long position = in.tell();
 		in.reset();
+		
+		// State is rebuilt till the mark, unless nothing was read after it
+		if(in.tell() != position)
+			rmanLog = null;
 	}
 
 	@Override
@@ -1,8 +1,11 @@
 package ch.cern.db.flume.source.deserializer;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -14,14 +17,25 @@ import org.apache.flume.serialization.ResettableInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
+import ch.cern.db.utils.LimitedQueue;
 import ch.cern.db.utils.Pair;
+import ch.cern.db.utils.PerlDumperParser;
 import ch.cern.db.utils.SUtils;
 
+/**
+ * Parses a log file of a backup in a single pass, lines are not kept but for the outputs of Recovery Manager.
+ * 
+ * Every line is given to a state machine which fills all fields: first line with fields, properties,
+ * JSON blocks and Recovery Manager outputs.
+ * 
+ * Lines can also be given one by one ({@link #process(String)}), completed outputs can then be
+ * taken as soon as they are parsed ({@link #pollRecoveryManagerReport()}) so they are not kept.
+ */
 public class RecoveryManagerLogFile {
 	
 	public enum BackDestination{
@@ -39,68 +53,120 @@ public class RecoveryManagerLogFile {
 
 	private static final Logger logger = LoggerFactory.getLogger(RecoveryManagerLogFile.class);
 	
-	private List<String> lines;
-
-	private int maxLineLength;
-	
-	private static final DateFormat dateFormatter = new SimpleDateFormat("'['EEE MMM dd HH:mm:ss z yyyy']'");
+	/** Not thread-safe, so one per instance */
+	private final DateFormat dateFormatter = new SimpleDateFormat("'['EEE MMM dd HH:mm:ss z yyyy']'");
 	
-	private static final Pattern getJsonPattern = Pattern.compile("(?s)[^\\{]*(\\{.*\\})[^\\}]*");
+	private static final String RESOURCE_MANAGER_STARTS = "Recovery Manager: Release";
 	private static final Pattern resourceManagerStartsPattern = Pattern.compile(".*Recovery Manager: Release.*");
+	private static final String RESOURCE_MANAGER_ENDS = "Recovery Manager complete";
 	private static final Pattern resourceManagerEndsPattern = Pattern.compile(".*Recovery Manager complete.*");
+	private static final Pattern fieldsSeparatorPattern = Pattern.compile("\\s+(?![^\\[]*\\])");
+	
+	/** Number of lines before the start of an output which are part of the report */
+	private static final int LINES_BEFORE_OUTPUT = 3;
+	
+	private String[] fieldsFirstLine = null;
+	
+	private final List<Pair<String, String>> properties = new LinkedList<>();
+	
+	private final DumpBlock vParams = new DumpBlock("Main: params passed: $v_params");
+	private final DumpBlock mountPointNASRegexResult = new DumpBlock("RunTime.GetMountPointNASRegex : result: $VAR1");
+	private final DumpBlock volInfoBackuptoDiskFinalResult = new DumpBlock("RunTime.GetVolInfoBackuptoDisk : final result $VAR1");
+	private final DumpBlock valuesOfFilesystems = new DumpBlock("values of filesystems $filesystems");
+	private final DumpBlock createFilesBackupset = new DumpBlock("CreateFiles: begin: array of backupset $VAR1");
+	private final DumpBlock[] dumpBlocks = {vParams, mountPointNASRegexResult, volInfoBackuptoDiskFinalResult, 
+			valuesOfFilesystems, createFilesBackupset};
+	
+	/** Last lines since end of previous output */
+	private LimitedQueue<String> linesBeforeOutput = new LimitedQueue<String>(LINES_BEFORE_OUTPUT);
+	
+	/** Lines of the output being read, null if not in an output */
+	private List<String> outputLines = null;
+	
+	private final List<List<String>> outputs = new LinkedList<>();
 	
 	public RecoveryManagerLogFile(ResettableInputStream in, int maxLineLength) throws IOException {
-		this.maxLineLength = maxLineLength;
+		this(in, Charsets.UTF_8, maxLineLength);
+	}
+	
+	public RecoveryManagerLogFile(ResettableInputStream in, Charset charset, int maxLineLength) throws IOException {
+		ResettableLineReader reader = new ResettableLineReader(in, charset, maxLineLength);
 		
-		lines = readAllLines(in);
+		String line;
+		while((line = reader.readLine()) != null)
+			process(line);
+		
+		reader.sync();
+		
+		finish();
+	}
+	
+	/**
+	 * Lines have to be given with {@link #process(String)}
+	 */
+	public RecoveryManagerLogFile() {
+	}
+	
+	/**
+	 * Must be called once all lines have been processed
+	 */
+	public void finish() {
+		// output not completed
+		if(outputLines != null)
+			outputs.add(outputLines);
+		
+		outputLines = null;
 	}
 
-	private List<String> readAllLines(ResettableInputStream in) throws IOException {
-		List<String> lines = new LinkedList<>();
+	public void process(String line) {
+		// grep "^\\["
+		if(fieldsFirstLine == null && line.startsWith("["))
+			fieldsFirstLine = fieldsSeparatorPattern.split(line);
 		
-		String line = readLine(in);
-		while(line != null){
-			lines.add(line);
-			line = readLine(in);
+		if(line.indexOf('=') > 0){
+			Matcher m = SUtils.PROPERTY_PATTERN.matcher(line);
+			
+			if(m.find())
+				properties.add(new Pair<String, String>(m.group(1), m.group(2)));
 		}
 		
-		return lines;
+		for (DumpBlock dumpBlock : dumpBlocks)
+			dumpBlock.process(line);
+		
+		processOutputs(line);
 	}
-
-	private String readLine(ResettableInputStream in) throws IOException {
-		StringBuilder sb = new StringBuilder();
-		int c;
-		int readChars = 0;
-		while ((c = in.readChar()) != -1) {
-			readChars++;
-
-			// FIXME: support \r\n
-			if (c == '\n') {
-				break;
-			}
-
-			sb.append((char) c);
-
-			if (readChars >= maxLineLength) {
-				logger.warn("Line length exceeds max ({}), truncating line!", maxLineLength);
-				break;
+	
+	/**
+	 * Outputs go from a line with the start pattern to a line with the end pattern, 
+	 * the lines just before (since end of previous output) are included.
+	 */
+	private void processOutputs(String line) {
+		if(outputLines == null){
+			if(line.contains(RESOURCE_MANAGER_STARTS) && resourceManagerStartsPattern.matcher(line).matches()){
+				outputLines = new ArrayList<String>(linesBeforeOutput);
+				outputLines.add(line);
+			}else{
+				linesBeforeOutput.add(line);
 			}
+			
+			return;
 		}
-
-		if (readChars > 0) {
-			return sb.toString();
-		} else {
-			return null;
+		
+		outputLines.add(line);
+		
+		if(line.contains(RESOURCE_MANAGER_ENDS) && resourceManagerEndsPattern.matcher(line).matches()){
+			outputs.add(outputLines);
+			
+			outputLines = null;
+			linesBeforeOutput = new LimitedQueue<String>(LINES_BEFORE_OUTPUT);
 		}
 	}
 
 	private String[] getFieldsFirstLine() {
-		List<String> grep = SUtils.grep(lines, "^\\[.*");
-		
-		if(grep.size() == 0)
+		if(fieldsFirstLine == null)
 			return new String[0];
 		
-		return grep.get(0).split("\\s+(?![^\\[]*\\])");
+		return fieldsFirstLine;
 	}
 	
 	public Object getStartTimestamp() {
@@ -136,61 +202,31 @@ public class RecoveryManagerLogFile {
 	}
 
 	public List<Pair<String, String>> getProperties() {
-		List<Pair<String, String>> properties = new LinkedList<>();
-
-		for (String line : lines) {
-			Matcher m = SUtils.PROPERTY_PATTERN.matcher(line);
-			
-			if(m.find())
-				properties.add(new Pair<String, String>(m.group(1), m.group(2)));
-		}
-		
 		return properties;
 	}
 
-	public String getJSONString(String regex) {
-		List<String> regexLines = SUtils.linesFromTo(lines, 
-				Pattern.compile(".*" + regex + ".*"), 
-				SUtils.EMPTY_LINE_PATTERN);
+	public JsonObject getVParams() {
+		JsonElement value = vParams.getValue();
 		
-		Matcher matcher = getJsonPattern.matcher(SUtils.join(regexLines, '\n'));
-		
-		if(matcher.matches())
-			return matcher.group(1);
-		
-		return null;
-	}
-	
-	public String getVParams() {
-		return getJSONString("Main: params passed: \\$v_params");
+		return value != null && value.isJsonObject() ? value.getAsJsonObject() : null;
 	}
 
 	public JsonArray getMountPointNASRegexResult() {
-		String jsonString = getJSONString("RunTime\\.GetMountPointNASRegex : result: \\$VAR1");
-		
 		JsonArray newArray = new JsonArray();
 		
-		if(jsonString == null)
+		JsonElement value = mountPointNASRegexResult.getValue();
+		if(value == null || !value.isJsonObject())
 			return newArray;
 		
-		JsonParser parser = new JsonParser();
-		
-		JsonObject o;
-		try{
-			o = parser.parse(jsonString).getAsJsonObject();
-		}catch(Exception e){
-			return newArray;
-		}
-		
-		for (Entry<String, JsonElement> element : o.entrySet()) {
+		for (Entry<String, JsonElement> element : value.getAsJsonObject().entrySet()) {
 			JsonObject newObject = new JsonObject();
 			
-			try{
-				newObject.addProperty("controllerlif", element.getKey());
-			}catch(Exception e){}
-			try{
-				newObject.addProperty("mountondbserver", ((JsonArray) element.getValue()).get(0).getAsString());
-			}catch(Exception e){}
+			newObject.addProperty("controllerlif", element.getKey());
+			
+			JsonElement mountPoints = element.getValue();
+			if(mountPoints.isJsonArray() && mountPoints.getAsJsonArray().size() > 0 
+					&& mountPoints.getAsJsonArray().get(0).isJsonPrimitive())
+				newObject.addProperty("mountondbserver", mountPoints.getAsJsonArray().get(0).getAsString());
 			
 			newArray.add(newObject);
 		}
@@ -199,96 +235,60 @@ public class RecoveryManagerLogFile {
 	}
 
 	public JsonArray getVolInfoBackuptoDiskFinalResult() {
-		String jsonString = getJSONString("RunTime\\.GetVolInfoBackuptoDisk : final result \\$VAR1");
-		
-		JsonArray newArray = new JsonArray();
-		
-		if(jsonString == null)
-			return newArray;
-		
-		JsonParser parser = new JsonParser();
-		
-		JsonObject o;
-		try{
-			o = parser.parse(jsonString).getAsJsonObject();
-		}catch(Exception e){
-			return newArray;
-		}
-		
-		for (Entry<String, JsonElement> element : o.entrySet()) {
-			try{
-				newArray.add((JsonObject) element.getValue());
-			}catch(Exception e){}
-		}
-		
-		return newArray;
+		return objectsOf(volInfoBackuptoDiskFinalResult.getValue());
 	}
 
 	public JsonArray getValuesOfFilesystems() {
-		String jsonString = getJSONString("values of filesystems \\$filesystems");
-		
-		JsonArray newArray = new JsonArray();
-		
-		if(jsonString == null)
-			return newArray;
-		
-		JsonParser parser = new JsonParser();
-		
-		JsonObject o;
-		try{
-			o = parser.parse(jsonString).getAsJsonObject();
-		}catch(Exception e){
-			return newArray;
-		}
+		return objectsOf(valuesOfFilesystems.getValue());
+	}
 		
-		for (Entry<String, JsonElement> element : o.entrySet()) {
-			try{
-				newArray.add((JsonObject) element.getValue());
-			}catch(Exception e){}
+	/**
+	 * @return objects which are values of a hash or elements of an array
+	 */
+	private static JsonArray objectsOf(JsonElement value) {
+		JsonArray objects = new JsonArray();
+		
+		if(value instanceof JsonObject){
+			for (Entry<String, JsonElement> element : ((JsonObject) value).entrySet())
+				if(element.getValue().isJsonObject())
+					objects.add(element.getValue());
+		}else if(value instanceof JsonArray){
+			for (JsonElement element : (JsonArray) value)
+				if(element.isJsonObject())
+					objects.add(element);
 		}
 		
-		return newArray;
+		return objects;
 	}
 
-	public String getCreateFilesBackupset() {
-		return getJSONString("CreateFiles: begin: array of backupset \\$VAR1");
+	public JsonElement getCreateFilesBackupset() {
+		return createFilesBackupset.getValue();
 	}
 	
 	public List<String> getRecoveryManagerOutputs(){
 		List<String> recoveryManagerOutputs = new LinkedList<String>();
 		
-		@SuppressWarnings("unchecked")
-		List<String> linesClone = (LinkedList<String>) ((LinkedList<String>) lines).clone();
-		
-		List<String> regexLines = SUtils.linesFromTo(linesClone, 
-				resourceManagerStartsPattern, 
-				resourceManagerEndsPattern);
-		
-		while(regexLines.size() > 0){
-			List<String> prevLines = SUtils.linesBefore(linesClone, resourceManagerStartsPattern, 3);
-			prevLines.addAll(regexLines);
-			
-			recoveryManagerOutputs.add(SUtils.join(prevLines, '\n'));
-			
-			linesClone = SUtils.linesFrom(linesClone, resourceManagerEndsPattern);
-			if(linesClone.size() > 0)
-				linesClone.remove(0);
-			
-			regexLines = SUtils.linesFromTo(linesClone, 
-					resourceManagerStartsPattern, 
-					resourceManagerEndsPattern);
-		}
+		for (List<String> outputLines : outputs)
+			recoveryManagerOutputs.add(SUtils.join(outputLines, '\n'));
 		
 		return recoveryManagerOutputs;
 	}
 
-	public List<RecoveryManagerReport> getRecoveryManagerReports() {
-		List<String> recoveryManagerOutputs = getRecoveryManagerOutputs();
+	/**
+	 * @return first output which has been completed and not taken yet, null if there is not
+	 */
+	public RecoveryManagerReport pollRecoveryManagerReport() {
+		if(outputs.isEmpty())
+			return null;
+		
+		return new RecoveryManagerReport(outputs.remove(0));
+	}
 	
+	public List<RecoveryManagerReport> getRecoveryManagerReports() {
 		List<RecoveryManagerReport> reports = new LinkedList<>();
 		
-		for (String recoveryManagerOutput : recoveryManagerOutputs)
-			reports.add(new RecoveryManagerReport(recoveryManagerOutput));
+		for (List<String> outputLines : outputs)
+			reports.add(new RecoveryManagerReport(outputLines));
 		
 		return reports;
 	}
@@ -310,4 +310,60 @@ public class RecoveryManagerLogFile {
 		
 		return null;
 	}
+	
+	/**
+	 * Perl Data::Dumper output which follows the start text, till next empty line.
+	 */
+	private static class DumpBlock {
+		
+		private final String start;
+		
+		private final Pattern startPattern;
+		
+		/** Null till start is found */
+		private StringBuilder text = null;
+		
+		private boolean completed = false;
+		
+		public DumpBlock(String start) {
+			this.start = start;
+			this.startPattern = Pattern.compile(".*" + Pattern.quote(start) + ".*");
+		}
+		
+		public void process(String line) {
+			if(completed)
+				return;
+			
+			if(text == null){
+				if(line.contains(start) && startPattern.matcher(line).matches())
+					text = new StringBuilder(line.substring(line.indexOf(start) + start.length())).append('\n');
+				
+				return;
+			}
+			
+			text.append(line).append('\n');
+			
+			if(SUtils.EMPTY_LINE_PATTERN.matcher(line).matches())
+				completed = true;
+		}
+		
+		/**
+		 * @return parsed value, null if block was not found or could not be parsed
+		 */
+		public JsonElement getValue() {
+			if(text == null)
+				return null;
+			
+			try {
+				return PerlDumperParser.parse(text);
+			} catch (ParseException e) {
+				logger.warn("Unable to parse value of \"" + start + "\": " 
+						+ e.getMessage() + " (position " + e.getErrorOffset() + ")");
+			
+				return null;
+			}
+		}
+	
+	}
+	
 }
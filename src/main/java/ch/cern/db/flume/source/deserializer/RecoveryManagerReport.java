@@ -15,14 +15,16 @@ import org.slf4j.LoggerFactory;
 import ch.cern.db.utils.Pair;
 import ch.cern.db.utils.SUtils;
 
+/**
+ * Report of one Recovery Manager output, lines are processed once when it is created.
+ */
 public class RecoveryManagerReport {
 	
 	private static final Logger logger = LoggerFactory.getLogger(RecoveryManagerReport.class);
 
-	private List<String> lines;
-	
-	private static final DateFormat dateFormatter = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss");
-	private static final DateFormat dateFormatterWhenFailing = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy");
+	/** Not thread-safe, so one per instance */
+	private final DateFormat dateFormatter = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss");
+	private final DateFormat dateFormatterWhenFailing = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy");
 
 	private static final Pattern ORAPattern = Pattern.compile("^[ ]?ORA-\\d{5}[:][ ].*");
 	private static final Pattern RMANPattern = Pattern.compile("^[ ]?RMAN-\\d{5}[:][ ].*");
@@ -34,42 +36,62 @@ public class RecoveryManagerReport {
 	private static final Pattern finishedTimePattern = 
 			Pattern.compile(".*Finished backup at \\d\\d-[A-Z]{3}-\\d\\d\\d\\d \\d\\d:\\d\\d:\\d\\d.*");
 	
+	private final List<Pair<Integer, String>> RMANs = new LinkedList<>();
+	private final List<Pair<Integer, String>> ORAs = new LinkedList<>();
+	
+	private String startingTimeLine = null;
+	private String finishedTimeLine = null;
+	
+	/** Line with return code and finish time if failed, null if there is not */
+	private String secondLine = null;
+	
 	public RecoveryManagerReport(String recoveryManagerOutput) {
-		lines = SUtils.toLines(recoveryManagerOutput);
+		this(SUtils.toLines(recoveryManagerOutput));
 	}
-
-	public List<Pair<Integer, String>> getRMANs() {
-		List<Pair<Integer, String>> list = new LinkedList<>();
+	
+	public RecoveryManagerReport(List<String> lines) {
+		int lineNumber = 0;
 		
-		for (String line : SUtils.grep(lines, RMANPattern)) {
-			String[] splitted = line.trim().split(":", 2);
-				
-			list.add(new Pair<Integer, String>(Integer.valueOf(splitted[0].split("-")[1]), splitted[1].trim()));
+		for (String line : lines) {
+			if(lineNumber++ == 1)
+				secondLine = line;
+			
+			if(line.contains("RMAN-") && RMANPattern.matcher(line).matches())
+				RMANs.add(parseCode(line));
+			else if(line.contains("ORA-") && ORAPattern.matcher(line).matches())
+				ORAs.add(parseCode(line));
+			
+			if(startingTimeLine == null 
+					&& line.contains("Starting backup at ") 
+					&& startingTimePattern.matcher(line).matches())
+				startingTimeLine = line;
+			
+			if(finishedTimeLine == null 
+					&& line.contains("Finished backup at ") 
+					&& finishedTimePattern.matcher(line).matches())
+				finishedTimeLine = line;
 		}
+	}
+	
+	private static Pair<Integer, String> parseCode(String line) {
+		String[] splitted = line.trim().split(":", 2);
 		
-		return list;
+		return new Pair<Integer, String>(Integer.valueOf(splitted[0].split("-")[1]), splitted[1].trim());
+	}
+
+	public List<Pair<Integer, String>> getRMANs() {
+		return RMANs;
 	}
 	
 	public List<Pair<Integer, String>> getORAs() {
-		List<Pair<Integer, String>> list = new LinkedList<>();
-		
-		for (String line : SUtils.grep(lines, ORAPattern)) {
-			String[] splitted = line.trim().split(":", 2);
-				
-			list.add(new Pair<Integer, String>(Integer.valueOf(splitted[0].split("-")[1]), splitted[1].trim()));
-		}
-		
-		return list;
+		return ORAs;
 	}
 
 	public Date getStartingTime() {		
-		List<String> grep = SUtils.grep(lines, startingTimePattern);
-		if(grep.size() < 1)
+		if(startingTimeLine == null)
 			return null;
 		
-		String line = grep.get(0);
-		
-		line = line.replace("Starting backup at ", "").trim();
+		String line = startingTimeLine.replace("Starting backup at ", "").trim();
 		
 		try {
 			return dateFormatter.parse(line);
@@ -81,13 +103,10 @@ public class RecoveryManagerReport {
 	}
 	
 	public Date getFinishTime() {		
-		List<String> grep = SUtils.grep(lines, finishedTimePattern);
-		if(grep.size() < 1)
+		if(finishedTimeLine == null)
 			return getFinishTimeWhenFailed();
 		
-		String line = grep.get(0);
-		
-		line = line.replace("Finished backup at ", "").trim();
+		String line = finishedTimeLine.replace("Finished backup at ", "").trim();
 		
 		try {
 			return dateFormatter.parse(line);
@@ -99,9 +118,10 @@ public class RecoveryManagerReport {
 	}
 
 	private Date getFinishTimeWhenFailed() {
-		String line = lines.get(1);
+		if(secondLine == null)
+			return null;
 		
-		Matcher m = finishTimeWhenFailingPattern.matcher(line.trim());
+		Matcher m = finishTimeWhenFailingPattern.matcher(secondLine.trim());
 		
 		if(m.find())
 			try {
@@ -116,9 +136,10 @@ public class RecoveryManagerReport {
 	}
 
 	public Integer getReturnCode() {
-		String line = lines.get(1);
+		if(secondLine == null)
+			return null;
 		
-		Matcher m = returnCodePattern.matcher(line);
+		Matcher m = returnCodePattern.matcher(secondLine);
 		
 		if(m.find())
 			return Integer.parseInt(m.group(1));
@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.deserializer;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.flume.serialization.ResettableInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads lines from a resettable stream in chunks of bytes, a line is decoded only once
+ * its end of line (\n or \r\n) has been found.
+ *
+ * The stream is read ahead of the lines which have been returned, {@link #sync()} moves it
+ * back to the first byte not returned yet, so it has to be called before marking or closing it.
+ *
+ * Charsets which do not encode \n and \r as single bytes (e.g. UTF-16) are read char by char.
+ */
+public class ResettableLineReader {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(ResettableLineReader.class);
+	
+	private static final int BUFFER_SIZE = 8 * 1024;
+	
+	private final ResettableInputStream in;
+	
+	private final Charset charset;
+	
+	/** Lines are truncated to this number of bytes */
+	private final int maxLineLength;
+	
+	/** False if lines are read char by char */
+	private final boolean bulk;
+	
+	private final byte[] buffer;
+	private int bufferPosition = 0;
+	private int bufferLimit = 0;
+	
+	private byte[] line = new byte[256];
+	private int lineLength = 0;
+	
+	/** Position in the stream of the first byte which has not been returned yet */
+	private long position;
+	
+	public ResettableLineReader(ResettableInputStream in, Charset charset, int maxLineLength) throws IOException {
+		Preconditions.checkArgument(maxLineLength > 0, "Max line length must be greater than 0");
+		
+		this.in = in;
+		this.charset = charset;
+		this.maxLineLength = maxLineLength;
+		
+		bulk = Arrays.equals("\r\n".getBytes(charset), new byte[]{'\r', '\n'});
+		buffer = bulk ? new byte[BUFFER_SIZE] : null;
+		
+		position = in.tell();
+	}
+	
+	/**
+	 * @return next line without end of line characters, the rest of the stream if there is no end of line,
+	 * or null if there is nothing else to read
+	 */
+	public String readLine() throws IOException {
+		if(!bulk)
+			return readLineCharByChar();
+		
+		while(true){
+			if(bufferPosition == bufferLimit){
+				int read = in.read(buffer, 0, buffer.length);
+				
+				if(read <= 0)
+					return lineLength > 0 ? takeLine(lineLength, 0) : null;
+				
+				bufferPosition = 0;
+				bufferLimit = read;
+			}
+			
+			int scanLimit = Math.min(bufferLimit, bufferPosition + maxLineLength - lineLength);
+			
+			int index = bufferPosition;
+			while(index < scanLimit && buffer[index] != '\n')
+				index++;
+			
+			append(buffer, bufferPosition, index - bufferPosition);
+			
+			if(index < bufferLimit && buffer[index] == '\n'){
+				bufferPosition = index + 1;
+				
+				return takeLine(lineLength, 1);
+			}
+			
+			bufferPosition = index;
+			
+			if(lineLength >= maxLineLength){
+				LOG.warn("Line length exceeds max ({}), truncating line!", maxLineLength);
+				
+				return takeLine(charBoundary(lineLength), 0);
+			}
+		}
+	}
+	
+	private void append(byte[] array, int offset, int length) {
+		if(lineLength + length > line.length)
+			line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+		
+		System.arraycopy(array, offset, line, lineLength, length);
+		lineLength += length;
+	}
+	
+	/**
+	 * @param length bytes of the line which are returned, remaining ones are kept for next line
+	 * @param eolLength bytes of the end of line which have been consumed
+	 */
+	private String takeLine(int length, int eolLength) {
+		position += length + eolLength;
+		
+		int textLength = length;
+		if(eolLength > 0 && textLength > 0 && line[textLength - 1] == '\r')
+			textLength--;
+		
+		String text = new String(line, 0, textLength, charset);
+		
+		lineLength -= length;
+		System.arraycopy(line, length, line, 0, lineLength);
+		
+		return text;
+	}
+	
+	/**
+	 * @return length, reduced so an UTF-8 sequence is not split when truncating
+	 */
+	private int charBoundary(int length) {
+		if(!charset.equals(Charsets.UTF_8))
+			return length;
+		
+		int start = length - 1;
+		while(start > 0 && (line[start] & 0xC0) == 0x80)
+			start--;
+		
+		int lead = line[start] & 0xFF;
+		int sequenceLength = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+		
+		return length - start < sequenceLength && start > 0 ? start : length;
+	}
+	
+	private String readLineCharByChar() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+		int readChars = 0;
+		while ((c = in.readChar()) != -1) {
+			readChars++;
+			
+			if (c == '\n') {
+				int length = sb.length();
+				if(length > 0 && sb.charAt(length - 1) == '\r')
+					sb.setLength(length - 1);
+				
+				break;
+			}
+			
+			sb.append((char) c);
+			
+			if (readChars >= maxLineLength) {
+				LOG.warn("Line length exceeds max ({}), truncating line!", maxLineLength);
+				break;
+			}
+		}
+		
+		position = in.tell();
+		
+		if (readChars > 0) {
+			return sb.toString();
+		} else {
+			return null;
+		}
+	}
+	
+	/**
+	 * Moves the stream to the first byte which has not been returned yet, bytes read ahead are discarded
+	 */
+	public void sync() throws IOException {
+		if(!bulk)
+			return;
+		
+		in.seek(position);
+		
+		bufferPosition = bufferLimit = 0;
+		lineLength = 0;
+	}
+	
+	/**
+	 * @return position in the stream of the first byte which has not been returned yet
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+}
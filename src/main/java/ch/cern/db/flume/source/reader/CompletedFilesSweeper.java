@@ -0,0 +1,297 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * Deletes or archives completed files of a spooling directory once they have been
+ * completed for longer than the retention period (delete policy DELAY).
+ *
+ * Completed files are kept in an index, in the order they were completed, which is
+ * stored in the tracker directory. So expired files are found at the head of the index
+ * and the spooling directory is never listed, except the first time if there is no index
+ * (files completed before are then considered completed when last modified).
+ *
+ * Files which can not be retired stay at the head of the index, so they are retried in next sweep.
+ * Archived files keep their path relative to the spooling directory.
+ */
+public class CompletedFilesSweeper implements Runnable {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(CompletedFilesSweeper.class);
+	
+	static final String INDEX_FILE_NAME = ".flumespool-completed.index";
+	
+	public static final long RETENTION_DEFAULT = 24 * 60 * 60 * 1000L;
+	
+	public static final int BATCH_SIZE_DEFAULT = 100;
+	
+	private final File indexFile;
+	
+	private final long retention;
+	
+	/** Expired files are moved here, deleted if null */
+	private final File archiveDirectory;
+	
+	private final int batchSize;
+	
+	/** Completed files, in the order they were completed */
+	private final Deque<Entry> entries = new ArrayDeque<Entry>();
+	
+	private File spoolDirectory;
+	
+	/**
+	 * @param trackerDirectory directory where the index is stored
+	 * @param retention milliseconds completed files are kept
+	 * @param archiveDirectory directory where expired files are moved, null to delete them
+	 * @param batchSize number of files retired before storing the index
+	 */
+	public CompletedFilesSweeper(File trackerDirectory, long retention, File archiveDirectory, int batchSize) {
+		Preconditions.checkArgument(retention >= 0, "Retention can not be negative");
+		Preconditions.checkArgument(batchSize > 0, "Batch size must be greater than 0");
+		
+		this.indexFile = new File(trackerDirectory, INDEX_FILE_NAME);
+		this.retention = retention;
+		this.archiveDirectory = archiveDirectory;
+		this.batchSize = batchSize;
+	}
+	
+	/**
+	 * Loads the index, if there is no index completed files are looked for in the spooling directory
+	 * (and its subdirectories if recursive).
+	 */
+	public synchronized void load(File spoolDirectory, String completedSuffix, boolean recursive) throws IOException {
+		this.spoolDirectory = spoolDirectory.getAbsoluteFile();
+		
+		entries.clear();
+		
+		if(indexFile.exists()){
+			try(BufferedReader reader = new BufferedReader(
+					new InputStreamReader(new FileInputStream(indexFile), Charsets.UTF_8))){
+				String line;
+				while((line = reader.readLine()) != null){
+					int separator = line.indexOf(' ');
+					if(separator < 0)
+						continue;
+					
+					try{
+						entries.add(new Entry(Long.parseLong(line.substring(0, separator)), new File(line.substring(separator + 1))));
+					}catch(NumberFormatException e){
+						LOG.warn("Ignoring malformed line in " + indexFile + ": " + line);
+					}
+				}
+			}
+			
+			return;
+		}
+		
+		List<Entry> found = new ArrayList<Entry>();
+		findCompletedFiles(spoolDirectory, completedSuffix, recursive, found);
+		
+		Collections.sort(found, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				return Long.compare(e1.completed, e2.completed);
+			}
+		});
+		entries.addAll(found);
+		
+		storeIndex();
+	}
+	
+	private void findCompletedFiles(File directory, String completedSuffix, boolean recursive, List<Entry> found) throws IOException {
+		File[] files = directory.listFiles();
+		if(files == null)
+			throw new IOException("Spooling directory " + directory + " could not be listed");
+		
+		for(File file : files){
+			if(file.isFile() && file.getName().endsWith(completedSuffix))
+				found.add(new Entry(file.lastModified(), file.getAbsoluteFile()));
+			
+			//Hidden directories (e.g. tracker directory) are not consumed
+			if(recursive && file.isDirectory() && !file.getName().startsWith(".")
+					&& !file.getAbsoluteFile().equals(archiveDirectory == null ? null : archiveDirectory.getAbsoluteFile()))
+				findCompletedFiles(file, completedSuffix, recursive, found);
+		}
+	}
+	
+	/**
+	 * Registers a file which has just been completed
+	 */
+	public synchronized void add(File file) throws IOException {
+		Entry entry = new Entry(System.currentTimeMillis(), file.getAbsoluteFile());
+		entries.add(entry);
+		
+		try(Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile, true), Charsets.UTF_8)){
+			writer.write(entry.toString());
+		}
+	}
+	
+	@Override
+	public void run() {
+		try{
+			sweep();
+		}catch(Throwable e){
+			LOG.error("Error while sweeping completed files", e);
+		}
+	}
+	
+	/**
+	 * Retires (deletes or archives) expired files, in batches
+	 *
+	 * @return number of files retired
+	 */
+	public int sweep() throws IOException {
+		int retired = 0;
+		
+		//Kept out of entries till the end of the sweep, so they are not polled again
+		List<Entry> failed = new ArrayList<Entry>();
+			
+		try{
+			List<Entry> batch;
+			while(!(batch = pollExpired(System.currentTimeMillis())).isEmpty()){
+				for(Entry entry : batch){
+					if(!entry.file.exists()){
+						LOG.debug("Completed file {} does not exist anymore", entry.file);
+						continue;
+					}
+					
+					if(retire(entry.file))
+						retired++;
+					else
+						failed.add(entry);
+				}
+				
+				synchronized (this) {
+					storeIndex(failed);
+				}
+			}
+		}finally{
+			synchronized (this) {
+				for(int i = failed.size() - 1; i >= 0; i--)
+					entries.addFirst(failed.get(i));
+			}
+		}
+		
+		return retired;
+	}
+	
+	private synchronized List<Entry> pollExpired(long now) {
+		List<Entry> batch = new ArrayList<Entry>();
+		
+		while(batch.size() < batchSize && !entries.isEmpty() && now - entries.peekFirst().completed >= retention)
+			batch.add(entries.pollFirst());
+		
+		return batch;
+	}
+	
+	private boolean retire(File file) {
+		if(archiveDirectory == null){
+			if(file.delete()){
+				LOG.debug("Deleted completed file {}", file);
+				return true;
+			}
+			
+			LOG.error("Unable to delete completed file " + file);
+			return false;
+		}
+		
+		File dest = new File(archiveDirectory, getRelativePath(file));
+		File destDirectory = dest.getParentFile();
+		if(!destDirectory.isDirectory() && !destDirectory.mkdirs())
+			LOG.error("Unable to create archive directory " + destDirectory);
+		
+		if(!dest.exists() && file.renameTo(dest)){
+			LOG.debug("Archived completed file {} to {}", file, dest);
+			return true;
+		}
+		
+		LOG.error("Unable to move completed file " + file + " to " + dest);
+		return false;
+	}
+	
+	/**
+	 * @return path relative to the spooling directory, name if the file is not in it
+	 */
+	private String getRelativePath(File file) {
+		Path path = file.getAbsoluteFile().toPath();
+		
+		if(spoolDirectory == null || !path.startsWith(spoolDirectory.toPath()))
+			return file.getName();
+		
+		return spoolDirectory.toPath().relativize(path).toString();
+	}
+	
+	private void storeIndex() throws IOException {
+		storeIndex(Collections.<Entry>emptyList());
+	}
+	
+	/**
+	 * Replaces the index by the given entries (to retry) followed by the current entries
+	 */
+	private void storeIndex(List<Entry> retry) throws IOException {
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+		
+		try(Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), Charsets.UTF_8)){
+			for(Entry entry : retry)
+				writer.write(entry.toString());
+			for(Entry entry : entries)
+				writer.write(entry.toString());
+		}
+		
+		if(!tmpFile.renameTo(indexFile))
+			throw new IOException("Unable to replace index of completed files " + indexFile);
+	}
+	
+	/**
+	 * @return number of completed files which have not been retired yet
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	private static class Entry {
+		
+		private final long completed;
+		
+		private final File file;
+		
+		public Entry(long completed, File file) {
+			this.completed = completed;
+			this.file = file;
+		}
+		
+		@Override
+		public String toString() {
+			return completed + " " + file.getPath() + "\n";
+		}
+	
+	}
+
+}
@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.flume.serialization.DecodeErrorPolicy;
+import org.apache.flume.serialization.PositionTracker;
+import org.apache.flume.serialization.ResettableInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+
+import ch.cern.db.utils.Compression;
+import ch.cern.db.utils.GzipMembersInputStream;
+
+/**
+ * {@link ResettableInputStream} over a compressed file, positions are offsets in the uncompressed content.
+ *
+ * The last {@link #READ_BACK_SIZE} bytes which have been read are kept, so seeking back within them
+ * (as line readers do to discard what they read ahead) does not restart decompression.
+ *
+ * For gzip files, decompression is restarted at the closest member boundary before the position
+ * which is seeked. Boundaries are learnt while reading, so after a restart the file is decompressed
+ * (not written anywhere) from the beginning till the tracked position. Blocks of bzip2 files are not byte
+ * aligned, so seeking further backwards always decompresses from the beginning.
+ */
+public class CompressedResettableInputStream extends ResettableInputStream {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(CompressedResettableInputStream.class);
+	
+	/**
+	 * Maximum number of bytes of a character
+	 */
+	private static final int MAX_CHAR_LENGTH = 8;
+	
+	/**
+	 * Bytes already read which are kept in the buffer
+	 */
+	static final int READ_BACK_SIZE = 16 * 1024;
+	
+	private final File file;
+	
+	private final Compression compression;
+	
+	private final PositionTracker tracker;
+	
+	private InputStream in;
+	
+	/**
+	 * Uncompressed bytes read from in
+	 */
+	private long inPosition;
+	
+	/**
+	 * Size of the buffer without the bytes kept for reading back
+	 */
+	private final int readSize;
+	
+	private final byte[] buffer;
+	private int bufferLength = 0;
+	private int bufferPosition = 0;
+	private boolean endOfFile = false;
+	
+	/**
+	 * Uncompressed offset to compressed offset of gzip members
+	 */
+	private final TreeMap<Long, Long> memberStarts = new TreeMap<Long, Long>();
+	
+	private final CharsetDecoder decoder;
+	private final boolean asciiCompatible;
+	private final DecodeErrorPolicy decodeErrorPolicy;
+	private final CharBuffer charBuffer = CharBuffer.allocate(2);
+	private int pendingLowSurrogate = -1;
+	
+	private long markPosition;
+	
+	private int restartsCount = 0;
+	
+	public CompressedResettableInputStream(File file, PositionTracker tracker, Compression compression,
+			int bufferSize, Charset charset, DecodeErrorPolicy decodeErrorPolicy) throws IOException {
+		this.file = file;
+		this.tracker = tracker;
+		this.compression = compression;
+		this.decodeErrorPolicy = decodeErrorPolicy;
+		
+		readSize = Math.max(bufferSize, MAX_CHAR_LENGTH);
+		buffer = new byte[readSize + READ_BACK_SIZE];
+		
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		asciiCompatible = charset.equals(Charsets.UTF_8)
+				|| charset.equals(Charsets.US_ASCII)
+				|| charset.equals(Charsets.ISO_8859_1);
+		
+		open(0, 0);
+		
+		markPosition = tracker.getPosition();
+		seek(markPosition);
+	}
+	
+	private void open(long compressedOffset, long uncompressedOffset) throws IOException {
+		if(in != null)
+			in.close();
+		
+		if(compression == Compression.GZIP){
+			in = new GzipMembersInputStream(file, compressedOffset, uncompressedOffset, memberStarts, readSize);
+		}else{
+			in = compression.decompress(new FileInputStream(file));
+		}
+		
+		inPosition = uncompressedOffset;
+		bufferLength = 0;
+		bufferPosition = 0;
+		endOfFile = false;
+		pendingLowSurrogate = -1;
+	}
+	
+	/**
+	 * Makes at least the given number of bytes available in the buffer, unless end of file is reached.
+	 * When the buffer is full, it is compacted keeping the last {@link #READ_BACK_SIZE} bytes already read.
+	 *
+	 * @return number of bytes available
+	 */
+	private int fill(int minimum) throws IOException {
+		int available = bufferLength - bufferPosition;
+		if(available >= minimum || endOfFile)
+			return available;
+		
+		if(buffer.length - bufferLength < minimum - available){
+			int readBack = Math.min(bufferPosition, READ_BACK_SIZE);
+		
+			System.arraycopy(buffer, bufferPosition - readBack, buffer, 0, readBack + available);
+			bufferPosition = readBack;
+			bufferLength = readBack + available;
+		}
+		
+		while(bufferLength - bufferPosition < minimum){
+			int read = in.read(buffer, bufferLength, buffer.length - bufferLength);
+			if(read < 0){
+				endOfFile = true;
+				break;
+			}
+			
+			bufferLength += read;
+			inPosition += read;
+		}
+		
+		return bufferLength - bufferPosition;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		if(fill(1) == 0)
+			return -1;
+		
+		return buffer[bufferPosition++] & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0)
+			return 0;
+		
+		int available = fill(1);
+		if(available == 0)
+			return -1;
+		
+		int read = Math.min(available, len);
+		System.arraycopy(buffer, bufferPosition, b, off, read);
+		bufferPosition += read;
+		
+		return read;
+	}
+	
+	@Override
+	public int readChar() throws IOException {
+		if(pendingLowSurrogate >= 0){
+			int c = pendingLowSurrogate;
+			pendingLowSurrogate = -1;
+			
+			return c;
+		}
+		
+		while(true){
+			int available = fill(MAX_CHAR_LENGTH);
+			if(available == 0)
+				return -1;
+			
+			if(asciiCompatible && buffer[bufferPosition] >= 0)
+				return buffer[bufferPosition++];
+			
+			ByteBuffer bytes = ByteBuffer.wrap(buffer, bufferPosition, Math.min(available, MAX_CHAR_LENGTH));
+			boolean endOfInput = endOfFile && available <= MAX_CHAR_LENGTH;
+			
+			decoder.reset();
+			charBuffer.clear();
+			charBuffer.limit(1);
+			CoderResult result = decoder.decode(bytes, charBuffer, endOfInput);
+			if(result.isOverflow() && charBuffer.position() == 0){
+				//Surrogate pair
+				charBuffer.limit(2);
+				result = decoder.decode(bytes, charBuffer, endOfInput);
+			}
+			
+			if(charBuffer.position() > 0){
+				bufferPosition = bytes.position();
+				
+				if(charBuffer.position() > 1)
+					pendingLowSurrogate = charBuffer.get(1);
+				
+				return charBuffer.get(0);
+			}
+			
+			int malformedLength = result.isError() ? result.length() : bytes.remaining();
+			switch (decodeErrorPolicy) {
+			case FAIL:
+				throw new CharacterCodingException();
+			case REPLACE:
+				bufferPosition += malformedLength;
+				return '\uFFFD';
+			default:
+				bufferPosition += malformedLength;
+			}
+		}
+	}
+	
+	@Override
+	public void mark() throws IOException {
+		markPosition = tell();
+		
+		tracker.storePosition(markPosition);
+	}
+	
+	@Override
+	public void reset() throws IOException {
+		seek(markPosition);
+	}
+	
+	@Override
+	public void seek(long newPosition) throws IOException {
+		long position = tell();
+		if(newPosition == position)
+			return;
+		
+		long bufferStart = inPosition - bufferLength;
+		if(newPosition < position && newPosition >= bufferStart){
+			bufferPosition = (int) (newPosition - bufferStart);
+			pendingLowSurrogate = -1;
+			
+			return;
+		}
+		
+		if(newPosition < position){
+			restartsCount++;
+			
+			Map.Entry<Long, Long> member = memberStarts.floorEntry(newPosition);
+			
+			if(member != null && compression == Compression.GZIP)
+				open(member.getValue(), member.getKey());
+			else
+				open(0, 0);
+			
+			LOG.debug("Decompression of " + file + " restarted at byte " + tell() + " for seeking " + newPosition);
+		}
+		
+		pendingLowSurrogate = -1;
+		
+		long remaining = newPosition - tell();
+		while(remaining > 0){
+			int available = fill(1);
+			if(available == 0)
+				break;
+			
+			int skipped = (int) Math.min(available, remaining);
+			bufferPosition += skipped;
+			remaining -= skipped;
+		}
+	}
+	
+	/**
+	 * @return number of times decompression has been restarted for seeking backwards
+	 */
+	@VisibleForTesting
+	int getRestartsCount() {
+		return restartsCount;
+	}
+	
+	@Override
+	public long tell() throws IOException {
+		return inPosition - (bufferLength - bufferPosition);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		tracker.close();
+		in.close();
+	}
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.serialization.DurablePositionTracker;
+import org.apache.flume.serialization.PositionTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Positions of all files being consumed from a spooling directory (and its subdirectories),
+ * stored in a single file of the tracker directory.
+ *
+ * It can be shared by readers consuming the same directory in parallel. Files are removed
+ * once they are completed, so the store only contains files which are being consumed.
+ */
+public class PositionStore {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(PositionStore.class);
+	
+	static final String FILE_NAME = ".flumespool-positions";
+	
+	private final File file;
+	
+	/** Position by path of the file */
+	private final Map<String, Long> positions = new LinkedHashMap<String, Long>();
+	
+	public PositionStore(File trackerDirectory) throws IOException {
+		this.file = new File(trackerDirectory, FILE_NAME);
+		
+		if(file.exists())
+			load();
+		
+		importMetaFiles(trackerDirectory);
+	}
+	
+	private void load() throws IOException {
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charsets.UTF_8))){
+			String line;
+			while((line = reader.readLine()) != null){
+				int separator = line.indexOf(' ');
+				if(separator < 0)
+					continue;
+				
+				try{
+					positions.put(line.substring(separator + 1), Long.parseLong(line.substring(0, separator)));
+				}catch(NumberFormatException e){
+					LOG.warn("Ignoring malformed line in " + file + ": " + line);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Positions stored by previous versions, in one meta file per reader, are moved to this store
+	 */
+	private void importMetaFiles(File trackerDirectory) throws IOException {
+		File[] metaFiles = trackerDirectory.listFiles();
+		if(metaFiles == null)
+			return;
+		
+		for(File metaFile : metaFiles){
+			String name = metaFile.getName();
+			if(!name.startsWith(".flumespool-") || !name.endsWith(".meta"))
+				continue;
+			
+			if(metaFile.length() > 0){
+				PositionTracker tracker = DurablePositionTracker.getInstance(metaFile, "");
+				if(!positions.containsKey(tracker.getTarget()))
+					storePosition(tracker.getTarget(), tracker.getPosition());
+				tracker.close();
+				
+				LOG.info("Position of {} imported from {}", tracker.getTarget(), metaFile);
+			}
+			
+			if(!metaFile.delete())
+				throw new IOException("Unable to delete old meta file " + metaFile);
+		}
+	}
+	
+	/**
+	 * @return paths of the files which have a position stored
+	 */
+	public synchronized List<String> getTargets() {
+		return new ArrayList<String>(positions.keySet());
+	}
+	
+	public synchronized long getPosition(String target) {
+		Long position = positions.get(target);
+		
+		return position == null ? 0 : position;
+	}
+	
+	public synchronized void storePosition(String target, long position) throws IOException {
+		Long previous = positions.put(target, position);
+		
+		if(previous == null || previous != position)
+			store();
+	}
+	
+	public synchronized void remove(String target) throws IOException {
+		if(positions.remove(target) != null)
+			store();
+	}
+	
+	/**
+	 * Writes all positions to a temporary file which then replaces the store
+	 */
+	private void store() throws IOException {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		
+		try(Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), Charsets.UTF_8)){
+			for(Map.Entry<String, Long> position : positions.entrySet())
+				writer.write(position.getValue() + " " + position.getKey() + "\n");
+		}
+		
+		if(!tmpFile.renameTo(file))
+			throw new IOException("Unable to replace position store " + file);
+	}
+	
+	/**
+	 * @return tracker of the given file, position is stored (0 if it was not) so the file is resumed after a restart
+	 */
+	public PositionTracker getTracker(String target) throws IOException {
+		storePosition(target, getPosition(target));
+		
+		return new Tracker(target);
+	}
+	
+	private class Tracker implements PositionTracker {
+		
+		private final String target;
+		
+		public Tracker(String target) {
+			this.target = target;
+		}
+		
+		@Override
+		public void storePosition(long position) throws IOException {
+			PositionStore.this.storePosition(target, position);
+		}
+		
+		@Override
+		public long getPosition() {
+			return PositionStore.this.getPosition(target);
+		}
+		
+		@Override
+		public String getTarget() {
+			return target;
+		}
+		
+		@Override
+		public void close() throws IOException {
+		}
+	
+	}
+
+}
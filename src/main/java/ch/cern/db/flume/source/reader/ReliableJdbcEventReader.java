@@ -91,6 +91,9 @@ public class ReliableJdbcEventReader implements Configurable{
 	public static final String EXPAND_BIG_FLOATS_PARAM = "reader.expandBigFloats";
 	private boolean expandBigFloats = false;
 
+	public static final String CBOR_BODY_PARAM = "reader.cborBody";
+	private boolean cborBody = false;
+	
 	private Connection connection = null;
 	private ResultSet resultSet = null;
 	private Statement statement = null;
@@ -152,6 +155,7 @@ public class ReliableJdbcEventReader implements Configurable{
 
 		scaleAwareNumeric = context.getBoolean(SCALE_AWARE_NUMERIC_PARAM, false);
 		expandBigFloats = context.getBoolean(EXPAND_BIG_FLOATS_PARAM, false);
+		cborBody = context.getBoolean(CBOR_BODY_PARAM, false);
 
 		if(columnToCommit != null){
 			loadLastCommittedValueFromFile();
@@ -259,6 +263,7 @@ public class ReliableJdbcEventReader implements Configurable{
 				int columnCount = metadata.getColumnCount();
 
 				JSONEvent event = new JSONEvent();
+				event.setCBOREncoded(cborBody);
 
 				for (int i = 1; i <= columnCount; i++) {
 					String name = metadata.getColumnName(i);
@@ -12,6 +12,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -30,6 +31,7 @@ import ch.cern.db.flume.source.reader.log.LogEventParser;
 import ch.cern.db.flume.source.reader.log.LogEventParser.Builder;
 import ch.cern.db.log.LogEvent;
 import ch.cern.db.log.LogFile;
+import ch.cern.db.log.TimestampParser;
 
 public class ReliableLogFileEventReader implements Configurable{
 
@@ -43,33 +45,55 @@ public class ReliableLogFileEventReader implements Configurable{
 	
 	public static final String DATAFORMAT_PARAM = "reader.dateFormat";
 	
+	public static final String ROTATED_FILES_GLOB_PARAM = "reader.rotatedFiles";
+	
 	public static final String COMMITTING_FILE_PATH_DEFAULT = "committed_date.backup";
 	public static final String COMMITTING_FILE_PATH_PARAM = "reader.committingFile";
 	private String committing_file_path = COMMITTING_FILE_PATH_DEFAULT;
 	private File committing_file = null;
 	
 	public static final String COMMITTED_VALUE_TO_LOAD_PARAM = "reader.committtedDate";
-	private Date committed_date_to_load = null;
 	
 	public static final boolean LOG_EVENTS_WITH_SEVERAL_LINES_DEFAULT = true;
 	public static final String LOG_EVENTS_WITH_SEVERAL_LINES_PARAM = "reader.severalLines";
 
+	public static final String MAX_LINES_PER_EVENT_PARAM = "reader.maxLinesPerEvent";
+	
+	public static final String MAX_BYTES_PER_EVENT_PARAM = "reader.maxBytesPerEvent";
+	
+	public static final boolean SPLIT_EVENTS_DEFAULT = false;
+	public static final String SPLIT_EVENTS_PARAM = "reader.splitEvents";
+	
+	public static final long FLUSH_TIMEOUT_DEFAULT = 0;
+	public static final String FLUSH_TIMEOUT_PARAM = "reader.flushTimeout";
+	
+	public static final long CATCH_UP_THRESHOLD_DEFAULT = 0;
+	public static final String CATCH_UP_THRESHOLD_PARAM = "reader.catchUpThreshold";
+	
+	/** Platform default charset if not configured */
+	public static final String CHARSET_PARAM = "reader.charset";
+	
 	private SimpleDateFormat internalDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
 	
 	public static final String PARSER_DEFAULT = "ch.cern.db.flume.source.reader.log.DefaultLogEventParser$Builder";
 	public static final String PARSER_PARAM = "reader.parser";
 	private LogEventParser parser;
 	
-	protected Date last_date = null;
+	private static final long NO_TIMESTAMP = TimestampParser.NO_TIMESTAMP;
 
-	private Date last_committed_date;
+	/**
+	 * Timestamp (milliseconds since epoch) of last event, NO_TIMESTAMP if none
+	 */
+	protected long last_timestamp = NO_TIMESTAMP;
+	
+	private long last_committed_timestamp = NO_TIMESTAMP;
 
 	public ReliableLogFileEventReader() {
 		initialize();
 	}
 
 	private void initialize() {
-		last_date = null;
+		last_timestamp = NO_TIMESTAMP;
 		
 		state = State.INITIALIZED;
 	}
@@ -84,11 +108,28 @@ public class ReliableLogFileEventReader implements Configurable{
 		if(logFile != null)
 			logFile.close();
 		logFile = new LogFile(logFilePath);
-		logFile.open();
 		
 		logFile.setDateFormat(new SimpleDateFormat(context.getString(DATAFORMAT_PARAM, LogFile.DATAFORMAT_DEFAULT)));
 		logFile.setEventsCanContainSeveralLines(context.getBoolean(LOG_EVENTS_WITH_SEVERAL_LINES_PARAM, 
 																	LOG_EVENTS_WITH_SEVERAL_LINES_DEFAULT));
+		logFile.setRotatedFilesGlob(context.getString(ROTATED_FILES_GLOB_PARAM));
+		logFile.setMaxLinesPerEvent(context.getInteger(MAX_LINES_PER_EVENT_PARAM, LogFile.MAX_LINES_PER_EVENT_DEFAULT));
+		logFile.setMaxBytesPerEvent(context.getLong(MAX_BYTES_PER_EVENT_PARAM, LogFile.MAX_BYTES_PER_EVENT_DEFAULT));
+		logFile.setSplitEvents(context.getBoolean(SPLIT_EVENTS_PARAM, SPLIT_EVENTS_DEFAULT));
+		logFile.setFlushTimeout(context.getLong(FLUSH_TIMEOUT_PARAM, FLUSH_TIMEOUT_DEFAULT));
+		logFile.setCatchUpThreshold(context.getLong(CATCH_UP_THRESHOLD_PARAM, CATCH_UP_THRESHOLD_DEFAULT));
+		
+		String charset = context.getString(CHARSET_PARAM);
+		if(charset != null){
+			try{
+				logFile.setCharset(Charset.forName(charset));
+			}catch(IllegalArgumentException e){
+				throw new ConfigurationException("Charset configured with " + CHARSET_PARAM + " is not supported: " + charset, e);
+			}
+		}
+		
+		//Once configured, so reader uses the configured charset
+		logFile.open();
 		
 		parser = createParser(context);
 		
@@ -96,12 +137,12 @@ public class ReliableLogFileEventReader implements Configurable{
 		committing_file = new File(committing_file_path);
 		
 		loadLastCommittedDateFromFile();
-		if(last_date == null){
+		if(last_timestamp == NO_TIMESTAMP){
 			try {
 				String committed_date_to_load_string = context.getString(COMMITTED_VALUE_TO_LOAD_PARAM);
 				
 				if(committed_date_to_load_string != null)
-					committed_date_to_load = internalDateFormat.parse(committed_date_to_load_string);
+					last_timestamp = internalDateFormat.parse(committed_date_to_load_string).getTime();
 			} catch (ParseException e) {
 				throw new ConfigurationException("Configured date with "
 						+ COMMITTED_VALUE_TO_LOAD_PARAM
@@ -109,10 +150,14 @@ public class ReliableLogFileEventReader implements Configurable{
 						+ internalDateFormat
 						+ ")", e);
 			}
-			
-			last_date = committed_date_to_load;
 		}
 		
+		if(last_timestamp != NO_TIMESTAMP)
+			logFile.seek(last_timestamp);
+		
+		last_committed_timestamp = last_timestamp;
+		logFile.mark();
+		
 		state = State.CONFIGURED;
 	}
 
@@ -150,7 +195,7 @@ public class ReliableLogFileEventReader implements Configurable{
 
 				if(date_from_file.length() > 0){
 					try {
-						last_date = internalDateFormat.parse(date_from_file);
+						last_timestamp = internalDateFormat.parse(date_from_file).getTime();
 					} catch (ParseException e) {
 						throw new FlumeException("Date from committing file ("
 								+ date_from_file
@@ -159,7 +204,7 @@ public class ReliableLogFileEventReader implements Configurable{
 								+ ")", e);
 					}
 
-					LOG.info("Last value loaded from file: " + last_date);
+					LOG.info("Last value loaded from file: " + date_from_file);
 				}else{
 					LOG.info("File for loading last value is empty");
 				}
@@ -204,20 +249,21 @@ public class ReliableLogFileEventReader implements Configurable{
 		LogEvent event = null;
 		Event flumeEvent = null;
 		while((event = logFile.getNextEvent()) != null){
-			if(last_date == null || event.getTimestamp().getTime() >= last_date.getTime()){
+			if(last_timestamp == NO_TIMESTAMP || event.getTimestamp() >= last_timestamp){
 				LOG.trace("New event: " + event);
 		    	
 				flumeEvent = parser.parse(event);
 				
-				last_date = event.getTimestamp();
+				last_timestamp = event.getTimestamp();
 
 				break;
 			}else{
 				skippedEventsBecauseNewerTimestamps++;
 				
-				LOG.trace("Event skipped because timestamp was older than the timestamp of previos events ("
-						+ internalDateFormat.format(last_date)
-						+ "): " + event);
+				if(LOG.isTraceEnabled())
+					LOG.trace("Event skipped because timestamp was older than the timestamp of previos events ("
+							+ internalDateFormat.format(new Date(last_timestamp))
+							+ "): " + event);
 			}
 		}
 		
@@ -225,7 +271,7 @@ public class ReliableLogFileEventReader implements Configurable{
 			LOG.warn("Several events ("
 					+ skippedEventsBecauseNewerTimestamps
 					+ ") has been skipped because timestamp was older than the timestamp of previous events ("
-					+ internalDateFormat.format(last_date)
+					+ internalDateFormat.format(new Date(last_timestamp))
 					+ ")");
 		}
 		
@@ -236,26 +282,48 @@ public class ReliableLogFileEventReader implements Configurable{
 		if(state != State.CONFIGURED)
 			throw new ConfigurationException(getClass().getSimpleName() + " is not configured");
 
-		if(last_date == null)
+		if(last_timestamp == NO_TIMESTAMP)
 			return;
 
 		FileWriter out = new FileWriter(committing_file, false);
-		out.write(internalDateFormat.format(last_date));
+		out.write(internalDateFormat.format(new Date(last_timestamp)));
 		out.close();
 		
-		last_committed_date = last_date;
+		last_committed_timestamp = last_timestamp;
+		logFile.mark();
 	}
 
 	public void rollback() {
 		LOG.warn("Rolling back...");
 		
-		last_date = last_committed_date;
+		last_timestamp = last_committed_timestamp;
+		
+		if(logFile.reset())
+			return;
 	
-		logFile.close();
+		if(last_timestamp != NO_TIMESTAMP)
+			logFile.seek(last_timestamp);
+		else
+			logFile.close();
 	}
 	
 	public void close() {
 		logFile.close();
 	}
 	
+	public long getRotationsCount() {
+		return logFile.getRotationsCount();
+	}
+	
+	public long getDrainedBytesCount() {
+		return logFile.getDrainedBytesCount();
+	}
+	
+	/**
+	 * @see LogFile#getPendingEventFlushTime()
+	 */
+	public long getPendingEventFlushTime() {
+		return logFile.getPendingEventFlushTime();
+	}
+	
 }
@@ -0,0 +1,399 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.FlumeException;
+import org.apache.flume.conf.Configurable;
+import org.apache.flume.conf.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads events from all log files matching a glob, e.g. /var/log/alert_*.log
+ *
+ * Each file gets its own {@link ReliableLogFileEventReader} and committing file
+ * (committing file name followed by the name of the log file). Files are served
+ * in turns by a bounded pool of threads and new files matching the glob are
+ * picked up periodically. Readers of files which do not match the glob any more
+ * are closed once all their events have been read and committed.
+ *
+ * If the path does not contain a glob, it behaves as a single {@link ReliableLogFileEventReader}.
+ */
+public class ReliableMultiLogFileEventReader implements Configurable {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(ReliableMultiLogFileEventReader.class);
+	
+	public static final int THREADS_DEFAULT = 1;
+	public static final String THREADS_PARAM = "reader.threads";
+	private int threads = THREADS_DEFAULT;
+	
+	public static final long DISCOVERY_INTERVAL_DEFAULT = 10000;
+	public static final String DISCOVERY_INTERVAL_PARAM = "reader.discoveryInterval";
+	private long discovery_interval = DISCOVERY_INTERVAL_DEFAULT;
+	
+	public static final String FILE_HEADER_DEFAULT = "log_file";
+	public static final String FILE_HEADER_PARAM = "reader.fileHeader";
+	private String file_header = FILE_HEADER_DEFAULT;
+	
+	private Context context;
+	
+	private File directory;
+	private String glob;
+	
+	private String committing_file_path;
+	
+	private Map<File, ReliableLogFileEventReader> readers = new LinkedHashMap<File, ReliableLogFileEventReader>();
+	
+	/**
+	 * Files with events read but not committed yet
+	 */
+	private Set<File> uncommitted = new HashSet<File>();
+	
+	/**
+	 * Files which returned less events than requested in last read
+	 */
+	private Set<File> drained = new HashSet<File>();
+	
+	private ExecutorService pool;
+	
+	private long last_discovery_time = 0;
+	
+	/**
+	 * Reader which is served first in next batch
+	 */
+	private int next_reader = 0;
+	
+	@Override
+	public void configure(Context context) {
+		close();
+		
+		String path = context.getString(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM);
+		if(path == null)
+			throw new ConfigurationException("Path to log file needs to be specified with "
+						+ ReliableLogFileEventReader.LOG_FILE_PATH_PARAM);
+		
+		threads = context.getInteger(THREADS_PARAM, THREADS_DEFAULT);
+		if(threads < 1)
+			throw new ConfigurationException(THREADS_PARAM + " must be greater than 0");
+		discovery_interval = context.getLong(DISCOVERY_INTERVAL_PARAM, DISCOVERY_INTERVAL_DEFAULT);
+		file_header = context.getString(FILE_HEADER_PARAM, FILE_HEADER_DEFAULT);
+		committing_file_path = context.getString(ReliableLogFileEventReader.COMMITTING_FILE_PATH_PARAM,
+						ReliableLogFileEventReader.COMMITTING_FILE_PATH_DEFAULT);
+		
+		this.context = context;
+		
+		File file = new File(path);
+		if(isGlob(file.getName())){
+			directory = file.getAbsoluteFile().getParentFile();
+			glob = file.getName();
+			
+			discoverFiles();
+		}else{
+			directory = null;
+			glob = null;
+			
+			ReliableLogFileEventReader reader = new ReliableLogFileEventReader();
+			reader.configure(context);
+			readers.put(file, reader);
+		}
+		
+		if(threads > 1)
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+															.setNameFormat("log-file-reader-%d")
+															.setDaemon(true)
+															.build());
+	}
+	
+	private static boolean isGlob(String name) {
+		return name.contains("*") || name.contains("?") || name.contains("[") || name.contains("{");
+	}
+	
+	/**
+	 * Creates a reader for every file matching the glob which does not have one yet
+	 * and removes readers of files which do not match any more
+	 */
+	private void discoverFiles() {
+		last_discovery_time = System.currentTimeMillis();
+		
+		Set<File> matching = new HashSet<File>();
+		
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), glob)) {
+			for (Path path : stream) {
+				File file = path.toFile();
+				
+				if(!file.isFile())
+					continue;
+				
+				matching.add(file);
+				
+				if(readers.containsKey(file))
+					continue;
+				
+				Context fileContext = new Context(context.getParameters());
+				fileContext.put(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM, file.getPath());
+				fileContext.put(ReliableLogFileEventReader.COMMITTING_FILE_PATH_PARAM, getCommittingFile(file).getPath());
+				
+				ReliableLogFileEventReader reader = new ReliableLogFileEventReader();
+				reader.configure(fileContext);
+				readers.put(file, reader);
+				
+				LOG.info("New log file to read: " + file);
+			}
+		} catch (IOException e) {
+			LOG.error("Error listing log files in " + directory, e);
+			
+			return;
+		}
+		
+		removeReaders(matching);
+	}
+	
+	/**
+	 * Closes readers of files which are not in the given set (deleted or rotated away),
+	 * if all their events have been read and committed, and deletes their committing files
+	 */
+	private void removeReaders(Set<File> matching) {
+		Iterator<Entry<File, ReliableLogFileEventReader>> it = readers.entrySet().iterator();
+		while(it.hasNext()){
+			Entry<File, ReliableLogFileEventReader> entry = it.next();
+			File file = entry.getKey();
+			
+			if(matching.contains(file) || uncommitted.contains(file) || !drained.contains(file))
+				continue;
+			
+			entry.getValue().close();
+			it.remove();
+			drained.remove(file);
+			
+			File committing_file = getCommittingFile(file);
+			if(committing_file.exists() && !committing_file.delete())
+				LOG.warn("Committing file of removed log file could not be deleted: " + committing_file);
+			
+			LOG.info("Log file does not match any more, reader removed: " + file);
+		}
+	}
+	
+	private File getCommittingFile(File file) {
+		return new File(committing_file_path + "." + file.getName());
+	}
+	
+	/**
+	 * Every file gets the same share of the batch (files first in the turn get the remainder).
+	 * Share not used by files with less events is then shared among files which returned their full share,
+	 * so the batch never contains more than numberOfEventToRead events.
+	 */
+	public List<Event> readEvents(int numberOfEventToRead) throws IOException {
+		if(glob != null && System.currentTimeMillis() - last_discovery_time >= discovery_interval)
+			discoverFiles();
+		
+		List<File> files = new ArrayList<File>(readers.keySet());
+		if(files.isEmpty() || numberOfEventToRead <= 0)
+			return new LinkedList<Event>();
+		
+		next_reader = next_reader % files.size();
+		List<File> turn = new ArrayList<File>(files.subList(next_reader, files.size()));
+		turn.addAll(files.subList(0, next_reader));
+		next_reader++;
+		
+		LinkedList<Event> events = new LinkedList<Event>();
+		
+		int[] shares = share(numberOfEventToRead, turn.size());
+		List<List<Event>> read = read(turn, shares);
+		
+		List<File> busy = new ArrayList<File>();
+		for (int i = 0; i < turn.size(); i++) {
+			events.addAll(read.get(i));
+			
+			if(shares[i] > 0 && read.get(i).size() == shares[i])
+				busy.add(turn.get(i));
+		}
+		
+		int unused = numberOfEventToRead - events.size();
+		if(unused > 0 && !busy.isEmpty()){
+			read = read(busy, share(unused, busy.size()));
+			
+			for (List<Event> fileEvents : read)
+				events.addAll(fileEvents);
+		}
+		
+		LOG.debug("Number of events returned from " + files.size() + " files: " + events.size());
+		
+		return events;
+	}
+	
+	private static int[] share(int numberOfEvents, int numberOfFiles) {
+		int[] shares = new int[numberOfFiles];
+		
+		for (int i = 0; i < numberOfFiles; i++)
+			shares[i] = numberOfEvents / numberOfFiles + (i < numberOfEvents % numberOfFiles ? 1 : 0);
+		
+		return shares;
+	}
+	
+	/**
+	 * Reads from each file its share of events, in parallel if there is a pool
+	 *
+	 * @return events read from each file, in the order of files
+	 */
+	private List<List<Event>> read(List<File> files, int[] shares) throws IOException {
+		List<Callable<List<Event>>> tasks = new ArrayList<Callable<List<Event>>>();
+		for (int i = 0; i < files.size(); i++) {
+			final File file = files.get(i);
+			final ReliableLogFileEventReader reader = readers.get(file);
+			final int share = shares[i];
+			
+			tasks.add(new Callable<List<Event>>() {
+				@Override
+				public List<Event> call() throws Exception {
+					if(share == 0)
+						return new LinkedList<Event>();
+					
+					List<Event> events = reader.readEvents(share);
+					
+					if(glob != null)
+						for (Event event : events)
+							event.getHeaders().put(file_header, file.getPath());
+					
+					return events;
+				}
+			});
+		}
+		
+		List<List<Event>> read = new ArrayList<List<Event>>(tasks.size());
+		
+		if(pool == null || tasks.size() == 1){
+			for (Callable<List<Event>> task : tasks) {
+				try {
+					read.add(task.call());
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new FlumeException(e);
+				}
+			}
+		}else{
+			try {
+				for (Future<List<Event>> future : pool.invokeAll(tasks))
+					read.add(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				
+				throw new FlumeException("Interrupted while reading log files", e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				
+				throw new FlumeException(e.getCause());
+			}
+		}
+		
+		for (int i = 0; i < files.size(); i++) {
+			if(shares[i] == 0)
+				continue;
+		
+			File file = files.get(i);
+			
+			if(!read.get(i).isEmpty())
+				uncommitted.add(file);
+			
+			if(read.get(i).size() < shares[i])
+				drained.add(file);
+			else
+				drained.remove(file);
+		}
+		
+		return read;
+	}
+	
+	public void commit() throws IOException {
+		for (ReliableLogFileEventReader reader : readers.values())
+			reader.commit();
+		
+		uncommitted.clear();
+	}
+	
+	public void rollback() {
+		for (ReliableLogFileEventReader reader : readers.values())
+			reader.rollback();
+		
+		//Events will be read again
+		uncommitted.clear();
+		drained.clear();
+	}
+	
+	public void close() {
+		for (ReliableLogFileEventReader reader : readers.values())
+			reader.close();
+		readers.clear();
+		uncommitted.clear();
+		drained.clear();
+		
+		if(pool != null){
+			pool.shutdownNow();
+			pool = null;
+		}
+	}
+	
+	public int getNumberOfFiles() {
+		return readers.size();
+	}
+	
+	public long getRotationsCount() {
+		long count = 0;
+		for (ReliableLogFileEventReader reader : readers.values())
+			count += reader.getRotationsCount();
+		
+		return count;
+	}
+	
+	public long getDrainedBytesCount() {
+		long count = 0;
+		for (ReliableLogFileEventReader reader : readers.values())
+			count += reader.getDrainedBytesCount();
+		
+		return count;
+	}
+
+	/**
+	 * @return earliest time at which an event waiting for more lines is produced, 
+	 * Long.MAX_VALUE if there is no event waiting
+	 */
+	public long getPendingEventFlushTime() {
+		long time = Long.MAX_VALUE;
+		for (ReliableLogFileEventReader reader : readers.values())
+			time = Math.min(time, reader.getPendingEventFlushTime());
+		
+		return time;
+	}
+
+}
@@ -19,19 +19,13 @@
 
 package ch.cern.db.flume.source.reader;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Pattern;
 
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -40,7 +34,6 @@ import org.apache.flume.annotations.InterfaceAudience;
 import org.apache.flume.annotations.InterfaceStability;
 import org.apache.flume.client.avro.ReliableEventReader;
 import org.apache.flume.serialization.DecodeErrorPolicy;
-import org.apache.flume.serialization.DurablePositionTracker;
 import org.apache.flume.serialization.EventDeserializer;
 import org.apache.flume.serialization.EventDeserializerFactory;
 import org.apache.flume.serialization.PositionTracker;
@@ -58,6 +51,9 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.io.Files;
 
+import ch.cern.db.flume.source.reader.inuse.FileInUseDetector;
+import ch.cern.db.utils.Compression;
+
 /**
  * <p/>
  * A {@link ReliableEventReader} which reads log data from files stored in a
@@ -91,15 +87,15 @@ import com.google.common.io.Files;
 public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 
 	private static final Logger logger = LoggerFactory.getLogger(ReliableSpoolingFileEventReader.class);
-
-	static final String metaFileName = ".flumespool-main.meta";
+	
+	/** Added to the context of deserializers with the absolute path of the file they read **/
+	public static final String DESERIALIZER_FILE_PATH_KEY = "filePath";
 
 	private final File spoolDirectory;
 	private final String completedSuffix;
 	private final String deserializerType;
 	private final Context deserializerContext;
-	private final Pattern ignorePattern;
-	private final File metaFile;
+	private final PositionStore positionStore;
 	private final boolean annotateFileName;
 	private final boolean annotateBaseName;
 	private final String fileNameHeader;
@@ -107,29 +103,33 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 	private final String deletePolicy;
 	private final Charset inputCharset;
 	private final DecodeErrorPolicy decodeErrorPolicy;
-	private final ConsumeOrder consumeOrder;
+	/** Files which can be consumed, shared by readers of the same directory **/
+	private final SpoolDirectoryCandidates candidates;
+	/** True if candidates were created for this reader, so they are closed with it **/
+	private final boolean ownCandidates;
+	/** Retires completed files with delete policy DELAY **/
+	private final CompletedFilesSweeper completedFilesSweeper;
+	/** File which was being consumed when stopped, it is resumed first **/
+	private File resumeFile = null;
 
 	private Optional<FileInfo> currentFile = Optional.absent();
 	/** Always contains the last file from which lines have been read. **/
 	private Optional<FileInfo> lastFileRead = Optional.absent();
 	private boolean committed = true;
 
-	/** Instance var to Cache directory listing **/
-	private Iterator<File> candidateFileIter = null;
-	private int listFilesCount = 0;
-
 	/**
 	 * Create a ReliableSpoolingFileEventReader to watch the given directory.
 	 */
-	private ReliableSpoolingFileEventReader(File spoolDirectory, String completedSuffix, String ignorePattern,
+	private ReliableSpoolingFileEventReader(File spoolDirectory, String completedSuffix,
 			String trackerDirPath, boolean annotateFileName, String fileNameHeader, boolean annotateBaseName,
 			String baseNameHeader, String deserializerType, Context deserializerContext, String deletePolicy,
-			String inputCharset, DecodeErrorPolicy decodeErrorPolicy, ConsumeOrder consumeOrder) throws IOException {
+			String inputCharset, DecodeErrorPolicy decodeErrorPolicy, SpoolDirectoryCandidates candidates,
+			boolean ownCandidates, PositionStore positionStore, CompletedFilesSweeper completedFilesSweeper)
+			throws IOException {
 
 		// Sanity checks
 		Preconditions.checkNotNull(spoolDirectory);
 		Preconditions.checkNotNull(completedSuffix);
-		Preconditions.checkNotNull(ignorePattern);
 		Preconditions.checkNotNull(trackerDirPath);
 		Preconditions.checkNotNull(deserializerType);
 		Preconditions.checkNotNull(deserializerContext);
@@ -138,9 +138,13 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 
 		// validate delete policy
 		if (!deletePolicy.equalsIgnoreCase(DeletePolicy.NEVER.name())
-				&& !deletePolicy.equalsIgnoreCase(DeletePolicy.IMMEDIATE.name())) {
+				&& !deletePolicy.equalsIgnoreCase(DeletePolicy.IMMEDIATE.name())
+				&& !deletePolicy.equalsIgnoreCase(DeletePolicy.DELAY.name())) {
 			throw new IllegalArgumentException(
-					"Delete policies other than " + "NEVER and IMMEDIATE are not yet supported");
+					"Delete policies other than " + "NEVER, IMMEDIATE and DELAY are not supported");
+		}
+		if (deletePolicy.equalsIgnoreCase(DeletePolicy.DELAY.name()) && completedFilesSweeper == null) {
+			throw new IllegalArgumentException("Delete policy DELAY requires a sweeper of completed files");
 		}
 
 		if (logger.isDebugEnabled()) {
@@ -178,11 +182,12 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 		this.fileNameHeader = fileNameHeader;
 		this.annotateBaseName = annotateBaseName;
 		this.baseNameHeader = baseNameHeader;
-		this.ignorePattern = Pattern.compile(ignorePattern);
 		this.deletePolicy = deletePolicy;
 		this.inputCharset = Charset.forName(inputCharset);
 		this.decodeErrorPolicy = Preconditions.checkNotNull(decodeErrorPolicy);
-		this.consumeOrder = Preconditions.checkNotNull(consumeOrder);
+		this.candidates = Preconditions.checkNotNull(candidates);
+		this.ownCandidates = ownCandidates;
+		this.completedFilesSweeper = completedFilesSweeper;
 
 		File trackerDirectory = new File(trackerDirPath);
 
@@ -203,15 +208,32 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 			throw new IOException("Specified meta directory is not a directory" + trackerDirectory);
 		}
 
-		this.metaFile = new File(trackerDirectory, metaFileName);
-		if (metaFile.exists() && metaFile.length() == 0) {
-			deleteMetaFile();
+		this.positionStore = positionStore != null ? positionStore : new PositionStore(trackerDirectory);
+		
+		claimResumeFile();
+	}
+	
+	/**
+	 * A file which was being consumed when stopped is claimed, so it is resumed first
+	 * and no other reader starts consuming it. Positions of files which do not exist
+	 * anymore are removed.
+	 */
+	private void claimResumeFile() throws IOException {
+		for (String target : positionStore.getTargets()) {
+			File file = new File(target);
+			
+			if (!file.exists()) {
+				positionStore.remove(target);
+			} else if (candidates.claim(file)) {
+				resumeFile = file;
+				return;
+			}
 		}
 	}
-
+	
 	@VisibleForTesting
 	int getListFilesCount() {
-		return listFilesCount;
+		return candidates.getListFilesCount();
 	}
 
 	/**
@@ -295,8 +317,17 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 	public void close() throws IOException {
 		if (currentFile.isPresent()) {
 			currentFile.get().getDeserializer().close();
+			candidates.release(currentFile.get().getFile());
 			currentFile = Optional.absent();
 		}
+		if (resumeFile != null) {
+			candidates.release(resumeFile);
+			resumeFile = null;
+		}
+		
+		if (ownCandidates) {
+			candidates.close();
+		}
 	}
 
 	/** Commit the last lines which were read. */
@@ -336,13 +367,21 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 			throw new IllegalStateException(message);
 		}
 
-		if (deletePolicy.equalsIgnoreCase(DeletePolicy.NEVER.name())) {
-			rollCurrentFile(fileToRoll);
-		} else if (deletePolicy.equalsIgnoreCase(DeletePolicy.IMMEDIATE.name())) {
-			deleteCurrentFile(fileToRoll);
-		} else {
-			// TODO: implement delay in the future
-			throw new IllegalArgumentException("Unsupported delete policy: " + deletePolicy);
+		try {
+			if (deletePolicy.equalsIgnoreCase(DeletePolicy.NEVER.name())) {
+				rollCurrentFile(fileToRoll);
+			} else if (deletePolicy.equalsIgnoreCase(DeletePolicy.IMMEDIATE.name())) {
+				deleteCurrentFile(fileToRoll);
+			} else if (deletePolicy.equalsIgnoreCase(DeletePolicy.DELAY.name())) {
+				// deleted by the sweeper once retention expires
+				rollCurrentFile(fileToRoll);
+				completedFilesSweeper.add(new File(fileToRoll.getPath() + completedSuffix));
+			} else {
+				throw new IllegalArgumentException("Unsupported delete policy: " + deletePolicy);
+			}
+		} finally {
+			// other readers can take it only once it is not there anymore
+			candidates.release(currentFile.get().getFile());
 		}
 	}
 
@@ -392,8 +431,8 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 			if (renamed) {
 				logger.debug("Successfully rolled file {} to {}", fileToRoll, dest);
 
-				// now we no longer need the meta file
-				deleteMetaFile();
+				// now we no longer need the position
+				positionStore.remove(currentFile.get().getFile().getPath());
 			} else {
 				/*
 				 * If we are here then the file cannot be renamed for a reason
@@ -424,125 +463,40 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 		if (!fileToDelete.delete()) {
 			throw new IOException("Unable to delete spool file: " + fileToDelete);
 		}
-		// now we no longer need the meta file
-		deleteMetaFile();
+		// now we no longer need the position
+		positionStore.remove(currentFile.get().getFile().getPath());
 	}
 
 	/**
-	 * Returns the next file to be consumed from the chosen directory. If the
-	 * directory is empty or the chosen file is not readable, this will return
-	 * an absent option. If the {@link #consumeOrder} variable is
-	 * {@link ConsumeOrder#OLDEST} then returns the oldest file. If the
-	 * {@link #consumeOrder} variable is {@link ConsumeOrder#YOUNGEST} then
-	 * returns the youngest file. If two or more files are equally old/young,
-	 * then the file name with lower lexicographical value is returned. If the
-	 * {@link #consumeOrder} variable is {@link ConsumeOrder#RANDOM} then cache
-	 * the directory listing to amortize retreival cost, and return any arbitary
-	 * file from the directory.
+	 * Returns the next file to be consumed from the chosen directory, taken from
+	 * the candidates (see {@link SpoolDirectoryCandidates#take()}). If the directory
+	 * is empty or the chosen file is not readable, this will return an absent option.
+	 * A file which was being consumed when stopped is resumed first.
 	 */
 	private Optional<FileInfo> getNextFile() {
-		List<File> candidateFiles = Collections.emptyList();
-		
-		if (consumeOrder != ConsumeOrder.RANDOM || candidateFileIter == null || !candidateFileIter.hasNext()) {
-			/* Filter to exclude finished or hidden files */
-			FileFilter filter = new FileFilter() {
-				public boolean accept(File candidate) {
-					String fileName = candidate.getName();
-					if ((candidate.isDirectory()) 
-							|| (fileName.endsWith(completedSuffix)) 
-							|| (fileName.startsWith("."))
-							|| ignorePattern.matcher(fileName).matches()) {
-						logger.debug("Skipped file: " + candidate.getAbsolutePath());
-						
-						return false;
-					}
-					
-					if(isFileOpen(candidate)){
-						logger.debug("File is still open: " + candidate.getAbsolutePath());
-						
-						return false;
-					}
-					
-					return true;
-				}
-			};
-			candidateFiles = Arrays.asList(spoolDirectory.listFiles(filter));
-			listFilesCount++;
-			candidateFileIter = candidateFiles.iterator();
+		if (resumeFile != null) {
+			File file = resumeFile;
+			resumeFile = null;
+			
+			Optional<FileInfo> fileInfo = openFile(file);
+			if (fileInfo.isPresent()) {
+				return fileInfo;
+			}
+			candidates.release(file);
 		}
-
-		if (!candidateFileIter.hasNext()) { // No matching file in spooling
-											// directory.
+		
+		File file = candidates.take();
+		if (file == null) { // No matching file in spooling directory.
 			return Optional.absent();
 		}
-
-		File selectedFile = candidateFileIter.next();
-		if (consumeOrder == ConsumeOrder.RANDOM) { // Selected file is random.
-			return openFile(selectedFile);
-		} else if (consumeOrder == ConsumeOrder.YOUNGEST) {
-			for (File candidateFile : candidateFiles) {
-				long compare = selectedFile.lastModified() - candidateFile.lastModified();
-				if (compare == 0) { // ts is same pick smallest
-									// lexicographically.
-					selectedFile = smallerLexicographical(selectedFile, candidateFile);
-				} else if (compare < 0) { // candidate is younger (cand-ts >
-											// selec-ts)
-					selectedFile = candidateFile;
-				}
-			}
-		} else { // default order is OLDEST
-			for (File candidateFile : candidateFiles) {
-				long compare = selectedFile.lastModified() - candidateFile.lastModified();
-				if (compare == 0) { // ts is same pick smallest
-									// lexicographically.
-					selectedFile = smallerLexicographical(selectedFile, candidateFile);
-				} else if (compare > 0) { // candidate is older (cand-ts <
-											// selec-ts).
-					selectedFile = candidateFile;
-				}
-			}
+			
+		Optional<FileInfo> fileInfo = openFile(file);
+		if (!fileInfo.isPresent()) {
+			// examined again with next refresh
+			candidates.release(file);
 		}
 
-		return openFile(selectedFile);
-	}
-
-	protected boolean isFileOpen(File candidate) {
-		BufferedReader reader = null;
-		Process plsof = null;
-		
-		try {
-	        plsof = new ProcessBuilder(new String[]{
-	        		"lsof", "|", "grep", candidate.getAbsolutePath()}).start();
-	        reader = new BufferedReader(new InputStreamReader(plsof.getInputStream()));
-	        String line;
-	        while((line=reader.readLine())!=null) {
-	            if(line.contains(candidate.getAbsolutePath())) {                            
-	                reader.close();
-	                plsof.destroy();
-	                
-	                return true;
-	            }
-	        }
-	    }catch(Exception ex) {
-	        logger.error("When checking: " + candidate.getAbsolutePath() + " " + ex.getMessage(), ex);
-	        
-	        return true;
-	    }finally{
-	    	try {
-				reader.close();
-			} catch (IOException e) {
-			}
-		    plsof.destroy();
-	    }
-	    
-	    return false;
-	}
-
-	private File smallerLexicographical(File f1, File f2) {
-		if (f1.getName().compareTo(f2.getName()) < 0) {
-			return f1;
-		}
-		return f2;
+		return fileInfo;
 	}
 
 	/**
@@ -554,22 +508,21 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 	 */
 	private Optional<FileInfo> openFile(File file) {
 		try {
-			// roll the meta file, if needed
+			// resumes from stored position, if any
 			String nextPath = file.getPath();
-			PositionTracker tracker = DurablePositionTracker.getInstance(metaFile, nextPath);
-			if (!tracker.getTarget().equals(nextPath)) {
-				tracker.close();
-				deleteMetaFile();
-				tracker = DurablePositionTracker.getInstance(metaFile, nextPath);
-			}
-
-			// sanity check
-			Preconditions.checkState(tracker.getTarget().equals(nextPath),
-					"Tracker target %s does not equal expected filename %s", tracker.getTarget(), nextPath);
-
-			ResettableInputStream in = new ResettableFileInputStream(file, tracker,
-					ResettableFileInputStream.DEFAULT_BUF_SIZE, inputCharset, decodeErrorPolicy);
-			EventDeserializer deserializer = EventDeserializerFactory.getInstance(deserializerType, deserializerContext,
+			PositionTracker tracker = positionStore.getTracker(nextPath);
+
+			ResettableInputStream in;
+			Compression compression = Compression.detect(file);
+			if(compression == Compression.NONE)
+				in = new ResettableFileInputStream(file, tracker,
+						ResettableFileInputStream.DEFAULT_BUF_SIZE, inputCharset, decodeErrorPolicy);
+			else
+				in = new CompressedResettableInputStream(file, tracker, compression,
+						ResettableFileInputStream.DEFAULT_BUF_SIZE, inputCharset, decodeErrorPolicy);
+			Context fileDeserializerContext = new Context(deserializerContext.getParameters());
+			fileDeserializerContext.put(DESERIALIZER_FILE_PATH_KEY, file.getAbsolutePath());
+			EventDeserializer deserializer = EventDeserializerFactory.getInstance(deserializerType, fileDeserializerContext,
 					in);
 
 			return Optional.of(new FileInfo(file, deserializer));
@@ -583,12 +536,6 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 		}
 	}
 
-	private void deleteMetaFile() throws IOException {
-		if (metaFile.exists() && !metaFile.delete()) {
-			throw new IOException("Unable to delete old meta file " + metaFile);
-		}
-	}
-
 	/** An immutable class with information about a file being processed. */
 	private static class FileInfo {
 		private final File file;
@@ -619,7 +566,7 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 			return file;
 		}
 	}
-
+	
 	@InterfaceAudience.Private
 	@InterfaceStability.Unstable
 	static enum DeletePolicy {
@@ -645,6 +592,13 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 		private DecodeErrorPolicy decodeErrorPolicy = DecodeErrorPolicy.valueOf(
 				SpoolDirectorySourceConfigurationConstants.DEFAULT_DECODE_ERROR_POLICY.toUpperCase(Locale.ENGLISH));
 		private ConsumeOrder consumeOrder = SpoolDirectorySourceConfigurationConstants.DEFAULT_CONSUME_ORDER;
+		private FileInUseDetector fileInUseDetector = null;
+		private PositionStore positionStore = null;
+		private boolean recursive = false;
+		private String includePattern = ".*";
+		private String excludePattern = "^$";
+		private SpoolDirectoryCandidates candidates = null;
+		private CompletedFilesSweeper completedFilesSweeper = null;
 
 		public Builder spoolDirectory(File directory) {
 			this.spoolDirectory = directory;
@@ -716,10 +670,77 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 			return this;
 		}
 
+		public Builder fileInUseDetector(FileInUseDetector fileInUseDetector) {
+			this.fileInUseDetector = fileInUseDetector;
+			return this;
+		}
+		
+		/**
+		 * Store of positions, readers consuming the same directory in parallel must share it.
+		 * If not set, the one of the tracker directory is used.
+		 */
+		public Builder positionStore(PositionStore positionStore) {
+			this.positionStore = positionStore;
+			return this;
+		}
+		
+		/**
+		 * Consume also files in subdirectories (not hidden)
+		 */
+		public Builder recursive(boolean recursive) {
+			this.recursive = recursive;
+			return this;
+		}
+		
+		/**
+		 * Only files whose path, relative to spooling directory, matches are consumed
+		 */
+		public Builder includePattern(String includePattern) {
+			this.includePattern = includePattern;
+			return this;
+		}
+		
+		/**
+		 * Files and directories whose path, relative to spooling directory, matches are skipped
+		 */
+		public Builder excludePattern(String excludePattern) {
+			this.excludePattern = excludePattern;
+			return this;
+		}
+		
+		/**
+		 * Candidates shared by readers consuming the same directory in parallel, a file is 
+		 * only consumed by one of them. If not set, candidates are created for this reader 
+		 * with the configured patterns, consume order and in-use detector.
+		 */
+		public Builder candidates(SpoolDirectoryCandidates candidates) {
+			this.candidates = candidates;
+			return this;
+		}
+		
+		/**
+		 * Required with delete policy DELAY, can be shared by readers of the same directory.
+		 */
+		public Builder completedFilesSweeper(CompletedFilesSweeper completedFilesSweeper) {
+			this.completedFilesSweeper = completedFilesSweeper;
+			return this;
+		}
+		
 		public ReliableSpoolingFileEventReader build() throws IOException {
-			return new ReliableSpoolingFileEventReader(spoolDirectory, completedSuffix, ignorePattern, trackerDirPath,
+			boolean ownCandidates = candidates == null;
+			SpoolDirectoryCandidates readerCandidates = candidates;
+			if (ownCandidates) {
+				readerCandidates = new SpoolDirectoryCandidates.Builder()
+						.spoolDirectory(spoolDirectory).completedSuffix(completedSuffix).ignorePattern(ignorePattern)
+						.recursive(recursive).includePattern(includePattern).excludePattern(excludePattern)
+						.consumeOrder(consumeOrder).fileInUseDetector(fileInUseDetector)
+						.build();
+			}
+			
+			return new ReliableSpoolingFileEventReader(spoolDirectory, completedSuffix, trackerDirPath,
 					annotateFileName, fileNameHeader, annotateBaseName, baseNameHeader, deserializerType,
-					deserializerContext, deletePolicy, inputCharset, decodeErrorPolicy, consumeOrder);
+					deserializerContext, deletePolicy, inputCharset, decodeErrorPolicy, readerCandidates,
+					ownCandidates, positionStore, completedFilesSweeper);
 		}
 	}
 
@@ -0,0 +1,661 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.flume.Context;
+import org.apache.flume.source.SpoolDirectorySourceConfigurationConstants;
+import org.apache.flume.source.SpoolDirectorySourceConfigurationConstants.ConsumeOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import ch.cern.db.flume.source.reader.inuse.FileInUseDetector;
+import ch.cern.db.flume.source.reader.inuse.FileInUseDetectorFactory;
+
+/**
+ * Files of a spooling directory which can be consumed, shared by the readers consuming the directory.
+ *
+ * Candidates are kept in a queue ordered by consume order, which is updated with the changes
+ * of the directory (see {@link #refresh()}), so files are not listed and examined again for every
+ * file which is consumed. A file taken by a reader is not given to any other reader till it is released.
+ *
+ * All methods are synchronized, so readers can run in parallel.
+ */
+public class SpoolDirectoryCandidates {
+	
+	private static final Logger logger = LoggerFactory.getLogger(SpoolDirectoryCandidates.class);
+	
+	/** Files in use are checked again (and directory listed if not watched) at this interval **/
+	private static final long RECHECK_INTERVAL_MS = 500;
+	
+	/** Watched directory is listed at this interval, changes made from other hosts (NFS) are not notified **/
+	private static final long WATCHED_LISTING_INTERVAL_MS = 30000;
+	
+	private final File spoolDirectory;
+	private final String completedSuffix;
+	private final Pattern ignorePattern;
+	private final boolean recursive;
+	private final Pattern includePattern;
+	private final Pattern excludePattern;
+	private final FileInUseDetector fileInUseDetector;
+	
+	/** Files which can be consumed, ordered by consume order **/
+	private final Queue<Candidate> candidates;
+	/** Files (and directories) which have been examined, by path relative to spooling directory **/
+	private final Map<String, Candidate> knownFiles = new HashMap<String, Candidate>();
+	/** Paths of files which have to be examined with next refresh **/
+	private final Set<String> pathsToCheck = new HashSet<String>();
+	private WatchService watchService = null;
+	private boolean watchable = true;
+	/** Relative paths of the watched directories **/
+	private final Map<WatchKey, String> watchedDirectories = new HashMap<WatchKey, String>();
+	private boolean listingNeeded = true;
+	private long lastListingTime = 0;
+	private long lastPendingCheckTime = 0;
+	private int listFilesCount = 0;
+	
+	/** Time spent and number of files checked by {@link #fileInUseDetector} **/
+	private long inUseCheckNanos = 0;
+	private long inUseChecksCount = 0;
+	
+	private SpoolDirectoryCandidates(File spoolDirectory, String completedSuffix, String ignorePattern,
+			boolean recursive, String includePattern, String excludePattern, ConsumeOrder consumeOrder,
+			FileInUseDetector fileInUseDetector) {
+		Preconditions.checkNotNull(spoolDirectory);
+		Preconditions.checkNotNull(completedSuffix);
+		Preconditions.checkNotNull(ignorePattern);
+		Preconditions.checkNotNull(includePattern);
+		Preconditions.checkNotNull(excludePattern);
+		Preconditions.checkNotNull(consumeOrder);
+		
+		this.spoolDirectory = spoolDirectory;
+		this.completedSuffix = completedSuffix;
+		this.ignorePattern = Pattern.compile(ignorePattern);
+		this.recursive = recursive;
+		this.includePattern = Pattern.compile(includePattern);
+		this.excludePattern = Pattern.compile(excludePattern);
+		this.fileInUseDetector = Preconditions.checkNotNull(fileInUseDetector);
+		
+		if (consumeOrder == ConsumeOrder.RANDOM) {
+			this.candidates = new ArrayDeque<Candidate>();
+		} else {
+			this.candidates = new PriorityQueue<Candidate>(11, new CandidateComparator(consumeOrder));
+		}
+	}
+	
+	/**
+	 * Takes the next file to be consumed, no other reader gets it till it is released.
+	 *
+	 * If the consume order is {@link ConsumeOrder#OLDEST} it is the oldest file, if it is
+	 * {@link ConsumeOrder#YOUNGEST} the youngest file. If two or more files are equally old/young,
+	 * the file with lower lexicographical value of the path is taken. If it is
+	 * {@link ConsumeOrder#RANDOM} any file is taken.
+	 *
+	 * @return null if there is no file to consume
+	 */
+	public synchronized File take() {
+		refresh();
+		
+		Candidate candidate;
+		while ((candidate = candidates.poll()) != null) {
+			if (!candidate.file.exists()) {
+				knownFiles.remove(candidate.path);
+				continue;
+			}
+			
+			// it may be still being written, it is examined again with next refresh
+			if (hasChanged(candidate)) {
+				knownFiles.remove(candidate.path);
+				pathsToCheck.add(candidate.path);
+				continue;
+			}
+			
+			candidate.state = CandidateState.CONSUMING;
+			
+			return candidate.file;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Takes a file which was being consumed when stopped, so it is resumed
+	 *
+	 * @return false if it is being consumed by other reader
+	 */
+	public synchronized boolean claim(File file) {
+		String path = relativePath(file);
+		
+		Candidate candidate = knownFiles.get(path);
+		if (candidate != null && candidate.state == CandidateState.CONSUMING) {
+			return false;
+		}
+		
+		forget(path);
+		pathsToCheck.remove(path);
+		
+		candidate = new Candidate(path, file);
+		candidate.state = CandidateState.CONSUMING;
+		knownFiles.put(path, candidate);
+		
+		return true;
+	}
+	
+	/**
+	 * Gives back a file which is not consumed anymore, it is examined again with next refresh
+	 * (if it has been completed, it is not there anymore).
+	 */
+	public synchronized void release(File file) {
+		String path = relativePath(file);
+		
+		Candidate candidate = knownFiles.get(path);
+		if (candidate != null && candidate.state == CandidateState.CONSUMING) {
+			knownFiles.remove(path);
+			pathsToCheck.add(path);
+		}
+	}
+	
+	/**
+	 * Brings candidates up to date with the changes in the spooling directory
+	 * (and its subdirectories if {@link #recursive}).
+	 *
+	 * Changes are received from a {@link WatchService}, the directory is listed the first time,
+	 * if events have been lost and every {@link #WATCHED_LISTING_INTERVAL_MS}. If the directory
+	 * can not be watched, it is listed when there are no candidates or every {@link #RECHECK_INTERVAL_MS}.
+	 * Only new or modified files are examined (attributes and if they are in use), files
+	 * which were in use are checked again every {@link #RECHECK_INTERVAL_MS}.
+	 */
+	synchronized void refresh() {
+		long now = System.currentTimeMillis();
+		
+		if (watchService == null && watchable) {
+			startWatching();
+		}
+		
+		if (watchService != null) {
+			pollDirectoryChanges();
+			
+			if (now - lastListingTime >= WATCHED_LISTING_INTERVAL_MS) {
+				listingNeeded = true;
+			}
+		} else if (candidates.isEmpty() || now - lastListingTime >= RECHECK_INTERVAL_MS) {
+			listingNeeded = true;
+		}
+		
+		if (listingNeeded) {
+			listDirectory();
+			lastListingTime = now;
+		}
+		
+		if (candidates.isEmpty() || now - lastPendingCheckTime >= RECHECK_INTERVAL_MS) {
+			for (Candidate candidate : knownFiles.values()) {
+				if (candidate.state == CandidateState.IN_USE) {
+					pathsToCheck.add(candidate.path);
+				}
+			}
+			lastPendingCheckTime = now;
+		}
+		
+		boolean inUseDetectorRefreshed = false;
+		while (!pathsToCheck.isEmpty()) {
+			// examining directories adds their content
+			List<String> paths = new ArrayList<String>(pathsToCheck);
+			pathsToCheck.clear();
+			
+			for (String path : paths) {
+				forget(path);
+				
+				File file = new File(spoolDirectory, path);
+				Candidate candidate = new Candidate(path, file);
+				knownFiles.put(path, candidate);
+				
+				String name = file.getName();
+				if (name.startsWith(".") || excludePattern.matcher(path).matches()) {
+					logger.debug("Skipped file: " + file.getAbsolutePath());
+					
+					candidate.state = CandidateState.IGNORED;
+					continue;
+				}
+				
+				if (file.isDirectory()) {
+					if (recursive) {
+						candidate.state = CandidateState.DIRECTORY;
+						
+						watch(path);
+						listDirectory(path, null);
+					} else {
+						candidate.state = CandidateState.IGNORED;
+					}
+					continue;
+				}
+				
+				if (name.endsWith(completedSuffix)
+						|| ignorePattern.matcher(name).matches()
+						|| !includePattern.matcher(path).matches()) {
+					logger.debug("Skipped file: " + file.getAbsolutePath());
+					
+					candidate.state = CandidateState.IGNORED;
+					continue;
+				}
+				
+				if (!file.exists()) {
+					knownFiles.remove(path);
+					continue;
+				}
+				
+				if (!inUseDetectorRefreshed) {
+					long start = System.nanoTime();
+					fileInUseDetector.refresh(spoolDirectory);
+					inUseCheckNanos += System.nanoTime() - start;
+					
+					inUseDetectorRefreshed = true;
+				}
+				
+				if (isFileOpen(file)) {
+					logger.debug("File is still open: " + file.getAbsolutePath());
+					
+					candidate.state = CandidateState.IN_USE;
+					continue;
+				}
+				
+				candidate.lastModified = file.lastModified();
+				candidate.length = file.length();
+				candidate.state = CandidateState.QUEUED;
+				candidates.add(candidate);
+			}
+		}
+	}
+	
+	private void startWatching() {
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException e) {
+			logger.warn("Spooling directory " + spoolDirectory + " can not be watched, it will be listed periodically", e);
+			
+			watchable = false;
+			return;
+		}
+		
+		if (!watch("")) {
+			return;
+		}
+		
+		// subdirectories are watched again once examined
+		for (String path : new ArrayList<String>(knownFiles.keySet())) {
+			Candidate candidate = knownFiles.get(path);
+			if (candidate != null && candidate.state == CandidateState.DIRECTORY) {
+				forget(path);
+			}
+		}
+		
+		// changes before watching started are not known
+		listingNeeded = true;
+	}
+	
+	/**
+	 * @param path relative path of the directory, empty for the spooling directory
+	 * @return false if it can not be watched, then the spooling directory will be listed periodically
+	 */
+	private boolean watch(String path) {
+		if (watchService == null) {
+			return false;
+		}
+		
+		File directory = new File(spoolDirectory, path);
+		try {
+			WatchKey key = directory.toPath().register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+			watchedDirectories.put(key, path);
+			
+			return true;
+		} catch (IOException e) {
+			logger.warn("Directory " + directory + " can not be watched, spooling directory will be listed periodically", e);
+			
+			stopWatching();
+			watchable = false;
+			
+			return false;
+		}
+	}
+	
+	private void stopWatching() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+			}
+		}
+		
+		watchService = null;
+		watchedDirectories.clear();
+	}
+	
+	private void pollDirectoryChanges() {
+		WatchKey key;
+		while (watchService != null && (key = watchService.poll()) != null) {
+			String directory = watchedDirectories.get(key);
+			
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == OVERFLOW) {
+					listingNeeded = true;
+					continue;
+				}
+				
+				String path = directory == null || directory.isEmpty()
+						? event.context().toString()
+						: directory + "/" + event.context();
+				if (event.kind() == ENTRY_DELETE) {
+					forget(path);
+					continue;
+				}
+				
+				// files in use are checked again periodically
+				Candidate candidate = knownFiles.get(path);
+				if (candidate == null
+						|| (candidate.state != CandidateState.IN_USE
+							&& candidate.state != CandidateState.CONSUMING
+							&& candidate.state != CandidateState.DIRECTORY)) {
+					pathsToCheck.add(path);
+				}
+			}
+			
+			if (!key.reset()) {
+				watchedDirectories.remove(key);
+				
+				if (directory == null || directory.isEmpty()) {
+					logger.warn("Spooling directory " + spoolDirectory + " can not be watched anymore");
+					
+					stopWatching();
+					listingNeeded = true;
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Lists names of files in the directory (and subdirectories if {@link #recursive}),
+	 * files which were not known or which have changed since being queued are examined
+	 */
+	private void listDirectory() {
+		listFilesCount++;
+		listingNeeded = false;
+		
+		Set<String> listed = new HashSet<String>();
+		if (!listDirectory("", listed)) {
+			return;
+		}
+		
+		for (String path : new ArrayList<String>(knownFiles.keySet())) {
+			if (!listed.contains(path)) {
+				forget(path);
+			}
+		}
+	}
+	
+	/**
+	 * @param path relative path of directory to list
+	 * @param listed paths found are added here, null if subdirectories must not be listed
+	 * @return false if directory could not be listed
+	 */
+	private boolean listDirectory(String path, Set<String> listed) {
+		File directory = new File(spoolDirectory, path);
+		String[] names = directory.list();
+		
+		if (names == null) {
+			logger.error("Directory " + directory + " could not be listed");
+			return false;
+		}
+		
+		for (String name : names) {
+			String childPath = path.isEmpty() ? name : path + "/" + name;
+			
+			Candidate candidate = knownFiles.get(childPath);
+			if (candidate == null
+					|| (candidate.state == CandidateState.QUEUED && hasChanged(candidate))) {
+				pathsToCheck.add(childPath);
+			}
+			
+			if (listed != null) {
+				listed.add(childPath);
+				
+				if (candidate != null && candidate.state == CandidateState.DIRECTORY) {
+					listDirectory(childPath, listed);
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @return true if the file has been modified since it was examined
+	 */
+	private boolean hasChanged(Candidate candidate) {
+		return candidate.file.lastModified() != candidate.lastModified
+				|| candidate.file.length() != candidate.length;
+	}
+	
+	/**
+	 * Forgets a file, or a directory and everything below it
+	 */
+	private void forget(String path) {
+		Candidate candidate = knownFiles.remove(path);
+		
+		if (candidate == null) {
+			return;
+		}
+		if (candidate.state == CandidateState.QUEUED) {
+			candidates.remove(candidate);
+		}
+		if (candidate.state == CandidateState.DIRECTORY) {
+			String prefix = path + "/";
+			for (String knownPath : new ArrayList<String>(knownFiles.keySet())) {
+				if (knownPath.startsWith(prefix)) {
+					forget(knownPath);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return path of the file relative to the spooling directory, with / as separator
+	 */
+	private String relativePath(File file) {
+		String path = spoolDirectory.toPath().toAbsolutePath().normalize()
+				.relativize(file.toPath().toAbsolutePath().normalize()).toString();
+		
+		return path.replace(File.separatorChar, '/');
+	}
+	
+	private boolean isFileOpen(File candidate) {
+		long start = System.nanoTime();
+		
+		boolean inUse = fileInUseDetector.isInUse(candidate);
+		
+		inUseCheckNanos += System.nanoTime() - start;
+		inUseChecksCount++;
+		
+		return inUse;
+	}
+	
+	/**
+	 * @return true if the file (relative to spooling directory) is queued to be consumed
+	 */
+	@VisibleForTesting
+	synchronized boolean isQueued(String path) {
+		Candidate candidate = knownFiles.get(path);
+		
+		return candidate != null && candidate.state == CandidateState.QUEUED;
+	}
+	
+	@VisibleForTesting
+	synchronized int getListFilesCount() {
+		return listFilesCount;
+	}
+	
+	/**
+	 * @return milliseconds spent checking if files are in use
+	 */
+	public synchronized long getInUseCheckTime() {
+		return inUseCheckNanos / 1000000;
+	}
+	
+	/**
+	 * @return number of files which have been checked for being in use
+	 */
+	public synchronized long getInUseChecksCount() {
+		return inUseChecksCount;
+	}
+	
+	/**
+	 * Stops watching the directory
+	 */
+	public synchronized void close() {
+		stopWatching();
+	}
+	
+	private static enum CandidateState {
+		QUEUED, IN_USE, IGNORED, CONSUMING, DIRECTORY
+	}
+	
+	/** A file of the spooling directory with the attributes it had when examined. **/
+	private static class Candidate {
+		/** Relative to spooling directory **/
+		private final String path;
+		private final File file;
+		private long lastModified;
+		private long length;
+		private CandidateState state;
+		
+		public Candidate(String path, File file) {
+			this.path = path;
+			this.file = file;
+		}
+	}
+	
+	/**
+	 * Orders by last modification (oldest or youngest first), files equally
+	 * old/young by lower lexicographical value of the (relative) path.
+	 */
+	private static class CandidateComparator implements Comparator<Candidate> {
+		private final boolean youngestFirst;
+		
+		public CandidateComparator(ConsumeOrder consumeOrder) {
+			this.youngestFirst = consumeOrder == ConsumeOrder.YOUNGEST;
+		}
+		
+		@Override
+		public int compare(Candidate c1, Candidate c2) {
+			if (c1.lastModified != c2.lastModified) {
+				boolean c1First = youngestFirst ? c1.lastModified > c2.lastModified : c1.lastModified < c2.lastModified;
+				return c1First ? -1 : 1;
+			}
+			
+			return c1.path.compareTo(c2.path);
+		}
+	}
+	
+	/**
+	 * Builder of candidates of a spooling directory
+	 */
+	public static class Builder {
+		private File spoolDirectory;
+		private String completedSuffix = SpoolDirectorySourceConfigurationConstants.SPOOLED_FILE_SUFFIX;
+		private String ignorePattern = SpoolDirectorySourceConfigurationConstants.DEFAULT_IGNORE_PAT;
+		private boolean recursive = false;
+		private String includePattern = ".*";
+		private String excludePattern = "^$";
+		private ConsumeOrder consumeOrder = SpoolDirectorySourceConfigurationConstants.DEFAULT_CONSUME_ORDER;
+		private FileInUseDetector fileInUseDetector = null;
+		
+		public Builder spoolDirectory(File directory) {
+			this.spoolDirectory = directory;
+			return this;
+		}
+		
+		public Builder completedSuffix(String completedSuffix) {
+			this.completedSuffix = completedSuffix;
+			return this;
+		}
+		
+		public Builder ignorePattern(String ignorePattern) {
+			this.ignorePattern = ignorePattern;
+			return this;
+		}
+		
+		/**
+		 * Consume also files in subdirectories (not hidden)
+		 */
+		public Builder recursive(boolean recursive) {
+			this.recursive = recursive;
+			return this;
+		}
+		
+		/**
+		 * Only files whose path, relative to spooling directory, matches are consumed
+		 */
+		public Builder includePattern(String includePattern) {
+			this.includePattern = includePattern;
+			return this;
+		}
+		
+		/**
+		 * Files and directories whose path, relative to spooling directory, matches are skipped
+		 */
+		public Builder excludePattern(String excludePattern) {
+			this.excludePattern = excludePattern;
+			return this;
+		}
+		
+		public Builder consumeOrder(ConsumeOrder consumeOrder) {
+			this.consumeOrder = consumeOrder;
+			return this;
+		}
+		
+		public Builder fileInUseDetector(FileInUseDetector fileInUseDetector) {
+			this.fileInUseDetector = fileInUseDetector;
+			return this;
+		}
+		
+		public SpoolDirectoryCandidates build() {
+			if (fileInUseDetector == null) {
+				fileInUseDetector = FileInUseDetectorFactory.getInstance(FileInUseDetectorFactory.TYPE_DEFAULT, new Context());
+			}
+			
+			return new SpoolDirectoryCandidates(spoolDirectory, completedSuffix, ignorePattern, recursive,
+					includePattern, excludePattern, consumeOrder, fileInUseDetector);
+		}
+	}
+
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader.inuse;
+
+import java.io.File;
+
+import org.apache.flume.Context;
+
+/**
+ * Detects if files of a spooling directory may still be written, so they are not consumed yet.
+ */
+public interface FileInUseDetector {
+	
+	/**
+	 * Called before checking a batch of new, modified or still in use files of the directory
+	 */
+	public void refresh(File directory);
+	
+	public boolean isInUse(File file);
+	
+	public interface Builder {
+		public FileInUseDetector build(Context context);
+	}
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader.inuse;
+
+import java.util.Locale;
+
+import org.apache.flume.Context;
+import org.apache.flume.FlumeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates detectors by type (auto, proc, stable or lsof) or by the class name of their builder
+ */
+public class FileInUseDetectorFactory {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(FileInUseDetectorFactory.class);
+	
+	public static final String TYPE_DEFAULT = "auto";
+	
+	/**
+	 * @param type auto (proc if supported, lsof otherwise), proc, stable, lsof or class name of a {@link FileInUseDetector.Builder}
+	 */
+	public static FileInUseDetector getInstance(String type, Context context) {
+		switch (type.toLowerCase(Locale.ENGLISH)) {
+		case "auto":
+			if(ProcFileInUseDetector.isSupported())
+				return new ProcFileInUseDetector(context);
+			
+			LOG.info("Open files can not be listed from /proc, lsof will be used");
+			return new LsofFileInUseDetector(context);
+		case "proc":
+			return new ProcFileInUseDetector(context);
+		case "stable":
+			return new StableFileInUseDetector(context);
+		case "lsof":
+			return new LsofFileInUseDetector(context);
+		}
+		
+		try {
+			@SuppressWarnings("unchecked")
+			Class<? extends FileInUseDetector.Builder> clazz = (Class<? extends FileInUseDetector.Builder>) Class.forName(type);
+			
+			return clazz.newInstance().build(context);
+		} catch (ClassNotFoundException e) {
+			LOG.error("Builder class not found. Exception follows.", e);
+			throw new FlumeException("FileInUseDetector.Builder not found.", e);
+		} catch (InstantiationException e) {
+			LOG.error("Could not instantiate Builder. Exception follows.", e);
+			throw new FlumeException("FileInUseDetector.Builder not constructable.", e);
+		} catch (IllegalAccessException e) {
+			LOG.error("Unable to access Builder. Exception follows.", e);
+			throw new FlumeException("Unable to access FileInUseDetector.Builder.", e);
+		}
+	}
+
+}
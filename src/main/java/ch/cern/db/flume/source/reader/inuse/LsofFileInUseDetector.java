@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader.inuse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.flume.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Files are in use if lsof lists them, lsof is run once per listing of the directory.
+ * If recursive, files open in subdirectories are listed too.
+ *
+ * If lsof fails, all files are considered in use.
+ */
+public class LsofFileInUseDetector implements FileInUseDetector {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(LsofFileInUseDetector.class);
+	
+	public static final String COMMAND_DEFAULT = "lsof";
+	public static final String COMMAND_PARAM = "command";
+	private String command = COMMAND_DEFAULT;
+	
+	public static final boolean RECURSIVE_DEFAULT = false;
+	public static final String RECURSIVE_PARAM = "recursive";
+	private boolean recursive = RECURSIVE_DEFAULT;
+	
+	/**
+	 * Real paths of open files, null if lsof failed
+	 */
+	private Set<String> openFiles = null;
+	
+	public LsofFileInUseDetector(Context context) {
+		if(context != null){
+			command = context.getString(COMMAND_PARAM, COMMAND_DEFAULT);
+			recursive = context.getBoolean(RECURSIVE_PARAM, RECURSIVE_DEFAULT);
+		}
+	}
+	
+	@Override
+	public void refresh(File directory) {
+		openFiles = null;
+		
+		Process lsof = null;
+		try {
+			//Names (-Fn) of files open in the directory (+d) or its tree (+D), without warnings (-w)
+			lsof = new ProcessBuilder(command, "-w", "-Fn", recursive ? "+D" : "+d", directory.toPath().toRealPath().toString())
+						.redirectError(Redirect.appendTo(new File("/dev/null")))
+						.start();
+			lsof.getOutputStream().close();
+			
+			Set<String> openFiles = new HashSet<String>();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(lsof.getInputStream()))) {
+				String line;
+				while((line = reader.readLine()) != null)
+					if(line.startsWith("n"))
+						openFiles.add(line.substring(1));
+			}
+			
+			//Exit code is 1 when no file is open
+			int exitCode = lsof.waitFor();
+			if(exitCode > 1)
+				throw new IOException(command + " exited with code " + exitCode);
+			
+			this.openFiles = openFiles;
+		} catch (IOException e) {
+			LOG.error("Error listing open files of " + directory + " with " + command, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if(lsof != null)
+				lsof.destroy();
+		}
+	}
+	
+	@Override
+	public boolean isInUse(File file) {
+		if(openFiles == null)
+			return true;
+		
+		try {
+			return openFiles.contains(file.toPath().toRealPath().toString());
+		} catch (IOException e) {
+			LOG.warn("Could not resolve path of " + file, e);
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Builder which builds new instance of this class
+	 */
+	public static class Builder implements FileInUseDetector.Builder {
+		
+		@Override
+		public FileInUseDetector build(Context context) {
+			return new LsofFileInUseDetector(context);
+		}
+	
+	}
+
+}
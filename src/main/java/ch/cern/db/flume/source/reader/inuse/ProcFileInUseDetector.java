@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader.inuse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.flume.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Files are in use if any process has them open, open files are found by scanning /proc/[pid]/fd
+ * once per listing of the directory (Linux only).
+ *
+ * Only processes of the same user are visible (all processes if running as root).
+ */
+public class ProcFileInUseDetector implements FileInUseDetector {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(ProcFileInUseDetector.class);
+	
+	private static final Path PROC = Paths.get("/proc");
+	
+	/**
+	 * Real paths of open files which are in the directory
+	 */
+	private Set<String> openFiles = new HashSet<String>();
+	
+	public ProcFileInUseDetector(Context context) {
+	}
+	
+	/**
+	 * @return true if open files of this process can be listed
+	 */
+	public static boolean isSupported() {
+		return Files.isReadable(PROC.resolve("self").resolve("fd"));
+	}
+	
+	@Override
+	public void refresh(File directory) {
+		Set<String> openFiles = new HashSet<String>();
+		
+		String prefix;
+		try {
+			prefix = directory.toPath().toRealPath().toString() + File.separator;
+		} catch (IOException e) {
+			LOG.error("Could not resolve path of " + directory, e);
+			
+			this.openFiles = openFiles;
+			return;
+		}
+		
+		try (DirectoryStream<Path> processes = Files.newDirectoryStream(PROC, "[0-9]*")) {
+			for (Path process : processes) {
+				try (DirectoryStream<Path> fds = Files.newDirectoryStream(process.resolve("fd"))) {
+					for (Path fd : fds) {
+						try {
+							String target = Files.readSymbolicLink(fd).toString();
+							
+							if(target.startsWith(prefix))
+								openFiles.add(target);
+						} catch (IOException e) {
+							//File descriptor closed meanwhile
+						}
+					}
+				} catch (IOException | DirectoryIteratorException e) {
+					//Process not accessible or finished meanwhile
+				}
+			}
+		} catch (IOException | DirectoryIteratorException e) {
+			LOG.error("Could not list processes in " + PROC, e);
+		}
+		
+		this.openFiles = openFiles;
+	}
+	
+	@Override
+	public boolean isInUse(File file) {
+		try {
+			return openFiles.contains(file.toPath().toRealPath().toString());
+		} catch (IOException e) {
+			LOG.warn("Could not resolve path of " + file, e);
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Builder which builds new instance of this class
+	 */
+	public static class Builder implements FileInUseDetector.Builder {
+		
+		@Override
+		public FileInUseDetector build(Context context) {
+			return new ProcFileInUseDetector(context);
+		}
+	
+	}
+
+}
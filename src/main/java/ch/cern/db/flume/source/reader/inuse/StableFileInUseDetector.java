@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader.inuse;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.flume.Context;
+
+/**
+ * Files are in use till their size and last modification time have not changed for a quiet period.
+ *
+ * Files which were last modified before the quiet period when they are seen for the first time
+ * are not in use, so files already present when starting are consumed straight away.
+ */
+public class StableFileInUseDetector implements FileInUseDetector {
+	
+	public static final long QUIET_PERIOD_DEFAULT = 10000;
+	public static final String QUIET_PERIOD_PARAM = "quietPeriod";
+	private long quietPeriod = QUIET_PERIOD_DEFAULT;
+	
+	private Map<String, Observation> observations = new HashMap<String, Observation>();
+	
+	public StableFileInUseDetector(Context context) {
+		if(context != null)
+			quietPeriod = context.getLong(QUIET_PERIOD_PARAM, QUIET_PERIOD_DEFAULT);
+	}
+	
+	@Override
+	public void refresh(File directory) {
+		//Forget files which were not listed since last refresh
+		Iterator<Observation> it = observations.values().iterator();
+		while(it.hasNext()){
+			Observation observation = it.next();
+			
+			if(!observation.checked)
+				it.remove();
+			else
+				observation.checked = false;
+		}
+	}
+	
+	@Override
+	public boolean isInUse(File file) {
+		long now = System.currentTimeMillis();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		
+		String path = file.getAbsolutePath();
+		Observation observation = observations.get(path);
+		
+		if(observation == null){
+			observation = new Observation(length, lastModified, Math.min(now, lastModified));
+			observations.put(path, observation);
+		}else if(observation.length != length || observation.lastModified != lastModified){
+			observation = new Observation(length, lastModified, now);
+			observations.put(path, observation);
+		}
+		
+		observation.checked = true;
+		
+		return now - observation.since < quietPeriod;
+	}
+	
+	private static class Observation {
+		
+		private final long length;
+		
+		private final long lastModified;
+		
+		/**
+		 * Time since which length and last modification time are the same
+		 */
+		private final long since;
+		
+		private boolean checked = true;
+		
+		public Observation(long length, long lastModified, long since) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.since = since;
+		}
+	
+	}
+	
+	/**
+	 * Builder which builds new instance of this class
+	 */
+	public static class Builder implements FileInUseDetector.Builder {
+		
+		@Override
+		public FileInUseDetector build(Context context) {
+			return new StableFileInUseDetector(context);
+		}
+	
+	}
+
+}
@@ -1,6 +1,7 @@
 package ch.cern.db.flume.source.reader.log;
 
 import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,7 +28,7 @@ public class DefaultLogEventParser implements LogEventParser {
 		
 		//Add event timestamp to headers
 		Map<String, String> headers = new HashMap<String, String>();
-		headers.put(TIMESTAMP_HEADER_NAME, internalDateFormat.format(logEvent.getTimestamp()));
+		headers.put(TIMESTAMP_HEADER_NAME, internalDateFormat.format(new Date(logEvent.getTimestamp())));
 		flumeEvent.setHeaders(headers);
 		
 		return flumeEvent;
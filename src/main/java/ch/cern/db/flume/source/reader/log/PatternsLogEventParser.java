@@ -0,0 +1,329 @@
+package ch.cern.db.flume.source.reader.log;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.conf.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.cern.db.flume.JSONEvent;
+import ch.cern.db.log.LogEvent;
+
+/**
+ * Extracts fields from log events with a list of named patterns, fields are named groups of the patterns
+ * (names of groups can only contain letters and digits). Types of fields (string, int, float or bool)
+ * can be configured, string by default.
+ *
+ * Patterns are tried in the configured order and the first one which matches is used. Before
+ * running the regular expression, text is checked to contain the literal part of the pattern
+ * (configured or extracted from the pattern), so most non matching patterns are discarded cheaply.
+ *
+ * Example:
+ * reader.parser.patterns = connect ora_error
+ * reader.parser.patterns.connect.regex = \(CONNECT_DATA=.*\(HOST=(?<clientHost>[^)]*)\).*\(PROTOCOL=(?<protocol>\w+)\).*\(PORT=(?<port>\d+)\)
+ * reader.parser.patterns.connect.types = port:int
+ * reader.parser.patterns.ora_error.regex = ORA-(?<oraCode>\d{5})
+ */
+public class PatternsLogEventParser implements LogEventParser {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(PatternsLogEventParser.class);
+	
+	public static final String PATTERNS_PARAM = "reader.parser.patterns";
+	public static final String REGEX_PARAM = "regex";
+	public static final String TYPES_PARAM = "types";
+	public static final String LITERAL_PARAM = "literal";
+	
+	public static final boolean KEEP_TEXT_DEFAULT = true;
+	public static final String KEEP_TEXT_PARAM = "reader.parser.keepText";
+	private boolean keepText = KEEP_TEXT_DEFAULT;
+	
+	public static final String PATTERN_FIELD_NAME = "pattern";
+	
+	private SimpleDateFormat internalDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+	
+	private List<NamedPattern> patterns = new LinkedList<NamedPattern>();
+	
+	public PatternsLogEventParser(Context context) {
+		if(context == null)
+			return;
+		
+		keepText = context.getBoolean(KEEP_TEXT_PARAM, KEEP_TEXT_DEFAULT);
+		
+		String names = context.getString(PATTERNS_PARAM);
+		if(names == null)
+			return;
+		
+		for (String name : names.trim().split("\\s+")) {
+			String prefix = PATTERNS_PARAM + "." + name + ".";
+			
+			String regex = context.getString(prefix + REGEX_PARAM);
+			if(regex == null)
+				throw new ConfigurationException("Regular expression for pattern " + name
+						+ " must be configured with " + prefix + REGEX_PARAM);
+			
+			try {
+				patterns.add(new NamedPattern(name,
+						regex,
+						context.getString(prefix + TYPES_PARAM),
+						context.getString(prefix + LITERAL_PARAM)));
+			} catch (PatternSyntaxException e) {
+				throw new ConfigurationException("Pattern " + name + " is not a valid regular expression", e);
+			}
+		}
+	}
+	
+	@Override
+	public Event parse(LogEvent logEvent) {
+		JSONEvent event = new JSONEvent();
+		
+		String text = logEvent.getText();
+		
+		event.addProperty("event_timestamp", internalDateFormat.format(new Date(logEvent.getTimestamp())));
+		if(keepText)
+			event.addProperty("text", text);
+		
+		for (NamedPattern pattern : patterns) {
+			if(pattern.literal != null && !text.contains(pattern.literal))
+				continue;
+			
+			Matcher matcher = pattern.pattern.matcher(text);
+			if(!matcher.find())
+				continue;
+			
+			event.addProperty(PATTERN_FIELD_NAME, pattern.name);
+			for (int i = 0; i < pattern.fields.length; i++)
+				event.addProperty(pattern.fields[i], convert(matcher.group(pattern.fields[i]), pattern.types[i]));
+			
+			break;
+		}
+		
+		return event;
+	}
+	
+	private Object convert(String value, FieldType type) {
+		if(value == null)
+			return null;
+		
+		try {
+			switch (type) {
+			case INT: return Long.parseLong(value.trim());
+			case FLOAT: return Double.parseDouble(value.trim());
+			case BOOL: return Boolean.parseBoolean(value.trim());
+			default: return value;
+			}
+		} catch (NumberFormatException e) {
+			LOG.debug("Value \"" + value + "\" is not " + type + ", it is kept as string");
+			
+			return value;
+		}
+	}
+	
+	enum FieldType {STRING, INT, FLOAT, BOOL};
+	
+	private static class NamedPattern {
+		
+		private String name;
+		
+		private Pattern pattern;
+		
+		private String literal;
+		
+		private String[] fields;
+		
+		private FieldType[] types;
+		
+		public NamedPattern(String name, String regex, String types, String literal) {
+			this.name = name;
+			this.pattern = Pattern.compile(regex);
+			this.literal = literal != null ? literal : extractLiteral(regex);
+			
+			List<String> fields = extractGroupNames(regex);
+			this.fields = fields.toArray(new String[fields.size()]);
+			
+			Map<String, FieldType> typesMap = new HashMap<String, FieldType>();
+			if(types != null){
+				for (String fieldType : types.trim().split("[\\s,]+")) {
+					String[] parts = fieldType.split(":");
+					if(parts.length != 2 || !fields.contains(parts[0]))
+						throw new ConfigurationException("Type of field (" + fieldType
+								+ ") of pattern " + name + " must be <group name>:<type>");
+					
+					try {
+						typesMap.put(parts[0], FieldType.valueOf(parts[1].toUpperCase()));
+					} catch (IllegalArgumentException e) {
+						throw new ConfigurationException("Type of field " + parts[0] + " of pattern " + name
+								+ " must be one of string, int, float or bool");
+					}
+				}
+			}
+			
+			this.types = new FieldType[this.fields.length];
+			for (int i = 0; i < this.fields.length; i++)
+				this.types[i] = typesMap.containsKey(this.fields[i]) ? typesMap.get(this.fields[i]) : FieldType.STRING;
+		}
+	
+	}
+	
+	/**
+	 * @return names of named groups, (?<name>X), in the order they appear
+	 */
+	static List<String> extractGroupNames(String regex) {
+		List<String> names = new ArrayList<String>();
+		
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			
+			if(c == '\\'){
+				i++;
+			}else if(regex.startsWith("(?<", i) && i + 3 < regex.length()
+					&& regex.charAt(i + 3) != '=' && regex.charAt(i + 3) != '!'){
+				int end = regex.indexOf('>', i);
+				
+				names.add(regex.substring(i + 3, end));
+			}
+		}
+		
+		return names;
+	}
+	
+	/**
+	 * Extracts the longest literal which any matching text must contain. Only characters
+	 * outside of groups, classes and quantifiers are considered.
+	 *
+	 * @return longest literal, null if there is no literal or regular expression contains alternatives
+	 */
+	static String extractLiteral(String regex) {
+		if(regex.contains("\\Q"))
+			return null;
+		
+		String longest = "";
+		StringBuilder current = new StringBuilder();
+		
+		int depth = 0;
+		boolean inClass = false;
+		
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			
+			Character literal = null;
+			if(c == '\\' && i + 1 < regex.length()){
+				char escaped = regex.charAt(++i);
+				
+				if(Character.isLetterOrDigit(escaped))
+					i = skipEscapeArguments(regex, i);
+				else if(!inClass && depth == 0)
+					literal = escaped;
+			}else if(inClass){
+				if(c == ']')
+					inClass = false;
+			}else if(c == '['){
+				inClass = true;
+			}else if(c == '('){
+				//Embedded flags (e.g. case insensitive) change how literals match
+				if(regex.startsWith("(?", i) && i + 2 < regex.length()
+						&& (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-'))
+					return null;
+				
+				depth++;
+			}else if(c == ')'){
+				depth--;
+			}else if(c == '|'){
+				if(depth == 0)
+					return null;
+			}else if(c == '{'){
+				//Bounds of a quantifier
+				i = indexOfOrEnd(regex, '}', i);
+			}else if(depth == 0 && "^$.*+?{}".indexOf(c) < 0){
+				literal = c;
+			}
+			
+			boolean quantified = i + 1 < regex.length() && "*+?{".indexOf(regex.charAt(i + 1)) >= 0;
+			
+			if(literal != null && !quantified){
+				current.append(literal);
+			}else{
+				if(current.length() > longest.length())
+					longest = current.toString();
+				current.setLength(0);
+			}
+		}
+		
+		if(current.length() > longest.length())
+			longest = current.toString();
+		
+		return longest.isEmpty() ? null : longest;
+	}
+	
+	/**
+	 * Skips arguments of an escape (e.g. \x41, \u0041, \p{Lu}, \cA, \k<name>, back references)
+	 *
+	 * @param index position of the escaped letter or digit
+	 * @return position of the last character of the escape
+	 */
+	private static int skipEscapeArguments(String regex, int index) {
+		char escaped = regex.charAt(index);
+		boolean braces = index + 1 < regex.length() && regex.charAt(index + 1) == '{';
+		
+		int end = index;
+		switch (escaped) {
+		case 'x':
+			end = braces ? indexOfOrEnd(regex, '}', index) : index + 2;
+			break;
+		case 'u':
+			end = index + 4;
+			break;
+		case 'c':
+			end = index + 1;
+			break;
+		case 'p':
+		case 'P':
+		case 'N':
+			end = braces ? indexOfOrEnd(regex, '}', index) : index + 1;
+			break;
+		case 'k':
+			end = indexOfOrEnd(regex, '>', index);
+			break;
+		case '0':
+			while(end + 1 < regex.length() && end - index < 3 && regex.charAt(end + 1) >= '0' && regex.charAt(end + 1) <= '7')
+				end++;
+			break;
+		default:
+			//Back references
+			if(Character.isDigit(escaped))
+				while(end + 1 < regex.length() && Character.isDigit(regex.charAt(end + 1)))
+					end++;
+		}
+		
+		return Math.min(end, regex.length() - 1);
+	}
+	
+	private static int indexOfOrEnd(String regex, char c, int from) {
+		int index = regex.indexOf(c, from);
+		
+		return index < 0 ? regex.length() - 1 : index;
+	}
+	
+	/**
+	 * Builder which builds new instance of this class
+	 */
+	public static class Builder implements LogEventParser.Builder {
+		
+		@Override
+		public LogEventParser build(Context context) {
+			return new PatternsLogEventParser(context);
+		}
+	
+	}
+
+}
@@ -1,6 +1,7 @@
 package ch.cern.db.flume.source.reader.log;
 
 import java.text.SimpleDateFormat;
+import java.util.Date;
 
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -19,7 +20,7 @@ public class ToJSONLogEventParser implements LogEventParser{
 	public Event parse(LogEvent logEvent) {
 		JSONEvent event = new JSONEvent();
 		
-		event.addProperty("event_timestamp", internalDateFormat.format(logEvent.getTimestamp()));
+		event.addProperty("event_timestamp", internalDateFormat.format(new Date(logEvent.getTimestamp())));
 		event.addProperty("text", logEvent.getText());
 		
 		return event;
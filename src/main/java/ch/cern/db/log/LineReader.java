@@ -0,0 +1,255 @@
+package ch.cern.db.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads lines from a file channel keeping track of the exact byte position of the
+ * first byte which has not been returned yet.
+ *
+ * A line is only returned once its end of line has been written, incomplete lines
+ * at the end of the file are kept until the rest of the line is available.
+ *
+ * Channels which are not file channels (e.g. decompressed streams) can only be read forward.
+ */
+public class LineReader implements Closeable {
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	static final int TAIL_SIZE = 64;
+	
+	private static final byte[] NEW_LINE = {'\n'};
+	
+	private final ReadableByteChannel channel;
+	
+	/**
+	 * Same as channel if it is a file channel, null otherwise
+	 */
+	private final FileChannel fileChannel;
+	
+	private final Charset charset;
+	
+	private final ByteBuffer buffer;
+	
+	private byte[] line = new byte[256];
+	private int lineLength = 0;
+	
+	private long position;
+	
+	/**
+	 * False if the position of the file channel has to be moved to position before next read
+	 */
+	private boolean channelPositioned = true;
+	
+	/**
+	 * Last bytes before position, used for detecting if file has been overwritten
+	 */
+	private final byte[] tail = new byte[TAIL_SIZE];
+	private int tailLength = 0;
+	
+	/**
+	 * Bytes read from the file for comparing them with the tail
+	 */
+	private final ByteBuffer check = ByteBuffer.allocate(TAIL_SIZE);
+	
+	public LineReader(FileChannel channel, Charset charset) throws IOException {
+		this(channel, charset, channel.position());
+	}
+	
+	/**
+	 * @param position position of the next byte of the channel
+	 */
+	public LineReader(ReadableByteChannel channel, Charset charset, long position) {
+		this.channel = channel;
+		this.fileChannel = channel instanceof FileChannel ? (FileChannel) channel : null;
+		this.charset = charset;
+		
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.flip();
+		
+		this.position = position;
+	}
+	
+	/**
+	 * @return next complete line without end of line characters or null if there is no complete line
+	 */
+	public String readLine() throws IOException {
+		while(true){
+			if(!buffer.hasRemaining()){
+				if(!channelPositioned){
+					fileChannel.position(position + lineLength);
+					channelPositioned = true;
+				}
+				
+				buffer.clear();
+				int read = channel.read(buffer);
+				buffer.flip();
+				
+				if(read <= 0)
+					return null;
+			}
+			
+			byte[] array = buffer.array();
+			int start = buffer.position();
+			int limit = buffer.limit();
+			
+			int index = start;
+			while(index < limit && array[index] != '\n')
+				index++;
+			
+			append(array, start, index - start);
+			
+			if(index < limit){
+				buffer.position(index + 1);
+				
+				return takeLine();
+			}
+			
+			buffer.position(limit);
+		}
+	}
+	
+	private void append(byte[] array, int offset, int length) {
+		if(lineLength + length > line.length)
+			line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+		
+		System.arraycopy(array, offset, line, lineLength, length);
+		lineLength += length;
+	}
+	
+	private String takeLine() {
+		append(NEW_LINE, 0, 1);
+		position += lineLength;
+		
+		tailLength = Math.min(lineLength, TAIL_SIZE);
+		System.arraycopy(line, lineLength - tailLength, tail, 0, tailLength);
+		
+		int length = lineLength - 1;
+		if(length > 0 && line[length - 1] == '\r')
+			length--;
+		
+		lineLength = 0;
+		
+		return new String(line, 0, length, charset);
+	}
+	
+	/**
+	 * @return position in bytes of the first byte which has not been returned yet
+	 */
+	public long getPosition() {
+		return position;
+	}
+	
+	/**
+	 * Moves to the given position, the line which contains it is read from that position on
+	 */
+	public void seek(long newPosition) throws IOException {
+		if(fileChannel == null)
+			throw new IOException("Only file channels can be seeked");
+		
+		fileChannel.position(newPosition);
+		channelPositioned = true;
+		position = newPosition;
+		
+		buffer.clear();
+		buffer.flip();
+		lineLength = 0;
+		
+		tailLength = (int) Math.min(newPosition, TAIL_SIZE);
+		ByteBuffer check = ByteBuffer.wrap(tail, 0, tailLength);
+		while(check.hasRemaining())
+			if(fileChannel.read(check, newPosition - tailLength + check.position()) < 0)
+				break;
+		tailLength = check.position();
+	}
+	
+	/**
+	 * Moves to the given position as {@link #seek(long)} does, but bytes before the position are
+	 * given instead of read, and file channel is only positioned when next line is read
+	 * 
+	 * @param before bytes just before new position, used for detecting if file has been overwritten
+	 */
+	void skipTo(long newPosition, byte[] before, int length) throws IOException {
+		if(fileChannel == null)
+			throw new IOException("Only file channels can be seeked");
+		
+		position = newPosition;
+		channelPositioned = false;
+		
+		buffer.clear();
+		buffer.flip();
+		lineLength = 0;
+		
+		tailLength = Math.min(length, TAIL_SIZE);
+		System.arraycopy(before, length - tailLength, tail, 0, tailLength);
+	}
+	
+	/**
+	 * @return file channel which is read, null if it is not a file channel
+	 */
+	FileChannel getFileChannel() {
+		return fileChannel;
+	}
+	
+	/**
+	 * @return true if {@link #seek(long)} and {@link #size()} are supported
+	 */
+	public boolean isSeekable() {
+		return fileChannel != null;
+	}
+	
+	/**
+	 * @return current size of the file in bytes
+	 */
+	public long size() throws IOException {
+		if(fileChannel == null)
+			throw new IOException("Size is only known for file channels");
+		
+		return fileChannel.size();
+	}
+	
+	/**
+	 * Checks if the bytes before current position are still the last bytes which were read,
+	 * they are not when the file has been truncated and written again.
+	 *
+	 * @return true if file is shorter than current position or content before position has changed
+	 */
+	public boolean isOverwritten() throws IOException {
+		if(fileChannel == null)
+			return false;
+		
+		if(fileChannel.size() < position)
+			return true;
+		
+		if(tailLength == 0)
+			return false;
+		
+		check.clear();
+		check.limit(tailLength);
+		long checkPosition = position - tailLength;
+		while(check.hasRemaining()){
+			int read = fileChannel.read(check, checkPosition + check.position());
+			
+			if(read < 0)
+				return true;
+		}
+		
+		byte[] array = check.array();
+		for (int i = 0; i < tailLength; i++)
+			if(array[i] != tail[i])
+				return true;
+		
+		return false;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
@@ -1,17 +1,24 @@
 package ch.cern.db.log;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ch.cern.db.utils.SUtils;
+import ch.cern.db.utils.Compression;
 
 public class LogFile extends File {
 
@@ -19,26 +26,122 @@ public class LogFile extends File {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(LogFile.class);
 	
-	private BufferedReader bufferReader;
+	private LineReader reader;
+	
+	private Charset charset = Charset.defaultCharset();
 
 	private String last_line;
 
+	private long last_line_timestamp;
+	
+	private long last_line_length;
+	
+	private long last_line_read_time;
+	
+	/**
+	 * Event which is being assembled, null if none
+	 */
+	private StringBuilder pending;
+	private long pending_timestamp;
+	private int pending_lines;
+	private long pending_bytes;
+	private int pending_truncated_lines;
+	
+	public static final int MAX_LINES_PER_EVENT_DEFAULT = 10000;
+	private int maxLinesPerEvent = MAX_LINES_PER_EVENT_DEFAULT;
+	
+	public static final long MAX_BYTES_PER_EVENT_DEFAULT = 10 * 1024 * 1024;
+	private long maxBytesPerEvent = MAX_BYTES_PER_EVENT_DEFAULT;
+	
+	/**
+	 * If true, events exceeding the limits are split in several events, if false they are truncated
+	 */
+	private boolean splitEvents = false;
+	
+	public static final String SPLIT_MARKER = "[event continues in next event]";
+	public static final String CONTINUATION_MARKER = "[continuation of previous event] ";
+	public static final String TRUNCATED_MARKER = "[%d lines truncated]";
+	
+	/**
+	 * Milliseconds without new lines after which the last event of the file is produced
+	 */
+	private long flushTimeout = 0;
+	
+	/**
+	 * Minimum number of unread bytes for reading events through memory mapped windows
+	 * till the end of the file (catch-up mode), 0 disables it
+	 */
+	private long catchUpThreshold = 0;
+	
+	/**
+	 * Not null while reading in catch-up mode
+	 */
+	private MappedLogReader catch_up_reader;
+	
+	/**
+	 * Position from which the number of unread bytes is checked for starting catch-up mode
+	 */
+	private long catch_up_check_position = 0;
+	
+	private final byte[] catch_up_tail = new byte[LineReader.TAIL_SIZE];
+	
+	/**
+	 * Beginning of the next event found by last scan (its timestamp is not parsed again), -1 if none
+	 */
+	private long catch_up_next_start = -1;
+	private long catch_up_next_line_end;
+	private long catch_up_next_timestamp;
+	
+	/**
+	 * Rotation is checked once the end of the file has been reached and, while there are lines 
+	 * to read, at most once per this number of milliseconds
+	 */
+	private static final long ROTATION_CHECK_INTERVAL = 1000;
+	private long last_rotation_check_time = 0;
+	private boolean end_of_file_reached = true;
+	
+	/**
+	 * Reading state at last call to mark, null if none
+	 */
+	private Mark mark;
+	
 	public static final String DATAFORMAT_DEFAULT = "yyyy-MM-dd'T'HH:mm:ssZ";
-	private DateFormat dateFormat;
+	private TimestampParser timestampParser;
 	
 	private boolean eventsCanContainSeveralLines = true;
 	
-	private long offset;
+	/**
+	 * Once the search range of a seek is smaller than this, the rest is read line by line
+	 */
+	private static final long SEEK_LINEAR_SCAN_BYTES = 64 * 1024;
+	
+	/**
+	 * Key (inode) of the file which is being read, null if not supported by the file system
+	 */
+	private Object fileKey;
+	
+	/**
+	 * Glob (relative to the directory of this file) matching files produced by rotation
+	 */
+	private String rotatedFilesGlob;
+	
+	/**
+	 * True while reading what remains in a rotated file before switching to the new file
+	 */
+	private boolean draining = false;
+	
+	private long rotationsCount = 0;
+	private long drainedBytesCount = 0;
 	
 	public LogFile(String pathname) {
 		super(pathname);
 		
-		dateFormat = new SimpleDateFormat(DATAFORMAT_DEFAULT);
+		timestampParser = new TimestampParser(DATAFORMAT_DEFAULT);
 	}
 
 	public void open() {
 		
-		if(bufferReader != null)
+		if(reader != null)
 			return;
 		
 		if(!exists()){
@@ -53,13 +156,12 @@ public class LogFile extends File {
 		}
 			
 		try {
-			bufferReader = new BufferedReader(new java.io.FileReader(this));
-			
-			offset = 0;
+			fileKey = getFileKey(toPath());
+			reader = openReader(this, 0);
 			
 			LOG.debug(this + " has been openned");
-		} catch (FileNotFoundException e) {
-			LOG.warn(this + " does not exist", e);
+		} catch (IOException e) {
+			LOG.warn(this + " could not be opened", e);
 			
 			close();
 		}
@@ -67,43 +169,91 @@ public class LogFile extends File {
 	}
 
 	public void close() {
+		closeReader();
+		
 		LOG.debug(this + " has been closed");
 		
-		if(bufferReader != null){
+		fileKey = null;
+		draining = false;
+		catch_up_check_position = 0;
+		last_line = null;
+		pending = null;
+		mark = null;
+	}
+	
+	private void closeReader() {
+		if(reader != null){
 			try {
-				bufferReader.close();
+				reader.close();
 			} catch (IOException e1) {}
 		}
 		
-		bufferReader = null;
-		offset = -1;
-		last_line = null;
+		reader = null;
+		catch_up_reader = null;
 	}
 
 	public LogEvent getNextEvent() {
-		if(offset -1 > length()){
-			close();
-			
-			LOG.info(this + " has been rolled out (number of bytes read is greather than file size)");
-		}
+		if(end_of_file_reached || System.currentTimeMillis() - last_rotation_check_time >= ROTATION_CHECK_INTERVAL)
+			checkRotation();
 		
 		open();
 		
-    	//Read line by line till next event or end of file
-    	try {
-			last_line = last_line != null ? last_line : readLine();
+		LogEvent event = readNextEvent();
+		
+		if(event == null && draining){
+			switchToNewFile();
+			
+			event = readNextEvent();
+		}
+		
+		return event;
+	}
+	
+	private LogEvent readNextEvent() {
+		try {
+			if(catch_up_reader != null || startCatchingUp()){
+				LogEvent event = readNextEventCatchingUp();
+				
+				if(event != null)
+					return event;
+				
+				stopCatchingUp();
+			}
+			
+			//Read line by line till next event or end of file
+			while(true){
+				readNextLine();
 
-	    	while(last_line != null){
-	    		if(LogEvent.isNewEvent(dateFormat, last_line)){
-	    			return createEvent();
-	        	}else{
-	        		LOG.warn("Skipping line from log file: " + last_line);
-	        	}
+				if(last_line == null){
+					catch_up_check_position = 0;
+					end_of_file_reached = true;
+					
+					if(pending != null && (draining || System.currentTimeMillis() - last_line_read_time >= flushTimeout))
+						return takePendingEvent();
 	    		
-	    		last_line = readLine();
-	    	}
+					return null;
+				}
 	    	
-    	} catch (IOException e) {
+				if(last_line_timestamp != TimestampParser.NO_TIMESTAMP){
+					LogEvent event = pending != null ? takePendingEvent() : null;
+					
+					startPendingEvent(last_line_timestamp, last_line);
+					
+					if(!eventsCanContainSeveralLines)
+						event = event != null ? event : takePendingEvent();
+					
+					if(event != null)
+						return event;
+				}else if(pending != null){
+					LogEvent event = appendToPendingEvent();
+					
+					if(event != null)
+						return event;
+				}else{
+					LOG.warn("Skipping line from log file: " + last_line);
+				}
+			}
+		} catch (IOException e) {
 			LOG.error("Error reading from " + this, e);
 			
 			close();
@@ -111,45 +261,516 @@ public class LogFile extends File {
 
 		return null;		
 	}
-
-	private String readLine() throws IOException {
-		if(bufferReader == null)
+	
+	/**
+	 * Starts catch-up mode if there are at least the configured number of unread bytes,
+	 * the check is done at most once every that number of bytes or at end of file
+	 */
+	private boolean startCatchingUp() throws IOException {
+		if(catchUpThreshold <= 0 || reader == null || !reader.isSeekable() || draining 
+				|| !eventsCanContainSeveralLines || !MappedLogReader.supports(charset))
+			return false;
+		
+		long position = reader.getPosition();
+		if(position < catch_up_check_position)
+			return false;
+		
+		catch_up_check_position = position + catchUpThreshold;
+		
+		long unread = reader.size() - position;
+		if(unread < catchUpThreshold)
+			return false;
+		
+		catch_up_reader = new MappedLogReader(reader.getFileChannel(), charset);
+		catch_up_next_start = -1;
+		
+		LOG.info(this + " has " + unread + " unread bytes, events will be read from memory mapped windows till the end of the file");
+		
+		return true;
+	}
+	
+	private void stopCatchingUp() {
+		catch_up_reader = null;
+		
+		if(reader != null)
+			LOG.info("Stopped reading " + this + " from memory mapped windows at byte " + reader.getPosition());
+	}
+	
+	/**
+	 * Reads next event from memory mapped windows, finding the lines which start with a timestamp
+	 * without reading line by line
+	 * 
+	 * @return null if the event can not be read this way (end of file, event exceeding the limits)
+	 */
+	private LogEvent readNextEventCatchingUp() throws IOException {
+		long start = reader.getPosition();
+		
+		try {
+			LogEvent event = scanNextEvent(start);
+			
+			//Event may not be complete in current window
+			if(event == null && catch_up_reader.remap(start))
+				event = scanNextEvent(start);
+			
+			return event;
+		} catch (InternalError e) {
+			//Mapped bytes which are not in the file anymore (truncated) can not be accessed
+			LOG.warn("Error reading memory mapped window of " + this + ", it will be read line by line", e);
+			
+			return null;
+		}
+	}
+	
+	private LogEvent scanNextEvent(long start) throws IOException {
+		if(!catch_up_reader.map(start))
 			return null;
 		
-		String line = bufferReader.readLine();
+		//Lines till next line with timestamp belong to the event being assembled
+		long eventStart = start;
+		long firstLineEnd;
+		long timestamp;
+		int lines = 0;
+		while(true){
+			if(eventStart == catch_up_next_start){
+				firstLineEnd = catch_up_next_line_end;
+				timestamp = catch_up_next_timestamp;
+				break;
+			}
+			
+			firstLineEnd = catch_up_reader.findLineEnd(eventStart);
+			if(firstLineEnd < 0)
+				return null;
+			
+			timestamp = catch_up_reader.parseTimestamp(eventStart, firstLineEnd, timestampParser);
+			if(timestamp != TimestampParser.NO_TIMESTAMP)
+				break;
+			
+			eventStart = firstLineEnd;
+			lines++;
+		}
+		
+		if(pending != null){
+			long bytes = eventStart - start;
+			if(pending_truncated_lines > 0 
+					|| pending_lines + lines > maxLinesPerEvent 
+					|| pending_bytes + bytes > maxBytesPerEvent)
+				return null;
+			
+			if(lines > 0){
+				pending.append('\n').append(catch_up_reader.decode(start, eventStart));
+				pending_lines += lines;
+				pending_bytes += bytes;
+			}
+			
+			moveTo(eventStart);
+			
+			return takePendingEvent();
+		}
 		
-		if(line == null)
+		long eventEnd = firstLineEnd;
+		int eventLines = 1;
+		while(true){
+			long lineEnd = catch_up_reader.findLineEnd(eventEnd);
+			if(lineEnd < 0)
+				return null;
+			
+			long nextTimestamp = catch_up_reader.parseTimestamp(eventEnd, lineEnd, timestampParser);
+			if(nextTimestamp != TimestampParser.NO_TIMESTAMP){
+				catch_up_next_start = eventEnd;
+				catch_up_next_line_end = lineEnd;
+				catch_up_next_timestamp = nextTimestamp;
+				break;
+			}
+			
+			eventEnd = lineEnd;
+			eventLines++;
+			
+			if(eventLines > maxLinesPerEvent || eventEnd - eventStart > maxBytesPerEvent)
+				return null;
+		}
+		
+		if(lines > 0)
+			LOG.warn("Skipping " + lines + " lines without timestamp from log file " + this);
+		
+		LogEvent event = new LogEvent(timestamp, catch_up_reader.decode(eventStart, eventEnd));
+		
+		moveTo(eventEnd);
+		
+		return event;
+	}
+	
+	private void moveTo(long position) throws IOException {
+		int length = catch_up_reader.copyBefore(position, catch_up_tail);
+		
+		reader.skipTo(position, catch_up_tail, length);
+		
+		last_line = null;
+		last_line_read_time = System.currentTimeMillis();
+	}
+	
+	private void startPendingEvent(long timestamp, String line) {
+		pending = new StringBuilder(line);
+		pending_timestamp = timestamp;
+		pending_lines = 1;
+		pending_bytes = last_line_length;
+		pending_truncated_lines = 0;
+	}
+	
+	/**
+	 * Appends last line to the event which is being assembled, applying the limits
+	 * 
+	 * @return event if it has been split, null otherwise
+	 */
+	private LogEvent appendToPendingEvent() {
+		if(pending_lines < maxLinesPerEvent && pending_bytes + last_line_length <= maxBytesPerEvent){
+			pending.append('\n').append(last_line);
+			pending_lines++;
+			pending_bytes += last_line_length;
+			
+			return null;
+		}
+		
+		if(!splitEvents){
+			pending_truncated_lines++;
+			
 			return null;
+		}
+		
+		pending.append('\n').append(SPLIT_MARKER);
+		long timestamp = pending_timestamp;
+		LogEvent event = takePendingEvent();
+		
+		startPendingEvent(timestamp, CONTINUATION_MARKER + last_line);
+		
+		return event;
+	}
+	
+	private LogEvent takePendingEvent() {
+		if(pending_truncated_lines > 0){
+			pending.append('\n').append(String.format(TRUNCATED_MARKER, pending_truncated_lines));
+			
+			LOG.warn(pending_truncated_lines + " lines of an event have been truncated, the event exceeded "
+					+ maxLinesPerEvent + " lines or " + maxBytesPerEvent + " bytes");
+		}
+		
+		LogEvent event = new LogEvent(pending_timestamp, pending.toString());
+		
+		pending = null;
+		
+		return event;
+	}
+	
+	/**
+	 * Positions the file at the beginning of an event which is not newer than the
+	 * first event with a timestamp equal or greater than the given one.
+	 *
+	 * Log files are expected to be ordered by timestamp, so the file is bisected by
+	 * byte position: after every jump, reading is resynchronised on the next line
+	 * which starts with a timestamp.
+	 *
+	 * @param timestamp milliseconds since epoch
+	 */
+	public void seek(long timestamp) {
+		close();
+		open();
+		
+		if(reader == null)
+			return;
 		
-		offset += line.length() + SUtils.EOL.length();
+		if(!reader.isSeekable()){
+			LOG.info(this + " is compressed, it will be read from the beginning");
+			return;
+		}
+		
+		try {
+			long low = 0;
+			long high = reader.size();
+			int probes = 0;
+			
+			while(high - low > SEEK_LINEAR_SCAN_BYTES){
+				long middle = low + (high - low) / 2;
+				probes++;
 				
-		return line;
+				//Skip line containing the byte before middle, it may be partially read
+				reader.seek(middle - 1);
+				String line = reader.readLine();
+				
+				long eventStart = -1;
+				long eventTimestamp = TimestampParser.NO_TIMESTAMP;
+				while(line != null && reader.getPosition() < high){
+					long position = reader.getPosition();
+					
+					line = reader.readLine();
+					if(line != null){
+						eventTimestamp = timestampParser.parse(line);
+						
+						if(eventTimestamp != TimestampParser.NO_TIMESTAMP){
+							eventStart = position;
+							break;
+						}
+					}
+				}
+				
+				if(eventStart >= 0 && eventTimestamp < timestamp)
+					low = eventStart;
+				else
+					high = middle;
+			}
+			
+			reader.seek(low);
+			
+			LOG.info(this + " positioned at byte " + low + " after " + probes + " reads (seek to " + timestamp + ")");
+		} catch (IOException e) {
+			LOG.error("Error seeking in " + this + ", it will be read from the beginning", e);
+			
+			close();
+		}
+	}
+	
+	/**
+	 * Remembers current reading state (position and event being assembled), 
+	 * so reading can go back to it by calling {@link #reset()}
+	 */
+	public void mark() {
+		if(reader == null || !reader.isSeekable()){
+			mark = null;
+			return;
+		}
+		
+		mark = new Mark();
+		mark.reader = reader;
+		mark.position = reader.getPosition();
+		if(pending != null){
+			mark.pending = pending.toString();
+			mark.pending_timestamp = pending_timestamp;
+			mark.pending_lines = pending_lines;
+			mark.pending_bytes = pending_bytes;
+			mark.pending_truncated_lines = pending_truncated_lines;
+		}
+	}
+	
+	/**
+	 * Goes back to the reading state of last call to {@link #mark()}, without re-opening the file
+	 * 
+	 * @return false if state could not be restored (no mark or file has been re-opened since then)
+	 */
+	public boolean reset() {
+		if(mark == null || mark.reader != reader)
+			return false;
+		
+		try {
+			reader.seek(mark.position);
+		} catch (IOException e) {
+			LOG.error("Error going back to byte " + mark.position + " of " + this, e);
+			
+			close();
+			return false;
+		}
+		
+		last_line = null;
+		if(mark.pending != null){
+			pending = new StringBuilder(mark.pending);
+			pending_timestamp = mark.pending_timestamp;
+			pending_lines = mark.pending_lines;
+			pending_bytes = mark.pending_bytes;
+			pending_truncated_lines = mark.pending_truncated_lines;
+		}else{
+			pending = null;
+		}
+		
+		return true;
 	}
 
-	private LogEvent createEvent() throws IOException {
-		StringBuilder sb = new StringBuilder();
-		sb.append(last_line);
+	/**
+	 * Detects if the file has been rotated since it was opened.
+	 *
+	 * If file has been renamed (or removed), the file which is open is read till the end
+	 * before opening the new file. If file has been truncated (copytruncate), what was not
+	 * read is taken from the copy, if the copy can be found with the configured glob.
+	 */
+	private void checkRotation() {
+		last_rotation_check_time = System.currentTimeMillis();
+		end_of_file_reached = false;
 		
-		last_line = readLine();
-		while(eventsCanContainSeveralLines 
-				&& last_line != null 
-				&& !LogEvent.isNewEvent(dateFormat, last_line)){
-			sb.append("\n" + last_line);
+		if(reader == null || draining)
+			return;
+		
+		long position = reader.getPosition();
+		
+		Object currentFileKey = null;
+		boolean overwritten = false;
+		try {
+			currentFileKey = getCurrentFileKey();
+			overwritten = reader.isOverwritten();
+		} catch (IOException e) {
+			LOG.warn("Could not read attributes of " + this, e);
+		}
+		
+		if(fileKey == null){
+			if(overwritten){
+				closeReader();
+				rotationsCount++;
+				
+				LOG.info(this + " has been rolled out (number of bytes read is greather than file size or content has changed)");
+			}
 			
-			last_line = readLine();
+			return;
 		}
 		
+		if(!fileKey.equals(currentFileKey)){
+			draining = true;
+			
+			LOG.info(this + " has been rotated, remaining content of rotated file will be read before reading new file");
+		}else if(overwritten){
+			LOG.info(this + " has been truncated (number of bytes read is greather than file size or content has changed)");
+			
+			File copy = findRotatedCopy(position);
+			if(copy != null){
+				closeReader();
+				drainCopy(copy, position);
+			}else{
+				LOG.warn("Copy of truncated file " + this + " could not be found"
+						+ (rotatedFilesGlob == null ? " (no glob configured for rotated files)" : "")
+						+ ", lines written before truncation may have been lost");
+				
+				closeReader();
+				rotationsCount++;
+			}
+		}
+	}
+	
+	private void drainCopy(File copy, long position) {
 		try {
-			return new LogEvent(dateFormat, sb.toString());
-		} catch (ParseException e) {
-			LOG.error("Error creating LogEvent because date format: " + sb.toString());
+			reader = openReader(copy, position);
+			draining = true;
+			
+			LOG.info("Remaining content of " + this + " will be read from " + copy + " starting at byte " + position);
+		} catch (IOException e) {
+			LOG.error("Could not open copy of truncated file " + copy, e);
+			
+			rotationsCount++;
+		}
+	}
+	
+	/**
+	 * @return most recently modified file matching the glob for rotated files which
+	 * contains at least the number of bytes already read (or is compressed), null if none
+	 */
+	private File findRotatedCopy(long minimumLength) {
+		if(rotatedFilesGlob == null)
+			return null;
+		
+		File directory = getAbsoluteFile().getParentFile();
+		
+		File copy = null;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), rotatedFilesGlob)) {
+			for (Path path : stream) {
+				File candidate = path.toFile();
+				
+				if(candidate.getName().equals(getName()) || !candidate.isFile())
+					continue;
+				if(candidate.length() < minimumLength && Compression.detect(candidate) == Compression.NONE)
+					continue;
+				
+				if(copy == null || candidate.lastModified() > copy.lastModified())
+					copy = candidate;
+			}
+		} catch (IOException e) {
+			LOG.error("Error listing rotated files in " + directory, e);
+		}
+		
+		return copy;
+	}
+	
+	private void switchToNewFile() {
+		closeReader();
+		draining = false;
+		rotationsCount++;
+		
+		LOG.info("Rotated file has been fully read, switching to new " + this);
+		
+		open();
+	}
+	
+	/**
+	 * Opens a reader for the file starting at the given position, compressed files 
+	 * (gzip or bzip2) are decompressed and position refers to decompressed content
+	 */
+	private LineReader openReader(File file, long position) throws IOException {
+		Compression compression = Compression.detect(file);
+		
+		if(compression == Compression.NONE){
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			channel.position(position);
 			
+			return new LineReader(channel, charset);
+		}
+		
+		LOG.debug(file + " is compressed (" + compression + "), it will be decompressed while reading");
+		
+		InputStream in = compression.decompress(new FileInputStream(file));
+		try {
+			long remaining = position;
+			while(remaining > 0){
+				long skipped = in.skip(remaining);
+				if(skipped <= 0)
+					break;
+				
+				remaining -= skipped;
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		
+		return new LineReader(Channels.newChannel(in), charset, position);
+	}
+	
+	private static Object getFileKey(Path path) throws IOException {
+		return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+	}
+	
+	/**
+	 * @return key of the file which is now at the path of this file, null if there is no file
+	 */
+	private Object getCurrentFileKey() throws IOException {
+		try {
+			return getFileKey(toPath());
+		} catch (NoSuchFileException e) {
 			return null;
 		}
 	}
+	
+	private String readLine() throws IOException {
+		if(reader == null)
+			return null;
+		
+		long position = reader.getPosition();
+		
+		String line = reader.readLine();
+		
+		last_line_length = reader.getPosition() - position;
+		if(line != null)
+			last_line_read_time = System.currentTimeMillis();
+		
+		if(draining)
+			drainedBytesCount += last_line_length;
+				
+		return line;
+	}
 
+	/**
+	 * Reads next line into last_line and the timestamp it starts with into last_line_timestamp
+	 */
+	private void readNextLine() throws IOException {
+		last_line = readLine();
+		
+		if(last_line != null)
+			last_line_timestamp = timestampParser.parse(last_line);
+	}
+	
 	public void setDateFormat(DateFormat dateFormat) {
-		this.dateFormat = dateFormat;
+		this.timestampParser = new TimestampParser(dateFormat);
 	}
 
 	public boolean isEventsCanContainSeveralLines() {
@@ -160,4 +781,79 @@ public class LogFile extends File {
 		this.eventsCanContainSeveralLines = eventsCanContainSeveralLines;
 	}
 	
+	public void setMaxLinesPerEvent(int maxLinesPerEvent) {
+		this.maxLinesPerEvent = maxLinesPerEvent;
+	}
+	
+	public void setMaxBytesPerEvent(long maxBytesPerEvent) {
+		this.maxBytesPerEvent = maxBytesPerEvent;
+	}
+	
+	public void setSplitEvents(boolean splitEvents) {
+		this.splitEvents = splitEvents;
+	}
+	
+	/**
+	 * @param flushTimeout milliseconds without new lines after which last event is produced, 
+	 * 0 for producing it as soon as the end of the file is reached
+	 */
+	public void setFlushTimeout(long flushTimeout) {
+		this.flushTimeout = flushTimeout;
+	}
+	
+	/**
+	 * @param catchUpThreshold minimum number of unread bytes for reading events from memory mapped 
+	 * windows till the end of the file, 0 for always reading line by line
+	 */
+	public void setCatchUpThreshold(long catchUpThreshold) {
+		this.catchUpThreshold = catchUpThreshold;
+	}
+	
+	/**
+	 * @return time (milliseconds since epoch) at which the event waiting for more lines is produced
+	 * if no new lines are read, Long.MAX_VALUE if there is no event waiting
+	 */
+	public long getPendingEventFlushTime() {
+		if(pending == null)
+			return Long.MAX_VALUE;
+		
+		return last_line_read_time + flushTimeout;
+	}
+	
+	public void setRotatedFilesGlob(String rotatedFilesGlob) {
+		this.rotatedFilesGlob = rotatedFilesGlob;
+	}
+	
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+	
+	/**
+	 * @return number of times the file has been rotated since this object was created
+	 */
+	public long getRotationsCount() {
+		return rotationsCount;
+	}
+	
+	/**
+	 * @return number of bytes read from rotated files after rotation was detected
+	 */
+	public long getDrainedBytesCount() {
+		return drainedBytesCount;
+	}
+
+	private static class Mark {
+		
+		private LineReader reader;
+		
+		private long position;
+		
+		private String pending;
+		private long pending_timestamp;
+		private int pending_lines;
+		private long pending_bytes;
+		private int pending_truncated_lines;
+	
+	}
+
 }
@@ -0,0 +1,237 @@
+package ch.cern.db.log;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reads a file through memory mapped windows, so big amounts of unread data can be scanned
+ * for event boundaries without copying every line into a buffer and a String.
+ *
+ * Positions are positions in the file. Only complete lines (with end of line) are returned.
+ *
+ * Windows are not unmapped explicitly (not possible with Java 7), they are released once
+ * they are garbage collected.
+ */
+class MappedLogReader {
+	
+	static final int WINDOW_SIZE = 64 * 1024 * 1024;
+	
+	private static final long NEW_LINES = 0x0a0a0a0a0a0a0a0aL;
+	private static final long LOW_BITS = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	
+	private final FileChannel channel;
+	
+	private final Charset charset;
+	
+	private MappedByteBuffer window;
+	private long windowOffset;
+	private int windowLength;
+	
+	/**
+	 * True if window reached the end of the file when it was mapped
+	 */
+	private boolean windowAtEnd;
+	
+	private final LineView lineView = new LineView();
+	
+	private byte[] bytes = new byte[1024];
+	
+	MappedLogReader(FileChannel channel, Charset charset) {
+		this.channel = channel;
+		this.charset = charset;
+	}
+	
+	/**
+	 * @return true if lines and timestamps can be found in bytes (new line and ASCII characters are single bytes)
+	 */
+	static boolean supports(Charset charset) {
+		return charset.equals(Charsets.UTF_8)
+				|| charset.equals(Charsets.US_ASCII)
+				|| charset.equals(Charsets.ISO_8859_1);
+	}
+	
+	/**
+	 * Maps a new window starting at the given position if current window does not contain it
+	 * or if position is beyond the first half of the window (and window does not reach end of file)
+	 *
+	 * @return false if position is at or beyond end of file
+	 */
+	boolean map(long position) throws IOException {
+		if(window != null && position >= windowOffset && position < windowOffset + windowLength
+				&& (windowAtEnd || position - windowOffset < windowLength / 2))
+			return true;
+		
+		return remap(position);
+	}
+	
+	/**
+	 * Maps a new window starting at the given position, unless current window already starts
+	 * there and reaches end of file
+	 *
+	 * @return false if no new bytes are mapped
+	 */
+	boolean remap(long position) throws IOException {
+		long size = channel.size();
+		
+		if(position >= size)
+			return false;
+		if(window != null && windowOffset == position && windowOffset + windowLength >= size)
+			return false;
+		
+		windowLength = (int) Math.min(size - position, WINDOW_SIZE);
+		window = channel.map(MapMode.READ_ONLY, position, windowLength);
+		window.order(ByteOrder.LITTLE_ENDIAN);
+		windowOffset = position;
+		windowAtEnd = position + windowLength >= size;
+		
+		return true;
+	}
+	
+	/**
+	 * @param lineStart position of the beginning of a line, it must be in the window
+	 * @return position after the end of line, -1 if end of line is not in the window
+	 */
+	long findLineEnd(long lineStart) {
+		int index = indexOfNewLine((int) (lineStart - windowOffset));
+		
+		return index < 0 ? -1 : windowOffset + index + 1;
+	}
+	
+	/**
+	 * Scans 8 bytes at a time, a byte equal to new line becomes zero after the XOR and
+	 * the lowest zero byte sets its high bit in found (bytes are read little endian).
+	 */
+	private int indexOfNewLine(int from) {
+		int index = from;
+		
+		int limit = windowLength - 7;
+		for (; index < limit; index += 8) {
+			long x = window.getLong(index) ^ NEW_LINES;
+			long found = (x - LOW_BITS) & ~x & HIGH_BITS;
+			
+			if(found != 0)
+				return index + (Long.numberOfTrailingZeros(found) >>> 3);
+		}
+		
+		for (; index < windowLength; index++)
+			if(window.get(index) == '\n')
+				return index;
+		
+		return -1;
+	}
+	
+	/**
+	 * Parses the timestamp at the beginning of a line without creating a String of the line
+	 *
+	 * @param lineStart position of the beginning of the line
+	 * @param lineEnd position after the end of line
+	 */
+	long parseTimestamp(long lineStart, long lineEnd, TimestampParser parser) {
+		int start = (int) (lineStart - windowOffset);
+		int end = (int) (lineEnd - windowOffset) - 1;
+		if(end > start && window.get(end - 1) == '\r')
+			end--;
+		
+		lineView.set(start, end);
+		
+		long timestamp = parser.parse(lineView);
+		
+		//Characters which are not ASCII were not decoded
+		if(lineView.nonAscii && !charset.equals(Charsets.ISO_8859_1))
+			return parser.parse(decode(lineStart, lineEnd));
+		
+		return timestamp;
+	}
+	
+	/**
+	 * @return text of the lines between the given positions, without the last end of line
+	 * and with \r\n as \n (same as lines are read by {@link LineReader})
+	 */
+	String decode(long from, long to) {
+		int length = (int) (to - from);
+		if(length > bytes.length)
+			bytes = new byte[Math.max(length, bytes.length * 2)];
+		
+		window.position((int) (from - windowOffset));
+		window.get(bytes, 0, length);
+		
+		int decodedLength = 0;
+		for (int i = 0; i < length; i++) {
+			if(bytes[i] == '\r' && i + 1 < length && bytes[i + 1] == '\n')
+				continue;
+			
+			bytes[decodedLength++] = bytes[i];
+		}
+		
+		if(decodedLength > 0 && bytes[decodedLength - 1] == '\n')
+			decodedLength--;
+		
+		return new String(bytes, 0, decodedLength, charset);
+	}
+	
+	/**
+	 * Copies bytes before the given position which are in the window
+	 *
+	 * @return number of bytes copied, at most the size of destination
+	 */
+	int copyBefore(long position, byte[] destination) {
+		int end = (int) (position - windowOffset);
+		int length = Math.min(end, destination.length);
+		
+		window.position(end - length);
+		window.get(destination, 0, length);
+		
+		return length;
+	}
+	
+	/**
+	 * Characters of a line in the window, each byte is a character
+	 */
+	private class LineView implements CharSequence {
+		
+		private int start;
+		
+		private int end;
+		
+		private boolean nonAscii;
+		
+		private void set(int start, int end) {
+			this.start = start;
+			this.end = end;
+			this.nonAscii = false;
+		}
+		
+		@Override
+		public int length() {
+			return end - start;
+		}
+		
+		@Override
+		public char charAt(int index) {
+			byte b = window.get(start + index);
+			if(b < 0)
+				nonAscii = true;
+			
+			return (char) (b & 0xff);
+		}
+		
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return toString().subSequence(from, to);
+		}
+		
+		@Override
+		public String toString() {
+			return decode(windowOffset + start, windowOffset + end);
+		}
+	
+	}
+
+}
@@ -0,0 +1,440 @@
+package ch.cern.db.log;
+
+import java.text.DateFormat;
+import java.text.DateFormatSymbols;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Parses the timestamp at the beginning of log lines without throwing exceptions.
+ *
+ * The pattern of a {@link SimpleDateFormat} is compiled into a list of fields which are
+ * matched character by character, following the same rules SimpleDateFormat uses when parsing
+ * (case insensitive names, leading white spaces before fields, trailing text ignored). Patterns
+ * with letters which are not supported are parsed with the date format itself.
+ *
+ * Instances are not thread safe.
+ */
+public class TimestampParser {
+	
+	/**
+	 * Returned when line does not start with a timestamp
+	 */
+	public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+	
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+	
+	private static final int LITERAL = 0;
+	private static final int YEAR = 1;
+	private static final int MONTH = 2;
+	private static final int MONTH_NAME = 3;
+	private static final int DAY = 4;
+	private static final int DAY_NAME = 5;
+	private static final int HOUR_OF_DAY = 6;
+	private static final int HOUR_1_24 = 7;
+	private static final int HOUR_AM_PM = 8;
+	private static final int HOUR_1_12 = 9;
+	private static final int AM_PM = 10;
+	private static final int MINUTE = 11;
+	private static final int SECOND = 12;
+	private static final int MILLISECOND = 13;
+	private static final int ZONE_OFFSET = 14;
+	
+	private final DateFormat fallback;
+	
+	private final int[] types;
+	private final int[] counts;
+	private final String[] literals;
+	private final boolean[] abutting;
+	
+	private final String[] monthNames;
+	private final String[] dayNames;
+	private final String[] amPmNames;
+	
+	private final TimeZone timeZone;
+	
+	private final int defaultCenturyStart;
+	
+	private int index;
+	
+	private int year, month, day, hour, minute, second, millisecond, zoneOffset, amPm;
+	private boolean hasZoneOffset;
+	
+	public TimestampParser(String pattern) {
+		this(new SimpleDateFormat(pattern));
+	}
+	
+	public TimestampParser(DateFormat dateFormat) {
+		timeZone = dateFormat.getTimeZone();
+		
+		Calendar calendar = Calendar.getInstance(timeZone);
+		defaultCenturyStart = calendar.get(Calendar.YEAR) - 80;
+		
+		List<Integer> types = new ArrayList<>();
+		List<Integer> counts = new ArrayList<>();
+		List<String> literals = new ArrayList<>();
+		
+		boolean compiled = dateFormat instanceof SimpleDateFormat
+				&& compile(((SimpleDateFormat) dateFormat).toPattern(), types, counts, literals);
+		
+		if(compiled){
+			fallback = null;
+			
+			int size = types.size();
+			this.types = new int[size];
+			this.counts = new int[size];
+			this.literals = literals.toArray(new String[size]);
+			this.abutting = new boolean[size];
+			for (int i = 0; i < size; i++) {
+				this.types[i] = types.get(i);
+				this.counts[i] = counts.get(i);
+				
+				abutting[i] = i + 1 < size && isNumeric(types.get(i))
+								&& isNumeric(types.get(i + 1));
+			}
+			
+			DateFormatSymbols symbols = ((SimpleDateFormat) dateFormat).getDateFormatSymbols();
+			monthNames = concat(symbols.getMonths(), symbols.getShortMonths());
+			dayNames = concat(symbols.getWeekdays(), symbols.getShortWeekdays());
+			amPmNames = symbols.getAmPmStrings();
+		}else{
+			fallback = dateFormat;
+			
+			this.types = null;
+			this.counts = null;
+			this.literals = null;
+			this.abutting = null;
+			monthNames = null;
+			dayNames = null;
+			amPmNames = null;
+		}
+	}
+	
+	private static boolean compile(String pattern, List<Integer> types, List<Integer> counts, List<String> literals) {
+		StringBuilder literal = new StringBuilder();
+		
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			
+			if(c == '\''){
+				if(i + 1 < pattern.length() && pattern.charAt(i + 1) == '\''){
+					literal.append('\'');
+					i += 2;
+					continue;
+				}
+				
+				int end = i + 1;
+				while(end < pattern.length()){
+					if(pattern.charAt(end) == '\''){
+						if(end + 1 < pattern.length() && pattern.charAt(end + 1) == '\''){
+							literal.append('\'');
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					
+					literal.append(pattern.charAt(end++));
+				}
+				i = end + 1;
+				
+				continue;
+			}
+			
+			if(!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')){
+				literal.append(c);
+				i++;
+				
+				continue;
+			}
+			
+			int count = 1;
+			while(i + count < pattern.length() && pattern.charAt(i + count) == c)
+				count++;
+			i += count;
+			
+			int type = fieldType(c, count);
+			if(type < 0)
+				return false;
+			
+			if(literal.length() > 0){
+				types.add(LITERAL);
+				counts.add(0);
+				literals.add(literal.toString());
+				literal.setLength(0);
+			}
+			
+			types.add(type);
+			counts.add(count);
+			literals.add(null);
+		}
+		
+		if(literal.length() > 0){
+			types.add(LITERAL);
+			counts.add(0);
+			literals.add(literal.toString());
+		}
+		
+		return true;
+	}
+	
+	private static int fieldType(char c, int count) {
+		switch (c) {
+		case 'y': return YEAR;
+		case 'M': return count >= 3 ? MONTH_NAME : MONTH;
+		case 'd': return DAY;
+		case 'E': return DAY_NAME;
+		case 'H': return HOUR_OF_DAY;
+		case 'k': return HOUR_1_24;
+		case 'K': return HOUR_AM_PM;
+		case 'h': return HOUR_1_12;
+		case 'a': return AM_PM;
+		case 'm': return MINUTE;
+		case 's': return SECOND;
+		case 'S': return MILLISECOND;
+		case 'Z': return ZONE_OFFSET;
+		default: return -1;
+		}
+	}
+	
+	private static boolean isNumeric(int type) {
+		return type != LITERAL && type != MONTH_NAME && type != DAY_NAME && type != AM_PM && type != ZONE_OFFSET;
+	}
+	
+	private static String[] concat(String[] first, String[] second) {
+		String[] result = new String[first.length + second.length];
+		
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		
+		return result;
+	}
+	
+	/**
+	 * @return true if line starts with a timestamp
+	 */
+	public boolean matches(CharSequence line) {
+		return parse(line) != NO_TIMESTAMP;
+	}
+	
+	/**
+	 * @return milliseconds since epoch of the timestamp the line starts with or {@link #NO_TIMESTAMP}
+	 */
+	public long parse(CharSequence line) {
+		if(fallback != null){
+			Date date = fallback.parse(line.toString(), new ParsePosition(0));
+			
+			return date != null ? date.getTime() : NO_TIMESTAMP;
+		}
+		
+		year = 1970;
+		month = 1;
+		day = 1;
+		hour = minute = second = millisecond = 0;
+		amPm = -1;
+		hasZoneOffset = false;
+		
+		index = 0;
+		
+		for (int i = 0; i < types.length; i++)
+			if(!parseField(line, i))
+				return NO_TIMESTAMP;
+		
+		if(amPm >= 0 && hour < 12)
+			hour += amPm * 12;
+		
+		long millis = toEpochDay(year, month, day) * MILLIS_PER_DAY
+				+ ((hour * 60L + minute) * 60L + second) * 1000L + millisecond;
+		
+		if(hasZoneOffset)
+			return millis - zoneOffset;
+		
+		int offset = timeZone.getOffset(millis - timeZone.getRawOffset());
+		int adjustedOffset = timeZone.getOffset(millis - offset);
+		
+		return millis - adjustedOffset;
+	}
+	
+	private boolean parseField(CharSequence line, int i) {
+		int type = types[i];
+		
+		if(type == LITERAL){
+			String literal = literals[i];
+			
+			if(index + literal.length() > line.length())
+				return false;
+			
+			for (int j = 0; j < literal.length(); j++)
+				if(line.charAt(index + j) != literal.charAt(j))
+					return false;
+			
+			index += literal.length();
+			
+			return true;
+		}
+		
+		skipWhiteSpaces(line);
+		
+		switch (type) {
+		case MONTH_NAME:
+			int monthIndex = matchName(line, monthNames);
+			if(monthIndex < 0)
+				return false;
+			month = (monthIndex % 13) + 1;
+			return true;
+		case DAY_NAME:
+			return matchName(line, dayNames) >= 0;
+		case AM_PM:
+			amPm = matchName(line, amPmNames);
+			return amPm >= 0;
+		case ZONE_OFFSET:
+			return parseZoneOffset(line);
+		}
+		
+		int start = index;
+		int value = parseNumber(line, abutting[i] ? counts[i] : 9);
+		if(value < 0)
+			return false;
+		
+		switch (type) {
+		case YEAR:
+			year = value;
+			if(counts[i] <= 2 && index - start == 2){
+				year = defaultCenturyStart / 100 * 100 + value;
+				if(year < defaultCenturyStart)
+					year += 100;
+			}
+			break;
+		case MONTH: month = value; break;
+		case DAY: day = value; break;
+		case HOUR_OF_DAY: hour = value; break;
+		case HOUR_1_24: hour = value == 24 ? 0 : value; break;
+		case HOUR_AM_PM: hour = value; break;
+		case HOUR_1_12: hour = value == 12 ? 0 : value; break;
+		case MINUTE: minute = value; break;
+		case SECOND: second = value; break;
+		case MILLISECOND: millisecond = value; break;
+		}
+		
+		return true;
+	}
+	
+	private void skipWhiteSpaces(CharSequence line) {
+		while(index < line.length() && (line.charAt(index) == ' ' || line.charAt(index) == '\t'))
+			index++;
+	}
+	
+	/**
+	 * @return parsed value or -1 if there are no digits
+	 */
+	private int parseNumber(CharSequence line, int maxDigits) {
+		int value = 0;
+		int digits = 0;
+		
+		while(digits < maxDigits && index < line.length()){
+			char c = line.charAt(index);
+			if(c < '0' || c > '9')
+				break;
+			
+			value = value * 10 + (c - '0');
+			digits++;
+			index++;
+		}
+		
+		return digits > 0 ? value : -1;
+	}
+	
+	/**
+	 * @return index of the longest name matching (case insensitive) at current position, -1 if none
+	 */
+	private int matchName(CharSequence line, String[] names) {
+		int best = -1;
+		int bestLength = 0;
+		
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			int length = name.length();
+			
+			if(length <= bestLength || index + length > line.length())
+				continue;
+			
+			boolean matches = true;
+			for (int j = 0; j < length && matches; j++) {
+				char a = line.charAt(index + j);
+				char b = name.charAt(j);
+				
+				matches = a == b
+						|| Character.toUpperCase(a) == Character.toUpperCase(b)
+						|| Character.toLowerCase(a) == Character.toLowerCase(b);
+			}
+			
+			if(matches){
+				best = i;
+				bestLength = length;
+			}
+		}
+		
+		index += bestLength;
+		
+		return best;
+	}
+	
+	/**
+	 * Parses offsets like +0200 or -08:00
+	 */
+	private boolean parseZoneOffset(CharSequence line) {
+		if(index >= line.length())
+			return false;
+		
+		char sign = line.charAt(index);
+		if(sign != '+' && sign != '-')
+			return false;
+		index++;
+		
+		int hours = parseNumber(line, 2);
+		if(hours < 0)
+			return false;
+		
+		if(index < line.length() && line.charAt(index) == ':')
+			index++;
+		
+		int minutes = parseNumber(line, 2);
+		if(minutes < 0)
+			return false;
+		
+		zoneOffset = (hours * 60 + minutes) * 60 * 1000 * (sign == '-' ? -1 : 1);
+		hasZoneOffset = true;
+		
+		return true;
+	}
+	
+	/**
+	 * Days since 1970-01-01, out of range values are rolled like a lenient calendar does
+	 */
+	private static long toEpochDay(long year, long month, long day) {
+		long monthsOverflow = floorDiv(month - 1, 12);
+		year += monthsOverflow;
+		month -= monthsOverflow * 12;
+		
+		long y = month <= 2 ? year - 1 : year;
+		long era = floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		
+		return era * 146097 + dayOfEra - 719468 + day - 1;
+	}
+	
+	private static long floorDiv(long x, long y) {
+		long result = x / y;
+		
+		return (x % y != 0 && (x < 0) != (y < 0)) ? result - 1 : result;
+	}
+
+}
@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map.Entry;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Encodes JSON trees as CBOR (RFC 7049) and decodes them back.
+ *
+ * Numbers written with a decimal point or exponent are encoded as floating point (or as decimal
+ * fractions when a double would lose precision), so they are decoded with a decimal point again.
+ * Only definite lengths are written, indefinite lengths and tags other than bignums and decimal
+ * fractions are not supported when decoding.
+ */
+public class CBORCodec {
+	
+	private static final int UNSIGNED = 0;
+	private static final int NEGATIVE = 1;
+	private static final int BYTES = 2;
+	private static final int TEXT = 3;
+	private static final int ARRAY = 4;
+	private static final int MAP = 5;
+	private static final int TAG = 6;
+	private static final int SIMPLE = 7;
+	
+	private static final int TAG_POSITIVE_BIGNUM = 2;
+	private static final int TAG_NEGATIVE_BIGNUM = 3;
+	private static final int TAG_DECIMAL_FRACTION = 4;
+	
+	private static final int FALSE = 0xF4;
+	private static final int TRUE = 0xF5;
+	private static final int NULL = 0xF6;
+	private static final int FLOAT32 = 0xFA;
+	private static final int FLOAT64 = 0xFB;
+	
+	private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+	private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+	
+	private final byte[] data;
+	
+	private int position;
+	
+	private CBORCodec(byte[] data) {
+		this.data = data;
+		this.position = 0;
+	}
+	
+	public static byte[] encode(JsonElement element){
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+		
+		write(out, element);
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * @throws JsonParseException if data is not valid or not supported CBOR
+	 */
+	public static JsonElement decode(byte[] data){
+		CBORCodec decoder = new CBORCodec(data);
+		
+		JsonElement element = decoder.read();
+		
+		if(decoder.position != data.length)
+			throw new JsonParseException("Unexpected data after CBOR item at position " + decoder.position);
+		
+		return element;
+	}
+	
+	private static void write(ByteArrayOutputStream out, JsonElement element) {
+		if(element == null || element.isJsonNull()){
+			out.write(NULL);
+		}else if(element.isJsonObject()){
+			JsonObject object = element.getAsJsonObject();
+			
+			writeHead(out, MAP, object.entrySet().size());
+			for (Entry<String, JsonElement> property : object.entrySet()) {
+				writeText(out, property.getKey());
+				write(out, property.getValue());
+			}
+		}else if(element.isJsonArray()){
+			JsonArray array = element.getAsJsonArray();
+			
+			writeHead(out, ARRAY, array.size());
+			for (JsonElement item : array)
+				write(out, item);
+		}else{
+			JsonPrimitive primitive = element.getAsJsonPrimitive();
+			
+			if(primitive.isBoolean())
+				out.write(primitive.getAsBoolean() ? TRUE : FALSE);
+			else if(primitive.isNumber())
+				writeNumber(out, primitive.getAsNumber());
+			else
+				writeText(out, primitive.getAsString());
+		}
+	}
+	
+	private static void writeNumber(ByteArrayOutputStream out, Number number) {
+		if(number instanceof Double || number instanceof Float){
+			writeDouble(out, number.doubleValue());
+			return;
+		}
+		if(number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte){
+			writeInteger(out, number.longValue());
+			return;
+		}
+		
+		String text = number.toString();
+		
+		if(text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0){
+			writeInteger(out, new BigInteger(text));
+			return;
+		}
+		
+		BigDecimal decimal = new BigDecimal(text);
+		double value = decimal.doubleValue();
+		
+		if(!Double.isInfinite(value) && new BigDecimal(Double.toString(value)).compareTo(decimal) == 0){
+			writeDouble(out, value);
+		}else{
+			writeHead(out, TAG, TAG_DECIMAL_FRACTION);
+			writeHead(out, ARRAY, 2);
+			writeInteger(out, -decimal.scale());
+			writeInteger(out, decimal.unscaledValue());
+		}
+	}
+	
+	private static void writeInteger(ByteArrayOutputStream out, long value) {
+		if(value >= 0)
+			writeHead(out, UNSIGNED, value);
+		else
+			writeHead(out, NEGATIVE, -1 - value);
+	}
+	
+	private static void writeInteger(ByteArrayOutputStream out, BigInteger value) {
+		if(value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0){
+			writeInteger(out, value.longValue());
+			return;
+		}
+		
+		boolean negative = value.signum() < 0;
+		byte[] magnitude = (negative ? value.negate().subtract(BigInteger.ONE) : value).toByteArray();
+		
+		int offset = magnitude[0] == 0 ? 1 : 0;
+		
+		writeHead(out, TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+		writeHead(out, BYTES, magnitude.length - offset);
+		out.write(magnitude, offset, magnitude.length - offset);
+	}
+	
+	private static void writeDouble(ByteArrayOutputStream out, double value) {
+		out.write(FLOAT64);
+		writeBytes(out, Double.doubleToLongBits(value), 8);
+	}
+	
+	private static void writeText(ByteArrayOutputStream out, String text) {
+		byte[] bytes = text.getBytes(Charsets.UTF_8);
+		
+		writeHead(out, TEXT, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * @param value unsigned
+	 */
+	private static void writeHead(ByteArrayOutputStream out, int majorType, long value) {
+		int type = majorType << 5;
+		
+		if(value >= 0 && value < 24){
+			out.write(type | (int) value);
+		}else if(value >= 0 && value <= 0xFF){
+			out.write(type | 24);
+			writeBytes(out, value, 1);
+		}else if(value >= 0 && value <= 0xFFFF){
+			out.write(type | 25);
+			writeBytes(out, value, 2);
+		}else if(value >= 0 && value <= 0xFFFFFFFFL){
+			out.write(type | 26);
+			writeBytes(out, value, 4);
+		}else{
+			out.write(type | 27);
+			writeBytes(out, value, 8);
+		}
+	}
+	
+	private static void writeBytes(ByteArrayOutputStream out, long value, int length) {
+		for (int shift = (length - 1) * 8; shift >= 0; shift -= 8)
+			out.write((int) (value >>> shift));
+	}
+	
+	private JsonElement read() {
+		int initial = nextByte();
+		int majorType = initial >>> 5;
+		
+		if(majorType == SIMPLE)
+			return readSimple(initial);
+		
+		long value = readArgument(initial);
+		
+		switch (majorType) {
+		case UNSIGNED:
+			return new JsonPrimitive(value >= 0 ? (Number) value : unsigned(value));
+		case NEGATIVE:
+			return new JsonPrimitive(value >= 0 ? (Number) (-1 - value) : unsigned(value).negate().subtract(BigInteger.ONE));
+		case TEXT:
+			int length = length(value);
+			String text = new String(data, position, length, Charsets.UTF_8);
+			position += length;
+			return new JsonPrimitive(text);
+		case ARRAY:
+			JsonArray array = new JsonArray();
+			for (int i = length(value); i > 0; i--)
+				array.add(read());
+			return array;
+		case MAP:
+			JsonObject object = new JsonObject();
+			for (int i = length(value); i > 0; i--) {
+				JsonElement key = read();
+				if(!key.isJsonPrimitive() || !key.getAsJsonPrimitive().isString())
+					throw new JsonParseException("Map keys must be text at position " + position);
+				
+				object.add(key.getAsString(), read());
+			}
+			return object;
+		case TAG:
+			return readTagged(value);
+		default:
+			throw new JsonParseException("Unsupported CBOR major type " + majorType + " at position " + (position - 1));
+		}
+	}
+	
+	private JsonElement readTagged(long tag) {
+		if(tag == TAG_POSITIVE_BIGNUM || tag == TAG_NEGATIVE_BIGNUM){
+			int initial = nextByte();
+			if(initial >>> 5 != BYTES)
+				throw new JsonParseException("Bignum must be a byte string at position " + (position - 1));
+			
+			int length = length(readArgument(initial));
+			byte[] magnitude = new byte[length + 1];
+			System.arraycopy(data, position, magnitude, 1, length);
+			position += length;
+			
+			BigInteger value = new BigInteger(magnitude);
+			
+			return new JsonPrimitive(tag == TAG_POSITIVE_BIGNUM ? value : value.negate().subtract(BigInteger.ONE));
+		}
+		
+		if(tag == TAG_DECIMAL_FRACTION){
+			JsonElement fraction = read();
+			if(!fraction.isJsonArray() || fraction.getAsJsonArray().size() != 2)
+				throw new JsonParseException("Decimal fraction must be an array of two integers at position " + position);
+			
+			int exponent = fraction.getAsJsonArray().get(0).getAsInt();
+			BigInteger mantissa = fraction.getAsJsonArray().get(1).getAsBigInteger();
+			
+			return new JsonPrimitive(new BigDecimal(mantissa, -exponent));
+		}
+		
+		throw new JsonParseException("Unsupported CBOR tag " + tag + " at position " + position);
+	}
+	
+	private JsonElement readSimple(int initial) {
+		switch (initial) {
+		case FALSE:
+			return new JsonPrimitive(false);
+		case TRUE:
+			return new JsonPrimitive(true);
+		case NULL:
+			return JsonNull.INSTANCE;
+		case FLOAT32:
+			return new JsonPrimitive((double) Float.intBitsToFloat((int) readBytes(4)));
+		case FLOAT64:
+			return new JsonPrimitive(Double.longBitsToDouble(readBytes(8)));
+		default:
+			throw new JsonParseException("Unsupported CBOR simple value " + initial + " at position " + (position - 1));
+		}
+	}
+	
+	/**
+	 * @return unsigned argument of the data item, it may overflow to a negative long
+	 */
+	private long readArgument(int initial) {
+		int additional = initial & 0x1F;
+		
+		if(additional < 24)
+			return additional;
+		
+		switch (additional) {
+		case 24: return readBytes(1);
+		case 25: return readBytes(2);
+		case 26: return readBytes(4);
+		case 27: return readBytes(8);
+		default:
+			throw new JsonParseException("Unsupported CBOR length " + additional + " at position " + (position - 1));
+		}
+	}
+	
+	private int length(long value) {
+		if(value < 0 || value > data.length - position)
+			throw new JsonParseException("CBOR length " + value + " exceeds data at position " + position);
+		
+		return (int) value;
+	}
+	
+	private long readBytes(int length) {
+		long value = 0;
+		for (int i = 0; i < length; i++)
+			value = (value << 8) | nextByte();
+		
+		return value;
+	}
+	
+	private int nextByte() {
+		if(position >= data.length)
+			throw new JsonParseException("Unexpected end of CBOR data");
+		
+		return data[position++] & 0xFF;
+	}
+	
+	private static BigInteger unsigned(long value) {
+		return BigInteger.valueOf(value & Long.MAX_VALUE).setBit(63);
+	}
+
+}
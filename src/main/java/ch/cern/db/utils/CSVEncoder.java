@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.utils;
+
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Encodes JSON objects as CSV lines (RFC 4180) in UTF-8, without end of line.
+ *
+ * If columns are configured, values are written in the order of the columns and missing
+ * properties are written as empty values. Otherwise, all properties are written in the order of the object.
+ *
+ * Strings are written without quotes unless they contain a separator, quotes or end of line.
+ * Nulls are written as empty values and nested objects or arrays as JSON.
+ *
+ * Lines are written into a buffer which is reused, so an instance must not be shared between threads.
+ */
+public class CSVEncoder {
+	
+	private static final byte SEPARATOR = ',';
+	private static final byte QUOTE = '"';
+	
+	/** Null if columns are the properties of each object */
+	private final String[] columns;
+	
+	private byte[] buffer = new byte[256];
+	private int length;
+	
+	/**
+	 * @param columns names of the properties to write, null to write all of them
+	 */
+	public CSVEncoder(String[] columns) {
+		this.columns = columns == null ? null : columns.clone();
+	}
+	
+	/**
+	 * @return columns from a comma separated list, null if the list is null or empty
+	 */
+	public static String[] parseColumns(String list) {
+		if(list == null || list.trim().isEmpty())
+			return null;
+		
+		String[] columns = list.split(",");
+		for (int i = 0; i < columns.length; i++)
+			columns[i] = columns[i].trim();
+		
+		return columns;
+	}
+	
+	public byte[] encode(JsonObject json){
+		length = 0;
+		
+		if(columns != null){
+			for (int i = 0; i < columns.length; i++) {
+				if(i > 0)
+					append(SEPARATOR);
+				
+				appendValue(json.get(columns[i]));
+			}
+		}else{
+			boolean first = true;
+			for (Entry<String, JsonElement> property : json.entrySet()) {
+				if(first)
+					first = false;
+				else
+					append(SEPARATOR);
+				
+				appendValue(property.getValue());
+			}
+		}
+		
+		return Arrays.copyOf(buffer, length);
+	}
+	
+	/**
+	 * @return line with the names of the columns, null if columns are not configured
+	 */
+	public byte[] encodeHeader(){
+		if(columns == null)
+			return null;
+		
+		length = 0;
+		for (int i = 0; i < columns.length; i++) {
+			if(i > 0)
+				append(SEPARATOR);
+			
+			appendField(columns[i]);
+		}
+		
+		return Arrays.copyOf(buffer, length);
+	}
+	
+	private void appendValue(JsonElement value) {
+		if(value == null || value.isJsonNull())
+			return;
+		
+		if(value.isJsonPrimitive()){
+			JsonPrimitive primitive = value.getAsJsonPrimitive();
+			
+			if(primitive.isString())
+				appendField(primitive.getAsString());
+			else
+				appendText(primitive.getAsString());
+		}else{
+			appendField(value.toString());
+		}
+	}
+	
+	private void appendField(String text) {
+		if(!needsQuotes(text)){
+			appendText(text);
+			return;
+		}
+		
+		append(QUOTE);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			
+			if(c == QUOTE)
+				append(QUOTE);
+			
+			i = appendChar(text, i);
+		}
+		append(QUOTE);
+	}
+	
+	private boolean needsQuotes(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			
+			if(c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r')
+				return true;
+		}
+		
+		return false;
+	}
+	
+	private void appendText(String text) {
+		for (int i = 0; i < text.length(); i++)
+			i = appendChar(text, i);
+	}
+	
+	/**
+	 * Appends the character at index encoded as UTF-8
+	 *
+	 * @return index of the last char which has been appended (a surrogate pair takes two)
+	 */
+	private int appendChar(String text, int index) {
+		char c = text.charAt(index);
+		
+		if(c < 0x80){
+			append((byte) c);
+		}else if(c < 0x800){
+			ensureCapacity(2);
+			buffer[length++] = (byte) (0xC0 | (c >> 6));
+			buffer[length++] = (byte) (0x80 | (c & 0x3F));
+		}else if(Character.isHighSurrogate(c) && index + 1 < text.length()
+				&& Character.isLowSurrogate(text.charAt(index + 1))){
+			int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+			
+			ensureCapacity(4);
+			buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+			buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+			buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+			buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+			
+			return index + 1;
+		}else if(Character.isSurrogate(c)){
+			//Unpaired surrogate
+			append((byte) '?');
+		}else{
+			ensureCapacity(3);
+			buffer[length++] = (byte) (0xE0 | (c >> 12));
+			buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buffer[length++] = (byte) (0x80 | (c & 0x3F));
+		}
+		
+		return index;
+	}
+	
+	private void append(byte b) {
+		ensureCapacity(1);
+		buffer[length++] = b;
+	}
+	
+	private void ensureCapacity(int bytes) {
+		if(length + bytes > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+	}
+
+}
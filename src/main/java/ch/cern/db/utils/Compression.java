@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Compression formats which can be read transparently, detected by the first bytes (magic number) of files.
+ */
+public enum Compression {
+	
+	NONE, GZIP, BZIP2;
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * @return compression format of the file, NONE if not compressed or shorter than the magic number
+	 */
+	public static Compression detect(File file) throws IOException {
+		byte[] magic = new byte[3];
+		int length = 0;
+		
+		try (InputStream in = new FileInputStream(file)) {
+			int read;
+			while(length < magic.length && (read = in.read(magic, length, magic.length - length)) > 0)
+				length += read;
+		}
+		
+		if(length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b)
+			return GZIP;
+		if(length >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h')
+			return BZIP2;
+		
+		return NONE;
+	}
+	
+	/**
+	 * @return stream which decompresses the given one, concatenated members or streams are read as one
+	 */
+	public InputStream decompress(InputStream in) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		case BZIP2:
+			return new BZip2CompressorInputStream(in, true);
+		default:
+			return in;
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.utils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.SortedMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip file (RFC 1952) made of one or several members.
+ *
+ * The beginning of every member is recorded in the given map (uncompressed offset to
+ * compressed offset), so decompression can be started again at any member which has
+ * already been read instead of at the beginning of the file.
+ */
+public class GzipMembersInputStream extends InputStream {
+	
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	
+	private final FileChannel channel;
+	
+	private final byte[] input;
+	private int inputLength = 0;
+	private int inputPosition = 0;
+	
+	/**
+	 * Offset in the file of the first byte of the input buffer
+	 */
+	private long inputOffset;
+	
+	private final Inflater inflater = new Inflater(true);
+	private final CRC32 crc = new CRC32();
+	private long memberLength;
+	private boolean inMember = false;
+	private boolean finished = false;
+	
+	private long position;
+	
+	private final SortedMap<Long, Long> memberStarts;
+	
+	private final byte[] singleByte = new byte[1];
+	
+	/**
+	 * @param file gzip file
+	 * @param compressedOffset offset in the file where a member starts
+	 * @param uncompressedOffset uncompressed offset of that member
+	 * @param memberStarts map where beginning of members are recorded
+	 * @param bufferSize size of the buffer for compressed bytes
+	 */
+	public GzipMembersInputStream(File file, long compressedOffset, long uncompressedOffset,
+			SortedMap<Long, Long> memberStarts, int bufferSize) throws IOException {
+		this.memberStarts = memberStarts;
+		
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		channel.position(compressedOffset);
+		
+		input = new byte[bufferSize];
+		inputOffset = compressedOffset;
+		position = uncompressedOffset;
+	}
+	
+	/**
+	 * @return number of uncompressed bytes before next byte to read
+	 */
+	public long getPosition() {
+		return position;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int read = read(singleByte, 0, 1);
+		
+		return read <= 0 ? -1 : singleByte[0] & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0)
+			return 0;
+		
+		while(!finished){
+			if(!inMember && !startMember()){
+				finished = true;
+				break;
+			}
+			
+			if(inflater.needsInput()){
+				if(!fill())
+					throw new EOFException("Unexpected end of gzip file");
+				
+				inflater.setInput(input, inputPosition, inputLength - inputPosition);
+			}
+			
+			int inflated;
+			try {
+				inflated = inflater.inflate(b, off, len);
+			} catch (DataFormatException e) {
+				throw new ZipException(e.getMessage());
+			}
+			inputPosition = inputLength - inflater.getRemaining();
+			
+			if(inflated > 0){
+				crc.update(b, off, inflated);
+				memberLength += inflated;
+				position += inflated;
+				
+				return inflated;
+			}
+			
+			if(inflater.finished())
+				endMember();
+			else if(inflater.needsDictionary())
+				throw new ZipException("Deflate streams with dictionary are not supported");
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Reads header of next member
+	 *
+	 * @return false if there are no more members
+	 */
+	private boolean startMember() throws IOException {
+		if(inputPosition == inputLength && !fill())
+			return false;
+		
+		long memberOffset = inputOffset + inputPosition;
+		
+		if(readUnsignedByte() != 0x1f || readUnsignedByte() != 0x8b){
+			//Trailing garbage is ignored (as GZIPInputStream does) but not at the beginning
+			if(memberOffset == 0)
+				throw new ZipException("Not in gzip format");
+			
+			return false;
+		}
+		if(readUnsignedByte() != 8)
+			throw new ZipException("Unsupported compression method");
+		int flags = readUnsignedByte();
+		skipBytes(6);
+		
+		if((flags & FEXTRA) != 0)
+			skipBytes(readUnsignedByte() | (readUnsignedByte() << 8));
+		if((flags & FNAME) != 0)
+			while(readUnsignedByte() != 0);
+		if((flags & FCOMMENT) != 0)
+			while(readUnsignedByte() != 0);
+		if((flags & FHCRC) != 0)
+			skipBytes(2);
+		
+		memberStarts.put(position, memberOffset);
+		
+		inflater.reset();
+		crc.reset();
+		memberLength = 0;
+		if(inputPosition < inputLength)
+			inflater.setInput(input, inputPosition, inputLength - inputPosition);
+		
+		inMember = true;
+		
+		return true;
+	}
+	
+	private void endMember() throws IOException {
+		long expectedCrc = readUnsignedInt();
+		long expectedLength = readUnsignedInt();
+		
+		if(expectedCrc != crc.getValue())
+			throw new ZipException("Corrupt gzip member (wrong CRC) ending at byte " + (inputOffset + inputPosition));
+		if(expectedLength != (memberLength & 0xffffffffL))
+			throw new ZipException("Corrupt gzip member (wrong size) ending at byte " + (inputOffset + inputPosition));
+		
+		inMember = false;
+	}
+	
+	private long readUnsignedInt() throws IOException {
+		return readUnsignedByte()
+				| (readUnsignedByte() << 8)
+				| (readUnsignedByte() << 16)
+				| ((long) readUnsignedByte() << 24);
+	}
+	
+	private int readUnsignedByte() throws IOException {
+		if(inputPosition == inputLength && !fill())
+			throw new EOFException("Unexpected end of gzip file");
+		
+		return input[inputPosition++] & 0xff;
+	}
+	
+	private void skipBytes(int n) throws IOException {
+		for (int i = 0; i < n; i++)
+			readUnsignedByte();
+	}
+	
+	/**
+	 * Reads next compressed bytes into the input buffer, only once it has been consumed
+	 *
+	 * @return false if end of file has been reached
+	 */
+	private boolean fill() throws IOException {
+		inputOffset += inputLength;
+		inputPosition = 0;
+		inputLength = 0;
+		
+		int read = channel.read(ByteBuffer.wrap(input));
+		if(read <= 0)
+			return false;
+		
+		inputLength = read;
+		
+		return true;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		inflater.end();
+		channel.close();
+	}
+
+}
@@ -3,15 +3,57 @@ package ch.cern.db.utils;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import org.apache.flume.Event;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import ch.cern.db.flume.JSONEvent;
+import ch.cern.db.flume.StructuredEvent;
+
 public class JSONUtils {
 
-	private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:SSZ");
+	public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:SSZ";
+	
+	/** Formatters are not thread-safe and deserializers may run in parallel, so each thread gets its own */
+	private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>(){
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(DATE_FORMAT);
+		}
+	};
 	
 	public static String to(Date date){
 		if(date == null)
 			return null;
 		
-		return dateFormat.format(date);
+		return dateFormat.get().format(date);
+	}
+	
+	/**
+	 * @return true if the event is a {@link StructuredEvent} or its body is encoded as CBOR
+	 */
+	public static boolean isJSON(Event event){
+		return event instanceof StructuredEvent || isCBOREncoded(event);
 	}
 	
+	public static boolean isCBOREncoded(Event event){
+		return JSONEvent.CBOR_CONTENT_TYPE.equals(event.getHeaders().get(JSONEvent.CONTENT_TYPE_HEADER));
+	}
+	
+	/**
+	 * @return body of the event as JSON object, it must not be modified. 
+	 * Body is only parsed if it is not a {@link StructuredEvent}, as CBOR if so it is marked in the headers.
+	 */
+	public static JsonObject getBody(Event event){
+		if(event instanceof StructuredEvent)
+			return ((StructuredEvent) event).getJsonBody();
+		
+		if(isCBOREncoded(event))
+			return CBORCodec.decode(event.getBody()).getAsJsonObject();
+		
+		return new JsonParser().parse(new String(event.getBody(), Charsets.UTF_8)).getAsJsonObject();
+	}
+
 }
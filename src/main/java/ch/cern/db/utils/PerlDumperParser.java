@@ -0,0 +1,350 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.utils;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Parses the output of Perl Data::Dumper ($VAR1 = {...};) into a JSON tree in a single pass.
+ *
+ * Hashes, arrays, quoted strings, numbers, barewords and undef are supported. Blessed objects
+ * are parsed as the blessed value, references to other parts of the dump ($VAR1->...) and
+ * code references are parsed as null.
+ */
+public class PerlDumperParser {
+	
+	private final CharSequence text;
+	
+	private int position;
+	
+	private PerlDumperParser(CharSequence text) {
+		this.text = text;
+		this.position = 0;
+	}
+	
+	/**
+	 * @param text value, optionally assigned to a variable ("$VAR1 = value;"),
+	 * characters after the value are ignored
+	 */
+	public static JsonElement parse(CharSequence text) throws ParseException {
+		PerlDumperParser parser = new PerlDumperParser(text);
+		
+		parser.skipSpaces();
+		if(parser.peek() == '$'){
+			parser.position++;
+			parser.parseBareword();
+			parser.skipSpaces();
+		}
+		
+		if(parser.peek() == '=')
+			parser.position++;
+		
+		return parser.parseValue();
+	}
+	
+	private JsonElement parseValue() throws ParseException {
+		skipSpaces();
+		
+		char c = peek();
+		switch (c) {
+		case '{':
+			return parseHash();
+		case '[':
+			return parseArray();
+		case '\'':
+			return new JsonPrimitive(parseSingleQuoted());
+		case '"':
+			return new JsonPrimitive(parseDoubleQuoted());
+		case '\\':
+			position++;
+			return parseValue();
+		case '$':
+			skipReference();
+			return JsonNull.INSTANCE;
+		}
+		
+		if(c == '-' || c == '+' || Character.isDigit(c))
+			return new JsonPrimitive(parseNumber());
+		
+		String word = parseBareword();
+		if(word.isEmpty())
+			throw new ParseException("Unexpected character '" + c + "'", position);
+		
+		switch (word) {
+		case "undef":
+			return JsonNull.INSTANCE;
+		case "bless":
+			return parseBless();
+		case "sub":
+			skipSpaces();
+			skipBlock();
+			return JsonNull.INSTANCE;
+		default:
+			return new JsonPrimitive(word);
+		}
+	}
+	
+	private JsonObject parseHash() throws ParseException {
+		JsonObject hash = new JsonObject();
+		
+		expect('{');
+		while(true){
+			skipSpaces();
+			if(peek() == '}'){
+				position++;
+				return hash;
+			}
+			
+			String key = parseKey();
+			
+			skipSpaces();
+			expect('=');
+			expect('>');
+			
+			hash.add(key, parseValue());
+			
+			skipSpaces();
+			if(peek() == ',')
+				position++;
+			else if(peek() != '}')
+				throw new ParseException("Expected ',' or '}' but found '" + peek() + "'", position);
+		}
+	}
+	
+	private String parseKey() throws ParseException {
+		char c = peek();
+		
+		if(c == '\'')
+			return parseSingleQuoted();
+		if(c == '"')
+			return parseDoubleQuoted();
+		if(c == '-' || c == '+' || Character.isDigit(c))
+			return parseNumber().toString();
+		
+		String word = parseBareword();
+		if(word.isEmpty())
+			throw new ParseException("Expected key but found '" + c + "'", position);
+		
+		return word;
+	}
+	
+	private JsonArray parseArray() throws ParseException {
+		JsonArray array = new JsonArray();
+		
+		expect('[');
+		while(true){
+			skipSpaces();
+			if(peek() == ']'){
+				position++;
+				return array;
+			}
+			
+			array.add(parseValue());
+			
+			skipSpaces();
+			if(peek() == ',')
+				position++;
+			else if(peek() != ']')
+				throw new ParseException("Expected ',' or ']' but found '" + peek() + "'", position);
+		}
+	}
+	
+	/**
+	 * bless( value, 'Class' )
+	 */
+	private JsonElement parseBless() throws ParseException {
+		skipSpaces();
+		expect('(');
+		
+		JsonElement value = parseValue();
+		
+		skipSpaces();
+		expect(',');
+		skipSpaces();
+		parseKey();
+		skipSpaces();
+		expect(')');
+		
+		return value;
+	}
+	
+	/**
+	 * Only \\ and \' are escapes
+	 */
+	private String parseSingleQuoted() throws ParseException {
+		expect('\'');
+		
+		StringBuilder sb = new StringBuilder();
+		while(true){
+			char c = next();
+			
+			if(c == '\'')
+				return sb.toString();
+			
+			if(c == '\\' && (peek() == '\\' || peek() == '\''))
+				c = next();
+			
+			sb.append(c);
+		}
+	}
+	
+	private String parseDoubleQuoted() throws ParseException {
+		expect('"');
+		
+		StringBuilder sb = new StringBuilder();
+		while(true){
+			char c = next();
+			
+			if(c == '"')
+				return sb.toString();
+			
+			if(c == '\\'){
+				c = next();
+				
+				switch (c) {
+				case 'n': c = '\n'; break;
+				case 't': c = '\t'; break;
+				case 'r': c = '\r'; break;
+				case 'f': c = '\f'; break;
+				case 'e': c = '\u001B'; break;
+				case 'x':
+					sb.appendCodePoint(parseHexEscape());
+					continue;
+				}
+			}
+			
+			sb.append(c);
+		}
+	}
+	
+	/**
+	 * \x{263a} or \xFF
+	 */
+	private int parseHexEscape() throws ParseException {
+		int start;
+		int end;
+		
+		if(peek() == '{'){
+			start = ++position;
+			while(next() != '}');
+			end = position - 1;
+		}else{
+			start = position;
+			while(position < start + 2 && Character.digit(peek(), 16) >= 0)
+				position++;
+			end = position;
+		}
+		
+		try{
+			return Integer.parseInt(text.subSequence(start, end).toString(), 16);
+		}catch(NumberFormatException e){
+			throw new ParseException("Invalid hexadecimal escape", start);
+		}
+	}
+	
+	private BigDecimal parseNumber() throws ParseException {
+		int start = position;
+		
+		if(peek() == '-' || peek() == '+')
+			position++;
+		
+		while(Character.isLetterOrDigit(peek()) || peek() == '.'
+				|| ((peek() == '-' || peek() == '+') && (text.charAt(position - 1) | 0x20) == 'e'))
+			position++;
+		
+		try{
+			return new BigDecimal(text.subSequence(start, position).toString());
+		}catch(NumberFormatException e){
+			throw new ParseException("Invalid number " + text.subSequence(start, position), start);
+		}
+	}
+	
+	private String parseBareword() {
+		int start = position;
+		
+		while(Character.isLetterOrDigit(peek()) || peek() == '_' || peek() == ':')
+			position++;
+		
+		return text.subSequence(start, position).toString();
+	}
+	
+	/**
+	 * $VAR1->{'key'}[0]
+	 */
+	private void skipReference() throws ParseException {
+		expect('$');
+		parseBareword();
+		
+		while(true){
+			if(peek() == '-' && position + 1 < text.length() && text.charAt(position + 1) == '>')
+				position += 2;
+			else if(peek() == '{' || peek() == '[')
+				skipBlock();
+			else
+				return;
+		}
+	}
+	
+	/**
+	 * Skips from an opening bracket to its closing one
+	 */
+	private void skipBlock() throws ParseException {
+		int depth = 0;
+		
+		do{
+			char c = next();
+			
+			if(c == '{' || c == '[' || c == '(')
+				depth++;
+			else if(c == '}' || c == ']' || c == ')')
+				depth--;
+			else if(c == '\'' || c == '"'){
+				position--;
+				if(c == '\'')
+					parseSingleQuoted();
+				else
+					parseDoubleQuoted();
+			}
+		}while(depth > 0);
+	}
+	
+	private void skipSpaces() {
+		while(position < text.length() && Character.isWhitespace(text.charAt(position)))
+			position++;
+	}
+	
+	/**
+	 * @return next character without consuming it, 0 at the end
+	 */
+	private char peek() {
+		return position < text.length() ? text.charAt(position) : 0;
+	}
+	
+	private char next() throws ParseException {
+		if(position >= text.length())
+			throw new ParseException("Unexpected end of text", position);
+		
+		return text.charAt(position++);
+	}
+	
+	private void expect(char expected) throws ParseException {
+		char c = next();
+		
+		if(c != expected)
+			throw new ParseException("Expected '" + expected + "' but found '" + c + "'", position - 1);
+	}
+
+}
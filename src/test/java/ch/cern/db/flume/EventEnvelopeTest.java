@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.FlumeException;
+import org.apache.flume.event.EventBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class EventEnvelopeTest {
+	
+	@Test
+	public void packAndUnpack(){
+		List<Event> events = new LinkedList<Event>();
+		for (int i = 0; i < 5; i++) {
+			JSONEvent event = new JSONEvent();
+			event.addProperty("row", i);
+			event.getHeaders().put("timestamp", "t" + i);
+			events.add(event);
+		}
+		
+		List<Event> envelopes = EventEnvelope.pack(events, 2, 1024);
+		
+		Assert.assertEquals(3, envelopes.size());
+		Assert.assertEquals("2", envelopes.get(0).getHeaders().get(EventEnvelope.ROWS_COUNT_HEADER));
+		Assert.assertEquals("2", envelopes.get(1).getHeaders().get(EventEnvelope.ROWS_COUNT_HEADER));
+		//Envelope with a single row is not created
+		Assert.assertSame(events.get(4), envelopes.get(2));
+		Assert.assertFalse(EventEnvelope.isEnvelope(envelopes.get(2)));
+		
+		int i = 0;
+		for (Event envelope : envelopes) {
+			for (Event row : EventEnvelope.unpack(envelope)) {
+				Assert.assertEquals("{\"row\":" + i + "}", new String(row.getBody(), Charsets.UTF_8));
+				Assert.assertEquals("t" + i, row.getHeaders().get("timestamp"));
+				Assert.assertEquals(1, row.getHeaders().size());
+				
+				i++;
+			}
+		}
+		Assert.assertEquals(5, i);
+	}
+	
+	@Test
+	public void maxBytes(){
+		Map<String, String> headers = new HashMap<String, String>();
+		
+		List<Event> events = new LinkedList<Event>();
+		for (int i = 0; i < 4; i++)
+			events.add(EventBuilder.withBody(new byte[92], headers));
+		
+		//Each row takes 100 bytes
+		List<Event> envelopes = EventEnvelope.pack(events, 100, 250);
+		
+		Assert.assertEquals(2, envelopes.size());
+		Assert.assertEquals(200, envelopes.get(0).getBody().length);
+		Assert.assertEquals(2, EventEnvelope.unpack(envelopes.get(1)).size());
+		
+		//Rows bigger than max bytes are not packed
+		envelopes = EventEnvelope.pack(events, 100, 50);
+		Assert.assertEquals(4, envelopes.size());
+		Assert.assertSame(events.get(0), envelopes.get(0));
+	}
+	
+	@Test
+	public void commonAndGroupHeaders(){
+		List<Event> events = new LinkedList<Event>();
+		for (int i = 0; i < 4; i++) {
+			Map<String, String> headers = new HashMap<String, String>();
+			headers.put("timestamp", "t" + i);
+			headers.put("type", i < 2 ? "A" : "B");
+			headers.put("host", "h");
+			events.add(EventBuilder.withBody(new byte[1], headers));
+		}
+		
+		List<Event> envelopes = EventEnvelope.pack(events, 10, 1024);
+		Assert.assertEquals(1, envelopes.size());
+		Map<String, String> headers = envelopes.get(0).getHeaders();
+		Assert.assertEquals("4", headers.get(EventEnvelope.ROWS_COUNT_HEADER));
+		Assert.assertEquals("h", headers.get("host"));
+		Assert.assertFalse(headers.containsKey("type"));
+		Assert.assertFalse(headers.containsKey("timestamp"));
+		
+		envelopes = EventEnvelope.pack(events, 10, 1024, Arrays.asList("type"));
+		Assert.assertEquals(2, envelopes.size());
+		Assert.assertEquals("A", envelopes.get(0).getHeaders().get("type"));
+		Assert.assertEquals("2", envelopes.get(0).getHeaders().get(EventEnvelope.ROWS_COUNT_HEADER));
+		Assert.assertEquals("B", envelopes.get(1).getHeaders().get("type"));
+		Assert.assertEquals("t3", EventEnvelope.unpack(envelopes.get(1)).get(1).getHeaders().get("timestamp"));
+	}
+	
+	@Test
+	public void malformedEnvelope(){
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put(EventEnvelope.ROWS_COUNT_HEADER, "2");
+		
+		try{
+			EventEnvelope.unpack(EventBuilder.withBody(new byte[]{0, 0, 0, 0, 0, 0, 0, 9, 1}, headers));
+			Assert.fail();
+		}catch(FlumeException e){}
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+import ch.cern.db.utils.JSONUtils;
+
+public class JSONEventTest {
+	
+	@Test
+	public void bodyIsSerializedOnceTillModified(){
+		JSONEvent event = new JSONEvent();
+		event.addProperty("name", "café");
+		
+		byte[] body = event.getBody();
+		Assert.assertSame(body, event.getBody());
+		Assert.assertEquals("{\"name\":\"café\"}", new String(body, Charsets.UTF_8));
+		
+		event.addProperty("size", 1);
+		Assert.assertEquals("{\"name\":\"café\",\"size\":1}", new String(event.getBody(), Charsets.UTF_8));
+		
+		//Returned object can be modified
+		event.getJsonObject().addProperty("other", true);
+		Assert.assertEquals("{\"name\":\"café\",\"size\":1,\"other\":true}", new String(event.getBody(), Charsets.UTF_8));
+	}
+	
+	@Test
+	public void setBodyIsParsedWhenRequired(){
+		JSONEvent event = new JSONEvent();
+		
+		byte[] body = "{\"a\":\"é\"}".getBytes(Charsets.UTF_8);
+		event.setBody(body);
+		Assert.assertSame(body, event.getBody());
+		
+		Assert.assertEquals("é", event.getJsonObject().get("a").getAsString());
+		
+		event.addProperty("b", 2);
+		Assert.assertEquals("{\"a\":\"é\",\"b\":2}", new String(event.getBody(), Charsets.UTF_8));
+	}
+	
+	@Test
+	public void invalidBodyFailsWhenParsed(){
+		JSONEvent event = new JSONEvent();
+		event.setBody("not json".getBytes(Charsets.UTF_8));
+		
+		Assert.assertEquals("not json", new String(event.getBody(), Charsets.UTF_8));
+		
+		try{
+			event.getJsonObject();
+			Assert.fail();
+		}catch(RuntimeException e){}
+	}
+
+	@Test
+	public void structuredBodyIsNotParsedAgain(){
+		JSONEvent event = new JSONEvent();
+		event.addProperty("a", 1);
+		
+		byte[] body = event.getBody();
+		
+		Assert.assertSame(event.getJsonObject(), JSONUtils.getBody(event));
+		Assert.assertSame(event.getBody(), event.getBody());
+		
+		//Not structured events are parsed
+		Event simpleEvent = EventBuilder.withBody(body);
+		Assert.assertEquals(event.getJsonBody(), JSONUtils.getBody(simpleEvent));
+	}
+
+	@Test
+	public void cborEncodedBody(){
+		JSONEvent event = new JSONEvent();
+		event.addProperty("name", "café");
+		event.addProperty("size", 1);
+		event.addProperty("price", 2.5);
+		
+		String json = new String(event.getBody(), Charsets.UTF_8);
+		
+		event.setCBOREncoded(true);
+		Assert.assertEquals(JSONEvent.CBOR_CONTENT_TYPE, event.getHeaders().get(JSONEvent.CONTENT_TYPE_HEADER));
+		
+		byte[] body = event.getBody();
+		Assert.assertTrue(body.length < json.length());
+		
+		//As it comes out of a channel
+		Event simpleEvent = EventBuilder.withBody(body, event.getHeaders());
+		Assert.assertTrue(JSONUtils.isJSON(simpleEvent));
+		Assert.assertEquals(json, JSONUtils.getBody(simpleEvent).toString());
+		
+		JSONEvent decoded = new JSONEvent();
+		decoded.setHeaders(simpleEvent.getHeaders());
+		decoded.setBody(body);
+		Assert.assertTrue(decoded.isCBOREncoded());
+		Assert.assertEquals(json, decoded.getJsonBody().toString());
+		
+		decoded.setCBOREncoded(false);
+		Assert.assertNull(decoded.getHeaders().get(JSONEvent.CONTENT_TYPE_HEADER));
+		Assert.assertEquals(json, new String(decoded.getBody(), Charsets.UTF_8));
+	}
+
+}
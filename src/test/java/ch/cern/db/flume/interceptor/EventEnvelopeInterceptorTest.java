@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.interceptor;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.interceptor.Interceptor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.cern.db.flume.EventEnvelope;
+import ch.cern.db.flume.JSONEvent;
+
+public class EventEnvelopeInterceptorTest {
+	
+	@Test
+	public void rowsArePackedAfterPreviousInterceptors(){
+		Interceptor dropNoJSON = new DropNoJSONEventsInterceptor.Builder().build();
+		
+		EventEnvelopeInterceptor.Builder builder = new EventEnvelopeInterceptor.Builder();
+		Context context = new Context();
+		context.put(EventEnvelopeInterceptor.MAX_ROWS_PARAM, "2");
+		context.put(EventEnvelopeInterceptor.GROUP_HEADERS_PARAM, "type");
+		builder.configure(context);
+		Interceptor envelope = builder.build();
+		
+		List<Event> events = new LinkedList<Event>();
+		for (int i = 0; i < 5; i++) {
+			JSONEvent event = new JSONEvent();
+			event.addProperty("row", i);
+			event.getHeaders().put("type", i < 3 ? "A" : "B");
+			events.add(event);
+			
+			events.add(EventBuilder.withBody("no JSON".getBytes()));
+		}
+		
+		List<Event> envelopes = envelope.intercept(dropNoJSON.intercept(events));
+		
+		//A A | A | B B
+		Assert.assertEquals(3, envelopes.size());
+		Assert.assertEquals("2", envelopes.get(0).getHeaders().get(EventEnvelope.ROWS_COUNT_HEADER));
+		Assert.assertEquals("A", envelopes.get(0).getHeaders().get("type"));
+		Assert.assertFalse(EventEnvelope.isEnvelope(envelopes.get(1)));
+		Assert.assertEquals("B", envelopes.get(2).getHeaders().get("type"));
+		
+		List<Event> rows = EventEnvelope.unpack(envelopes.get(2));
+		Assert.assertEquals("{\"row\":4}", new String(rows.get(1).getBody()));
+		
+		//Envelopes are not JSON events
+		Assert.assertEquals(1, dropNoJSON.intercept(envelopes).size());
+	}
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.interceptor;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.conf.ConfigurationException;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.interceptor.Interceptor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.cern.db.flume.JSONEvent;
+
+public class FusedInterceptorTest {
+	
+	@Test
+	public void stagesInOnePass(){
+		Context context = new Context();
+		context.put("stages", "json duplicated csv");
+		context.put("stages.json.type", DropNoJSONEventsInterceptor.Builder.class.getName());
+		context.put("stages.duplicated.type", DropDuplicatedEventsInterceptor.Builder.class.getName());
+		context.put("stages.duplicated.headers", "false");
+		context.put("stages.csv.type", JSONEventToCSVInterceptor.Builder.class.getName());
+		
+		FusedInterceptor.Builder builder = new FusedInterceptor.Builder();
+		builder.configure(context);
+		FusedInterceptor interceptor = (FusedInterceptor) builder.build();
+		interceptor.initialize();
+		
+		List<Event> events = new LinkedList<Event>();
+		events.add(EventBuilder.withBody("aa".getBytes()));
+		
+		JSONEvent e2 = new JSONEvent();
+		e2.addProperty("name", "Daniel");
+		e2.addProperty("age", 26);
+		events.add(e2);
+		
+		JSONEvent e3 = new JSONEvent();
+		e3.addProperty("name", "Daniel");
+		e3.addProperty("age", 26);
+		events.add(e3);
+		
+		JSONEvent e4 = new JSONEvent();
+		e4.addProperty("name", "Paco");
+		events.add(e4);
+		
+		List<Event> intercepted = interceptor.intercept(events);
+		
+		Assert.assertEquals(4, events.size());
+		Assert.assertEquals(2, intercepted.size());
+		Assert.assertEquals("Daniel,26", new String(intercepted.get(0).getBody()));
+		Assert.assertEquals("Paco", new String(intercepted.get(1).getBody()));
+		
+		Assert.assertNull(interceptor.intercept(EventBuilder.withBody("bb".getBytes())));
+		
+		Assert.assertEquals(5, (long) interceptor.getCounters().get("json.events.processed"));
+		Assert.assertEquals(2, (long) interceptor.getCounters().get("json.events.dropped"));
+		Assert.assertEquals(3, (long) interceptor.getCounters().get("duplicated.events.processed"));
+		Assert.assertEquals(1, (long) interceptor.getCounters().get("duplicated.events.dropped"));
+		Assert.assertEquals(2, (long) interceptor.getCounters().get("csv.events.processed"));
+		Assert.assertEquals(0, (long) interceptor.getCounters().get("csv.events.dropped"));
+		Assert.assertTrue(interceptor.getCounters().get("json.time.nanos") > 0);
+		
+		interceptor.close();
+	}
+	
+	@Test
+	public void countersOfParallelCalls() throws InterruptedException{
+		Context context = new Context();
+		context.put("stages", "json");
+		context.put("stages.json.type", DropNoJSONEventsInterceptor.Builder.class.getName());
+		
+		FusedInterceptor.Builder builder = new FusedInterceptor.Builder();
+		builder.configure(context);
+		final FusedInterceptor interceptor = (FusedInterceptor) builder.build();
+		interceptor.initialize();
+		
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(){
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						List<Event> events = new LinkedList<Event>();
+						events.add(EventBuilder.withBody("aa".getBytes()));
+						events.add(new JSONEvent());
+						
+						interceptor.intercept(events);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		Assert.assertEquals(8000, (long) interceptor.getCounters().get("json.events.processed"));
+		Assert.assertEquals(4000, (long) interceptor.getCounters().get("json.events.dropped"));
+		
+		interceptor.close();
+	}
+	
+	@Test
+	public void typeOfStagesIsRequired(){
+		Context context = new Context();
+		context.put("stages", "json");
+		
+		Interceptor.Builder builder = new FusedInterceptor.Builder();
+		try{
+			builder.configure(context);
+			Assert.fail();
+		}catch(ConfigurationException e){}
+	}
+	
+}
@@ -10,12 +10,17 @@ package ch.cern.db.flume.interceptor;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.flume.Context;
 import org.apache.flume.Event;
 import org.apache.flume.event.EventBuilder;
+import org.apache.flume.interceptor.Interceptor;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+
 import ch.cern.db.flume.JSONEvent;
 
 public class JSONEventToCSVInterceptorTest {
@@ -32,7 +37,39 @@ public class JSONEventToCSVInterceptorTest {
 		
 		Event csvEvent = interceptor.intercept(jsonEvent);
 		
-		Assert.assertEquals("\"Daniel\",26,true", new String(csvEvent.getBody()));
+		Assert.assertEquals("Daniel,26,true", new String(csvEvent.getBody()));
+	}
+	
+	@Test
+	public void parallelThreads() throws InterruptedException{
+		final JSONEventToCSVInterceptor interceptor = 
+				(JSONEventToCSVInterceptor) new JSONEventToCSVInterceptor.Builder().build();
+		
+		final AtomicInteger wrongLines = new AtomicInteger();
+		
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final String name = "thread" + t;
+			
+			threads[t] = new Thread(){
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						JSONEvent jsonEvent = new JSONEvent();
+						jsonEvent.addProperty("name", name);
+						jsonEvent.addProperty("i", i);
+						
+						if(!(name + "," + i).equals(new String(interceptor.intercept(jsonEvent).getBody())))
+							wrongLines.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		Assert.assertEquals(0, wrongLines.get());
 	}
 	
 	@Test
@@ -61,9 +98,59 @@ public class JSONEventToCSVInterceptorTest {
 		List<Event> intercepted_events = interceptor.intercept(events);
 		
 		Assert.assertSame(e1, intercepted_events.get(0));
-		Assert.assertEquals("\"Daniel\",26,true", new String(intercepted_events.get(1).getBody()));
+		Assert.assertEquals("Daniel,26,true", new String(intercepted_events.get(1).getBody()));
 		Assert.assertSame(e3, intercepted_events.get(2));
-		Assert.assertEquals("\"Paco\",16", new String(intercepted_events.get(3).getBody()));
+		Assert.assertEquals("Paco,16", new String(intercepted_events.get(3).getBody()));
 	}
 	
+	@Test
+	public void cborEncodedEvent(){
+		JSONEventToCSVInterceptor interceptor = 
+				(JSONEventToCSVInterceptor) new JSONEventToCSVInterceptor.Builder().build();
+		
+		JSONEvent jsonEvent = new JSONEvent();
+		jsonEvent.setCBOREncoded(true);
+		jsonEvent.addProperty("name", "Daniel");
+		jsonEvent.addProperty("age", 26);
+		
+		//As it comes out of a channel
+		Event event = EventBuilder.withBody(jsonEvent.getBody(), jsonEvent.getHeaders());
+		
+		Event csvEvent = interceptor.intercept(event);
+		
+		Assert.assertEquals("Daniel,26", new String(csvEvent.getBody()));
+		Assert.assertFalse(csvEvent.getHeaders().containsKey(JSONEvent.CONTENT_TYPE_HEADER));
+	}
+	
+	@Test
+	public void configuredColumns(){
+		Context context = new Context();
+		context.put("columns", "age, name,missing");
+		
+		JSONEventToCSVInterceptor.Builder builder = new JSONEventToCSVInterceptor.Builder();
+		builder.configure(context);
+		Interceptor interceptor = builder.build();
+		
+		JSONEvent jsonEvent = new JSONEvent();
+		jsonEvent.addProperty("name", "Lanza, \"Daniel\"");
+		jsonEvent.addProperty("other", 1);
+		jsonEvent.addProperty("age", 26);
+		
+		Event csvEvent = interceptor.intercept(jsonEvent);
+		
+		Assert.assertEquals("26,\"Lanza, \"\"Daniel\"\"\",", new String(csvEvent.getBody(), Charsets.UTF_8));
+	}
+	
+	@Test
+	public void jsonBodyOfNotJSONEvent(){
+		JSONEventToCSVInterceptor interceptor = 
+				(JSONEventToCSVInterceptor) new JSONEventToCSVInterceptor.Builder().build();
+		
+		Event event = EventBuilder.withBody(" {\"name\":\"José\",\"age\":null}".getBytes(Charsets.UTF_8));
+		Assert.assertEquals("José,", new String(interceptor.intercept(event).getBody(), Charsets.UTF_8));
+		
+		Event notJSON = EventBuilder.withBody("{not json".getBytes(Charsets.UTF_8));
+		Assert.assertSame(notJSON, interceptor.intercept(notJSON));
+	}
+
 }
@@ -18,6 +18,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.junit.Assert;
 import org.junit.Test;
 
+import ch.cern.db.flume.JSONEvent;
 import ch.cern.db.flume.sink.elasticsearch.serializer.JSONtoElasticSearchEventSerializer;
 
 
@@ -82,4 +83,19 @@ public class JSONtoElasticSearchEventSerializerTest{
 				content.string());
 	}
 	
+	@Test
+	public void serializeStructuredEvent() throws IOException{
+		JSONEvent event = new JSONEvent();
+		event.addProperty("data", "Click Here");
+		event.addProperty("size", 36);
+		event.addProperty("hOffset", 250.54);
+		event.addProperty("nullValue", null);
+		
+		JSONtoElasticSearchEventSerializer serializer = new JSONtoElasticSearchEventSerializer();
+		
+		XContentBuilder content = serializer.getContentBuilder(event);
+		Assert.assertEquals("{\"data\":\"Click Here\",\"size\":36,\"hOffset\":250.54,\"nullValue\":null}", 
+				content.string());
+	}
+	
 }
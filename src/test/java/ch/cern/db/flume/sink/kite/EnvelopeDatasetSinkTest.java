@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.sink.kite;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.commons.io.FileUtils;
+import org.apache.flume.Channel;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.EventDeliveryException;
+import org.apache.flume.Sink.Status;
+import org.apache.flume.Transaction;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.conf.Configurables;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.sink.kite.DatasetSinkConstants;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kitesdk.data.DatasetDescriptor;
+import org.kitesdk.data.DatasetReader;
+import org.kitesdk.data.Datasets;
+import org.kitesdk.data.Format;
+import org.kitesdk.data.Formats;
+import org.kitesdk.data.View;
+
+import com.google.common.base.Charsets;
+
+import ch.cern.db.flume.EventEnvelope;
+
+public class EnvelopeDatasetSinkTest {
+	
+	private File datasetDir = new File("target/test-datasets/envelopes");
+	
+	private String datasetURI = "dataset:file:" + datasetDir.getAbsolutePath();
+	
+	private Schema schema = SchemaBuilder.record("row").fields()
+			.name("id").type().nullable().intType().noDefault()
+			.name("text").type().nullable().stringType().noDefault()
+			.endRecord();
+	
+	@Test
+	public void rowsOfEnvelopesAreWrittenInTheBatch() throws EventDeliveryException{
+		createDataset(Formats.AVRO);
+		Channel channel = createChannel();
+		
+		List<Event> rows = new ArrayList<Event>();
+		for(int i = 1; i <= 3; i++)
+			rows.add(row(i));
+		List<Event> envelopes = EventEnvelope.pack(rows, 10, 1024 * 1024);
+		Assert.assertEquals(1, envelopes.size());
+		
+		put(channel, envelopes.get(0), row(4));
+		
+		EnvelopeDatasetSink sink = createSink(channel);
+		Assert.assertEquals(Status.READY, sink.process());
+		Assert.assertEquals(Status.BACKOFF, sink.process());
+		sink.stop();
+		
+		List<GenericRecord> records = readDataset();
+		Assert.assertEquals(4, records.size());
+		for(int i = 0; i < 4; i++){
+			Assert.assertEquals(i + 1, records.get(i).get("id"));
+			Assert.assertEquals("row " + (i + 1), records.get(i).get("text").toString());
+		}
+		
+		Assert.assertNull(take(channel));
+	}
+	
+	@Test
+	public void parquetFileIsWrittenPerRoll() throws EventDeliveryException{
+		createDataset(Formats.PARQUET);
+		Channel channel = createChannel();
+		
+		EnvelopeDatasetSink sink = createSink(channel);
+		for(int batch = 0; batch < 3; batch++){
+			List<Event> rows = new ArrayList<Event>();
+			for(int i = 1; i <= 5; i++)
+				rows.add(row(batch * 5 + i));
+			
+			put(channel, EventEnvelope.pack(rows, 10, 1024 * 1024).get(0));
+			
+			Assert.assertEquals(Status.READY, sink.process());
+		}
+		sink.stop();
+		
+		Assert.assertEquals(15, readDataset().size());
+		
+		Collection<File> files = FileUtils.listFiles(datasetDir, new String[]{"parquet"}, true);
+		int dataFiles = 0;
+		for(File file : files)
+			if(!file.getName().startsWith("."))
+				dataFiles++;
+		Assert.assertEquals(1, dataFiles);
+	}
+	
+	@Test
+	public void batchWithMalformedEnvelopeIsRolledBack() throws EventDeliveryException{
+		createDataset(Formats.AVRO);
+		Channel channel = createChannel();
+		
+		Event malformed = EventBuilder.withBody(new byte[]{1, 2, 3});
+		malformed.getHeaders().put(EventEnvelope.ROWS_COUNT_HEADER, "2");
+		put(channel, row(1), malformed);
+		
+		EnvelopeDatasetSink sink = createSink(channel);
+		try{
+			sink.process();
+			Assert.fail();
+		}catch(EventDeliveryException e){}
+		sink.stop();
+		
+		Assert.assertEquals(0, readDataset().size());
+		
+		//Events are still in the channel
+		Assert.assertNotNull(take(channel));
+	}
+	
+	private void createDataset(Format format) {
+		Datasets.create(datasetURI, new DatasetDescriptor.Builder()
+				.schema(schema)
+				.format(format)
+				.build(), GenericRecord.class);
+	}
+	
+	private Channel createChannel() {
+		MemoryChannel channel = new MemoryChannel();
+		channel.setName("memory");
+		Configurables.configure(channel, new Context());
+		channel.start();
+		
+		return channel;
+	}
+	
+	private EnvelopeDatasetSink createSink(Channel channel) {
+		Context context = new Context();
+		context.put(DatasetSinkConstants.CONFIG_KITE_DATASET_URI, datasetURI);
+		context.put(DatasetSinkConstants.CONFIG_KITE_BATCH_SIZE, "10");
+		
+		EnvelopeDatasetSink sink = new EnvelopeDatasetSink();
+		sink.setName("envelopes");
+		sink.setChannel(channel);
+		Configurables.configure(sink, context);
+		sink.start();
+		
+		return sink;
+	}
+	
+	private Event row(int id) {
+		return EventBuilder.withBody("{\"id\":" + id + ", \"text\":\"row " + id + "\"}", Charsets.UTF_8);
+	}
+	
+	private void put(Channel channel, Event... events) {
+		Transaction transaction = channel.getTransaction();
+		transaction.begin();
+		for(Event event : events)
+			channel.put(event);
+		transaction.commit();
+		transaction.close();
+	}
+	
+	private Event take(Channel channel) {
+		Transaction transaction = channel.getTransaction();
+		transaction.begin();
+		Event event = channel.take();
+		transaction.commit();
+		transaction.close();
+		
+		return event;
+	}
+	
+	private List<GenericRecord> readDataset() {
+		View<GenericRecord> dataset = Datasets.load(datasetURI, GenericRecord.class);
+		
+		List<GenericRecord> records = new ArrayList<GenericRecord>();
+		DatasetReader<GenericRecord> reader = dataset.newReader();
+		try{
+			for(GenericRecord record : reader)
+				records.add(record);
+		}finally{
+			reader.close();
+		}
+		
+		Collections.sort(records, new Comparator<GenericRecord>() {
+			@Override
+			public int compare(GenericRecord r1, GenericRecord r2) {
+				return ((Integer) r1.get("id")).compareTo((Integer) r2.get("id"));
+			}
+		});
+		
+		return records;
+	}
+	
+	@After
+	public void cleanUp() throws IOException{
+		Datasets.delete(datasetURI);
+		FileUtils.deleteDirectory(datasetDir);
+	}
+
+}
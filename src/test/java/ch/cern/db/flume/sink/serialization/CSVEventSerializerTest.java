@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.sink.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.flume.Context;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.serialization.EventSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class CSVEventSerializerTest {
+	
+	@Test
+	public void headerRowPerFile() throws IOException{
+		Context context = new Context();
+		context.put("columns", "name,age");
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EventSerializer serializer = new CSVEventSerializer.Builder().build(context, out);
+		
+		serializer.afterCreate();
+		serializer.write(EventBuilder.withBody("Daniel,26".getBytes(Charsets.UTF_8)));
+		serializer.flush();
+		serializer.beforeClose();
+		
+		serializer.afterReopen();
+		serializer.write(EventBuilder.withBody("Paco,16".getBytes(Charsets.UTF_8)));
+		
+		Assert.assertEquals("name,age\nDaniel,26\nPaco,16\n", new String(out.toByteArray(), Charsets.UTF_8));
+	}
+	
+	@Test
+	public void noColumnsNoHeader() throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EventSerializer serializer = new CSVEventSerializer.Builder().build(new Context(), out);
+		
+		serializer.afterCreate();
+		serializer.write(EventBuilder.withBody("a,b".getBytes(Charsets.UTF_8)));
+		
+		Assert.assertEquals("a,b\n", new String(out.toByteArray(), Charsets.UTF_8));
+	}
+	
+}
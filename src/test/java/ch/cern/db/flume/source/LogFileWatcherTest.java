@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LogFileWatcherTest {
+	
+	private File directory = new File("src/test/resources/sample-logs/watch-tmp");
+	
+	@Before
+	public void setUp(){
+		directory.mkdirs();
+	}
+	
+	@Test
+	public void wakeUpWhenFileChanges() throws IOException, InterruptedException{
+		final File logFile = new File(directory, "alert_A.log");
+		
+		LogFileWatcher watcher = new LogFileWatcher(directory, Arrays.asList("alert_*.log"), 10, 30000);
+		
+		new Thread(){
+			public void run() {
+				try {
+					Thread.sleep(200);
+					
+					FileWriter writer = new FileWriter(logFile, true);
+					writer.write("29-JUL-2016 15:17:34 * ORA-00600\n");
+					writer.close();
+				} catch (Exception e) {}
+			};
+		}.start();
+		
+		long start = System.currentTimeMillis();
+		Assert.assertTrue(watcher.await());
+		Assert.assertTrue(System.currentTimeMillis() - start < 20000);
+		
+		watcher.close();
+	}
+	
+	@Test
+	public void safetyPoll() throws IOException, InterruptedException{
+		LogFileWatcher watcher = new LogFileWatcher(directory, Arrays.asList("alert_*.log"), 10, 300);
+		
+		//Not watched file
+		FileWriter writer = new FileWriter(new File(directory, "other.log"));
+		writer.write("text\n");
+		writer.close();
+		
+		long start = System.currentTimeMillis();
+		Assert.assertFalse(watcher.await());
+		Assert.assertTrue(System.currentTimeMillis() - start >= 300);
+		
+		watcher.close();
+	}
+	
+	@Test
+	public void timeoutShorterThanSafetyPoll() throws IOException, InterruptedException{
+		LogFileWatcher watcher = new LogFileWatcher(directory, Arrays.asList("alert_*.log"), 10, 30000);
+		
+		long start = System.currentTimeMillis();
+		Assert.assertFalse(watcher.await(200));
+		Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+		Assert.assertTrue(System.currentTimeMillis() - start < 20000);
+		
+		watcher.close();
+	}
+	
+	@After
+	public void cleanUp(){
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+}
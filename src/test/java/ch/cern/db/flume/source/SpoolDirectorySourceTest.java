@@ -123,6 +123,62 @@ public class SpoolDirectorySourceTest{
 	    source.stop();
 	}
 
+	@Test
+	public void parallelConsumption() throws InterruptedException, IOException{
+		
+		Context context = new Context();
+		context.put(SpoolDirectorySourceConfigurationConstants.SPOOL_DIRECTORY, spoolDir.getAbsolutePath());
+		context.put(SpoolDirectorySource.PARALLELISM, "4");
+		context.put(SpoolDirectorySourceConfigurationConstants.BATCH_SIZE, "3");
+		
+		SpoolDirectorySource source = new SpoolDirectorySource();
+		source.configure(context);
+		
+		Map<String, String> channelContext = new HashMap<String, String>();
+	    channelContext.put("capacity", "1000");
+	    channelContext.put("keep-alive", "0"); // for faster tests
+	    Channel channel = new MemoryChannel();
+	    Configurables.configure(channel, new Context(channelContext));
+	    
+	    ChannelSelector rcs = new ReplicatingChannelSelector();
+	    rcs.setChannels(Collections.singletonList(channel));
+	    ChannelProcessor chp = new ChannelProcessor(rcs);
+	    source.setChannelProcessor(chp);
+	    
+	    for (int i = 0; i < 10; i++) {
+	    	PrintWriter file = new PrintWriter(new File(spoolDir, "file" + i), "UTF-8");
+	    	for (int j = 0; j < 10; j++)
+	    		file.println("file" + i + "-line" + j);
+	    	file.close();
+	    }
+	    
+	    source.start();
+	    
+	    Thread.sleep(3000);
+	    
+	    channel.getTransaction().begin();
+	    
+	    //Ordered only within a file
+	    int[] nextLine = new int[10];
+	    for (int n = 0; n < 100; n++) {
+	    	Event event = channel.take();
+	    	Assert.assertNotNull(event);
+	    	
+	    	String[] body = new String(event.getBody()).split("-line");
+	    	int file = Integer.parseInt(body[0].substring(4));
+	    	Assert.assertEquals(nextLine[file]++, Integer.parseInt(body[1]));
+	    }
+	    Assert.assertNull(channel.take());
+	    
+	    channel.getTransaction().commit();
+	    channel.getTransaction().close();
+	    
+	    for (int i = 0; i < 10; i++)
+	    	Assert.assertTrue(new File(spoolDir, "file" + i + SpoolDirectorySourceConfigurationConstants.DEFAULT_SPOOLED_FILE_SUFFIX).exists());
+	    
+	    source.stop();
+	}
+	
 	@After
 	public void cleanUp(){
 		try {
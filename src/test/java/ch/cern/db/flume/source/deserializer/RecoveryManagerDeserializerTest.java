@@ -11,6 +11,7 @@ package ch.cern.db.flume.source.deserializer;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.List;
 
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -23,6 +24,8 @@ import org.codehaus.jettison.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 
+import ch.cern.db.flume.source.reader.ReliableSpoolingFileEventReader;
+
 public class RecoveryManagerDeserializerTest {
 
 	@Test
@@ -148,4 +151,154 @@ public class RecoveryManagerDeserializerTest {
 		metaFile.delete();
 	}
 
+	@Test
+	public void eventPerReport() throws IOException, JSONException{
+		
+		File file = new File("src/test/resources/RManDeserializerTest.tmp");
+		
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		writer.println("[Wed Jan 27 18:29:03 CET 2016] level_EXEC_BACKUPSET_A edhp_rac51 itrac5105 EDHP1");
+		writer.println("rmanHost                = itrac5105");
+		writer.println("Recovery Manager: Release 11.2.0.4.0 - Production");
+		writer.println(" RMAN-03009: failure of backup command on ORA_SBT_TAPE_1 channel");
+		writer.println("Recovery Manager complete.");
+		writer.println("Recovery Manager: Release 11.2.0.4.0 - Production");
+		writer.println("Recovery Manager complete.");
+		writer.close();
+		
+		File metaFile = new File("src/test/resources/RManDeserializerTest.metafile");
+		
+		Context context = new Context();
+		context.put(RecoveryManagerDeserializer.EVENT_PER_REPORT_KEY, "true");
+		
+		PositionTracker tracker = DurablePositionTracker.getInstance(metaFile, file.getAbsolutePath());
+		RecoveryManagerDeserializer des = (RecoveryManagerDeserializer) new RecoveryManagerDeserializer.Builder()
+				.build(context, new ResettableFileInputStream(file, tracker));
+		
+		List<Event> events = des.readEvents(1);
+		Assert.assertEquals(1, events.size());
+		JSONObject report = new JSONObject(new String(events.get(0).getBody()));
+		String backupRunId = report.getString("backupRunId");
+		Assert.assertEquals(1, report.getInt("reportNumber"));
+		Assert.assertEquals("Failed", report.get("status"));
+		Assert.assertEquals("edhp_rac51", report.get("entityName"));
+		des.mark();
+		
+		//Last report is given with the summary
+		events = des.readEvents(1);
+		Assert.assertEquals(2, events.size());
+		
+		//Events are generated again after reset
+		des.reset();
+		events = des.readEvents(10);
+		Assert.assertEquals(2, events.size());
+		report = new JSONObject(new String(events.get(0).getBody()));
+		Assert.assertEquals(2, report.getInt("reportNumber"));
+		Assert.assertEquals("Successful", report.get("status"));
+		JSONObject summary = new JSONObject(new String(events.get(1).getBody()));
+		Assert.assertEquals(backupRunId, summary.get("backupRunId"));
+		Assert.assertEquals(2, summary.getInt("recoveryManagerReportsCount"));
+		Assert.assertEquals("Successful", summary.get("finalStatus"));
+		Assert.assertEquals("itrac5105", summary.get("rmanHost"));
+		Assert.assertFalse(summary.has("recoveryManagerReports"));
+		tracker.close();
+		
+		//After a restart from the mark, same run id and summary
+		tracker = DurablePositionTracker.getInstance(metaFile, file.getAbsolutePath());
+		des = (RecoveryManagerDeserializer) new RecoveryManagerDeserializer.Builder()
+				.build(context, new ResettableFileInputStream(file, tracker));
+		events = des.readEvents(10);
+		Assert.assertEquals(2, events.size());
+		summary = new JSONObject(new String(events.get(1).getBody()));
+		Assert.assertEquals(backupRunId, summary.get("backupRunId"));
+		Assert.assertEquals(2, summary.getInt("recoveryManagerReportsCount"));
+		des.mark();
+		Assert.assertTrue(des.readEvents(10).isEmpty());
+		tracker.close();
+		
+		//Nothing else once all was committed
+		tracker = DurablePositionTracker.getInstance(metaFile, file.getAbsolutePath());
+		des = (RecoveryManagerDeserializer) new RecoveryManagerDeserializer.Builder()
+				.build(context, new ResettableFileInputStream(file, tracker));
+		Assert.assertTrue(des.readEvents(10).isEmpty());
+		tracker.close();
+		
+		file.delete();
+		metaFile.delete();
+	}
+
+	@Test
+	public void summaryDoesNotExceedBatch() throws IOException, JSONException{
+		File file = new File("src/test/resources/RManDeserializerTest.tmp");
+		
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		writer.println("[Wed Jan 27 18:29:03 CET 2016] level_EXEC_BACKUPSET_A edhp_rac51 itrac5105 EDHP1");
+		writer.println("Recovery Manager: Release 11.2.0.4.0 - Production");
+		writer.println("Recovery Manager complete.");
+		writer.println("Recovery Manager: Release 11.2.0.4.0 - Production");
+		writer.println("Recovery Manager complete.");
+		writer.close();
+		
+		File metaFile = new File("src/test/resources/RManDeserializerTest.metafile");
+		
+		Context context = new Context();
+		context.put(RecoveryManagerDeserializer.EVENT_PER_REPORT_KEY, "true");
+		
+		PositionTracker tracker = DurablePositionTracker.getInstance(metaFile, file.getAbsolutePath());
+		RecoveryManagerDeserializer des = (RecoveryManagerDeserializer) new RecoveryManagerDeserializer.Builder()
+				.build(context, new ResettableFileInputStream(file, tracker));
+		
+		List<Event> events = des.readEvents(2);
+		Assert.assertEquals(1, events.size());
+		events = des.readEvents(2);
+		Assert.assertEquals(2, events.size());
+		JSONObject summary = new JSONObject(new String(events.get(1).getBody()));
+		Assert.assertEquals(2, summary.getInt("recoveryManagerReportsCount"));
+		Assert.assertTrue(des.readEvents(2).isEmpty());
+		tracker.close();
+		
+		file.delete();
+		metaFile.delete();
+	}
+	
+	@Test
+	public void backupRunIdDependsOnFile() throws IOException, JSONException{
+		File file = new File("src/test/resources/RManDeserializerTest.tmp");
+		
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		writer.println("[Wed Jan 27 18:29:03 CET 2016] level_EXEC_BACKUPSET_A edhp_rac51 itrac5105 EDHP1");
+		writer.println("Recovery Manager: Release 11.2.0.4.0 - Production");
+		writer.println("Recovery Manager complete.");
+		writer.close();
+		
+		File metaFile = new File("src/test/resources/RManDeserializerTest.metafile");
+		
+		Context context = new Context();
+		context.put(RecoveryManagerDeserializer.EVENT_PER_REPORT_KEY, "true");
+		
+		String[] backupRunIds = new String[3];
+		String[] paths = {"/backups/a.log", "/backups/b.log", "/backups/a.log"};
+		for (int i = 0; i < paths.length; i++) {
+			metaFile.delete();
+			context.put(ReliableSpoolingFileEventReader.DESERIALIZER_FILE_PATH_KEY, paths[i]);
+			
+			PositionTracker tracker = DurablePositionTracker.getInstance(metaFile, file.getAbsolutePath());
+			RecoveryManagerDeserializer des = (RecoveryManagerDeserializer) new RecoveryManagerDeserializer.Builder()
+					.build(context, new ResettableFileInputStream(file, tracker));
+			
+			List<Event> events = des.readEvents(10);
+			Assert.assertEquals(2, events.size());
+			backupRunIds[i] = new JSONObject(new String(events.get(0).getBody())).getString("backupRunId");
+			Assert.assertEquals(backupRunIds[i], new JSONObject(new String(events.get(1).getBody())).getString("backupRunId"));
+			tracker.close();
+		}
+		
+		//Same backup logged in different files
+		Assert.assertNotEquals(backupRunIds[0], backupRunIds[1]);
+		Assert.assertEquals(backupRunIds[0], backupRunIds[2]);
+		
+		file.delete();
+		metaFile.delete();
+	}
+
 }
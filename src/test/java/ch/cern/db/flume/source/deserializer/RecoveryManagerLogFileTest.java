@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.deserializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import org.apache.flume.serialization.DurablePositionTracker;
+import org.apache.flume.serialization.PositionTracker;
+import org.apache.flume.serialization.ResettableFileInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RecoveryManagerLogFileTest {
+	
+	private File file = new File("src/test/resources/RManLogFileTest.tmp");
+	private File metaFile = new File("src/test/resources/RManLogFileTest.metafile");
+	
+	@Test
+	public void parseInSinglePass() throws IOException{
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		writer.println("[Wed Jan 27 18:29:03 CET 2016] level_EXEC_BACKUPSET_A edhp_rac51 itrac5105 EDHP1");
+		writer.println("rmanHost                = itrac5105");
+		writer.println("Main: params passed: $v_params = {");
+		writer.println("  'a' => 1");
+		writer.println("};");
+		writer.println("");
+		writer.println("line1");
+		writer.println("line2");
+		writer.println("line3");
+		writer.println("line4");
+		writer.println("Recovery Manager: Release 11.2.0.4.0 - Production");
+		writer.println(" RMAN-03009: failure of backup command");
+		writer.println("Recovery Manager complete.");
+		writer.println("line5");
+		writer.println("Recovery Manager: Release 11.2.0.4.0 - Production");
+		writer.close();
+		
+		RecoveryManagerLogFile logFile = new RecoveryManagerLogFile(open(), 10000);
+		
+		Assert.assertEquals("level_EXEC_BACKUPSET_A", logFile.getBackupType());
+		Assert.assertEquals("edhp_rac51", logFile.getEntityName());
+		Assert.assertEquals(1, logFile.getProperties().size());
+		Assert.assertEquals("itrac5105", logFile.getProperties().get(0).getSecond());
+		Assert.assertEquals("{\"a\":1}", logFile.getVParams().toString());
+		Assert.assertNull(logFile.getCreateFilesBackupset());
+		
+		List<String> outputs = logFile.getRecoveryManagerOutputs();
+		Assert.assertEquals(2, outputs.size());
+		Assert.assertEquals("line2\nline3\nline4\n"
+				+ "Recovery Manager: Release 11.2.0.4.0 - Production\n"
+				+ " RMAN-03009: failure of backup command\n"
+				+ "Recovery Manager complete.\n", outputs.get(0));
+		//Not completed output
+		Assert.assertEquals("line5\n"
+				+ "Recovery Manager: Release 11.2.0.4.0 - Production\n", outputs.get(1));
+		
+		List<RecoveryManagerReport> reports = logFile.getRecoveryManagerReports();
+		Assert.assertEquals(3009, (int) reports.get(0).getRMANs().get(0).getFirst());
+		Assert.assertEquals("failure of backup command", reports.get(0).getRMANs().get(0).getSecond());
+		Assert.assertNull(reports.get(1).getReturnCode());
+		Assert.assertNull(reports.get(1).getFinishTime());
+	}
+	
+	@Test
+	public void singleLineReport(){
+		RecoveryManagerReport report = new RecoveryManagerReport("Recovery Manager: Release 11.2.0.4.0 - Production");
+		
+		Assert.assertNull(report.getReturnCode());
+		Assert.assertNull(report.getFinishTime());
+		Assert.assertTrue(report.getRMANs().isEmpty());
+	}
+	
+	private ResettableFileInputStream open() throws IOException {
+		PositionTracker tracker = DurablePositionTracker.getInstance(metaFile, file.getAbsolutePath());
+		
+		return new ResettableFileInputStream(file, tracker);
+	}
+	
+	@After
+	public void cleanUp(){
+		file.delete();
+		metaFile.delete();
+	}
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.deserializer;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flume.serialization.DurablePositionTracker;
+import org.apache.flume.serialization.PositionTracker;
+import org.apache.flume.serialization.ResettableFileInputStream;
+import org.apache.flume.serialization.ResettableInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class ResettableLineReaderTest {
+	
+	private File file = new File("src/test/resources/LineReaderTest.tmp");
+	private File metaFile = new File("src/test/resources/LineReaderTest.metafile");
+	
+	@Test
+	public void windowsAndUnixLines() throws IOException{
+		FileUtils.write(file, "line1\r\nline2\n\r\nline3", "UTF-8");
+		
+		ResettableLineReader reader = new ResettableLineReader(open(), Charsets.UTF_8, 100);
+		
+		Assert.assertEquals("line1", reader.readLine());
+		Assert.assertEquals("line2", reader.readLine());
+		Assert.assertEquals("", reader.readLine());
+		Assert.assertEquals("line3", reader.readLine());
+		Assert.assertNull(reader.readLine());
+	}
+	
+	@Test
+	public void longLinesAreTruncated() throws IOException{
+		FileUtils.write(file, "12345\n1234567\n", "UTF-8");
+		
+		ResettableLineReader reader = new ResettableLineReader(open(), Charsets.UTF_8, 5);
+		
+		Assert.assertEquals("12345", reader.readLine());
+		Assert.assertEquals("12345", reader.readLine());
+		Assert.assertEquals("67", reader.readLine());
+		Assert.assertNull(reader.readLine());
+	}
+	
+	@Test
+	public void multiByteCharsAreNotSplit() throws IOException{
+		FileUtils.write(file, "abéé\n", "UTF-8");
+		
+		ResettableLineReader reader = new ResettableLineReader(open(), Charsets.UTF_8, 5);
+		
+		Assert.assertEquals("abé", reader.readLine());
+		Assert.assertEquals("é", reader.readLine());
+		Assert.assertNull(reader.readLine());
+	}
+	
+	@Test
+	public void syncAfterReadAhead() throws IOException{
+		FileUtils.write(file, "line1\nline2\nline3\n", "UTF-8");
+		
+		ResettableInputStream in = open();
+		ResettableLineReader reader = new ResettableLineReader(in, Charsets.UTF_8, 100);
+		Assert.assertEquals("line1", reader.readLine());
+		
+		reader.sync();
+		Assert.assertEquals(6, in.tell());
+		
+		in.mark();
+		Assert.assertEquals("line2", new ResettableLineReader(in, Charsets.UTF_8, 100).readLine());
+		in.reset();
+		
+		reader = new ResettableLineReader(in, Charsets.UTF_8, 100);
+		Assert.assertEquals("line2", reader.readLine());
+		Assert.assertEquals("line3", reader.readLine());
+		Assert.assertNull(reader.readLine());
+	}
+	
+	private ResettableInputStream open() throws IOException {
+		PositionTracker tracker = DurablePositionTracker.getInstance(metaFile, file.getAbsolutePath());
+		
+		return new ResettableFileInputStream(file, tracker);
+	}
+	
+	@After
+	public void cleanUp(){
+		file.delete();
+		metaFile.delete();
+	}
+
+}
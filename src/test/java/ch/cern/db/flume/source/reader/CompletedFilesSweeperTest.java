@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompletedFilesSweeperTest {
+	
+	private File spoolDir = new File("src/test/resources/sweeper-tmp");
+	private File trackerDir = new File(spoolDir, ".flumespool");
+	private File archiveDir = new File("src/test/resources/sweeper-archive-tmp");
+	
+	@Before
+	public void setup(){
+		trackerDir.mkdirs();
+		archiveDir.mkdirs();
+	}
+	
+	@Test
+	public void deleteExpiredFiles() throws IOException, InterruptedException{
+		CompletedFilesSweeper sweeper = new CompletedFilesSweeper(trackerDir, 500, null, 2);
+		sweeper.load(spoolDir, ".COMPLETED", false);
+		
+		for (int i = 0; i < 5; i++)
+			sweeper.add(createFile("file" + i + ".COMPLETED"));
+		Assert.assertEquals(0, sweeper.sweep());
+		
+		Thread.sleep(600);
+		sweeper.add(createFile("file5.COMPLETED"));
+		
+		Assert.assertEquals(5, sweeper.sweep());
+		Assert.assertEquals(1, sweeper.size());
+		for (int i = 0; i < 5; i++)
+			Assert.assertFalse(new File(spoolDir, "file" + i + ".COMPLETED").exists());
+		Assert.assertTrue(new File(spoolDir, "file5.COMPLETED").exists());
+	}
+	
+	@Test
+	public void archiveExpiredFiles() throws IOException{
+		CompletedFilesSweeper sweeper = new CompletedFilesSweeper(trackerDir, 0, archiveDir, 10);
+		sweeper.load(spoolDir, ".COMPLETED", false);
+		
+		sweeper.add(createFile("file.COMPLETED"));
+		
+		Assert.assertEquals(1, sweeper.sweep());
+		Assert.assertFalse(new File(spoolDir, "file.COMPLETED").exists());
+		Assert.assertTrue(new File(archiveDir, "file.COMPLETED").exists());
+	}
+	
+	@Test
+	public void indexIsKeptAcrossRestarts() throws IOException{
+		CompletedFilesSweeper sweeper = new CompletedFilesSweeper(trackerDir, 60000, null, 10);
+		sweeper.load(spoolDir, ".COMPLETED", false);
+		sweeper.add(createFile("file1.COMPLETED"));
+		sweeper.add(createFile("file2.COMPLETED"));
+		
+		//Not in the index, so not considered
+		createFile("file3.COMPLETED");
+		
+		sweeper = new CompletedFilesSweeper(trackerDir, 0, null, 10);
+		sweeper.load(spoolDir, ".COMPLETED", false);
+		Assert.assertEquals(2, sweeper.size());
+		
+		Assert.assertEquals(2, sweeper.sweep());
+		Assert.assertTrue(new File(spoolDir, "file3.COMPLETED").exists());
+	}
+	
+	@Test
+	public void completedFilesAreFoundWithoutIndex() throws IOException{
+		createFile("file1.COMPLETED");
+		createFile("file2");
+		
+		CompletedFilesSweeper sweeper = new CompletedFilesSweeper(trackerDir, 0, null, 10);
+		sweeper.load(spoolDir, ".COMPLETED", false);
+		Assert.assertEquals(1, sweeper.size());
+		
+		Assert.assertEquals(1, sweeper.sweep());
+		Assert.assertFalse(new File(spoolDir, "file1.COMPLETED").exists());
+		Assert.assertTrue(new File(spoolDir, "file2").exists());
+	}
+	
+	@Test
+	public void failedFilesAreRetried() throws IOException{
+		CompletedFilesSweeper sweeper = new CompletedFilesSweeper(trackerDir, 0, archiveDir, 10);
+		sweeper.load(spoolDir, ".COMPLETED", false);
+		
+		sweeper.add(createFile("file1.COMPLETED"));
+		sweeper.add(createFile("file2.COMPLETED"));
+		
+		//Already in the archive, so it can not be moved
+		File archived = new File(archiveDir, "file1.COMPLETED");
+		FileUtils.write(archived, "archived");
+		
+		Assert.assertEquals(1, sweeper.sweep());
+		Assert.assertEquals(1, sweeper.size());
+		Assert.assertTrue(new File(spoolDir, "file1.COMPLETED").exists());
+		
+		//Also kept in the index
+		sweeper = new CompletedFilesSweeper(trackerDir, 0, archiveDir, 10);
+		sweeper.load(spoolDir, ".COMPLETED", false);
+		Assert.assertEquals(1, sweeper.size());
+		
+		archived.delete();
+		Assert.assertEquals(1, sweeper.sweep());
+		Assert.assertEquals(0, sweeper.size());
+		Assert.assertFalse(new File(spoolDir, "file1.COMPLETED").exists());
+	}
+	
+	@Test
+	public void archivedFilesKeepRelativePath() throws IOException{
+		createFile("a/file.COMPLETED");
+		createFile("b/file.COMPLETED");
+		createFile(".hidden/file.COMPLETED");
+		
+		CompletedFilesSweeper sweeper = new CompletedFilesSweeper(trackerDir, 0, archiveDir, 10);
+		sweeper.load(spoolDir, ".COMPLETED", true);
+		Assert.assertEquals(2, sweeper.size());
+		
+		Assert.assertEquals(2, sweeper.sweep());
+		Assert.assertTrue(new File(archiveDir, "a/file.COMPLETED").exists());
+		Assert.assertTrue(new File(archiveDir, "b/file.COMPLETED").exists());
+		Assert.assertTrue(new File(spoolDir, ".hidden/file.COMPLETED").exists());
+	}
+	
+	@Test
+	public void subdirectoriesAreNotListedIfNotRecursive() throws IOException{
+		createFile("file.COMPLETED");
+		createFile("a/file.COMPLETED");
+		
+		CompletedFilesSweeper sweeper = new CompletedFilesSweeper(trackerDir, 0, null, 10);
+		sweeper.load(spoolDir, ".COMPLETED", false);
+		Assert.assertEquals(1, sweeper.size());
+	}
+	
+	private File createFile(String name) throws IOException {
+		File file = new File(spoolDir, name);
+		FileUtils.write(file, name);
+		
+		return file;
+	}
+	
+	@After
+	public void cleanUp(){
+		try {
+			FileUtils.deleteDirectory(spoolDir);
+			FileUtils.deleteDirectory(archiveDir);
+		} catch (IOException e) {
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.serialization.DecodeErrorPolicy;
+import org.apache.flume.serialization.EventDeserializer;
+import org.apache.flume.serialization.PositionTracker;
+import org.apache.flume.serialization.ResettableFileInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+import ch.cern.db.flume.source.deserializer.RecoveryManagerDeserializer;
+import ch.cern.db.utils.Compression;
+
+public class CompressedResettableInputStreamTest {
+	
+	private File file = new File("src/test/resources/sample-logs/compressed-tmp");
+	
+	private static final String MEMBER_1 = "first line\nsecond line with \u00e9\n";
+	private static final String MEMBER_2 = "third line with \uD834\uDD1E\nfourth line\n";
+	
+	@Test
+	public void gzipWithSeveralMembers() throws IOException{
+		OutputStream out = new FileOutputStream(file);
+		out.write(gzip(MEMBER_1));
+		out.write(gzip(MEMBER_2));
+		out.close();
+		
+		Assert.assertEquals(Compression.GZIP, Compression.detect(file));
+		
+		readMarkAndReset(Compression.GZIP);
+	}
+	
+	@Test
+	public void bzip2() throws IOException{
+		OutputStream out = new BZip2CompressorOutputStream(new FileOutputStream(file));
+		out.write((MEMBER_1 + MEMBER_2).getBytes(Charsets.UTF_8));
+		out.close();
+		
+		Assert.assertEquals(Compression.BZIP2, Compression.detect(file));
+		
+		readMarkAndReset(Compression.BZIP2);
+	}
+	
+	@Test
+	public void rmanReportsFromGzipAreNotDecompressedAgain() throws IOException{
+		StringBuilder log = new StringBuilder();
+		log.append("[Wed Jan 27 18:29:03 CET 2016] level_EXEC_BACKUPSET_A edhp_rac51 itrac5105 EDHP1\n");
+		for(int i = 0; i < 300; i++){
+			log.append("Recovery Manager: Release 11.2.0.4.0 - Production\n");
+			for(int j = 0; j < 5; j++)
+				log.append("channel ORA_DISK_1: starting piece ").append(i).append(" of backup set ").append(j).append("\n");
+			log.append("Recovery Manager complete.\n");
+		}
+		
+		OutputStream out = new FileOutputStream(file);
+		out.write(gzip(log.toString()));
+		out.close();
+		
+		Context context = new Context();
+		context.put(RecoveryManagerDeserializer.EVENT_PER_REPORT_KEY, "true");
+		
+		CompressedResettableInputStream in = new CompressedResettableInputStream(file, new MemoryPositionTracker(),
+				Compression.GZIP, ResettableFileInputStream.DEFAULT_BUF_SIZE, Charsets.UTF_8, DecodeErrorPolicy.FAIL);
+		EventDeserializer deserializer = new RecoveryManagerDeserializer.Builder().build(context, in);
+		
+		int eventsCount = 0;
+		List<Event> events;
+		while(!(events = deserializer.readEvents(10)).isEmpty()){
+			eventsCount += events.size();
+			deserializer.mark();
+		}
+		
+		//Reports and summary
+		Assert.assertEquals(301, eventsCount);
+		Assert.assertEquals(0, in.getRestartsCount());
+		
+		deserializer.close();
+	}
+	
+	private void readMarkAndReset(Compression compression) throws IOException {
+		MemoryPositionTracker tracker = new MemoryPositionTracker();
+		
+		CompressedResettableInputStream in = new CompressedResettableInputStream(file, tracker, compression,
+				16, Charsets.UTF_8, DecodeErrorPolicy.FAIL);
+		
+		Assert.assertEquals("first line", readLine(in));
+		Assert.assertEquals("second line with \u00e9", readLine(in));
+		
+		in.mark();
+		Assert.assertEquals(MEMBER_1.getBytes(Charsets.UTF_8).length, tracker.getPosition());
+		
+		Assert.assertEquals("third line with \uD834\uDD1E", readLine(in));
+		in.mark();
+		Assert.assertEquals("fourth line", readLine(in));
+		Assert.assertNull(readLine(in));
+		
+		in.reset();
+		Assert.assertEquals("fourth line", readLine(in));
+		
+		in.seek(0);
+		Assert.assertEquals("first line", readLine(in));
+		
+		in.close();
+		
+		//Continue from tracked position
+		in = new CompressedResettableInputStream(file, tracker, compression, 16, Charsets.UTF_8, DecodeErrorPolicy.FAIL);
+		Assert.assertEquals("fourth line", readLine(in));
+		in.close();
+	}
+	
+	private String readLine(CompressedResettableInputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		
+		int c;
+		while((c = in.readChar()) != -1 && c != '\n')
+			sb.append((char) c);
+		
+		return c == -1 && sb.length() == 0 ? null : sb.toString();
+	}
+	
+	private byte[] gzip(String text) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(text.getBytes(Charsets.UTF_8));
+		out.close();
+		
+		return bytes.toByteArray();
+	}
+	
+	private static class MemoryPositionTracker implements PositionTracker {
+		
+		private long position = 0;
+		
+		@Override
+		public void storePosition(long position) throws IOException {
+			this.position = position;
+		}
+		
+		@Override
+		public long getPosition() {
+			return position;
+		}
+		
+		@Override
+		public String getTarget() {
+			return null;
+		}
+		
+		@Override
+		public void close() throws IOException {
+		}
+	
+	}
+	
+	@After
+	public void cleanUp(){
+		file.delete();
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flume.serialization.DurablePositionTracker;
+import org.apache.flume.serialization.PositionTracker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PositionStoreTest {
+	
+	private File trackerDir = new File("src/test/resources/positions-tmp");
+	
+	@Before
+	public void setup(){
+		trackerDir.mkdirs();
+	}
+	
+	@Test
+	public void positionsAreKeptAcrossRestarts() throws IOException{
+		PositionStore store = new PositionStore(trackerDir);
+		
+		PositionTracker tracker1 = store.getTracker("/spool/db1/file1");
+		PositionTracker tracker2 = store.getTracker("/spool/db2/file2");
+		Assert.assertEquals(0, tracker1.getPosition());
+		tracker1.storePosition(100);
+		tracker2.storePosition(200);
+		
+		store = new PositionStore(trackerDir);
+		Assert.assertEquals(Arrays.asList("/spool/db1/file1", "/spool/db2/file2"), store.getTargets());
+		Assert.assertEquals(100, store.getPosition("/spool/db1/file1"));
+		Assert.assertEquals(200, store.getTracker("/spool/db2/file2").getPosition());
+		
+		store.remove("/spool/db1/file1");
+		
+		store = new PositionStore(trackerDir);
+		Assert.assertEquals(Arrays.asList("/spool/db2/file2"), store.getTargets());
+		Assert.assertEquals(0, store.getPosition("/spool/db1/file1"));
+	}
+	
+	@Test
+	public void importMetaFiles() throws IOException{
+		PositionTracker tracker = DurablePositionTracker.getInstance(new File(trackerDir, ".flumespool-main.meta"), "/spool/file1");
+		tracker.storePosition(10);
+		tracker.close();
+		tracker = DurablePositionTracker.getInstance(new File(trackerDir, ".flumespool-worker-1.meta"), "/spool/file2");
+		tracker.storePosition(20);
+		tracker.close();
+		
+		PositionStore store = new PositionStore(trackerDir);
+		Assert.assertEquals(10, store.getPosition("/spool/file1"));
+		Assert.assertEquals(20, store.getPosition("/spool/file2"));
+		Assert.assertFalse(new File(trackerDir, ".flumespool-main.meta").exists());
+		Assert.assertFalse(new File(trackerDir, ".flumespool-worker-1.meta").exists());
+	}
+	
+	@After
+	public void cleanUp(){
+		try {
+			FileUtils.deleteDirectory(trackerDir);
+		} catch (IOException e) {
+		}
+	}
+
+}
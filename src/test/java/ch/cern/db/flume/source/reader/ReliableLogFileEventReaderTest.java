@@ -19,6 +19,7 @@ import java.io.OutputStreamWriter;
 
 import org.apache.flume.Context;
 import org.apache.flume.Event;
+import org.apache.flume.conf.ConfigurationException;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
@@ -292,6 +293,33 @@ public class ReliableLogFileEventReaderTest {
 		Assert.assertNull(reader.readEvent());
 	}
 	
+	@Test
+	public void configuredCharset() throws IOException{
+		File logFile = new File("src/test/resources/sample-logs/listener-tmp.log");
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile), "ISO-8859-1"));
+		bw.write("29-Jul-2016 15:20:01 * café\n");
+		bw.write("29-Jul-2016 15:20:02 * niño\n");
+		bw.close();
+		
+		ReliableLogFileEventReader reader = new ReliableLogFileEventReader();
+		Context context = new Context();
+		context.put(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM, logFile.getAbsolutePath());
+		context.put(ReliableLogFileEventReader.DATAFORMAT_PARAM, "dd-MMM-yyy HH:mm:ss");
+		context.put(ReliableLogFileEventReader.CHARSET_PARAM, "ISO-8859-1");
+		reader.configure(context);
+		
+		//Body is encoded by the parser with the default charset
+		Assert.assertArrayEquals("29-Jul-2016 15:20:01 * café".getBytes(), reader.readEvent().getBody());
+		Assert.assertArrayEquals("29-Jul-2016 15:20:02 * niño".getBytes(), reader.readEvent().getBody());
+		
+		context.put(ReliableLogFileEventReader.CHARSET_PARAM, "not-a-charset");
+		try{
+			new ReliableLogFileEventReader().configure(context);
+			Assert.fail();
+		}catch(ConfigurationException e){}
+	}
+	
 	@Test
 	public void tryToLoadOlderEvents() throws IOException{
 		File logFile = new File("src/test/resources/sample-logs/listener-tmp.log");
@@ -346,12 +374,41 @@ public class ReliableLogFileEventReaderTest {
 		
 		reader.rollback();
 		
-		// >= timestamp condition is used, so we get 2016-07-29T15:17:38 again
+		// reading continues from the position at last commit
+		Assert.assertEquals("2016-07-29T15:18:45+0200", reader.readEvent().getHeaders().get(
+				DefaultLogEventParser.TIMESTAMP_HEADER_NAME));
+		Assert.assertEquals("2016-07-29T15:19:55+0200", reader.readEvent().getHeaders().get(
+				DefaultLogEventParser.TIMESTAMP_HEADER_NAME));
+	}
+	
+	@Test
+	public void rollBackAfterReopening() throws IOException{
+		
+		ReliableLogFileEventReader reader = new ReliableLogFileEventReader();
+		Context context = new Context();
+		context.put(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM, "src/test/resources/sample-logs/listener.log");
+		context.put(ReliableLogFileEventReader.DATAFORMAT_PARAM, "dd-MMM-yyy HH:mm:ss");
+		reader.configure(context);
+		
+		//Read a few events
+		Assert.assertEquals("2016-07-29T15:17:34+0200", reader.readEvent().getHeaders().get(
+				DefaultLogEventParser.TIMESTAMP_HEADER_NAME));
 		Assert.assertEquals("2016-07-29T15:17:38+0200", reader.readEvent().getHeaders().get(
 				DefaultLogEventParser.TIMESTAMP_HEADER_NAME));
+		
+		reader.commit();
+		
 		Assert.assertEquals("2016-07-29T15:18:45+0200", reader.readEvent().getHeaders().get(
 				DefaultLogEventParser.TIMESTAMP_HEADER_NAME));
-		Assert.assertEquals("2016-07-29T15:19:55+0200", reader.readEvent().getHeaders().get(
+		
+		//File is closed, so position cannot be restored
+		reader.close();
+		reader.rollback();
+		
+		// >= timestamp condition is used, so we get 2016-07-29T15:17:38 again
+		Assert.assertEquals("2016-07-29T15:17:38+0200", reader.readEvent().getHeaders().get(
+				DefaultLogEventParser.TIMESTAMP_HEADER_NAME));
+		Assert.assertEquals("2016-07-29T15:18:45+0200", reader.readEvent().getHeaders().get(
 				DefaultLogEventParser.TIMESTAMP_HEADER_NAME));
 	}
 	
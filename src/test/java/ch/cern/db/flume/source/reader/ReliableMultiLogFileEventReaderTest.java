@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReliableMultiLogFileEventReaderTest {
+	
+	private File directory = new File("src/test/resources/sample-logs/multi-tmp");
+	
+	@Before
+	public void setUp(){
+		directory.mkdirs();
+	}
+	
+	@Test
+	public void readSeveralFiles() throws IOException{
+		write("alert_A.log", "29-JUL-2016 15:17:34 * A 1\n29-JUL-2016 15:17:35 * A 2\n29-JUL-2016 15:17:36 * A 3\n");
+		write("alert_B.log", "29-JUL-2016 15:17:34 * B 1\n");
+		write("other.log", "29-JUL-2016 15:17:34 * other 1\n");
+		
+		ReliableMultiLogFileEventReader reader = new ReliableMultiLogFileEventReader();
+		Context context = new Context();
+		context.put(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM, directory.getPath() + "/alert_*.log");
+		context.put(ReliableLogFileEventReader.DATAFORMAT_PARAM, "dd-MMM-yyy HH:mm:ss");
+		context.put(ReliableLogFileEventReader.COMMITTING_FILE_PATH_PARAM, directory.getPath() + "/committed");
+		context.put(ReliableMultiLogFileEventReader.THREADS_PARAM, "2");
+		reader.configure(context);
+		
+		Assert.assertEquals(2, reader.getNumberOfFiles());
+		
+		//Same share of the batch for each file
+		List<Event> events = reader.readEvents(2);
+		Assert.assertEquals(2, events.size());
+		Map<String, Integer> eventsPerFile = countPerFile(events);
+		Assert.assertEquals(1, eventsPerFile.get(new File(directory, "alert_A.log").getAbsolutePath()).intValue());
+		Assert.assertEquals(1, eventsPerFile.get(new File(directory, "alert_B.log").getAbsolutePath()).intValue());
+		reader.commit();
+		
+		events = reader.readEvents(10);
+		Assert.assertEquals(2, events.size());
+		Assert.assertEquals(2, countPerFile(events).get(new File(directory, "alert_A.log").getAbsolutePath()).intValue());
+		reader.commit();
+		
+		Assert.assertTrue(new File(directory, "committed.alert_A.log").exists());
+		Assert.assertTrue(new File(directory, "committed.alert_B.log").exists());
+		
+		Assert.assertEquals(0, reader.readEvents(10).size());
+		
+		reader.close();
+	}
+	
+	@Test
+	public void newFilesArePickedUp() throws IOException{
+		write("alert_A.log", "29-JUL-2016 15:17:34 * A 1\n");
+		
+		ReliableMultiLogFileEventReader reader = new ReliableMultiLogFileEventReader();
+		Context context = new Context();
+		context.put(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM, directory.getPath() + "/alert_*.log");
+		context.put(ReliableLogFileEventReader.DATAFORMAT_PARAM, "dd-MMM-yyy HH:mm:ss");
+		context.put(ReliableLogFileEventReader.COMMITTING_FILE_PATH_PARAM, directory.getPath() + "/committed");
+		context.put(ReliableMultiLogFileEventReader.DISCOVERY_INTERVAL_PARAM, "0");
+		reader.configure(context);
+		
+		Assert.assertEquals(1, reader.readEvents(10).size());
+		reader.commit();
+		
+		write("alert_B.log", "29-JUL-2016 15:17:34 * B 1\n");
+		
+		List<Event> events = reader.readEvents(10);
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals(new File(directory, "alert_B.log").getAbsolutePath(),
+				events.get(0).getHeaders().get(ReliableMultiLogFileEventReader.FILE_HEADER_DEFAULT));
+		Assert.assertEquals(2, reader.getNumberOfFiles());
+		
+		reader.close();
+	}
+	
+	@Test
+	public void batchIsNotExceeded() throws IOException{
+		write("alert_A.log", "29-JUL-2016 15:17:34 * A 1\n29-JUL-2016 15:17:35 * A 2\n29-JUL-2016 15:17:36 * A 3\n");
+		write("alert_B.log", "29-JUL-2016 15:17:34 * B 1\n");
+		write("alert_C.log", "29-JUL-2016 15:17:34 * C 1\n");
+		
+		ReliableMultiLogFileEventReader reader = new ReliableMultiLogFileEventReader();
+		Context context = new Context();
+		context.put(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM, directory.getPath() + "/alert_*.log");
+		context.put(ReliableLogFileEventReader.DATAFORMAT_PARAM, "dd-MMM-yyy HH:mm:ss");
+		context.put(ReliableLogFileEventReader.COMMITTING_FILE_PATH_PARAM, directory.getPath() + "/committed");
+		reader.configure(context);
+		
+		//More files than events in the batch
+		Assert.assertEquals(2, reader.readEvents(2).size());
+		reader.commit();
+		Assert.assertEquals(2, reader.readEvents(2).size());
+		reader.commit();
+		Assert.assertEquals(1, reader.readEvents(2).size());
+		reader.commit();
+		Assert.assertEquals(0, reader.readEvents(2).size());
+		
+		reader.close();
+	}
+	
+	@Test
+	public void unusedShareIsGivenToBusyFiles() throws IOException{
+		write("alert_A.log", "29-JUL-2016 15:17:34 * A 1\n29-JUL-2016 15:17:35 * A 2\n29-JUL-2016 15:17:36 * A 3\n"
+				+ "29-JUL-2016 15:17:37 * A 4\n29-JUL-2016 15:17:38 * A 5\n");
+		write("alert_B.log", "29-JUL-2016 15:17:34 * B 1\n");
+		
+		ReliableMultiLogFileEventReader reader = new ReliableMultiLogFileEventReader();
+		Context context = new Context();
+		context.put(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM, directory.getPath() + "/alert_*.log");
+		context.put(ReliableLogFileEventReader.DATAFORMAT_PARAM, "dd-MMM-yyy HH:mm:ss");
+		context.put(ReliableLogFileEventReader.COMMITTING_FILE_PATH_PARAM, directory.getPath() + "/committed");
+		context.put(ReliableMultiLogFileEventReader.THREADS_PARAM, "2");
+		reader.configure(context);
+		
+		List<Event> events = reader.readEvents(4);
+		Assert.assertEquals(4, events.size());
+		Map<String, Integer> eventsPerFile = countPerFile(events);
+		Assert.assertEquals(3, eventsPerFile.get(new File(directory, "alert_A.log").getAbsolutePath()).intValue());
+		Assert.assertEquals(1, eventsPerFile.get(new File(directory, "alert_B.log").getAbsolutePath()).intValue());
+		reader.commit();
+		
+		Assert.assertEquals(2, reader.readEvents(4).size());
+		
+		reader.close();
+	}
+	
+	@Test
+	public void readersOfRemovedFilesAreClosed() throws IOException{
+		write("alert_A.log", "29-JUL-2016 15:17:34 * A 1\n");
+		write("alert_B.log", "29-JUL-2016 15:17:34 * B 1\n");
+		
+		ReliableMultiLogFileEventReader reader = new ReliableMultiLogFileEventReader();
+		Context context = new Context();
+		context.put(ReliableLogFileEventReader.LOG_FILE_PATH_PARAM, directory.getPath() + "/alert_*.log");
+		context.put(ReliableLogFileEventReader.DATAFORMAT_PARAM, "dd-MMM-yyy HH:mm:ss");
+		context.put(ReliableLogFileEventReader.COMMITTING_FILE_PATH_PARAM, directory.getPath() + "/committed");
+		context.put(ReliableMultiLogFileEventReader.DISCOVERY_INTERVAL_PARAM, "0");
+		reader.configure(context);
+		
+		Assert.assertEquals(2, reader.readEvents(10).size());
+		new File(directory, "alert_B.log").delete();
+		
+		//Not committed yet
+		reader.readEvents(10);
+		Assert.assertEquals(2, reader.getNumberOfFiles());
+		reader.commit();
+		Assert.assertTrue(new File(directory, "committed.alert_B.log").exists());
+		
+		Assert.assertEquals(0, reader.readEvents(10).size());
+		Assert.assertEquals(1, reader.getNumberOfFiles());
+		Assert.assertFalse(new File(directory, "committed.alert_B.log").exists());
+		
+		reader.close();
+	}
+	
+	private Map<String, Integer> countPerFile(List<Event> events) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		
+		for (Event event : events) {
+			String file = event.getHeaders().get(ReliableMultiLogFileEventReader.FILE_HEADER_DEFAULT);
+			
+			counts.put(file, counts.containsKey(file) ? counts.get(file) + 1 : 1);
+		}
+		
+		return counts;
+	}
+	
+	private void write(String name, String content) throws IOException {
+		FileWriter writer = new FileWriter(new File(directory, name));
+		writer.write(content);
+		writer.close();
+	}
+	
+	@After
+	public void cleanUp(){
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+}
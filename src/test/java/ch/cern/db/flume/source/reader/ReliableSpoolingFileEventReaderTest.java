@@ -0,0 +1,358 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flume.Event;
+import org.apache.flume.source.SpoolDirectorySourceConfigurationConstants.ConsumeOrder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.cern.db.flume.source.reader.inuse.FileInUseDetector;
+
+public class ReliableSpoolingFileEventReaderTest {
+	
+	private File spoolDir = new File("src/test/resources/spool-tmp");
+	
+	private FileInUseDetector noFileInUse = new FileInUseDetector() {
+		@Override
+		public void refresh(File directory) {
+		}
+		
+		@Override
+		public boolean isInUse(File file) {
+			return false;
+		}
+	};
+	
+	@Before
+	public void setup(){
+		spoolDir.mkdirs();
+	}
+	
+	@Test
+	public void oldestFirst() throws IOException, InterruptedException{
+		long now = System.currentTimeMillis();
+		createFile("b", now - 3000);
+		createFile("c", now - 3000);
+		createFile("a", now - 1000);
+		createFile("d", now - 5000);
+		
+		SpoolDirectoryCandidates candidates = new SpoolDirectoryCandidates.Builder()
+				.spoolDirectory(spoolDir)
+				.consumeOrder(ConsumeOrder.OLDEST)
+				.fileInUseDetector(noFileInUse)
+				.build();
+		ReliableSpoolingFileEventReader reader = new ReliableSpoolingFileEventReader.Builder()
+				.spoolDirectory(spoolDir)
+				.candidates(candidates)
+				.build();
+		
+		Assert.assertEquals("d", readFile(reader));
+		Assert.assertEquals("b", readFile(reader));
+		
+		//Files created later are picked up without listing the directory again
+		createFile("e", now - 4000);
+		long deadline = System.currentTimeMillis() + 20000;
+		while(!candidates.isQueued("e") && System.currentTimeMillis() < deadline){
+			Thread.sleep(50);
+			candidates.refresh();
+		}
+		
+		Assert.assertEquals("e", readFile(reader));
+		Assert.assertEquals("c", readFile(reader));
+		Assert.assertEquals("a", readFile(reader));
+		Assert.assertTrue(reader.readEvents(10).isEmpty());
+		
+		Assert.assertEquals(1, reader.getListFilesCount());
+		
+		reader.close();
+		candidates.close();
+	}
+	
+	@Test
+	public void youngestFirst() throws IOException{
+		long now = System.currentTimeMillis();
+		createFile("b", now - 3000);
+		createFile("c", now - 3000);
+		createFile("a", now - 1000);
+		createFile("d", now - 5000);
+		
+		ReliableSpoolingFileEventReader reader = createReader(ConsumeOrder.YOUNGEST);
+		
+		Assert.assertEquals("a", readFile(reader));
+		Assert.assertEquals("b", readFile(reader));
+		Assert.assertEquals("c", readFile(reader));
+		Assert.assertEquals("d", readFile(reader));
+		Assert.assertTrue(reader.readEvents(10).isEmpty());
+		
+		reader.close();
+	}
+	
+	@Test
+	public void filesInUseAreConsumedOnceClosed() throws IOException, InterruptedException{
+		final File open = new File(spoolDir, "open");
+		
+		FileInUseDetector detector = new FileInUseDetector() {
+			@Override
+			public void refresh(File directory) {
+			}
+			
+			@Override
+			public boolean isInUse(File file) {
+				return file.equals(open) && new File(spoolDir, "open.lock").exists();
+			}
+		};
+		
+		new File(spoolDir, "open.lock").createNewFile();
+		createFile("open", System.currentTimeMillis() - 5000);
+		createFile("closed", System.currentTimeMillis());
+		
+		ReliableSpoolingFileEventReader reader = new ReliableSpoolingFileEventReader.Builder()
+				.spoolDirectory(spoolDir)
+				.ignorePattern(".*\\.lock")
+				.fileInUseDetector(detector)
+				.build();
+		
+		Assert.assertEquals("closed", readFile(reader));
+		Assert.assertTrue(reader.readEvents(10).isEmpty());
+		
+		new File(spoolDir, "open.lock").delete();
+		Thread.sleep(600);
+		
+		Assert.assertEquals("open", readFile(reader));
+		
+		reader.close();
+	}
+	
+	@Test
+	public void queuedFilesWhichChangeAreExaminedAgain() throws IOException, InterruptedException{
+		final File lock = new File(spoolDir, "a.lock");
+		
+		FileInUseDetector detector = new FileInUseDetector() {
+			@Override
+			public void refresh(File directory) {
+			}
+			
+			@Override
+			public boolean isInUse(File file) {
+				return lock.exists();
+			}
+		};
+		
+		createFile("a", System.currentTimeMillis() - 5000);
+		
+		SpoolDirectoryCandidates candidates = new SpoolDirectoryCandidates.Builder()
+				.spoolDirectory(spoolDir)
+				.ignorePattern(".*\\.lock")
+				.fileInUseDetector(detector)
+				.build();
+		
+		candidates.refresh();
+		Assert.assertTrue(candidates.isQueued("a"));
+		
+		//File is written again while queued
+		lock.createNewFile();
+		PrintWriter writer = new PrintWriter(new FileOutputStream(new File(spoolDir, "a"), true));
+		writer.println("more");
+		writer.close();
+		
+		Assert.assertNull(candidates.take());
+		Assert.assertFalse(candidates.isQueued("a"));
+		
+		lock.delete();
+		Thread.sleep(600);
+		
+		Assert.assertEquals(new File(spoolDir, "a"), candidates.take());
+		
+		candidates.close();
+	}
+	
+	@Test
+	public void readersSharingDirectoryConsumeDifferentFiles() throws IOException{
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 6; i++)
+			createFile("file" + i, now - 10000 + i * 1000);
+		
+		SpoolDirectoryCandidates candidates = new SpoolDirectoryCandidates.Builder()
+				.spoolDirectory(spoolDir)
+				.fileInUseDetector(noFileInUse)
+				.build();
+		File trackerDir = new File(spoolDir, ".flumespool");
+		trackerDir.mkdirs();
+		PositionStore positionStore = new PositionStore(trackerDir);
+		ReliableSpoolingFileEventReader reader1 = new ReliableSpoolingFileEventReader.Builder()
+				.spoolDirectory(spoolDir)
+				.candidates(candidates)
+				.positionStore(positionStore)
+				.build();
+		ReliableSpoolingFileEventReader reader2 = new ReliableSpoolingFileEventReader.Builder()
+				.spoolDirectory(spoolDir)
+				.candidates(candidates)
+				.positionStore(positionStore)
+				.build();
+		
+		//Each reader keeps its file till next read
+		Set<String> read = new HashSet<String>();
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(read.add(readFile(reader1)));
+			Assert.assertTrue(read.add(readFile(reader2)));
+		}
+		Assert.assertTrue(reader1.readEvents(10).isEmpty());
+		Assert.assertTrue(reader2.readEvents(10).isEmpty());
+		Assert.assertEquals(6, read.size());
+		Assert.assertTrue(positionStore.getTargets().isEmpty());
+		
+		//Directory is tracked and files checked once for both readers
+		Assert.assertEquals(1, candidates.getListFilesCount());
+		Assert.assertEquals(6, candidates.getInUseChecksCount());
+		
+		reader1.close();
+		reader2.close();
+		candidates.close();
+	}
+	
+	@Test
+	public void resumeFileBeingConsumed() throws IOException{
+		long now = System.currentTimeMillis();
+		createFile("a", now - 5000);
+		File file = new File(spoolDir, "b");
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		writer.println("line1");
+		writer.println("line2");
+		writer.close();
+		file.setLastModified(now - 1000);
+		
+		ReliableSpoolingFileEventReader reader = createReader(ConsumeOrder.YOUNGEST);
+		Assert.assertEquals("line1", new String(reader.readEvents(1).get(0).getBody()));
+		reader.commit();
+		reader.close();
+		
+		//A new file which would be consumed first
+		createFile("c", now);
+		
+		reader = createReader(ConsumeOrder.YOUNGEST);
+		Assert.assertEquals("line2", readFile(reader));
+		Assert.assertEquals("c", readFile(reader));
+		Assert.assertEquals("a", readFile(reader));
+		reader.close();
+	}
+	
+	@Test
+	public void recursive() throws IOException, InterruptedException{
+		long now = System.currentTimeMillis();
+		new File(spoolDir, "db1").mkdirs();
+		new File(spoolDir, "db2/old").mkdirs();
+		new File(spoolDir, ".hidden").mkdirs();
+		createFile("b", now - 4000);
+		createFile("db1/a", now - 5000);
+		createFile("db1/c", now - 3000);
+		createFile("db2/d", now - 2000);
+		createFile("db2/e.log", now - 1000);
+		createFile("db2/old/f", now - 6000);
+		createFile(".hidden/g", now - 6000);
+		
+		ReliableSpoolingFileEventReader reader = new ReliableSpoolingFileEventReader.Builder()
+				.spoolDirectory(spoolDir)
+				.fileInUseDetector(noFileInUse)
+				.completedSuffix(".COMPLETED")
+				.recursive(true)
+				.excludePattern(".*/old")
+				.includePattern("[^.]*")
+				.build();
+		
+		//Oldest first across directories
+		Assert.assertEquals("db1/a", readFile(reader));
+		Assert.assertEquals("b", readFile(reader));
+		
+		//Directories created later are watched too
+		new File(spoolDir, "db3").mkdirs();
+		createFile("db3/h", now - 3500);
+		Thread.sleep(500);
+		
+		Assert.assertEquals("db3/h", readFile(reader));
+		Assert.assertEquals("db1/c", readFile(reader));
+		Assert.assertEquals("db2/d", readFile(reader));
+		Assert.assertTrue(reader.readEvents(10).isEmpty());
+		
+		Assert.assertTrue(new File(spoolDir, "db1/a.COMPLETED").exists());
+		Assert.assertEquals(1, reader.getListFilesCount());
+		
+		reader.close();
+	}
+	
+	@Test
+	public void delayedDelete() throws IOException{
+		createFile("a", System.currentTimeMillis());
+		
+		CompletedFilesSweeper sweeper = new CompletedFilesSweeper(new File(spoolDir, ".flumespool"), 0, null, 10);
+		ReliableSpoolingFileEventReader reader = new ReliableSpoolingFileEventReader.Builder()
+				.spoolDirectory(spoolDir)
+				.fileInUseDetector(noFileInUse)
+				.completedSuffix(".COMPLETED")
+				.deletePolicy("delay")
+				.completedFilesSweeper(sweeper)
+				.build();
+		sweeper.load(spoolDir, ".COMPLETED", false);
+		
+		Assert.assertEquals("a", readFile(reader));
+		Assert.assertTrue(reader.readEvents(10).isEmpty());
+		Assert.assertTrue(new File(spoolDir, "a.COMPLETED").exists());
+		
+		Assert.assertEquals(1, sweeper.sweep());
+		Assert.assertFalse(new File(spoolDir, "a.COMPLETED").exists());
+		
+		reader.close();
+	}
+	
+	private ReliableSpoolingFileEventReader createReader(ConsumeOrder consumeOrder) throws IOException {
+		return new ReliableSpoolingFileEventReader.Builder()
+				.spoolDirectory(spoolDir)
+				.consumeOrder(consumeOrder)
+				.fileInUseDetector(noFileInUse)
+				.build();
+	}
+	
+	private String readFile(ReliableSpoolingFileEventReader reader) throws IOException {
+		List<Event> events = reader.readEvents(10);
+		Assert.assertEquals(1, events.size());
+		reader.commit();
+		
+		return new String(events.get(0).getBody());
+	}
+	
+	private void createFile(String name, long lastModified) throws IOException {
+		File file = new File(spoolDir, name);
+		
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		writer.println(name);
+		writer.close();
+		
+		file.setLastModified(lastModified);
+	}
+	
+	@After
+	public void cleanUp(){
+		try {
+			FileUtils.deleteDirectory(spoolDir);
+		} catch (IOException e) {
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader.inuse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flume.Context;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LsofFileInUseDetectorTest {
+	
+	private File directory = new File("src/test/resources/in-use-tmp");
+	
+	@Before
+	public void setup(){
+		directory.mkdirs();
+	}
+	
+	@Test
+	public void openFilesAreInUse() throws IOException{
+		Assume.assumeTrue(new File("/usr/bin/lsof").canExecute() || new File("/usr/sbin/lsof").canExecute());
+		
+		File closed = new File(directory, "closed");
+		FileOutputStream out = new FileOutputStream(closed);
+		out.write("closed".getBytes());
+		out.close();
+		
+		File open = new File(directory, "open");
+		out = new FileOutputStream(open);
+		out.write("open".getBytes());
+		
+		FileInUseDetector detector = new LsofFileInUseDetector(null);
+		detector.refresh(directory);
+		Assert.assertFalse(detector.isInUse(closed));
+		Assert.assertTrue(detector.isInUse(open));
+		
+		out.close();
+		
+		detector.refresh(directory);
+		Assert.assertFalse(detector.isInUse(open));
+	}
+	
+	@Test
+	public void openFilesOfSubdirectoriesAreInUseIfRecursive() throws IOException{
+		Assume.assumeTrue(new File("/usr/bin/lsof").canExecute() || new File("/usr/sbin/lsof").canExecute());
+		
+		File subdirectory = new File(directory, "sub");
+		subdirectory.mkdirs();
+		
+		File open = new File(subdirectory, "open");
+		FileOutputStream out = new FileOutputStream(open);
+		out.write("open".getBytes());
+		
+		FileInUseDetector detector = new LsofFileInUseDetector(null);
+		detector.refresh(directory);
+		Assert.assertFalse(detector.isInUse(open));
+		
+		Context context = new Context();
+		context.put(LsofFileInUseDetector.RECURSIVE_PARAM, "true");
+		detector = new LsofFileInUseDetector(context);
+		detector.refresh(directory);
+		Assert.assertTrue(detector.isInUse(open));
+		
+		out.close();
+	}
+	
+	@Test
+	public void allFilesAreInUseIfLsofFails() throws IOException{
+		File closed = new File(directory, "closed");
+		closed.createNewFile();
+		
+		Context context = new Context();
+		context.put(LsofFileInUseDetector.COMMAND_PARAM, "/non/existing/lsof");
+		
+		FileInUseDetector detector = new LsofFileInUseDetector(context);
+		detector.refresh(directory);
+		Assert.assertTrue(detector.isInUse(closed));
+	}
+	
+	@After
+	public void cleanUp(){
+		try {
+			FileUtils.deleteDirectory(directory);
+		} catch (IOException e) {
+		}
+	}
+
+}
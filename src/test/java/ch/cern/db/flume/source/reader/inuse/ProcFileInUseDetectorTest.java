@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader.inuse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcFileInUseDetectorTest {
+	
+	private File directory = new File("src/test/resources/in-use-tmp");
+	
+	@Before
+	public void setup(){
+		directory.mkdirs();
+	}
+	
+	@Test
+	public void openFilesAreInUse() throws IOException{
+		Assume.assumeTrue(ProcFileInUseDetector.isSupported());
+		
+		File closed = new File(directory, "closed");
+		FileOutputStream out = new FileOutputStream(closed);
+		out.write("closed".getBytes());
+		out.close();
+		
+		File open = new File(directory, "open");
+		out = new FileOutputStream(open);
+		out.write("open".getBytes());
+		
+		FileInUseDetector detector = new ProcFileInUseDetector(null);
+		detector.refresh(directory);
+		Assert.assertFalse(detector.isInUse(closed));
+		Assert.assertTrue(detector.isInUse(open));
+		
+		out.close();
+		
+		//Open files are only listed when refreshing
+		Assert.assertTrue(detector.isInUse(open));
+		detector.refresh(directory);
+		Assert.assertFalse(detector.isInUse(open));
+	}
+	
+	@After
+	public void cleanUp(){
+		try {
+			FileUtils.deleteDirectory(directory);
+		} catch (IOException e) {
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.flume.source.reader.inuse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flume.Context;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StableFileInUseDetectorTest {
+	
+	private File directory = new File("src/test/resources/in-use-tmp");
+	
+	@Before
+	public void setup(){
+		directory.mkdirs();
+	}
+	
+	@Test
+	public void filesAreInUseTillStable() throws IOException, InterruptedException{
+		Context context = new Context();
+		context.put(StableFileInUseDetector.QUIET_PERIOD_PARAM, "500");
+		FileInUseDetector detector = new StableFileInUseDetector(context);
+		
+		//Not modified for longer than quiet period
+		File old = new File(directory, "old");
+		old.createNewFile();
+		old.setLastModified(System.currentTimeMillis() - 60000);
+		
+		File file = new File(directory, "file");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("line 1\n".getBytes());
+		out.flush();
+		
+		detector.refresh(directory);
+		Assert.assertFalse(detector.isInUse(old));
+		Assert.assertTrue(detector.isInUse(file));
+		
+		Thread.sleep(300);
+		out.write("line 2\n".getBytes());
+		out.close();
+		
+		Thread.sleep(300);
+		detector.refresh(directory);
+		Assert.assertTrue(detector.isInUse(file));
+		
+		Thread.sleep(600);
+		detector.refresh(directory);
+		Assert.assertFalse(detector.isInUse(file));
+	}
+	
+	@After
+	public void cleanUp(){
+		try {
+			FileUtils.deleteDirectory(directory);
+		} catch (IOException e) {
+		}
+	}
+
+}
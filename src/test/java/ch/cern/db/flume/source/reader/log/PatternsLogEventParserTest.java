@@ -0,0 +1,101 @@
+package ch.cern.db.flume.source.reader.log;
+
+import java.text.ParseException;
+import java.util.Date;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.conf.ConfigurationException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.cern.db.log.LogEvent;
+
+public class PatternsLogEventParserTest {
+	
+	private static final String CONNECT_TEXT = "* (CONNECT_DATA=(SID=DESFOUND)(CID=(PROGRAM=oracle)(HOST=itrac50063.cern.ch)(USER=oracle))) "
+			+ "* (ADDRESS=(PROTOCOL=tcp)(HOST=137.138.147.42)(PORT=30816)) * establish * DESFOUND * 0";
+	
+	private Context getContext() {
+		Context context = new Context();
+		context.put(PatternsLogEventParser.PATTERNS_PARAM, "connect ora_error");
+		context.put(PatternsLogEventParser.PATTERNS_PARAM + ".connect.regex",
+				"\\(CONNECT_DATA=.*\\(PROGRAM=(?<program>[^)]*)\\).*\\(PROTOCOL=(?<protocol>\\w+)\\)\\(HOST=(?<clientHost>[^)]*)\\)\\(PORT=(?<port>\\d+)\\)\\) \\* establish \\* \\S+ \\* (?<code>\\d+)");
+		context.put(PatternsLogEventParser.PATTERNS_PARAM + ".connect.types", "port:int code:int");
+		context.put(PatternsLogEventParser.PATTERNS_PARAM + ".ora_error.regex", "ORA-(?<oraCode>\\d{5})");
+		context.put(PatternsLogEventParser.PATTERNS_PARAM + ".ora_error.types", "oraCode:int");
+		
+		return context;
+	}
+	
+	@Test
+	public void firstMatchingPattern() throws ParseException {
+		PatternsLogEventParser parser = new PatternsLogEventParser(getContext());
+		
+		Date timestamp = ToJSONLogEventParser.internalDateFormat.parse("2016-07-29T15:17:34+0200");
+		
+		Event event = parser.parse(new LogEvent(timestamp, CONNECT_TEXT));
+		Assert.assertEquals("{\"event_timestamp\":\"2016-07-29T15:17:34+0200\","
+				+ "\"text\":\"" + CONNECT_TEXT + "\","
+				+ "\"pattern\":\"connect\","
+				+ "\"program\":\"oracle\","
+				+ "\"protocol\":\"tcp\","
+				+ "\"clientHost\":\"137.138.147.42\","
+				+ "\"port\":30816,"
+				+ "\"code\":0}",
+				new String(event.getBody()));
+		
+		event = parser.parse(new LogEvent(timestamp, "TNS-12518: TNS:listener could not hand off client connection ORA-12541 reported"));
+		Assert.assertEquals("{\"event_timestamp\":\"2016-07-29T15:17:34+0200\","
+				+ "\"text\":\"TNS-12518: TNS:listener could not hand off client connection ORA-12541 reported\","
+				+ "\"pattern\":\"ora_error\","
+				+ "\"oraCode\":12541}",
+				new String(event.getBody()));
+	}
+	
+	@Test
+	public void noMatchingPattern() throws ParseException {
+		Context context = getContext();
+		context.put(PatternsLogEventParser.KEEP_TEXT_PARAM, "false");
+		PatternsLogEventParser parser = new PatternsLogEventParser(context);
+		
+		Date timestamp = ToJSONLogEventParser.internalDateFormat.parse("2016-07-29T15:17:38+0200");
+		
+		Event event = parser.parse(new LogEvent(timestamp, "* service_update * WCERND * 0"));
+		Assert.assertEquals("{\"event_timestamp\":\"2016-07-29T15:17:38+0200\"}",
+				new String(event.getBody()));
+	}
+	
+	@Test
+	public void extractLiteral() {
+		Assert.assertEquals("(CONNECT_DATA=", PatternsLogEventParser.extractLiteral("\\(CONNECT_DATA=.*\\(HOST=(?<host>[^)]*)\\)"));
+		Assert.assertEquals("ORA-", PatternsLogEventParser.extractLiteral("ORA-(?<oraCode>\\d{5})"));
+		Assert.assertEquals(" * establish * ", PatternsLogEventParser.extractLiteral("\\d+ \\* establish \\* [A-Z]+"));
+		Assert.assertEquals("establis", PatternsLogEventParser.extractLiteral("establish?"));
+		Assert.assertNull(PatternsLogEventParser.extractLiteral("establish|service_update"));
+		Assert.assertNull(PatternsLogEventParser.extractLiteral("(?i)establish"));
+		Assert.assertNull(PatternsLogEventParser.extractLiteral("\\d+\\s*"));
+		
+		//Quantifier bounds and arguments of escapes are not literals
+		Assert.assertEquals("-", PatternsLogEventParser.extractLiteral("[A-Z]{3}-\\d{4}"));
+		Assert.assertEquals("ORA-", PatternsLogEventParser.extractLiteral("ORA-\\d{1,5}"));
+		Assert.assertNull(PatternsLogEventParser.extractLiteral("[A-Z]{3,}"));
+		Assert.assertEquals("BC", PatternsLogEventParser.extractLiteral("\\x41BC"));
+		Assert.assertEquals("BC", PatternsLogEventParser.extractLiteral("\\x{41}BC"));
+		Assert.assertEquals("BC", PatternsLogEventParser.extractLiteral("\\u0041BC"));
+		Assert.assertNull(PatternsLogEventParser.extractLiteral("\\p{Lu}"));
+		Assert.assertEquals("u", PatternsLogEventParser.extractLiteral("\\pLu"));
+		Assert.assertEquals("89", PatternsLogEventParser.extractLiteral("\\012389"));
+		Assert.assertEquals("BC", PatternsLogEventParser.extractLiteral("\\cABC"));
+		Assert.assertEquals(" = ", PatternsLogEventParser.extractLiteral("(?<key>\\w+) = \\k<key>"));
+	}
+	
+	@Test(expected=ConfigurationException.class)
+	public void typeOfUnknownGroup() {
+		Context context = getContext();
+		context.put(PatternsLogEventParser.PATTERNS_PARAM + ".ora_error.types", "code:int");
+		
+		new PatternsLogEventParser(context);
+	}
+
+}
@@ -15,8 +15,13 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -234,9 +239,370 @@ public class LogFileTest {
 		} catch (IOException e) {}
 	}
 	
+	@Test
+	public void fileRotatedIsDrainedBeforeReadingNewFile() throws IOException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log");
+		File rotatedFile = new File("src/test/resources/sample-logs/listener-tmp.log.1");
+		
+		LogFile logFile = new LogFile(file.getAbsolutePath());
+		logFile.setDateFormat(new SimpleDateFormat("dd-MMM-yyy HH:mm:ss"));
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:34 * event 1\n");
+		bw.write("29-JUL-2016 15:17:35 * event 2\n");
+		bw.flush();
+		
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 1"));
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 2"));
+		Assert.assertNull(logFile.getNextEvent());
+		
+		//Rotate by renaming, writer keeps writing to rotated file for a while
+		Assert.assertTrue(file.renameTo(rotatedFile));
+		bw.write("29-JUL-2016 15:17:36 * event 3\n");
+		bw.flush();
+		bw.close();
+		
+		bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:37 * event 4 written to a new file which is already longer than the previous one\n");
+		bw.write("29-JUL-2016 15:17:38 * event 5\n");
+		bw.flush();
+		bw.close();
+		
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 3"));
+		Assert.assertTrue(logFile.getNextEvent().getText().contains("event 4"));
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 5"));
+		Assert.assertNull(logFile.getNextEvent());
+		
+		Assert.assertEquals(1, logFile.getRotationsCount());
+		Assert.assertEquals("29-JUL-2016 15:17:36 * event 3\n".length(), logFile.getDrainedBytesCount());
+		
+		logFile.close();
+	}
+	
+	@Test
+	public void fileRotatedWithCopyTruncate() throws IOException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log");
+		File copyFile = new File("src/test/resources/sample-logs/listener-tmp.log.1");
+		
+		LogFile logFile = new LogFile(file.getAbsolutePath());
+		logFile.setDateFormat(new SimpleDateFormat("dd-MMM-yyy HH:mm:ss"));
+		logFile.setRotatedFilesGlob("listener-tmp.log.*");
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:34 * event 1\n");
+		bw.flush();
+		
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 1"));
+		Assert.assertNull(logFile.getNextEvent());
+		
+		bw.write("29-JUL-2016 15:17:35 * event 2\n");
+		bw.flush();
+		bw.close();
+		
+		//Copy and truncate
+		Files.copy(file.toPath(), copyFile.toPath());
+		new FileOutputStream(file).close();
+		
+		bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:36 * event 3\n");
+		bw.close();
+		
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 2"));
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 3"));
+		Assert.assertNull(logFile.getNextEvent());
+		
+		Assert.assertEquals(1, logFile.getRotationsCount());
+		
+		logFile.close();
+	}
+	
+	@Test
+	public void seekToTimestamp() throws IOException, ParseException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log");
+		SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MMM-yyy HH:mm:ss");
+		
+		long firstTimestamp = dateFormat.parse("29-JUL-2016 00:00:00").getTime();
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		for (int i = 0; i < 50000; i++) {
+			bw.write(dateFormat.format(new Date(firstTimestamp + i * 1000L)) + " * event " + i + "\n");
+			
+			if(i % 3 == 0)
+				bw.write("continuation line of event " + i + "\n");
+		}
+		bw.close();
+		
+		LogFile logFile = new LogFile(file.getAbsolutePath());
+		logFile.setDateFormat(dateFormat);
+		
+		long target = firstTimestamp + 40000 * 1000L;
+		logFile.seek(target);
+		
+		int skipped = 0;
+		LogEvent event;
+		while((event = logFile.getNextEvent()) != null && event.getTimestamp() < target)
+			skipped++;
+		
+		Assert.assertEquals(dateFormat.format(new Date(target)) + " * event 40000", event.getText());
+		Assert.assertTrue(skipped > 0);
+		Assert.assertTrue(skipped < 2000);
+		
+		//Before first event
+		logFile.seek(firstTimestamp - 1000);
+		Assert.assertTrue(logFile.getNextEvent().getText().contains("event 0\n"));
+		
+		//After last event
+		logFile.seek(firstTimestamp + 60000 * 1000L);
+		skipped = 0;
+		while(logFile.getNextEvent() != null)
+			skipped++;
+		Assert.assertTrue(skipped < 2000);
+		
+		logFile.close();
+	}
+	
+	@Test
+	public void eventsExceedingLimitsAreTruncated() throws IOException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log");
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:34 * event 1\n");
+		for (int i = 0; i < 10; i++)
+			bw.write("trace line " + i + "\n");
+		bw.write("29-JUL-2016 15:17:35 * event 2\n");
+		bw.write("0123456789012345678901234567890123456789\n");
+		bw.close();
+		
+		LogFile logFile = new LogFile(file.getAbsolutePath());
+		logFile.setDateFormat(new SimpleDateFormat("dd-MMM-yyy HH:mm:ss"));
+		logFile.setMaxLinesPerEvent(3);
+		logFile.setMaxBytesPerEvent(60);
+		
+		Assert.assertEquals("29-JUL-2016 15:17:34 * event 1\ntrace line 0\ntrace line 1\n"
+				+ String.format(LogFile.TRUNCATED_MARKER, 8), logFile.getNextEvent().getText());
+		Assert.assertEquals("29-JUL-2016 15:17:35 * event 2\n"
+				+ String.format(LogFile.TRUNCATED_MARKER, 1), logFile.getNextEvent().getText());
+		Assert.assertNull(logFile.getNextEvent());
+		
+		logFile.close();
+	}
+	
+	@Test
+	public void eventsExceedingLimitsAreSplit() throws IOException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log");
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:34 * event 1\n");
+		for (int i = 0; i < 4; i++)
+			bw.write("trace line " + i + "\n");
+		bw.close();
+		
+		LogFile logFile = new LogFile(file.getAbsolutePath());
+		logFile.setDateFormat(new SimpleDateFormat("dd-MMM-yyy HH:mm:ss"));
+		logFile.setMaxLinesPerEvent(2);
+		logFile.setSplitEvents(true);
+		
+		LogEvent event = logFile.getNextEvent();
+		Assert.assertEquals("29-JUL-2016 15:17:34 * event 1\ntrace line 0\n" + LogFile.SPLIT_MARKER, event.getText());
+		LogEvent continuation = logFile.getNextEvent();
+		Assert.assertEquals(LogFile.CONTINUATION_MARKER + "trace line 1\ntrace line 2\n" + LogFile.SPLIT_MARKER, continuation.getText());
+		Assert.assertEquals(event.getTimestamp(), continuation.getTimestamp());
+		Assert.assertEquals(LogFile.CONTINUATION_MARKER + "trace line 3", logFile.getNextEvent().getText());
+		Assert.assertNull(logFile.getNextEvent());
+		
+		logFile.close();
+	}
+	
+	@Test
+	public void lastEventIsProducedAfterFlushTimeout() throws IOException, InterruptedException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log");
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:34 * event 1\n");
+		bw.write("trace line 0\n");
+		bw.flush();
+		
+		LogFile logFile = new LogFile(file.getAbsolutePath());
+		logFile.setDateFormat(new SimpleDateFormat("dd-MMM-yyy HH:mm:ss"));
+		logFile.setFlushTimeout(300);
+		
+		Assert.assertEquals(Long.MAX_VALUE, logFile.getPendingEventFlushTime());
+		long start = System.currentTimeMillis();
+		Assert.assertNull(logFile.getNextEvent());
+		Assert.assertTrue(logFile.getPendingEventFlushTime() >= start + 300);
+		Assert.assertTrue(logFile.getPendingEventFlushTime() <= System.currentTimeMillis() + 300);
+		
+		//Lines written before timeout belong to the event
+		bw.write("trace line 1\n");
+		bw.flush();
+		bw.close();
+		Assert.assertNull(logFile.getNextEvent());
+		
+		Thread.sleep(400);
+		Assert.assertEquals("29-JUL-2016 15:17:34 * event 1\ntrace line 0\ntrace line 1", logFile.getNextEvent().getText());
+		Assert.assertNull(logFile.getNextEvent());
+		Assert.assertEquals(Long.MAX_VALUE, logFile.getPendingEventFlushTime());
+		
+		logFile.close();
+	}
+	
+	@Test
+	public void markAndReset() throws IOException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log");
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:34 * event 1\n");
+		bw.write("29-JUL-2016 15:17:35 * event 2\n");
+		bw.write("trace line 0\n");
+		bw.flush();
+		
+		LogFile logFile = new LogFile(file.getAbsolutePath());
+		logFile.setDateFormat(new SimpleDateFormat("dd-MMM-yyy HH:mm:ss"));
+		logFile.setFlushTimeout(60000);
+		
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 1"));
+		Assert.assertFalse(logFile.reset());
+		
+		//Event 2 is being assembled
+		Assert.assertNull(logFile.getNextEvent());
+		logFile.mark();
+		
+		bw.write("trace line 1\n");
+		bw.write("29-JUL-2016 15:17:36 * event 3\n");
+		bw.close();
+		Assert.assertEquals("29-JUL-2016 15:17:35 * event 2\ntrace line 0\ntrace line 1", logFile.getNextEvent().getText());
+		
+		Assert.assertTrue(logFile.reset());
+		Assert.assertEquals("29-JUL-2016 15:17:35 * event 2\ntrace line 0\ntrace line 1", logFile.getNextEvent().getText());
+		
+		logFile.close();
+		Assert.assertFalse(logFile.reset());
+	}
+	
+	@Test
+	public void readCompressedLogFile() throws IOException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log.1");
+		
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+		Files.copy(new File("src/test/resources/sample-logs/listener.log").toPath(), out);
+		out.close();
+		
+		LogFile logFile = new LogFile(file.getAbsolutePath());
+		logFile.setDateFormat(new SimpleDateFormat("dd-MMM-yyy HH:mm:ss"));
+		
+		int i = 0;
+		while(logFile.getNextEvent() != null)
+			i++;
+		
+		Assert.assertEquals(13, i);
+		
+		logFile.close();
+	}
+	
+	@Test
+	public void fileRotatedWithCopyTruncateAndCompressed() throws IOException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log");
+		File copyFile = new File("src/test/resources/sample-logs/listener-tmp.log.1");
+		
+		LogFile logFile = new LogFile(file.getAbsolutePath());
+		logFile.setDateFormat(new SimpleDateFormat("dd-MMM-yyy HH:mm:ss"));
+		logFile.setRotatedFilesGlob("listener-tmp.log.*");
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:34 * event 1\n");
+		bw.flush();
+		
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 1"));
+		Assert.assertNull(logFile.getNextEvent());
+		
+		bw.write("29-JUL-2016 15:17:35 * event 2\n");
+		bw.close();
+		
+		//Copy compressed and truncate
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(copyFile));
+		Files.copy(file.toPath(), out);
+		out.close();
+		new FileOutputStream(file).close();
+		
+		bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("29-JUL-2016 15:17:36 * event 3\n");
+		bw.close();
+		
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 2"));
+		Assert.assertTrue(logFile.getNextEvent().getText().endsWith("event 3"));
+		Assert.assertNull(logFile.getNextEvent());
+		
+		logFile.close();
+	}
+	
+	@Test
+	public void catchUpReadsSameEventsAsLineByLine() throws IOException{
+		File file = new File("src/test/resources/sample-logs/listener-tmp.log");
+		SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MMM-yyy HH:mm:ss");
+		
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		bw.write("line without timestamp\n");
+		for (int i = 0; i < 20000; i++) {
+			bw.write(dateFormat.format(new Date(i * 1000L)) + " * event " + i + (i % 7 == 0 ? "\r\n" : "\n"));
+			
+			for (int j = 0; j < i % 4; j++)
+				bw.write("continuation line " + j + " of event " + i + "\n");
+			
+			if(i == 10000)
+				for (int j = 0; j < 50; j++)
+					bw.write("trace line " + j + "\n");
+		}
+		bw.close();
+		
+		LogFile lineByLine = new LogFile(file.getAbsolutePath());
+		lineByLine.setDateFormat(dateFormat);
+		lineByLine.setMaxLinesPerEvent(20);
+		
+		LogFile catchingUp = new LogFile(file.getAbsolutePath());
+		catchingUp.setDateFormat(dateFormat);
+		catchingUp.setMaxLinesPerEvent(20);
+		catchingUp.setCatchUpThreshold(1024);
+		
+		int events = 0;
+		LogEvent expected;
+		while((expected = lineByLine.getNextEvent()) != null){
+			LogEvent event = catchingUp.getNextEvent();
+			
+			Assert.assertNotNull(event);
+			Assert.assertEquals(expected.getTimestamp(), event.getTimestamp());
+			Assert.assertEquals(expected.getText(), event.getText());
+			
+			if(events == 5000){
+				lineByLine.mark();
+				catchingUp.mark();
+				Assert.assertEquals(lineByLine.getNextEvent().getText(), catchingUp.getNextEvent().getText());
+				Assert.assertTrue(lineByLine.reset());
+				Assert.assertTrue(catchingUp.reset());
+			}
+			
+			events++;
+		}
+		Assert.assertNull(catchingUp.getNextEvent());
+		Assert.assertEquals(20000, events);
+		
+		//Keeps tailing once end of file has been reached
+		bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true)));
+		bw.write("01-JAN-1970 06:00:00 * new event\n");
+		bw.write("01-JAN-1970 06:00:01 * new event 2\n");
+		bw.close();
+		
+		Assert.assertEquals("01-JAN-1970 06:00:00 * new event", catchingUp.getNextEvent().getText());
+		Assert.assertEquals("01-JAN-1970 06:00:01 * new event 2", catchingUp.getNextEvent().getText());
+		Assert.assertNull(catchingUp.getNextEvent());
+		
+		lineByLine.close();
+		catchingUp.close();
+	}
+	
 	@After
 	public void clean(){
 		new File("src/test/resources/sample-logs/listener-tmp.log").delete();
+		new File("src/test/resources/sample-logs/listener-tmp.log.1").delete();
 	}
 	
 }
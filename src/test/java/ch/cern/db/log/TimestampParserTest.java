@@ -0,0 +1,78 @@
+package ch.cern.db.log;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimestampParserTest {
+	
+	@Test
+	public void listenerLogsTimestamp() throws ParseException{
+		DateFormat dateFormat = new SimpleDateFormat("dd-MMM-yyy HH:mm:ss");
+		TimestampParser parser = new TimestampParser(dateFormat);
+		
+		String line = "29-JUL-2016 15:17:34 "
+				+ "* (CONNECT_DATA=(SID=DESFOUND)(CID=(PROGRAM=oracle)(HOST=itrac50035.cern.ch)(USER=oracle))) "
+				+ "* establish * DESFOUND * 0";
+		Assert.assertEquals(dateFormat.parse(line).getTime(), parser.parse(line));
+		Assert.assertTrue(parser.matches(line));
+		
+		line = "01-jan-2016 00:00:00 * service_update * DESFOUND * 0";
+		Assert.assertEquals(dateFormat.parse(line).getTime(), parser.parse(line));
+		
+		line = "29-Feb-2016 23:59:59";
+		Assert.assertEquals(dateFormat.parse(line).getTime(), parser.parse(line));
+	}
+	
+	@Test
+	public void linesWithoutTimestamp(){
+		TimestampParser parser = new TimestampParser("dd-MMM-yyy HH:mm:ss");
+		
+		Assert.assertEquals(TimestampParser.NO_TIMESTAMP, parser.parse("Fri Jul 29 15:27:34 2016"));
+		Assert.assertEquals(TimestampParser.NO_TIMESTAMP, parser.parse("TNS-12514: TNS:listener does not currently know of service"));
+		Assert.assertEquals(TimestampParser.NO_TIMESTAMP, parser.parse("\tat java.lang.Thread.run(Thread.java:745)"));
+		Assert.assertEquals(TimestampParser.NO_TIMESTAMP, parser.parse("29-JUL-2016 15:17"));
+		Assert.assertEquals(TimestampParser.NO_TIMESTAMP, parser.parse(""));
+		Assert.assertFalse(parser.matches("29-XXX-2016 15:17:34"));
+	}
+	
+	@Test
+	public void log4jTimestamp() throws ParseException{
+		DateFormat dateFormat = new SimpleDateFormat("dd MMM yyyy HH:mm:ss,SSS");
+		TimestampParser parser = new TimestampParser(dateFormat);
+		
+		String line = "03 Aug 2016 10:21:07,123 INFO  [main] (org.apache.flume.node.Application.main:340) - Starting";
+		Assert.assertEquals(dateFormat.parse(line).getTime(), parser.parse(line));
+		
+		Assert.assertEquals(TimestampParser.NO_TIMESTAMP, parser.parse("java.lang.NullPointerException"));
+	}
+	
+	@Test
+	public void timestampWithZoneOffset() throws ParseException{
+		DateFormat dateFormat = new SimpleDateFormat(LogFile.DATAFORMAT_DEFAULT);
+		TimestampParser parser = new TimestampParser(dateFormat);
+		
+		String line = "2016-08-03T10:21:07+0200 message";
+		Assert.assertEquals(dateFormat.parse(line).getTime(), parser.parse(line));
+		
+		line = "2016-12-31T23:59:59-0800 message";
+		Assert.assertEquals(dateFormat.parse(line).getTime(), parser.parse(line));
+		
+		Assert.assertEquals(TimestampParser.NO_TIMESTAMP, parser.parse("2016-08-03 10:21:07+0200"));
+	}
+	
+	@Test
+	public void unsupportedPatternFallsBackToDateFormat() throws ParseException{
+		DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");
+		TimestampParser parser = new TimestampParser(dateFormat);
+		
+		String line = "2016-08-03 10:21:07 UTC message";
+		Assert.assertEquals(dateFormat.parse(line).getTime(), parser.parse(line));
+		
+		Assert.assertEquals(TimestampParser.NO_TIMESTAMP, parser.parse("message"));
+	}
+
+}
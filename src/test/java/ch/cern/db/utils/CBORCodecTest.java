@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+public class CBORCodecTest {
+	
+	@Test
+	public void encodeAsRFC(){
+		Assert.assertArrayEquals(new byte[]{0x00}, CBORCodec.encode(new JsonPrimitive(0)));
+		Assert.assertArrayEquals(new byte[]{0x18, 0x18}, CBORCodec.encode(new JsonPrimitive(24)));
+		Assert.assertArrayEquals(new byte[]{0x19, 0x03, (byte) 0xE8}, CBORCodec.encode(new JsonPrimitive(1000)));
+		Assert.assertArrayEquals(new byte[]{0x38, 0x63}, CBORCodec.encode(new JsonPrimitive(-100)));
+		Assert.assertArrayEquals(new byte[]{(byte) 0xFB, 0x3F, (byte) 0xF1, (byte) 0x99, (byte) 0x99, (byte) 0x99, (byte) 0x99, (byte) 0x99, (byte) 0x9A}, 
+				CBORCodec.encode(new JsonPrimitive(1.1)));
+		Assert.assertArrayEquals(new byte[]{0x62, 0x75, 0x75}, CBORCodec.encode(new JsonPrimitive("uu")));
+		Assert.assertArrayEquals(new byte[]{(byte) 0xF6}, CBORCodec.encode(null));
+		Assert.assertArrayEquals(new byte[]{(byte) 0xA1, 0x61, 0x61, (byte) 0x82, (byte) 0xF5, (byte) 0xF4}, 
+				CBORCodec.encode(new JsonParser().parse("{\"a\":[true,false]}")));
+	}
+	
+	@Test
+	public void roundTrip(){
+		String json = "{\"name\":\"café\",\"size\":-12,\"big\":123456789012,\"price\":250.54,\"exp\":1.0E30,"
+				+ "\"list\":[1,\"a\",null,{}],\"nested\":{\"ok\":true},\"empty\":\"\"}";
+		
+		JsonElement element = new JsonParser().parse(json);
+		
+		Assert.assertEquals(json, CBORCodec.decode(CBORCodec.encode(element)).toString());
+	}
+	
+	@Test
+	public void bigNumbers(){
+		JsonObject object = new JsonObject();
+		object.addProperty("bigint", new BigInteger("123456789012345678901234567890"));
+		object.addProperty("negbigint", new BigInteger("-18446744073709551617"));
+		object.addProperty("decimal", new BigDecimal("12345678901234567890.123456789"));
+		object.addProperty("maxlong", Long.MAX_VALUE);
+		object.addProperty("minlong", Long.MIN_VALUE);
+		
+		JsonObject decoded = CBORCodec.decode(CBORCodec.encode(object)).getAsJsonObject();
+		
+		Assert.assertEquals(object.toString(), decoded.toString());
+	}
+	
+	@Test
+	public void invalidData(){
+		try{
+			CBORCodec.decode(new byte[]{0x62, 0x75});
+			Assert.fail();
+		}catch(JsonParseException e){}
+		
+		try{
+			CBORCodec.decode(new byte[]{0x00, 0x00});
+			Assert.fail();
+		}catch(JsonParseException e){}
+		
+		try{
+			CBORCodec.decode(new byte[]{(byte) 0x9F});
+			Assert.fail();
+		}catch(JsonParseException e){}
+	}
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class CSVEncoderTest {
+	
+	@Test
+	public void escaping(){
+		CSVEncoder encoder = new CSVEncoder(null);
+		
+		JsonObject json = new JsonParser().parse("{\"a\":\"plain\",\"b\":\"with,comma\",\"c\":\"with \\\"quotes\\\"\","
+				+ "\"d\":\"multi\\nline\",\"e\":null,\"f\":2.5,\"g\":false,\"h\":{\"x\":[1]}}").getAsJsonObject();
+		
+		Assert.assertEquals("plain,\"with,comma\",\"with \"\"quotes\"\"\",\"multi\nline\",,2.5,false,\"{\"\"x\"\":[1]}\"", 
+				new String(encoder.encode(json), Charsets.UTF_8));
+	}
+	
+	@Test
+	public void configuredColumns(){
+		CSVEncoder encoder = new CSVEncoder(CSVEncoder.parseColumns(" b ,missing,a"));
+		
+		Assert.assertEquals("b,missing,a", new String(encoder.encodeHeader(), Charsets.UTF_8));
+		
+		JsonObject json = new JsonObject();
+		json.addProperty("a", "é€😀");
+		json.addProperty("b", 1);
+		json.addProperty("c", 2);
+		
+		Assert.assertEquals("1,,é€😀", new String(encoder.encode(json), Charsets.UTF_8));
+		
+		//Buffer is reused
+		json.addProperty("a", "");
+		Assert.assertEquals("1,,", new String(encoder.encode(json), Charsets.UTF_8));
+		
+		Assert.assertNull(new CSVEncoder(CSVEncoder.parseColumns(" ")).encodeHeader());
+	}
+	
+}
@@ -0,0 +1,49 @@
+package ch.cern.db.utils;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JSONUtilsTest {
+	
+	@Test
+	public void dates(){
+		Date date = new Date(1470000000123L);
+		
+		Assert.assertEquals(new SimpleDateFormat(JSONUtils.DATE_FORMAT).format(date), JSONUtils.to(date));
+		Assert.assertNull(JSONUtils.to(null));
+	}
+	
+	@Test
+	public void datesFromParallelThreads() throws InterruptedException{
+		final AtomicInteger wrongDates = new AtomicInteger();
+		
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final long base = 1000000000000L + t * 86400000L * 365;
+			
+			threads[t] = new Thread(){
+				@Override
+				public void run() {
+					SimpleDateFormat expected = new SimpleDateFormat(JSONUtils.DATE_FORMAT);
+					
+					for (int i = 0; i < 1000; i++) {
+						Date date = new Date(base + i * 60123L);
+						
+						if(!expected.format(date).equals(JSONUtils.to(date)))
+							wrongDates.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		Assert.assertEquals(0, wrongDates.get());
+	}
+
+}
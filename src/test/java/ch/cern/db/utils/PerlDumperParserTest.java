@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2016, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+package ch.cern.db.utils;
+
+import java.text.ParseException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+
+public class PerlDumperParserTest extends Assert {
+	
+	@Test
+	public void hashesAndArrays() throws ParseException{
+		String dump = "$VAR1 = {\n"
+				+ "          'dbserver' => [\n"
+				+ "                          '/ORA/dbs02',\n"
+				+ "                          '/ORA/dbs03'\n"
+				+ "                        ],\n"
+				+ "          'size' => 1024,\n"
+				+ "          'ratio' => '0.5',\n"
+				+ "          'empty' => {},\n"
+				+ "          'none' => undef\n"
+				+ "        };\n";
+		
+		JsonElement json = PerlDumperParser.parse(dump);
+		
+		assertEquals("{\"dbserver\":[\"/ORA/dbs02\",\"/ORA/dbs03\"],\"size\":1024,\"ratio\":\"0.5\","
+				+ "\"empty\":{},\"none\":null}", json.toString());
+	}
+	
+	@Test
+	public void topLevelArray() throws ParseException{
+		JsonElement json = PerlDumperParser.parse(" = [ { 'a' => 1 }, { 'b' => 2 }, ];");
+		
+		assertEquals("[{\"a\":1},{\"b\":2}]", json.toString());
+	}
+	
+	@Test
+	public void quotedStrings() throws ParseException{
+		JsonElement json = PerlDumperParser.parse("{ 'it\\'s' => 'C:\\\\dir\\n', \"tab\" => \"a\\tb\\x{e9}\\$\" }");
+		
+		assertEquals("it's", json.getAsJsonObject().entrySet().iterator().next().getKey());
+		assertEquals("C:\\dir\\n", json.getAsJsonObject().get("it's").getAsString());
+		assertEquals("a\tb\u00e9$", json.getAsJsonObject().get("tab").getAsString());
+	}
+	
+	@Test
+	public void barewordsBlessAndReferences() throws ParseException{
+		String dump = "$VAR1 = {\n"
+				+ "  key => -3,\n"
+				+ "  'object' => bless( { 'x' => '1' }, 'Some::Class' ),\n"
+				+ "  'ref' => \\'scalar',\n"
+				+ "  'same' => $VAR1->{'object'}[0],\n"
+				+ "  'code' => sub { \"DUMMY\" }\n"
+				+ "};";
+		
+		JsonElement json = PerlDumperParser.parse(dump);
+		
+		assertEquals("{\"key\":-3,\"object\":{\"x\":\"1\"},\"ref\":\"scalar\",\"same\":null,\"code\":null}", 
+				json.toString());
+	}
+	
+	@Test(expected=ParseException.class)
+	public void notCompleted() throws ParseException{
+		PerlDumperParser.parse("$VAR1 = { 'a' => [ 1, 2 ");
+	}
+	
+	@Test(expected=ParseException.class)
+	public void missingArrow() throws ParseException{
+		PerlDumperParser.parse("{ 'a' 1 }");
+	}
+
+}